@@ -4,13 +4,35 @@ plugins {
 	signing
 }
 
+// main classes target Java 8, but the multi-release jar needs a Java 9+ compiler for the java9 source set
+if (!JavaVersion.current().isJava9Compatible) {
+	throw GradleException("JDK 9 or newer is required to build, current: ${JavaVersion.current()}")
+}
+
 repositories {
 	mavenLocal()
 	mavenCentral()
 }
 
+// Java 9+ versions of main classes, packed into META-INF/versions/9 of the multi-release jar
+val java9: SourceSet by sourceSets.creating {
+	java.setSrcDirs(listOf("src/main/java9"))
+}
+
+val jmh: SourceSet by sourceSets.creating {
+	compileClasspath += sourceSets.main.get().output
+	// run against the jar, so benchmarks use the classes picked for the current JVM
+	runtimeClasspath += files(tasks.jar)
+}
+
 dependencies {
+	testImplementation(platform("org.junit:junit-bom:5.10.2"))
+	testImplementation("org.junit.jupiter:junit-jupiter")
+	testRuntimeOnly("org.junit.platform:junit-platform-launcher")
 
+	val jmhVersion = "1.37"
+	"jmhImplementation"("org.openjdk.jmh:jmh-core:$jmhVersion")
+	"jmhAnnotationProcessor"("org.openjdk.jmh:jmh-generator-annprocess:$jmhVersion")
 }
 
 group = "io.github.skylot"
@@ -81,11 +103,64 @@ signing {
 	sign(publishing.publications["mavenJava"])
 }
 
+tasks.withType<JavaCompile> {
+	options.encoding = "UTF-8"
+	// keep java.nio.Buffer method signatures compatible with Java 8 runtime
+	options.release.set(8)
+}
+
+tasks.named<JavaCompile>(java9.compileJavaTaskName) {
+	options.release.set(9)
+}
+
+tasks.jar {
+	into("META-INF/versions/9") {
+		from(java9.output)
+	}
+	manifest {
+		attributes("Multi-Release" to "true")
+	}
+}
+
+tasks.named<Jar>("sourcesJar") {
+	into("META-INF/versions/9") {
+		from(java9.allSource)
+	}
+}
+
+tasks.test {
+	useJUnitPlatform()
+}
+
+// same tests against the multi-release jar instead of main classes, so the java9 versions are tested on JDK 9+
+val testJar by tasks.registering(Test::class) {
+	group = "verification"
+	description = "Runs tests against the multi-release jar"
+	useJUnitPlatform()
+	testClassesDirs = sourceSets.test.get().output.classesDirs
+	classpath = files(tasks.jar) + (sourceSets.test.get().runtimeClasspath - sourceSets.main.get().output)
+	systemProperty("jdwp.test.jar", "true")
+	shouldRunAfter(tasks.test)
+}
+
 tasks.javadoc {
 	val stdOptions = options as StandardJavadocDocletOptions
-	if (JavaVersion.current().isJava9Compatible) {
-		stdOptions.addBooleanOption("html5", true)
-	}
+	stdOptions.encoding = "UTF-8"
+	stdOptions.addBooleanOption("html5", true)
 	// disable 'missing' warnings
 	stdOptions.addStringOption("Xdoclint:all,-missing", "-quiet")
 }
+
+// run benchmarks: ./gradlew jmh -PjmhArgs="DecodeBenchmark -prof gc"
+// without jmhArgs all benchmarks are run with gc profiler
+tasks.register<JavaExec>("jmh") {
+	group = "verification"
+	description = "Runs JMH benchmarks"
+	classpath = jmh.runtimeClasspath
+	mainClass.set("org.openjdk.jmh.Main")
+	args((project.findProperty("jmhArgs") as String? ?: "-prof gc").split(" ").filter { it.isNotEmpty() })
+}
+
+tasks.check {
+	dependsOn(jmh.classesTaskName, testJar)
+}
@@ -0,0 +1,74 @@
+package io.github.skylot.jdwp;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * VirtualMachine.AllClasses and AllClassesWithGeneric reply decoding: object list vs columnar form.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AllClassesBenchmark {
+
+	@Param({ "40000" })
+	public int classes;
+
+	private JDWP.VirtualMachine.AllClasses allClasses;
+	private JDWP.VirtualMachine.AllClassesWithGeneric allClassesWithGeneric;
+	private byte[] reply;
+	private byte[] genericReply;
+
+	@Setup
+	public void setup() {
+		allClasses = BenchData.jdwp().virtualMachine().cmdAllClasses();
+		reply = BenchData.allClassesReply(classes);
+		allClassesWithGeneric = BenchData.jdwp().virtualMachine().cmdAllClassesWithGeneric();
+		genericReply = BenchData.allClassesWithGenericReply(classes);
+	}
+
+	@Benchmark
+	public Object decode() {
+		return allClasses.decode(reply, JDWP.PACKET_HEADER_SIZE);
+	}
+
+	@Benchmark
+	public Object decodeWithGeneric() {
+		return allClassesWithGeneric.decode(genericReply, JDWP.PACKET_HEADER_SIZE);
+	}
+
+	@Benchmark
+	public Object decodeColumns() {
+		return allClasses.decodeColumns(reply, JDWP.PACKET_HEADER_SIZE);
+	}
+
+	/**
+	 * Typical lookup: scan types and decode only one signature.
+	 */
+	@Benchmark
+	public String decodeColumnsFindOne() {
+		JDWP.VirtualMachine.AllClasses.AllClassesReplyColumns columns =
+				allClasses.decodeColumns(reply, JDWP.PACKET_HEADER_SIZE);
+		long id = columns.typeID[columns.count / 2];
+		for (int i = 0; i < columns.count; i++) {
+			if (columns.typeID[i] == id) {
+				return columns.getSignature(i);
+			}
+		}
+		return null;
+	}
+}
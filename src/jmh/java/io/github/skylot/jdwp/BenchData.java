@@ -0,0 +1,350 @@
+package io.github.skylot.jdwp;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Shared fixtures for benchmarks.
+ */
+final class BenchData {
+
+	static JDWP.IDSizes.IDSizesReplyData idSizes() {
+		JDWP.IDSizes.IDSizesReplyData sizes = new JDWP.IDSizes.IDSizesReplyData();
+		sizes.fieldIDSize = 8;
+		sizes.methodIDSize = 8;
+		sizes.objectIDSize = 8;
+		sizes.referenceTypeIDSize = 8;
+		sizes.frameIDSize = 8;
+		return sizes;
+	}
+
+	static JDWP jdwp() {
+		return new JDWP(idSizes());
+	}
+
+	/**
+	 * VirtualMachine.AllClasses reply with {@code count} classes.
+	 */
+	static byte[] allClassesReply(int count) {
+		PacketWriter w = new PacketWriter();
+		w.writeInt(count);
+		for (int i = 0; i < count; i++) {
+			w.writeByte(JDWP.TypeTag.CLASS);
+			w.writeLong(0x7f0000000000L + i * 8L);
+			w.writeString(className(i));
+			w.writeInt(JDWP.ClassStatus.VERIFIED | JDWP.ClassStatus.PREPARED | JDWP.ClassStatus.INITIALIZED);
+		}
+		return w.toReply();
+	}
+
+	/**
+	 * VirtualMachine.AllClassesWithGeneric reply with {@code count} classes, every 8th one generic.
+	 */
+	static byte[] allClassesWithGenericReply(int count) {
+		PacketWriter w = new PacketWriter();
+		w.writeInt(count);
+		for (int i = 0; i < count; i++) {
+			w.writeByte(JDWP.TypeTag.CLASS);
+			w.writeLong(0x7f0000000000L + i * 8L);
+			w.writeString(className(i));
+			w.writeString(i % 8 == 0 ? "<T:Ljava/lang/Object;>Ljava/lang/Object;" : "");
+			w.writeInt(JDWP.ClassStatus.VERIFIED | JDWP.ClassStatus.PREPARED | JDWP.ClassStatus.INITIALIZED);
+		}
+		return w.toReply();
+	}
+
+	/**
+	 * ThreadReference.Frames reply with {@code depth} frames.
+	 */
+	static byte[] framesReply(int depth) {
+		PacketWriter w = new PacketWriter();
+		w.writeInt(depth);
+		for (int i = 0; i < depth; i++) {
+			w.writeLong(0x10000L + i);
+			writeLocation(w, i);
+		}
+		return w.toReply();
+	}
+
+	/**
+	 * ReferenceType.Methods reply with {@code count} methods.
+	 */
+	static byte[] methodsReply(int count) {
+		PacketWriter w = new PacketWriter();
+		w.writeInt(count);
+		for (int i = 0; i < count; i++) {
+			w.writeLong(0x7f1000000000L + i * 16L);
+			w.writeString("method" + i);
+			w.writeString("(ILjava/lang/String;)Ljava/lang/Object;");
+			w.writeInt(0x0001);
+		}
+		return w.toReply();
+	}
+
+	/**
+	 * ReferenceType.MethodsWithGeneric reply with {@code count} methods.
+	 */
+	static byte[] methodsWithGenericReply(int count) {
+		PacketWriter w = new PacketWriter();
+		w.writeInt(count);
+		for (int i = 0; i < count; i++) {
+			w.writeLong(0x7f1000000000L + i * 16L);
+			w.writeString("method" + i);
+			w.writeString("(ILjava/util/List;)Ljava/lang/Object;");
+			w.writeString(i % 4 == 0 ? "(ILjava/util/List<Ljava/lang/String;>;)Ljava/lang/Object;" : "");
+			w.writeInt(0x0001);
+		}
+		return w.toReply();
+	}
+
+	/**
+	 * Event.Composite command with {@code events} events, alternating MethodEntry and
+	 * MethodExitWithReturnValue (int value) like a method tracing session produces.
+	 */
+	static byte[] compositeCommand(int events) {
+		PacketWriter w = new PacketWriter();
+		w.writeByte(JDWP.SuspendPolicy.NONE);
+		w.writeInt(events);
+		for (int i = 0; i < events; i++) {
+			boolean entry = (i & 1) == 0;
+			w.writeByte(entry ? JDWP.EventKind.METHOD_ENTRY : JDWP.EventKind.METHOD_EXIT_WITH_RETURN_VALUE);
+			w.writeInt(entry ? 2 : 3);
+			w.writeLong(0x20000L);
+			writeLocation(w, i);
+			if (!entry) {
+				w.writeByte(JDWP.Tag.INT);
+				w.writeInt(i);
+			}
+		}
+		return w.toCommand(64, 100);
+	}
+
+	/**
+	 * ArrayReference.GetValues reply for int[] of {@code length} values.
+	 */
+	static byte[] intArrayValuesReply(int length) {
+		PacketWriter w = new PacketWriter();
+		w.writeByte(JDWP.Tag.INT);
+		w.writeInt(length);
+		for (int i = 0; i < length; i++) {
+			w.writeInt(i * 31);
+		}
+		return w.toReply();
+	}
+
+	/**
+	 * ArrayReference.GetValues reply for Object[] of {@code length} values.
+	 */
+	static byte[] objectArrayValuesReply(int length) {
+		PacketWriter w = new PacketWriter();
+		w.writeByte(JDWP.Tag.OBJECT);
+		w.writeInt(length);
+		for (int i = 0; i < length; i++) {
+			w.writeByte(JDWP.Tag.OBJECT);
+			w.writeLong(0x30000L + i);
+		}
+		return w.toReply();
+	}
+
+	/**
+	 * ObjectReference.GetValues reply with {@code count} tagged values of mixed types.
+	 */
+	static byte[] taggedValuesReply(int count) {
+		PacketWriter w = new PacketWriter();
+		w.writeInt(count);
+		for (int i = 0; i < count; i++) {
+			switch (i % 4) {
+				case 0:
+					w.writeByte(JDWP.Tag.INT).writeInt(i);
+					break;
+				case 1:
+					w.writeByte(JDWP.Tag.LONG).writeLong(i);
+					break;
+				case 2:
+					w.writeByte(JDWP.Tag.BOOLEAN).writeByte(1);
+					break;
+				default:
+					w.writeByte(JDWP.Tag.OBJECT).writeLong(0x40000L + i);
+					break;
+			}
+		}
+		return w.toReply();
+	}
+
+	/**
+	 * Method.LineTable reply with {@code count} lines.
+	 */
+	static byte[] lineTableReply(int count) {
+		PacketWriter w = new PacketWriter();
+		w.writeLong(0);
+		w.writeLong(count * 4L);
+		w.writeInt(count);
+		for (int i = 0; i < count; i++) {
+			w.writeLong(i * 4L);
+			w.writeInt(100 + i);
+		}
+		return w.toReply();
+	}
+
+	/**
+	 * Method.VariableTable reply with {@code count} local variables.
+	 */
+	static byte[] variableTableReply(int count) {
+		PacketWriter w = new PacketWriter();
+		w.writeInt(2);
+		w.writeInt(count);
+		for (int i = 0; i < count; i++) {
+			w.writeLong(i * 2L);
+			w.writeString("local" + i);
+			w.writeString(i % 2 == 0 ? "I" : "Ljava/lang/String;");
+			w.writeInt(64);
+			w.writeInt(i);
+		}
+		return w.toReply();
+	}
+
+	/**
+	 * ClassType.InvokeMethod reply returning an object and no exception.
+	 */
+	static byte[] invokeMethodReply() {
+		PacketWriter w = new PacketWriter();
+		w.writeByte(JDWP.Tag.OBJECT).writeLong(0x50000L);
+		w.writeByte(JDWP.Tag.OBJECT).writeLong(0);
+		return w.toReply();
+	}
+
+	/**
+	 * StringReference.Value reply with a string of {@code length} ASCII chars.
+	 */
+	static byte[] stringValueReply(int length) {
+		StringBuilder sb = new StringBuilder(length);
+		for (int i = 0; i < length; i++) {
+			sb.append((char) ('a' + i % 26));
+		}
+		return new PacketWriter().writeString(sb.toString()).toReply();
+	}
+
+	/**
+	 * ThreadGroupReference.Children reply with {@code threads} threads and {@code groups} groups.
+	 */
+	static byte[] threadGroupChildrenReply(int threads, int groups) {
+		PacketWriter w = new PacketWriter();
+		w.writeInt(threads);
+		for (int i = 0; i < threads; i++) {
+			w.writeLong(0x20000L + i);
+		}
+		w.writeInt(groups);
+		for (int i = 0; i < groups; i++) {
+			w.writeLong(0x21000L + i);
+		}
+		return w.toReply();
+	}
+
+	/**
+	 * ClassLoaderReference.VisibleClasses reply with {@code count} classes.
+	 */
+	static byte[] visibleClassesReply(int count) {
+		PacketWriter w = new PacketWriter();
+		w.writeInt(count);
+		for (int i = 0; i < count; i++) {
+			w.writeByte(JDWP.TypeTag.CLASS);
+			w.writeLong(0x7f0000000000L + i * 8L);
+		}
+		return w.toReply();
+	}
+
+	/**
+	 * EventRequest.Set reply.
+	 */
+	static byte[] requestIDReply() {
+		return new PacketWriter().writeInt(42).toReply();
+	}
+
+	private static void writeLocation(PacketWriter w, int i) {
+		w.writeByte(JDWP.TypeTag.CLASS);
+		w.writeLong(0x7f0000000000L + (i % 64) * 8L);
+		w.writeLong(0x7f1000000000L + i * 16L);
+		w.writeLong(i * 7L);
+	}
+
+	static String className(int i) {
+		return "Lcom/example/app/module" + (i % 97) + "/service/GeneratedClass" + i + ";";
+	}
+
+	/**
+	 * Writes reply data and prepends a reply packet header.
+	 */
+	static final class PacketWriter {
+		private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		private final DataOutputStream out = new DataOutputStream(bytes);
+
+		PacketWriter writeByte(int val) {
+			try {
+				out.writeByte(val);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+			return this;
+		}
+
+		PacketWriter writeInt(int val) {
+			try {
+				out.writeInt(val);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+			return this;
+		}
+
+		PacketWriter writeLong(long val) {
+			try {
+				out.writeLong(val);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+			return this;
+		}
+
+		PacketWriter writeString(String str) {
+			byte[] utf = str.getBytes(StandardCharsets.UTF_8);
+			writeInt(utf.length);
+			bytes.write(utf, 0, utf.length);
+			return this;
+		}
+
+		PacketWriter writeBytes(byte[] data) {
+			bytes.write(data, 0, data.length);
+			return this;
+		}
+
+		byte[] toReply() {
+			return toPacket(1, 0x80, 0);
+		}
+
+		byte[] toCommand(int commandSet, int command) {
+			return toPacket(1, 0, (commandSet << 8) | command);
+		}
+
+		private byte[] toPacket(int id, int flags, int errorOrCommand) {
+			byte[] data = bytes.toByteArray();
+			byte[] packet = new byte[JDWP.PACKET_HEADER_SIZE + data.length];
+			int len = packet.length;
+			packet[0] = (byte) (len >> 24);
+			packet[1] = (byte) (len >> 16);
+			packet[2] = (byte) (len >> 8);
+			packet[3] = (byte) len;
+			JDWP.setPacketID(packet, id);
+			packet[8] = (byte) flags;
+			packet[9] = (byte) (errorOrCommand >> 8);
+			packet[10] = (byte) errorOrCommand;
+			System.arraycopy(data, 0, packet, JDWP.PACKET_HEADER_SIZE, data.length);
+			return packet;
+		}
+	}
+
+	private BenchData() {
+	}
+}
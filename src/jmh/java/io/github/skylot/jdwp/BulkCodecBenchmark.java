@@ -0,0 +1,143 @@
+package io.github.skylot.jdwp;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Big-endian bulk conversion of {@link JdwpBulkCodec} against per-value decode calls and byte-by-byte loops.
+ * Benchmarks run against the jar, so on Java 9+ {@code bulk*} methods measure the VarHandle version.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BulkCodecBenchmark {
+	@Param({ "16384" })
+	private int count;
+
+	private byte[] bytes;
+	private char[] chars;
+	private int[] ints;
+	private long[] longs;
+	private double[] doubles;
+
+	@Setup
+	public void setup() {
+		bytes = new byte[count * 8];
+		new Random(1).nextBytes(bytes);
+		chars = new char[count];
+		ints = new int[count];
+		longs = new long[count];
+		doubles = new double[count];
+	}
+
+	@Benchmark
+	public char[] scalarGetChars() {
+		for (int i = 0, pos = 0; i < count; i++, pos += 2) {
+			chars[i] = (char) ((bytes[pos] << 8) | (bytes[pos + 1] & 0xff));
+		}
+		return chars;
+	}
+
+	@Benchmark
+	public char[] bulkGetChars() {
+		JdwpBulkCodec.getChars(bytes, 0, chars, 0, count);
+		return chars;
+	}
+
+	@Benchmark
+	public int[] scalarGetInts() {
+		for (int i = 0, pos = 0; i < count; i++, pos += 4) {
+			ints[i] = JDWP.decodeInt(bytes, pos);
+		}
+		return ints;
+	}
+
+	@Benchmark
+	public int[] bulkGetInts() {
+		JdwpBulkCodec.getInts(bytes, 0, ints, 0, count);
+		return ints;
+	}
+
+	@Benchmark
+	public long[] scalarGetLongs() {
+		for (int i = 0, pos = 0; i < count; i++, pos += 8) {
+			longs[i] = JDWP.decodeBySize(bytes, pos, 8);
+		}
+		return longs;
+	}
+
+	@Benchmark
+	public long[] bulkGetLongs() {
+		JdwpBulkCodec.getLongs(bytes, 0, longs, 0, count);
+		return longs;
+	}
+
+	@Benchmark
+	public double[] scalarGetDoubles() {
+		for (int i = 0, pos = 0; i < count; i++, pos += 8) {
+			doubles[i] = JDWP.decodeDouble(bytes, pos);
+		}
+		return doubles;
+	}
+
+	@Benchmark
+	public double[] bulkGetDoubles() {
+		JdwpBulkCodec.getDoubles(bytes, 0, doubles, 0, count);
+		return doubles;
+	}
+
+	@Benchmark
+	public byte[] scalarPutInts() {
+		for (int i = 0, pos = 0; i < count; i++, pos += 4) {
+			int val = ints[i];
+			bytes[pos] = (byte) (val >> 24);
+			bytes[pos + 1] = (byte) (val >> 16);
+			bytes[pos + 2] = (byte) (val >> 8);
+			bytes[pos + 3] = (byte) val;
+		}
+		return bytes;
+	}
+
+	@Benchmark
+	public byte[] bulkPutInts() {
+		JdwpBulkCodec.putInts(ints, 0, bytes, 0, count);
+		return bytes;
+	}
+
+	@Benchmark
+	public byte[] scalarPutLongs() {
+		for (int i = 0, pos = 0; i < count; i++, pos += 8) {
+			long val = longs[i];
+			bytes[pos] = (byte) (val >> 56);
+			bytes[pos + 1] = (byte) (val >> 48);
+			bytes[pos + 2] = (byte) (val >> 40);
+			bytes[pos + 3] = (byte) (val >> 32);
+			bytes[pos + 4] = (byte) (val >> 24);
+			bytes[pos + 5] = (byte) (val >> 16);
+			bytes[pos + 6] = (byte) (val >> 8);
+			bytes[pos + 7] = (byte) val;
+		}
+		return bytes;
+	}
+
+	@Benchmark
+	public byte[] bulkPutLongs() {
+		JdwpBulkCodec.putLongs(longs, 0, bytes, 0, count);
+		return bytes;
+	}
+}
@@ -0,0 +1,252 @@
+package io.github.skylot.jdwp;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Reply and event decoding throughput for the hot commands of each command set, run with {@code -prof gc}
+ * to see allocations per operation. Methods are named after command set and command.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DecodeBenchmark {
+	private static final int START = JDWP.PACKET_HEADER_SIZE;
+
+	private JDWP jdwp;
+	private byte[] signatureReply;
+	private byte[] methodsReply;
+	private byte[] methodsWithGenericReply;
+	private byte[] framesReply;
+	private byte[] objectValuesReply;
+	private final byte[] valueTags = new byte[64];
+	private final long[] valueBits = new long[64];
+	private byte[] intArrayReply;
+	private byte[] objectArrayReply;
+	private final int[] intArrayValues = new int[64 * 1024];
+	private final long[] objectArrayIDs = new long[8 * 1024];
+	private byte[] lineTableReply;
+	private byte[] variableTableReply;
+	private byte[] invokeMethodReply;
+	private byte[] stringValueReply;
+	private byte[] threadGroupChildrenReply;
+	private byte[] visibleClassesReply;
+	private byte[] requestIDReply;
+	private byte[] composite;
+	private byte[] compositeSingle;
+	private JDWP.Event.Dispatcher dispatcher;
+	private Blackhole blackhole;
+
+	@Setup
+	public void setup(Blackhole bh) {
+		jdwp = BenchData.jdwp();
+		signatureReply = new BenchData.PacketWriter().writeString(BenchData.className(12345)).toReply();
+		methodsReply = BenchData.methodsReply(200);
+		methodsWithGenericReply = BenchData.methodsWithGenericReply(200);
+		framesReply = BenchData.framesReply(1024);
+		objectValuesReply = BenchData.taggedValuesReply(64);
+		intArrayReply = BenchData.intArrayValuesReply(64 * 1024);
+		objectArrayReply = BenchData.objectArrayValuesReply(8 * 1024);
+		lineTableReply = BenchData.lineTableReply(200);
+		variableTableReply = BenchData.variableTableReply(32);
+		invokeMethodReply = BenchData.invokeMethodReply();
+		stringValueReply = BenchData.stringValueReply(1024);
+		threadGroupChildrenReply = BenchData.threadGroupChildrenReply(200, 8);
+		visibleClassesReply = BenchData.visibleClassesReply(4096);
+		requestIDReply = BenchData.requestIDReply();
+		composite = BenchData.compositeCommand(256);
+		compositeSingle = BenchData.compositeCommand(1);
+		blackhole = bh;
+		dispatcher = jdwp.event().newDispatcher()
+				.onMethodEntry((requestID, thread, locTag, classID, methodID, index) -> blackhole.consume(index))
+				.onMethodExitWithReturnValue((requestID, thread, locTag, classID, methodID, index, valueTag, valueBits)
+						-> blackhole.consume(valueBits));
+	}
+
+	/**
+	 * Raw ID reads: all 8-byte fields of a 1024 frames reply.
+	 */
+	@Benchmark
+	public long decodeBySize() {
+		long sum = 0;
+		for (int pos = START + 4; pos < framesReply.length; pos += 8 + 1 + 8 + 8 + 8) {
+			sum += JDWP.decodeBySize(framesReply, pos, 8);
+			sum += JDWP.decodeBySize(framesReply, pos + 9, 8);
+			sum += JDWP.decodeBySize(framesReply, pos + 17, 8);
+			sum += JDWP.decodeBySize(framesReply, pos + 25, 8);
+		}
+		return sum;
+	}
+
+	@Benchmark
+	public Object referenceTypeSignature() {
+		return jdwp.referenceType().cmdSignature().decode(signatureReply, START);
+	}
+
+	@Benchmark
+	public Object referenceTypeMethods() {
+		return jdwp.referenceType().cmdMethods().decode(methodsReply, START);
+	}
+
+	@Benchmark
+	public Object referenceTypeMethodsWithGeneric() {
+		return jdwp.referenceType().cmdMethodsWithGeneric().decode(methodsWithGenericReply, START);
+	}
+
+	@Benchmark
+	public Object referenceTypeMethodsView() {
+		return jdwp.referenceType().cmdMethods().view(methodsReply, START);
+	}
+
+	@Benchmark
+	public Object threadReferenceFrames() {
+		return jdwp.threadReference().cmdFrames().decode(framesReply, START);
+	}
+
+	@Benchmark
+	public Object threadReferenceFramesView() {
+		return jdwp.threadReference().cmdFrames().view(framesReply, START);
+	}
+
+	@Benchmark
+	public Object objectReferenceGetValues() {
+		return jdwp.objectReference().cmdGetValues().decode(objectValuesReply, START);
+	}
+
+	@Benchmark
+	public long objectReferenceGetValuesBulk() {
+		int count = jdwp.objectReference().cmdGetValues().decodeValues(objectValuesReply, START, valueTags, valueBits);
+		long sum = 0;
+		for (int i = 0; i < count; i++) {
+			sum += valueBits[i];
+		}
+		return sum;
+	}
+
+	@Benchmark
+	public long objectReferenceGetValuesGetters() {
+		long sum = 0;
+		for (JDWP.ObjectReference.GetValues.GetValuesReplyDataValues v
+				: jdwp.objectReference().cmdGetValues().decode(objectValuesReply, START).values) {
+			switch (v.value.tag) {
+				case JDWP.Tag.INT:
+					sum += v.value.getInt();
+					break;
+				case JDWP.Tag.LONG:
+					sum += v.value.getLong();
+					break;
+				case JDWP.Tag.BOOLEAN:
+					sum += v.value.getBoolean() ? 1 : 0;
+					break;
+				default:
+					sum += v.value.getID();
+					break;
+			}
+		}
+		return sum;
+	}
+
+	@Benchmark
+	public Object arrayReferenceGetValuesInt() {
+		return jdwp.arrayReference().cmdGetValues().decode(intArrayReply, START);
+	}
+
+	@Benchmark
+	public int arrayReferenceGetValuesIntTyped() {
+		return jdwp.arrayReference().cmdGetValues().decodeInts(intArrayReply, START, intArrayValues, 0);
+	}
+
+	@Benchmark
+	public Object arrayReferenceGetValuesObject() {
+		return jdwp.arrayReference().cmdGetValues().decode(objectArrayReply, START);
+	}
+
+	@Benchmark
+	public int arrayReferenceGetValuesObjectIDs() {
+		return jdwp.arrayReference().cmdGetValues().decodeIDs(objectArrayReply, START, objectArrayIDs, 0);
+	}
+
+	@Benchmark
+	public Object stackFrameGetValues() {
+		return jdwp.stackFrame().cmdGetValues().decode(objectValuesReply, START);
+	}
+
+	@Benchmark
+	public long stackFrameGetValuesBulk() {
+		int count = jdwp.stackFrame().cmdGetValues().decodeValues(objectValuesReply, START, valueTags, valueBits);
+		long sum = 0;
+		for (int i = 0; i < count; i++) {
+			sum += valueBits[i];
+		}
+		return sum;
+	}
+
+	@Benchmark
+	public Object classTypeInvokeMethod() {
+		return jdwp.classType().cmdInvokeMethod().decode(invokeMethodReply, START);
+	}
+
+	@Benchmark
+	public Object methodLineTable() {
+		return jdwp.method().cmdLineTable().decode(lineTableReply, START);
+	}
+
+	@Benchmark
+	public Object methodVariableTable() {
+		return jdwp.method().cmdVariableTable().decode(variableTableReply, START);
+	}
+
+	@Benchmark
+	public Object stringReferenceValue() {
+		return jdwp.stringReference().cmdValue().decode(stringValueReply, START);
+	}
+
+	@Benchmark
+	public Object threadGroupReferenceChildren() {
+		return jdwp.threadGroupReference().cmdChildren().decode(threadGroupChildrenReply, START);
+	}
+
+	@Benchmark
+	public Object classLoaderReferenceVisibleClasses() {
+		return jdwp.classLoaderReference().cmdVisibleClasses().decode(visibleClassesReply, START);
+	}
+
+	@Benchmark
+	public int eventRequestSet() {
+		return jdwp.eventRequest().cmdSet().decodeRequestID(requestIDReply, START);
+	}
+
+	@Benchmark
+	public Object eventComposite() {
+		return jdwp.event().cmdComposite().decode(composite, START);
+	}
+
+	@Benchmark
+	public byte eventDispatch() {
+		return dispatcher.dispatch(composite, START);
+	}
+
+	@Benchmark
+	public Object eventCompositeSingle() {
+		return jdwp.event().cmdComposite().decode(compositeSingle, START);
+	}
+
+	@Benchmark
+	public byte eventDispatchSingle() {
+		return dispatcher.dispatch(compositeSingle, START);
+	}
+}
@@ -0,0 +1,119 @@
+package io.github.skylot.jdwp;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Command encoding throughput and allocation rate, run with {@code -prof gc}.
+ * '*Into*' variants write the exact packet into a reused destination.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EncodeBenchmark {
+	private JDWP jdwp;
+	private String str;
+	private List<JDWP.VirtualMachine.RedefineClasses.RedefineClassesClasses> classes;
+	private List<Long> fieldList;
+	private long[] fieldArray;
+	private List<JDWP.EventRequestEncoder> modifiers;
+	private final byte[] dst = new byte[4096];
+	private final ByteBuffer directDst = ByteBuffer.allocateDirect(4096);
+
+	@Setup
+	public void setup() {
+		jdwp = BenchData.jdwp();
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 4096; i++) {
+			sb.append((char) ('a' + i % 26));
+		}
+		str = sb.toString();
+
+		JDWP.VirtualMachine.RedefineClasses cmd = jdwp.virtualMachine().cmdRedefineClasses();
+		JDWP.VirtualMachine.RedefineClasses.RedefineClassesClasses cls = cmd.new RedefineClassesClasses();
+		cls.refType = 0x1234L;
+		cls.classfile = new ArrayList<>();
+		for (int i = 0; i < 16 * 1024; i++) {
+			JDWP.VirtualMachine.RedefineClasses.RedefineClassesClassfile b = cmd.new RedefineClassesClassfile();
+			b.classbyte = (byte) i;
+			cls.classfile.add(b);
+		}
+		classes = Collections.singletonList(cls);
+
+		fieldList = new ArrayList<>();
+		fieldArray = new long[16];
+		for (int i = 0; i < fieldArray.length; i++) {
+			fieldArray[i] = 0x7f20_0000_0000L + i * 8L;
+			fieldList.add(fieldArray[i]);
+		}
+
+		JDWP.EventRequest.Set set = jdwp.eventRequest().cmdSet();
+		JDWP.EventRequest.Set.ClassMatchRequest classMatch = set.newClassMatchRequest();
+		classMatch.classPattern = "com.example.app.*";
+		JDWP.EventRequest.Set.ThreadOnlyRequest threadOnly = set.newThreadOnlyRequest();
+		threadOnly.thread = 0x7f00_1234_5678L;
+		modifiers = new ArrayList<>();
+		modifiers.add(classMatch);
+		modifiers.add(threadOnly);
+	}
+
+	@Benchmark
+	public JDWP.ByteBuffer frames() {
+		return jdwp.threadReference().cmdFrames().encode(0x7f00_1234_5678L, 0, -1);
+	}
+
+	@Benchmark
+	public int framesIntoArray() {
+		return jdwp.threadReference().cmdFrames().encode(dst, 0, 1, 0x7f00_1234_5678L, 0, -1);
+	}
+
+	@Benchmark
+	public int framesIntoDirect() {
+		directDst.clear();
+		jdwp.threadReference().cmdFrames().encode(directDst, 1, 0x7f00_1234_5678L, 0, -1);
+		return directDst.position();
+	}
+
+	@Benchmark
+	public JDWP.ByteBuffer objectGetValues() {
+		return jdwp.objectReference().cmdGetValues().encode(0x7f00_1234_5678L, fieldList);
+	}
+
+	@Benchmark
+	public int objectGetValuesIntoArray() {
+		return jdwp.objectReference().cmdGetValues().encode(dst, 0, 1, 0x7f00_1234_5678L, fieldArray);
+	}
+
+	@Benchmark
+	public JDWP.ByteBuffer eventRequestSet() {
+		return jdwp.eventRequest().cmdSet().encode((byte) JDWP.EventKind.METHOD_ENTRY,
+				(byte) JDWP.SuspendPolicy.NONE, modifiers);
+	}
+
+	@Benchmark
+	public JDWP.ByteBuffer createString() {
+		return jdwp.virtualMachine().cmdCreateString().encode(str);
+	}
+
+	@Benchmark
+	public JDWP.ByteBuffer redefineClasses() {
+		return jdwp.virtualMachine().cmdRedefineClasses().encode(classes);
+	}
+}
@@ -0,0 +1,94 @@
+package io.github.skylot.jdwp;
+
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Filling and querying an ID index: boxed HashMap vs {@link LongObjectMap} vs {@link LongLongMap}.
+ * IDs are 8-byte aligned like object addresses reported by HotSpot.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IdMapBenchmark {
+
+	@Param({ "1000000" })
+	public int entries;
+
+	private long[] ids;
+
+	@Setup
+	public void setup() {
+		ids = new long[entries];
+		for (int i = 0; i < entries; i++) {
+			ids[i] = 0x7f0000000000L + i * 8L;
+		}
+	}
+
+	@Benchmark
+	public long hashMap() {
+		HashMap<Long, Long> map = new HashMap<>();
+		for (long id : ids) {
+			map.put(id, id + 1);
+		}
+		long sum = 0;
+		for (long id : ids) {
+			sum += map.get(id);
+		}
+		return sum;
+	}
+
+	@Benchmark
+	public long longObjectMap() {
+		LongObjectMap<Long> map = new LongObjectMap<>();
+		for (long id : ids) {
+			map.put(id, id + 1);
+		}
+		long sum = 0;
+		for (long id : ids) {
+			sum += map.get(id);
+		}
+		return sum;
+	}
+
+	@Benchmark
+	public long longLongMap() {
+		LongLongMap map = new LongLongMap(16, 0, false);
+		for (long id : ids) {
+			map.put(id, id + 1);
+		}
+		long sum = 0;
+		for (long id : ids) {
+			sum += map.get(id);
+		}
+		return sum;
+	}
+
+	@Benchmark
+	public long longLongMapOffHeap() {
+		LongLongMap map = new LongLongMap(16, 0, true);
+		for (long id : ids) {
+			map.put(id, id + 1);
+		}
+		long sum = 0;
+		for (long id : ids) {
+			sum += map.get(id);
+		}
+		return sum;
+	}
+}
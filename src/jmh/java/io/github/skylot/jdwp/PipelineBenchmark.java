@@ -0,0 +1,79 @@
+package io.github.skylot.jdwp;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Sequential round trips vs {@link JdwpClient#sendBatch} for {@value #COMMANDS} ReferenceType.Signature
+ * commands against {@link JdwpFakeVM}. Score is commands per millisecond.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PipelineBenchmark {
+	private static final int COMMANDS = 1000;
+
+	@Param({ "16", "256" })
+	public int maxInFlight;
+
+	private JdwpFakeVM vm;
+	private JdwpClient client;
+	private JDWP.ReferenceType.Signature signature;
+	private long[] classes;
+
+	@Setup(Level.Trial)
+	public void setup() throws Exception {
+		vm = new JdwpFakeVM().setClassCount(COMMANDS).start();
+		client = JdwpClient.connect("127.0.0.1", vm.getPort());
+		JDWP.VirtualMachine.AllClasses allClasses = client.jdwp().virtualMachine().cmdAllClasses();
+		classes = client.send(allClasses.encode(), allClasses::decode).get().classes.stream()
+				.mapToLong(c -> c.typeID).limit(COMMANDS).toArray();
+		signature = client.jdwp().referenceType().cmdSignature();
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		client.close();
+		vm.close();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(COMMANDS)
+	public int sequential() throws Exception {
+		int len = 0;
+		for (int i = 0; i < COMMANDS; i++) {
+			len += client.send(signature.encode(classes[i]), signature::decode).get().signature.length();
+		}
+		return len;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(COMMANDS)
+	public int batch() throws Exception {
+		List<JDWP.ByteBuffer> commands = new ArrayList<>(COMMANDS);
+		for (int i = 0; i < COMMANDS; i++) {
+			commands.add(signature.encode(classes[i]));
+		}
+		return client.sendBatch(commands, maxInFlight, signature::decode).get().size();
+	}
+}
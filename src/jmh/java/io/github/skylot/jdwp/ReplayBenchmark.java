@@ -0,0 +1,129 @@
+package io.github.skylot.jdwp;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Decoding of all received packets of a recorded session. Pass a recording made with {@link JdwpPacketRecorder}
+ * with {@code -p recording=<file>}, by default a synthetic session is recorded from {@link BenchData} packets.
+ * Score is a pass over the whole session.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReplayBenchmark {
+
+	@Param({ "" })
+	public String recording;
+
+	private JDWP jdwp;
+	private Path file;
+	private final List<byte[]> packets = new ArrayList<>();
+	private final List<Integer> commands = new ArrayList<>();
+
+	@Setup
+	public void setup() throws IOException, InterruptedException {
+		file = recording.isEmpty() ? syntheticRecording() : Paths.get(recording);
+		try (JdwpPacketReplayer replayer = JdwpPacketReplayer.open(file)) {
+			JDWP.IDSizes.IDSizesReplyData sizes = replayer.getIDSizes();
+			jdwp = new JDWP(sizes != null ? sizes : BenchData.idSizes());
+			replayer.replay((time, sent, packet, commandSet, command) -> {
+				if (!sent && commandSet != -1) {
+					packets.add(packet);
+					commands.add((commandSet << 8) | command);
+				}
+			}, 0);
+		}
+	}
+
+	@Benchmark
+	public void decodeReceived(Blackhole bh) {
+		for (int i = 0; i < packets.size(); i++) {
+			byte[] packet = packets.get(i);
+			if (JDWP.isReplyPacket(packet, 0) && JDWP.getPacketErrorCode(packet, 0) != 0) {
+				continue;
+			}
+			bh.consume(decode(commands.get(i), packet));
+		}
+	}
+
+	@Benchmark
+	public int readRecording() throws IOException, InterruptedException {
+		try (JdwpPacketReplayer replayer = JdwpPacketReplayer.open(file)) {
+			return replayer.replay((time, sent, packet, commandSet, command) -> {
+			}, 0);
+		}
+	}
+
+	private Object decode(int command, byte[] packet) {
+		int start = JDWP.PACKET_HEADER_SIZE;
+		switch (command) {
+			case (1 << 8) | 3:
+				return jdwp.virtualMachine().cmdAllClasses().decode(packet, start);
+			case (1 << 8) | 4:
+				return jdwp.virtualMachine().cmdAllThreads().decode(packet, start);
+			case (2 << 8) | 1:
+				return jdwp.referenceType().cmdSignature().decode(packet, start);
+			case (2 << 8) | 4:
+				return jdwp.referenceType().cmdFields().decode(packet, start);
+			case (2 << 8) | 5:
+				return jdwp.referenceType().cmdMethods().decode(packet, start);
+			case (9 << 8) | 1:
+				return jdwp.objectReference().cmdReferenceType().decode(packet, start);
+			case (9 << 8) | 2:
+				return jdwp.objectReference().cmdGetValues().decode(packet, start);
+			case (11 << 8) | 6:
+				return jdwp.threadReference().cmdFrames().decode(packet, start);
+			case (13 << 8) | 2:
+				return jdwp.arrayReference().cmdGetValues().decode(packet, start);
+			case (64 << 8) | 100:
+				return jdwp.event().cmdComposite().decode(packet, start);
+			default:
+				return packet;
+		}
+	}
+
+	private static Path syntheticRecording() throws IOException {
+		Path path = Files.createTempFile("jdwp-bench", ".jrec");
+		path.toFile().deleteOnExit();
+		try (JdwpPacketRecorder recorder = JdwpPacketRecorder.create(path)) {
+			for (int i = 0; i < 64; i++) {
+				exchange(recorder, 2, 1, new BenchData.PacketWriter().writeString(BenchData.className(i)).toReply());
+				exchange(recorder, 2, 5, BenchData.methodsReply(20));
+				exchange(recorder, 9, 2, BenchData.taggedValuesReply(16));
+				exchange(recorder, 11, 6, BenchData.framesReply(32));
+				recorder.record(JdwpPacketRecorder.RECEIVED, BenchData.compositeCommand(8));
+			}
+			exchange(recorder, 13, 2, BenchData.objectArrayValuesReply(4096));
+			exchange(recorder, 1, 3, BenchData.allClassesReply(2000));
+		}
+		return path;
+	}
+
+	private static void exchange(JdwpPacketRecorder recorder, int commandSet, int command, byte[] reply)
+			throws IOException {
+		recorder.record(JdwpPacketRecorder.SENT, new BenchData.PacketWriter().toCommand(commandSet, command));
+		recorder.record(JdwpPacketRecorder.RECEIVED, reply);
+	}
+}
@@ -7,6 +7,12 @@
 
 package io.github.skylot.jdwp;
 
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteOrder;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -229,6 +235,21 @@ public class JDWP {
 			start += JdwpInt.getSize();
 			return iDSizesReplyData;
 		}
+
+		public static IDSizesReplyData decode(java.nio.ByteBuffer bytes, int start) throws JdwpRuntimeException {
+			IDSizesReplyData iDSizesReplyData = new IDSizesReplyData();
+			iDSizesReplyData.fieldIDSize = JdwpInt.decode(bytes, start);
+			start += JdwpInt.getSize();
+			iDSizesReplyData.methodIDSize = JdwpInt.decode(bytes, start);
+			start += JdwpInt.getSize();
+			iDSizesReplyData.objectIDSize = JdwpInt.decode(bytes, start);
+			start += JdwpInt.getSize();
+			iDSizesReplyData.referenceTypeIDSize = JdwpInt.decode(bytes, start);
+			start += JdwpInt.getSize();
+			iDSizesReplyData.frameIDSize = JdwpInt.decode(bytes, start);
+			start += JdwpInt.getSize();
+			return iDSizesReplyData;
+		}
 	}
 
 	/**
@@ -308,6 +329,85 @@ public class JDWP {
 		return decodeByte(bytes, start + 10);
 	}
 
+	public static int getPacketLength(java.nio.ByteBuffer bytes, int start) throws JdwpRuntimeException {
+		return decodeInt(bytes, start);
+	}
+
+	public static int getPacketID(java.nio.ByteBuffer bytes, int start) throws JdwpRuntimeException {
+		return decodeInt(bytes, start + 4);
+	}
+
+	public static byte getPacketFlags(java.nio.ByteBuffer bytes, int start) throws JdwpRuntimeException {
+		return decodeByte(bytes, start + 8);
+	}
+
+	public static boolean isReplyPacket(java.nio.ByteBuffer bytes, int start) throws JdwpRuntimeException {
+		return (decodeByte(bytes, start + 8) & 0xff) == 0x80;
+	}
+
+	public static boolean isEventPacket(java.nio.ByteBuffer bytes, int start) throws JdwpRuntimeException {
+		return !isReplyPacket(bytes, start)
+				&& getPacketCommandSetID(bytes, start) == 64
+				&& getPacketCommandID(bytes, start) == 100;
+	}
+
+	public static short getPacketErrorCode(java.nio.ByteBuffer bytes, int start) throws JdwpRuntimeException {
+		return decodeShort(bytes, start + 9);
+	}
+
+	public static int getPacketCommandSetID(java.nio.ByteBuffer bytes, int start) throws JdwpRuntimeException {
+		return decodeByte(bytes, start + 9);
+	}
+
+	public static int getPacketCommandID(java.nio.ByteBuffer bytes, int start) throws JdwpRuntimeException {
+		return decodeByte(bytes, start + 10);
+	}
+
+	/**
+	 * Read one reply packet from a blocking channel and pass its data to {@code decoder} while it arrives.
+	 * At most {@code buffer.capacity()} bytes are held in memory, the buffer must fit the largest element.
+	 *
+	 * @return packet ID of the reply
+	 */
+	public static int streamReply(ReadableByteChannel channel, java.nio.ByteBuffer buffer,
+			ReplyStreamDecoder decoder) throws IOException, JdwpRuntimeException {
+		((Buffer) buffer).clear();
+		((Buffer) buffer).limit(PACKET_HEADER_SIZE);
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer) < 0) {
+				throw new EOFException();
+			}
+		}
+		if (!isReplyPacket(buffer, 0)) {
+			throw new JdwpRuntimeException("Not a reply packet, command set: " + getPacketCommandSetID(buffer, 0));
+		}
+		int id = getPacketID(buffer, 0);
+		int errorCode = getPacketErrorCode(buffer, 0);
+		if (errorCode != Error.NONE) {
+			throw new JdwpErrorException(errorCode);
+		}
+		int remaining = getPacketLength(buffer, 0) - PACKET_HEADER_SIZE;
+		((Buffer) buffer).clear();
+		while (remaining > 0) {
+			((Buffer) buffer).limit(Math.min(buffer.capacity(), buffer.position() + remaining));
+			int count = channel.read(buffer);
+			if (count < 0) {
+				throw new EOFException();
+			}
+			remaining -= count;
+			((Buffer) buffer).flip();
+			decoder.decode(buffer);
+			buffer.compact();
+			if (!buffer.hasRemaining()) {
+				throw new JdwpRuntimeException("Reply element does not fit into buffer of " + buffer.capacity() + " bytes");
+			}
+		}
+		if (buffer.position() != 0 || !decoder.isComplete()) {
+			throw new JdwpRuntimeException("Incomplete reply data");
+		}
+		return id;
+	}
+
 	public static void setPacketID(byte[] bytes, int id) {
 		bytes[4] = (byte) (id >> 24);
 		bytes[5] = (byte) (id >> 16);
@@ -324,28 +424,133 @@ public class JDWP {
 	}
 
 	private static ByteBuffer encodeCommandPacket(int setID, int commandID) {
-		byte[] bytes = new byte[PACKET_HEADER_SIZE];
-		bytes[PACKET_HEADER_SIZE - 2] = (byte) setID;
-		bytes[PACKET_HEADER_SIZE - 1] = (byte) commandID;
-		return new ByteBuffer(bytes);
+		return encodeCommandPacket(setID, commandID, 0);
+	}
+
+	/**
+	 * New buffer for one packet, presized so that encoding the command data does not grow it.
+	 *
+	 * @param dataSizeHint expected size of the command data (without header), used to presize the buffer
+	 */
+	private static ByteBuffer encodeCommandPacket(int setID, int commandID, int dataSizeHint) {
+		ByteBuffer bytes = ByteBuffer.withSizeHint(PACKET_HEADER_SIZE + dataSizeHint);
+		bytes.addZeros(PACKET_HEADER_SIZE - 2);
+		bytes.add((byte) setID);
+		bytes.add((byte) commandID);
+		return bytes;
+	}
+
+	/**
+	 * Write header of a command packet of exact {@code length} and check that the whole packet fits.
+	 *
+	 * @return offset of the command data
+	 */
+	private static int writeCommandHeader(byte[] dst, int offset, int length, int id, int setID, int commandID)
+			throws JdwpRuntimeException {
+		if (dst.length - offset < length) {
+			throw noSpaceForPacket(length, dst.length - offset);
+		}
+		writeInt(dst, offset, length);
+		writeInt(dst, offset + 4, id);
+		dst[offset + 8] = 0;
+		dst[offset + 9] = (byte) setID;
+		dst[offset + 10] = (byte) commandID;
+		return offset + PACKET_HEADER_SIZE;
+	}
+
+	private static void writeCommandHeader(java.nio.ByteBuffer dst, int length, int id, int setID, int commandID)
+			throws JdwpRuntimeException {
+		if (dst.order() != ByteOrder.BIG_ENDIAN) {
+			throw new JdwpRuntimeException("Destination buffer must be big-endian");
+		}
+		if (dst.remaining() < length) {
+			throw noSpaceForPacket(length, dst.remaining());
+		}
+		dst.putInt(length);
+		dst.putInt(id);
+		dst.put((byte) 0);
+		dst.put((byte) setID);
+		dst.put((byte) commandID);
+	}
+
+	private static JdwpRuntimeException noSpaceForPacket(int length, int available) {
+		return new JdwpRuntimeException(
+				String.format("Insufficient space for encoding, packet length(%d) > available(%d).", length, available));
+	}
+
+	private static int writeInt(byte[] dst, int offset, int val) {
+		dst[offset] = (byte) (val >> 24);
+		dst[offset + 1] = (byte) (val >> 16);
+		dst[offset + 2] = (byte) (val >> 8);
+		dst[offset + 3] = (byte) val;
+		return offset + 4;
+	}
+
+	private static int writeLong(byte[] dst, int offset, long val) {
+		writeInt(dst, offset, (int) (val >> 32));
+		return writeInt(dst, offset + 4, (int) val);
 	}
 
 	private static void checkCapability(byte[] bytes, int start, int size) throws JdwpRuntimeException {
 		if (bytes.length - start < size) {
-			throw new JdwpRuntimeException(
-					String.format("Insufficient space for decoding, size(%d) > bytes.length(%d).", size, bytes.length - start));
+			throw insufficientSpace(size, bytes.length - start, "length");
+		}
+	}
+
+	/**
+	 * One check for {@code count} fixed size items, so items can be read without per field checks.
+	 */
+	private static void checkCapability(byte[] bytes, int start, int count, int itemSize) throws JdwpRuntimeException {
+		if (count < 0 || (long) count * itemSize > bytes.length - start) {
+			throw insufficientSpace(count * itemSize, bytes.length - start, "length");
 		}
 	}
 
+	/**
+	 * Kept out of line so the checks above stay small enough to be inlined.
+	 */
+	private static JdwpRuntimeException insufficientSpace(int size, int available, String what) {
+		return new JdwpRuntimeException(
+				String.format("Insufficient space for decoding, size(%d) > bytes.%s(%d).", size, what, available));
+	}
+
 	public static long decodeBySize(byte[] bytes, int start, int size) throws JdwpRuntimeException {
 		checkCapability(bytes, start, size);
-		long rst = 0;
-		int shift = 64 - 8;
-		for (int i = 0; i < 8 - size; i++) {
-			shift -= 8;
+		switch (size) {
+			case 8:
+				return readLong(bytes, start);
+			case 4:
+				return readInt(bytes, start) & 0xffffffffL;
+			default:
+				return readBySize(bytes, start, size);
 		}
-		for (int i = 0; i < size && start < bytes.length; i++, start++) {
-			rst += (long) (bytes[start] & 0xff) << (shift - i * 8);
+	}
+
+	/**
+	 * Unchecked big-endian reads, callers check bounds.
+	 */
+	private static long readLong(byte[] bytes, int start) {
+		return ((long) bytes[start] << 56)
+				| ((long) (bytes[start + 1] & 0xff) << 48)
+				| ((long) (bytes[start + 2] & 0xff) << 40)
+				| ((long) (bytes[start + 3] & 0xff) << 32)
+				| ((long) (bytes[start + 4] & 0xff) << 24)
+				| ((bytes[start + 5] & 0xff) << 16)
+				| ((bytes[start + 6] & 0xff) << 8)
+				| (bytes[start + 7] & 0xff);
+	}
+
+	private static int readInt(byte[] bytes, int start) {
+		return (bytes[start] << 24)
+				| ((bytes[start + 1] & 0xff) << 16)
+				| ((bytes[start + 2] & 0xff) << 8)
+				| (bytes[start + 3] & 0xff);
+	}
+
+	private static long readBySize(byte[] bytes, int start, int size) {
+		long rst = 0;
+		for (int i = 0; i < size; i++) {
+			rst = (rst << 8) | (bytes[start + i] & 0xff);
 		}
 		return rst;
 	}
@@ -378,12 +583,7 @@ public class JDWP {
 
 	public static int decodeInt(byte[] bytes, int start) throws JdwpRuntimeException {
 		checkCapability(bytes, start, 4);
-		int result = 0;
-		result = (bytes[start] & 0xff) << 24;
-		result += ((bytes[start + 1] & 0xff) << 16);
-		result += ((bytes[start + 2] & 0xff) << 8);
-		result += (bytes[start + 3] & 0xff);
-		return result;
+		return readInt(bytes, start);
 	}
 
 	public static float decodeFloat(byte[] bytes, int start) throws JdwpRuntimeException {
@@ -403,7 +603,96 @@ public class JDWP {
 		return raw;
 	}
 
+	/**
+	 * @return read-only buffer over {@code size} bytes at {@code start}, index 0 of the result is {@code start}
+	 */
+	public static java.nio.ByteBuffer slice(byte[] bytes, int start, int size) throws JdwpRuntimeException {
+		checkCapability(bytes, start, size);
+		return java.nio.ByteBuffer.wrap(bytes, start, size).slice().asReadOnlyBuffer();
+	}
+
+	/*
+	 * Decoders over java.nio.ByteBuffer (heap, direct or read-only slices).
+	 * All reads are absolute: buffer position and limit are never changed, 'start' is relative to index 0
+	 * of the buffer and data is always read as big-endian regardless of the buffer's byte order.
+	 */
+
+	private static void checkCapability(java.nio.ByteBuffer bytes, int start, int size) throws JdwpRuntimeException {
+		if (bytes.limit() - start < size) {
+			throw insufficientSpace(size, bytes.limit() - start, "limit");
+		}
+	}
+
+	public static long decodeBySize(java.nio.ByteBuffer bytes, int start, int size) throws JdwpRuntimeException {
+		checkCapability(bytes, start, size);
+		if (size == 8) {
+			long val = bytes.getLong(start);
+			return bytes.order() == ByteOrder.BIG_ENDIAN ? val : Long.reverseBytes(val);
+		}
+		long rst = 0;
+		for (int i = 0; i < size; i++) {
+			rst = (rst << 8) | (bytes.get(start + i) & 0xff);
+		}
+		return rst;
+	}
+
+	public static byte decodeByte(java.nio.ByteBuffer bytes, int start) throws JdwpRuntimeException {
+		checkCapability(bytes, start, 1);
+		return bytes.get(start);
+	}
+
+	public static boolean decodeBoolean(java.nio.ByteBuffer bytes, int start) throws JdwpRuntimeException {
+		checkCapability(bytes, start, 1);
+		return (bytes.get(start) & 0xff) == 1;
+	}
+
+	public static short decodeShort(java.nio.ByteBuffer bytes, int start) throws JdwpRuntimeException {
+		checkCapability(bytes, start, 2);
+		short val = bytes.getShort(start);
+		return bytes.order() == ByteOrder.BIG_ENDIAN ? val : Short.reverseBytes(val);
+	}
+
+	public static char decodeChar(java.nio.ByteBuffer bytes, int start) throws JdwpRuntimeException {
+		return (char) decodeShort(bytes, start);
+	}
+
+	public static int decodeInt(java.nio.ByteBuffer bytes, int start) throws JdwpRuntimeException {
+		checkCapability(bytes, start, 4);
+		int val = bytes.getInt(start);
+		return bytes.order() == ByteOrder.BIG_ENDIAN ? val : Integer.reverseBytes(val);
+	}
+
+	public static float decodeFloat(java.nio.ByteBuffer bytes, int start) throws JdwpRuntimeException {
+		return Float.intBitsToFloat(decodeInt(bytes, start));
+	}
+
+	public static double decodeDouble(java.nio.ByteBuffer bytes, int start) throws JdwpRuntimeException {
+		return Double.longBitsToDouble(decodeBySize(bytes, start, 8));
+	}
+
+	public static byte[] decodeRaw(java.nio.ByteBuffer bytes, int start, int size) throws JdwpRuntimeException {
+		checkCapability(bytes, start, size);
+		byte[] raw = new byte[size];
+		if (bytes.hasArray()) {
+			System.arraycopy(bytes.array(), bytes.arrayOffset() + start, raw, 0, size);
+		} else {
+			java.nio.ByteBuffer dup = bytes.duplicate();
+			((Buffer) dup).limit(start + size);
+			((Buffer) dup).position(start);
+			dup.get(raw);
+		}
+		return raw;
+	}
+
 	public static void encodeBySize(ByteBuffer bytes, int size, long val) {
+		if (size == 8) {
+			bytes.addLong(val);
+			return;
+		}
+		if (size == 4) {
+			bytes.addInt((int) val);
+			return;
+		}
 		int shift = 64 - 8;
 		for (int i = 0; i < 8 - size; i++) {
 			shift -= 8;
@@ -432,10 +721,7 @@ public class JDWP {
 	}
 
 	public static void encodeInt(ByteBuffer bytes, int val) {
-		bytes.add((byte) (val >> 24));
-		bytes.add((byte) (val >> 16));
-		bytes.add((byte) (val >> 8));
-		bytes.add((byte) (val));
+		bytes.addInt(val);
 	}
 
 	public static void encodeFloat(ByteBuffer bytes, float f) {
@@ -706,15 +992,15 @@ public class JDWP {
 			public VersionReplyData decode(byte[] bytes, int start) throws JdwpRuntimeException {
 				VersionReplyData versionReplyData = new VersionReplyData();
 				versionReplyData.description = JdwpString.decode(bytes, start);
-				start += JdwpString.getSize(versionReplyData.description);
+				start += JdwpString.getSize(bytes, start);
 				versionReplyData.jdwpMajor = JdwpInt.decode(bytes, start);
 				start += JdwpInt.getSize();
 				versionReplyData.jdwpMinor = JdwpInt.decode(bytes, start);
 				start += JdwpInt.getSize();
 				versionReplyData.vmVersion = JdwpString.decode(bytes, start);
-				start += JdwpString.getSize(versionReplyData.vmVersion);
+				start += JdwpString.getSize(bytes, start);
 				versionReplyData.vmName = JdwpString.decode(bytes, start);
-				start += JdwpString.getSize(versionReplyData.vmName);
+				start += JdwpString.getSize(bytes, start);
 				return versionReplyData;
 			}
 		}
@@ -827,13 +1113,97 @@ public class JDWP {
 					allClassesReplyDataClasses.typeID = mReferenceTypeID.decode(bytes, start);
 					start += mReferenceTypeID.getSize();
 					allClassesReplyDataClasses.signature = JdwpString.decode(bytes, start);
-					start += JdwpString.getSize(allClassesReplyDataClasses.signature);
+					start += JdwpString.getSize(bytes, start);
+					allClassesReplyDataClasses.status = JdwpInt.decode(bytes, start);
+					start += JdwpInt.getSize();
+					allClassesReplyData.classes.add(allClassesReplyDataClasses);
+				}
+				return allClassesReplyData;
+			}
+
+			public AllClassesReplyData decode(java.nio.ByteBuffer bytes, int start) throws JdwpRuntimeException {
+				AllClassesReplyData allClassesReplyData = new AllClassesReplyData();
+				int classesSize = JdwpInt.decode(bytes, start);
+				start += JdwpInt.getSize();
+				allClassesReplyData.classes = new ArrayList<>(classesSize);
+				for (int i = 0; i < classesSize; i++) {
+					AllClassesReplyDataClasses allClassesReplyDataClasses = new AllClassesReplyDataClasses();
+					allClassesReplyDataClasses.refTypeTag = JdwpByte.decode(bytes, start);
+					start += JdwpByte.getSize();
+					allClassesReplyDataClasses.typeID = mReferenceTypeID.decode(bytes, start);
+					start += mReferenceTypeID.getSize();
+					allClassesReplyDataClasses.signature = JdwpString.decode(bytes, start);
+					start += JdwpString.getSize(bytes, start);
 					allClassesReplyDataClasses.status = JdwpInt.decode(bytes, start);
 					start += JdwpInt.getSize();
 					allClassesReplyData.classes.add(allClassesReplyDataClasses);
 				}
 				return allClassesReplyData;
 			}
+
+			/**
+			 * Column-oriented reply: one primitive array per field instead of an object per class.
+			 * Signatures are kept as offsets into the reply packet and decoded on access,
+			 * so the packet array is referenced by this object and must not be reused.
+			 */
+			public class AllClassesReplyColumns {
+				/**
+				 * Number of reference types.
+				 */
+				public int count;
+				public byte[] refTypeTag;
+				public long[] typeID;
+				public int[] status;
+				private byte[] bytes;
+				private int[] signatureOffset;
+				private LongLongMap index;
+
+				/**
+				 * The JNI signature of the loaded reference type, decoded on each call
+				 */
+				public String getSignature(int index) throws JdwpRuntimeException {
+					return JdwpString.decode(bytes, signatureOffset[index]);
+				}
+
+				/**
+				 * @return index of the type with reference type ID {@code id} or -1, lookup table is built on
+				 *         first call
+				 */
+				public int indexOf(long id) {
+					LongLongMap map = index;
+					if (map == null) {
+						map = new LongLongMap(count, -1, false);
+						for (int i = 0; i < count; i++) {
+							map.put(typeID[i], i);
+						}
+						index = map;
+					}
+					return (int) map.get(id);
+				}
+			}
+
+			public AllClassesReplyColumns decodeColumns(byte[] bytes, int start) throws JdwpRuntimeException {
+				AllClassesReplyColumns columns = new AllClassesReplyColumns();
+				int classesSize = JdwpInt.decode(bytes, start);
+				start += JdwpInt.getSize();
+				columns.count = classesSize;
+				columns.refTypeTag = new byte[classesSize];
+				columns.typeID = new long[classesSize];
+				columns.status = new int[classesSize];
+				columns.bytes = bytes;
+				columns.signatureOffset = new int[classesSize];
+				for (int i = 0; i < classesSize; i++) {
+					columns.refTypeTag[i] = JdwpByte.decode(bytes, start);
+					start += JdwpByte.getSize();
+					columns.typeID[i] = mReferenceTypeID.decode(bytes, start);
+					start += mReferenceTypeID.getSize();
+					columns.signatureOffset[i] = start;
+					start += JdwpString.skip(bytes, start);
+					columns.status[i] = JdwpInt.decode(bytes, start);
+					start += JdwpInt.getSize();
+				}
+				return columns;
+			}
 		}
 
 		/**
@@ -865,6 +1235,21 @@ public class JDWP {
 			}
 
 			public AllThreadsReplyData decode(byte[] bytes, int start) throws JdwpRuntimeException {
+				AllThreadsReplyData allThreadsReplyData = new AllThreadsReplyData();
+				int threadsSize = JdwpInt.decode(bytes, start);
+				start += JdwpInt.getSize();
+				checkCapability(bytes, start, threadsSize, mThreadID.getSize());
+				allThreadsReplyData.threads = new ArrayList<>(threadsSize);
+				for (int i = 0; i < threadsSize; i++) {
+					AllThreadsReplyDataThreads allThreadsReplyDataThreads = new AllThreadsReplyDataThreads();
+					allThreadsReplyDataThreads.thread = mThreadID.read(bytes, start);
+					start += mThreadID.getSize();
+					allThreadsReplyData.threads.add(allThreadsReplyDataThreads);
+				}
+				return allThreadsReplyData;
+			}
+
+			public AllThreadsReplyData decode(java.nio.ByteBuffer bytes, int start) throws JdwpRuntimeException {
 				AllThreadsReplyData allThreadsReplyData = new AllThreadsReplyData();
 				int threadsSize = JdwpInt.decode(bytes, start);
 				start += JdwpInt.getSize();
@@ -970,7 +1355,7 @@ public class JDWP {
 			 * @param utf UTF-8 characters to use in the created string.
 			 */
 			public ByteBuffer encode(String utf) {
-				ByteBuffer bytes = encodeCommandPacket(1, 11);
+				ByteBuffer bytes = encodeCommandPacket(1, 11, 4 + utf.length());
 				JdwpString.encode(utf, bytes);
 				setPacketLen(bytes);
 				return bytes;
@@ -1100,7 +1485,7 @@ public class JDWP {
 			public ClassPathsReplyData decode(byte[] bytes, int start) throws JdwpRuntimeException {
 				ClassPathsReplyData classPathsReplyData = new ClassPathsReplyData();
 				classPathsReplyData.baseDir = JdwpString.decode(bytes, start);
-				start += JdwpString.getSize(classPathsReplyData.baseDir);
+				start += JdwpString.getSize(bytes, start);
 
 				int classpathsSize = JdwpInt.decode(bytes, start);
 				start += JdwpInt.getSize();
@@ -1108,7 +1493,7 @@ public class JDWP {
 				for (int i = 0; i < classpathsSize; i++) {
 					ClassPathsReplyDataClasspaths classPathsReplyDataClasspaths = new ClassPathsReplyDataClasspaths();
 					classPathsReplyDataClasspaths.path = JdwpString.decode(bytes, start);
-					start += JdwpString.getSize(classPathsReplyDataClasspaths.path);
+					start += JdwpString.getSize(bytes, start);
 
 					int bootclasspathsSize = JdwpInt.decode(bytes, start);
 					start += JdwpInt.getSize();
@@ -1116,7 +1501,7 @@ public class JDWP {
 					for (int ii = 0; ii < bootclasspathsSize; ii++) {
 						ClassPathsReplyDataBootclasspaths classPathsReplyDataBootclasspaths = new ClassPathsReplyDataBootclasspaths();
 						classPathsReplyDataBootclasspaths.path = JdwpString.decode(bytes, start);
-						start += JdwpString.getSize(classPathsReplyDataBootclasspaths.path);
+						start += JdwpString.getSize(bytes, start);
 						classPathsReplyDataClasspaths.bootclasspaths.add(classPathsReplyDataBootclasspaths);
 					}
 					classPathsReplyData.classpaths.add(classPathsReplyDataClasspaths);
@@ -1453,10 +1838,15 @@ public class JDWP {
 			 * @param classes Number of reference types that follow.
 			 */
 			public ByteBuffer encode(List<RedefineClassesClasses> classes) {
-				ByteBuffer bytes = encodeCommandPacket(1, 18);
+				int sizeHint = 4;
+				for (RedefineClassesClasses redefineClassesClasses : classes) {
+					sizeHint += mReferenceTypeID.getSize() + 4 + redefineClassesClasses.classfile.size();
+				}
+				ByteBuffer bytes = encodeCommandPacket(1, 18, sizeHint);
 				JdwpInt.encode(classes.size(), bytes);
 				for (RedefineClassesClasses redefineClassesClasses : classes) {
 					mReferenceTypeID.encode(redefineClassesClasses.refType, bytes);
+					JdwpInt.encode(redefineClassesClasses.classfile.size(), bytes);
 					for (int ii = 0; ii < redefineClassesClasses.classfile.size(); ii++) {
 						RedefineClassesClassfile redefineClassesClassfile = redefineClassesClasses.classfile.get(ii);
 						JdwpByte.encode(redefineClassesClassfile.classbyte, bytes);
@@ -1466,6 +1856,45 @@ public class JDWP {
 				return bytes;
 			}
 
+			public class RedefineClassesClassBytes {
+				/**
+				 * The reference type.
+				 */
+				public long refType;
+				/**
+				 * Bytes defining class in JVM class file format.
+				 */
+				public byte[] classfile;
+			}
+
+			public RedefineClassesClassBytes newClassBytes(long refType, byte[] classfile) {
+				RedefineClassesClassBytes classBytes = new RedefineClassesClassBytes();
+				classBytes.refType = refType;
+				classBytes.classfile = classfile;
+				return classBytes;
+			}
+
+			/**
+			 * Same as {@link #encode(List)}, but class files are copied with one array copy each.
+			 *
+			 * @param classes Number of reference types that follow.
+			 */
+			public ByteBuffer encodeBytes(List<RedefineClassesClassBytes> classes) {
+				int sizeHint = 4;
+				for (RedefineClassesClassBytes classBytes : classes) {
+					sizeHint += mReferenceTypeID.getSize() + 4 + classBytes.classfile.length;
+				}
+				ByteBuffer bytes = encodeCommandPacket(1, 18, sizeHint);
+				JdwpInt.encode(classes.size(), bytes);
+				for (RedefineClassesClassBytes classBytes : classes) {
+					mReferenceTypeID.encode(classBytes.refType, bytes);
+					JdwpInt.encode(classBytes.classfile.length, bytes);
+					encodeRaw(bytes, classBytes.classfile);
+				}
+				setPacketLen(bytes);
+				return bytes;
+			}
+
 			public boolean decode(byte[] bytes, int start) throws JdwpRuntimeException {
 				return bytes.length == PACKET_HEADER_SIZE;
 			}
@@ -1547,46 +1976,176 @@ public class JDWP {
 					allClassesWithGenericReplyDataClasses.typeID = mReferenceTypeID.decode(bytes, start);
 					start += mReferenceTypeID.getSize();
 					allClassesWithGenericReplyDataClasses.signature = JdwpString.decode(bytes, start);
-					start += JdwpString.getSize(allClassesWithGenericReplyDataClasses.signature);
+					start += JdwpString.getSize(bytes, start);
 					allClassesWithGenericReplyDataClasses.genericSignature = JdwpString.decode(bytes, start);
-					start += JdwpString.getSize(allClassesWithGenericReplyDataClasses.genericSignature);
+					start += JdwpString.getSize(bytes, start);
 					allClassesWithGenericReplyDataClasses.status = JdwpInt.decode(bytes, start);
 					start += JdwpInt.getSize();
 					allClassesWithGenericReplyData.classes.add(allClassesWithGenericReplyDataClasses);
 				}
 				return allClassesWithGenericReplyData;
 			}
-		}
-
-		/**
-		 * Returns the number of instances of each reference type in the input list. Only instances that are
-		 * reachable for the purposes of garbage collection are counted. If a reference type is invalid, eg.
-		 * it has been unloaded, zero is returned for its instance count.
-		 */
-		public class InstanceCounts {
 
-			public class InstanceCountsRefTypesCount {
-				/**
-				 * A reference type ID.
-				 */
-				public long refType;
+			public AllClassesWithGenericReplyData decode(java.nio.ByteBuffer bytes, int start) throws JdwpRuntimeException {
+				AllClassesWithGenericReplyData allClassesWithGenericReplyData = new AllClassesWithGenericReplyData();
+				int classesSize = JdwpInt.decode(bytes, start);
+				start += JdwpInt.getSize();
+				allClassesWithGenericReplyData.classes = new ArrayList<>(classesSize);
+				for (int i = 0; i < classesSize; i++) {
+					AllClassesWithGenericData allClassesWithGenericReplyDataClasses =
+							new AllClassesWithGenericData();
+					allClassesWithGenericReplyDataClasses.refTypeTag = JdwpByte.decode(bytes, start);
+					start += JdwpByte.getSize();
+					allClassesWithGenericReplyDataClasses.typeID = mReferenceTypeID.decode(bytes, start);
+					start += mReferenceTypeID.getSize();
+					allClassesWithGenericReplyDataClasses.signature = JdwpString.decode(bytes, start);
+					start += JdwpString.getSize(bytes, start);
+					allClassesWithGenericReplyDataClasses.genericSignature = JdwpString.decode(bytes, start);
+					start += JdwpString.getSize(bytes, start);
+					allClassesWithGenericReplyDataClasses.status = JdwpInt.decode(bytes, start);
+					start += JdwpInt.getSize();
+					allClassesWithGenericReplyData.classes.add(allClassesWithGenericReplyDataClasses);
+				}
+				return allClassesWithGenericReplyData;
 			}
 
 			/**
-			 * @param refTypesCount Number of reference types that follow. Must be non-negative.
+			 * Streaming decoder calling {@code handler} for each class as soon as its bytes are received.
 			 */
-			public ByteBuffer encode(List<InstanceCountsRefTypesCount> refTypesCount) {
-				ByteBuffer bytes = encodeCommandPacket(1, 21);
-				JdwpInt.encode(refTypesCount.size(), bytes);
-				for (InstanceCountsRefTypesCount instanceCountsRefTypesCount : refTypesCount) {
-					mReferenceTypeID.encode(instanceCountsRefTypesCount.refType, bytes);
-				}
-				setPacketLen(bytes);
-				return bytes;
+			public ReplyStreamDecoder newStreamDecoder(StreamHandlers.ClassHandler handler) {
+				int idSize = mReferenceTypeID.getSize();
+				return new ListStreamDecoder() {
+					@Override
+					int decodeElement(java.nio.ByteBuffer data, int start, int available) throws JdwpRuntimeException {
+						int end = start + available;
+						int signature = start + 1 + idSize;
+						int signatureLen = stringLength(data, signature, end);
+						if (signatureLen < 0) {
+							return -1;
+						}
+						int genericSignature = signature + 4 + signatureLen;
+						int genericSignatureLen = stringLength(data, genericSignature, end);
+						if (genericSignatureLen < 0) {
+							return -1;
+						}
+						int status = genericSignature + 4 + genericSignatureLen;
+						if (end - status < 4) {
+							return -1;
+						}
+						handler.handle(decodeByte(data, start), mReferenceTypeID.decode(data, start + 1),
+								JdwpString.decode(data, signature), JdwpString.decode(data, genericSignature),
+								decodeInt(data, status));
+						return status + 4 - start;
+					}
+				};
 			}
 
-			public class InstanceCountsReplyData {
-				/**
+			/**
+			 * Column-oriented reply: one primitive array per field instead of an object per class.
+			 * Signatures are kept as offsets into the reply packet and decoded on access,
+			 * so the packet array is referenced by this object and must not be reused.
+			 */
+			public class AllClassesWithGenericReplyColumns {
+				/**
+				 * Number of reference types.
+				 */
+				public int count;
+				public byte[] refTypeTag;
+				public long[] typeID;
+				public int[] status;
+				private byte[] bytes;
+				private int[] signatureOffset;
+				private int[] genericSignatureOffset;
+				private LongLongMap index;
+
+				/**
+				 * The JNI signature of the loaded reference type, decoded on each call
+				 */
+				public String getSignature(int index) throws JdwpRuntimeException {
+					return JdwpString.decode(bytes, signatureOffset[index]);
+				}
+
+				/**
+				 * The generic signature of the loaded reference type or an empty string if there is none,
+				 * decoded on each call
+				 */
+				public String getGenericSignature(int index) throws JdwpRuntimeException {
+					return JdwpString.decode(bytes, genericSignatureOffset[index]);
+				}
+
+				/**
+				 * @return index of the type with reference type ID {@code id} or -1, lookup table is built on
+				 *         first call
+				 */
+				public int indexOf(long id) {
+					LongLongMap map = index;
+					if (map == null) {
+						map = new LongLongMap(count, -1, false);
+						for (int i = 0; i < count; i++) {
+							map.put(typeID[i], i);
+						}
+						index = map;
+					}
+					return (int) map.get(id);
+				}
+			}
+
+			public AllClassesWithGenericReplyColumns decodeColumns(byte[] bytes, int start) throws JdwpRuntimeException {
+				AllClassesWithGenericReplyColumns columns = new AllClassesWithGenericReplyColumns();
+				int classesSize = JdwpInt.decode(bytes, start);
+				start += JdwpInt.getSize();
+				columns.count = classesSize;
+				columns.refTypeTag = new byte[classesSize];
+				columns.typeID = new long[classesSize];
+				columns.status = new int[classesSize];
+				columns.bytes = bytes;
+				columns.signatureOffset = new int[classesSize];
+				columns.genericSignatureOffset = new int[classesSize];
+				for (int i = 0; i < classesSize; i++) {
+					columns.refTypeTag[i] = JdwpByte.decode(bytes, start);
+					start += JdwpByte.getSize();
+					columns.typeID[i] = mReferenceTypeID.decode(bytes, start);
+					start += mReferenceTypeID.getSize();
+					columns.signatureOffset[i] = start;
+					start += JdwpString.skip(bytes, start);
+					columns.genericSignatureOffset[i] = start;
+					start += JdwpString.skip(bytes, start);
+					columns.status[i] = JdwpInt.decode(bytes, start);
+					start += JdwpInt.getSize();
+				}
+				return columns;
+			}
+		}
+
+		/**
+		 * Returns the number of instances of each reference type in the input list. Only instances that are
+		 * reachable for the purposes of garbage collection are counted. If a reference type is invalid, eg.
+		 * it has been unloaded, zero is returned for its instance count.
+		 */
+		public class InstanceCounts {
+
+			public class InstanceCountsRefTypesCount {
+				/**
+				 * A reference type ID.
+				 */
+				public long refType;
+			}
+
+			/**
+			 * @param refTypesCount Number of reference types that follow. Must be non-negative.
+			 */
+			public ByteBuffer encode(List<InstanceCountsRefTypesCount> refTypesCount) {
+				ByteBuffer bytes = encodeCommandPacket(1, 21);
+				JdwpInt.encode(refTypesCount.size(), bytes);
+				for (InstanceCountsRefTypesCount instanceCountsRefTypesCount : refTypesCount) {
+					mReferenceTypeID.encode(instanceCountsRefTypesCount.refType, bytes);
+				}
+				setPacketLen(bytes);
+				return bytes;
+			}
+
+			public class InstanceCountsReplyData {
+				/**
 				 * The number of counts that follow.
 				 */
 				public List<InstanceCountsReplyDataCounts> counts;
@@ -1612,6 +2171,43 @@ public class JDWP {
 				}
 				return instanceCountsReplyData;
 			}
+
+			/**
+			 * Flyweight over an InstanceCounts reply, counts are decoded from the packet on each access.
+			 */
+			public class InstanceCountsReplyView {
+				private final byte[] bytes;
+				private final int start;
+				private final int count;
+
+				private InstanceCountsReplyView(byte[] bytes, int start) throws JdwpRuntimeException {
+					this.count = JdwpInt.decode(bytes, start);
+					this.bytes = bytes;
+					this.start = start + JdwpInt.getSize();
+					checkCapability(bytes, this.start, count, JdwpLong.getSize());
+				}
+
+				/**
+				 * The number of counts that follow.
+				 */
+				public int size() {
+					return count;
+				}
+
+				/**
+				 * The number of instances for the reference type at {@code index} in the command.
+				 */
+				public long getInstanceCount(int index) throws JdwpRuntimeException {
+					if (index < 0 || index >= count) {
+						throw new IndexOutOfBoundsException("Index: " + index + ", size: " + count);
+					}
+					return JdwpLong.decode(bytes, start + index * JdwpLong.getSize());
+				}
+			}
+
+			public InstanceCountsReplyView view(byte[] bytes, int start) throws JdwpRuntimeException {
+				return new InstanceCountsReplyView(bytes, start);
+			}
 		}
 	}
 
@@ -1738,12 +2334,37 @@ public class JDWP {
 			 * @param refType The reference type ID.
 			 */
 			public ByteBuffer encode(long refType) {
-				ByteBuffer bytes = encodeCommandPacket(2, 1);
+				ByteBuffer bytes = encodeCommandPacket(2, 1, getSize() - PACKET_HEADER_SIZE);
 				mReferenceTypeID.encode(refType, bytes);
 				setPacketLen(bytes);
 				return bytes;
 			}
 
+			/**
+			 * Exact packet size, same for all arguments.
+			 */
+			public int getSize() {
+				return PACKET_HEADER_SIZE + mReferenceTypeID.getSize();
+			}
+
+			/**
+			 * Write the whole packet into {@code dst} at {@code offset}.
+			 *
+			 * @return offset after the packet
+			 */
+			public int encode(byte[] dst, int offset, int packetID, long refType) {
+				offset = writeCommandHeader(dst, offset, getSize(), packetID, 2, 1);
+				return mReferenceTypeID.codec.write(dst, offset, refType);
+			}
+
+			/**
+			 * Write the whole packet at the position of big-endian {@code dst}.
+			 */
+			public void encode(java.nio.ByteBuffer dst, int packetID, long refType) {
+				writeCommandHeader(dst, getSize(), packetID, 2, 1);
+				mReferenceTypeID.codec.write(dst, refType);
+			}
+
 			public class SignatureReplyData {
 				/**
 				 * The JNI signature for the reference type.
@@ -1754,7 +2375,7 @@ public class JDWP {
 			public SignatureReplyData decode(byte[] bytes, int start) throws JdwpRuntimeException {
 				SignatureReplyData signatureReplyData = new SignatureReplyData();
 				signatureReplyData.signature = JdwpString.decode(bytes, start);
-				start += JdwpString.getSize(signatureReplyData.signature);
+				start += JdwpString.getSize(bytes, start);
 				return signatureReplyData;
 			}
 		}
@@ -1834,12 +2455,37 @@ public class JDWP {
 			 * @param refType The reference type ID.
 			 */
 			public ByteBuffer encode(long refType) {
-				ByteBuffer bytes = encodeCommandPacket(2, 4);
+				ByteBuffer bytes = encodeCommandPacket(2, 4, getSize() - PACKET_HEADER_SIZE);
 				mReferenceTypeID.encode(refType, bytes);
 				setPacketLen(bytes);
 				return bytes;
 			}
 
+			/**
+			 * Exact packet size, same for all arguments.
+			 */
+			public int getSize() {
+				return PACKET_HEADER_SIZE + mReferenceTypeID.getSize();
+			}
+
+			/**
+			 * Write the whole packet into {@code dst} at {@code offset}.
+			 *
+			 * @return offset after the packet
+			 */
+			public int encode(byte[] dst, int offset, int packetID, long refType) {
+				offset = writeCommandHeader(dst, offset, getSize(), packetID, 2, 4);
+				return mReferenceTypeID.codec.write(dst, offset, refType);
+			}
+
+			/**
+			 * Write the whole packet at the position of big-endian {@code dst}.
+			 */
+			public void encode(java.nio.ByteBuffer dst, int packetID, long refType) {
+				writeCommandHeader(dst, getSize(), packetID, 2, 4);
+				mReferenceTypeID.codec.write(dst, refType);
+			}
+
 			public class FieldsReplyData {
 				/**
 				 * Number of declared fields.
@@ -1879,15 +2525,80 @@ public class JDWP {
 					fieldsReplyDataDeclared.fieldID = mFieldID.decode(bytes, start);
 					start += mFieldID.getSize();
 					fieldsReplyDataDeclared.name = JdwpString.decode(bytes, start);
-					start += JdwpString.getSize(fieldsReplyDataDeclared.name);
+					start += JdwpString.getSize(bytes, start);
 					fieldsReplyDataDeclared.signature = JdwpString.decode(bytes, start);
-					start += JdwpString.getSize(fieldsReplyDataDeclared.signature);
+					start += JdwpString.getSize(bytes, start);
 					fieldsReplyDataDeclared.modBits = JdwpInt.decode(bytes, start);
 					start += JdwpInt.getSize();
 					fieldsReplyData.declared.add(fieldsReplyDataDeclared);
 				}
 				return fieldsReplyData;
 			}
+
+			/**
+			 * Flyweight over a Fields reply, fields are decoded from the packet on each access.
+			 * Entries have variable size, their offsets are indexed lazily up to the highest accessed index.
+			 */
+			public class FieldsReplyView {
+				private final byte[] bytes;
+				private final int count;
+				private final int[] offsets;
+				private int indexed;
+
+				private FieldsReplyView(byte[] bytes, int start) throws JdwpRuntimeException {
+					this.count = JdwpInt.decode(bytes, start);
+					this.bytes = bytes;
+					this.offsets = new int[count + 1];
+					this.offsets[0] = start + JdwpInt.getSize();
+				}
+
+				/**
+				 * Number of declared fields.
+				 */
+				public int size() {
+					return count;
+				}
+
+				/**
+				 * Field ID.
+				 */
+				public long getFieldID(int index) throws JdwpRuntimeException {
+					return mFieldID.decode(bytes, offset(index));
+				}
+
+				public String getName(int index) throws JdwpRuntimeException {
+					return JdwpString.decode(bytes, offset(index) + mFieldID.getSize());
+				}
+
+				public String getSignature(int index) throws JdwpRuntimeException {
+					int off = offset(index) + mFieldID.getSize();
+					off += JdwpString.skip(bytes, off);
+					return JdwpString.decode(bytes, off);
+				}
+
+				public int getModBits(int index) throws JdwpRuntimeException {
+					offset(index); // also indexes end of this entry
+					return JdwpInt.decode(bytes, offsets[index + 1] - JdwpInt.getSize());
+				}
+
+				private int offset(int index) throws JdwpRuntimeException {
+					if (index < 0 || index >= count) {
+						throw new IndexOutOfBoundsException("Index: " + index + ", size: " + count);
+					}
+					while (indexed <= index) {
+						int off = offsets[indexed] + mFieldID.getSize();
+						off += JdwpString.skip(bytes, off);
+						off += JdwpString.skip(bytes, off);
+						off += JdwpInt.getSize();
+						offsets[++indexed] = off;
+					}
+					return offsets[index];
+				}
+			}
+
+			public FieldsReplyView view(byte[] bytes, int start) throws JdwpRuntimeException {
+				return new FieldsReplyView(bytes, start);
+			}
 		}
 
 		/**
@@ -1902,12 +2613,37 @@ public class JDWP {
 			 * @param refType The reference type ID.
 			 */
 			public ByteBuffer encode(long refType) {
-				ByteBuffer bytes = encodeCommandPacket(2, 5);
+				ByteBuffer bytes = encodeCommandPacket(2, 5, getSize() - PACKET_HEADER_SIZE);
 				mReferenceTypeID.encode(refType, bytes);
 				setPacketLen(bytes);
 				return bytes;
 			}
 
+			/**
+			 * Exact packet size, same for all arguments.
+			 */
+			public int getSize() {
+				return PACKET_HEADER_SIZE + mReferenceTypeID.getSize();
+			}
+
+			/**
+			 * Write the whole packet into {@code dst} at {@code offset}.
+			 *
+			 * @return offset after the packet
+			 */
+			public int encode(byte[] dst, int offset, int packetID, long refType) {
+				offset = writeCommandHeader(dst, offset, getSize(), packetID, 2, 5);
+				return mReferenceTypeID.codec.write(dst, offset, refType);
+			}
+
+			/**
+			 * Write the whole packet at the position of big-endian {@code dst}.
+			 */
+			public void encode(java.nio.ByteBuffer dst, int packetID, long refType) {
+				writeCommandHeader(dst, getSize(), packetID, 2, 5);
+				mReferenceTypeID.codec.write(dst, refType);
+			}
+
 			public class MethodsReplyData {
 				/**
 				 * Number of declared methods.
@@ -1947,15 +2683,80 @@ public class JDWP {
 					methodsReplyDataDeclared.methodID = mMethodID.decode(bytes, start);
 					start += mMethodID.getSize();
 					methodsReplyDataDeclared.name = JdwpString.decode(bytes, start);
-					start += JdwpString.getSize(methodsReplyDataDeclared.name);
+					start += JdwpString.getSize(bytes, start);
 					methodsReplyDataDeclared.signature = JdwpString.decode(bytes, start);
-					start += JdwpString.getSize(methodsReplyDataDeclared.signature);
+					start += JdwpString.getSize(bytes, start);
 					methodsReplyDataDeclared.modBits = JdwpInt.decode(bytes, start);
 					start += JdwpInt.getSize();
 					methodsReplyData.declared.add(methodsReplyDataDeclared);
 				}
 				return methodsReplyData;
 			}
+
+			/**
+			 * Flyweight over a Methods reply, fields are decoded from the packet on each access.
+			 * Entries have variable size, their offsets are indexed lazily up to the highest accessed index.
+			 */
+			public class MethodsReplyView {
+				private final byte[] bytes;
+				private final int count;
+				private final int[] offsets;
+				private int indexed;
+
+				private MethodsReplyView(byte[] bytes, int start) throws JdwpRuntimeException {
+					this.count = JdwpInt.decode(bytes, start);
+					this.bytes = bytes;
+					this.offsets = new int[count + 1];
+					this.offsets[0] = start + JdwpInt.getSize();
+				}
+
+				/**
+				 * Number of declared methods.
+				 */
+				public int size() {
+					return count;
+				}
+
+				/**
+				 * Method ID.
+				 */
+				public long getMethodID(int index) throws JdwpRuntimeException {
+					return mMethodID.decode(bytes, offset(index));
+				}
+
+				public String getName(int index) throws JdwpRuntimeException {
+					return JdwpString.decode(bytes, offset(index) + mMethodID.getSize());
+				}
+
+				public String getSignature(int index) throws JdwpRuntimeException {
+					int off = offset(index) + mMethodID.getSize();
+					off += JdwpString.skip(bytes, off);
+					return JdwpString.decode(bytes, off);
+				}
+
+				public int getModBits(int index) throws JdwpRuntimeException {
+					offset(index); // also indexes end of this entry
+					return JdwpInt.decode(bytes, offsets[index + 1] - JdwpInt.getSize());
+				}
+
+				private int offset(int index) throws JdwpRuntimeException {
+					if (index < 0 || index >= count) {
+						throw new IndexOutOfBoundsException("Index: " + index + ", size: " + count);
+					}
+					while (indexed <= index) {
+						int off = offsets[indexed] + mMethodID.getSize();
+						off += JdwpString.skip(bytes, off);
+						off += JdwpString.skip(bytes, off);
+						off += JdwpInt.getSize();
+						offsets[++indexed] = off;
+					}
+					return offsets[index];
+				}
+			}
+
+			public MethodsReplyView view(byte[] bytes, int start) throws JdwpRuntimeException {
+				return new MethodsReplyView(bytes, start);
+			}
 		}
 
 		/**
@@ -2007,6 +2808,16 @@ public class JDWP {
 				}
 				return getValuesReplyData;
 			}
+
+			/**
+			 * Decode the field values into {@code tags[i]} and {@code bits[i]} without allocation, see {@link TaggedValue}
+			 * for the bits format. Arrays must hold {@code decodeInt(bytes, start)} values.
+			 *
+			 * @return number of values
+			 */
+			public int decodeValues(byte[] bytes, int start, byte[] tags, long[] bits) throws JdwpRuntimeException {
+				return decodeTaggedValues(bytes, start, tags, bits);
+			}
 		}
 
 		/**
@@ -2018,12 +2829,37 @@ public class JDWP {
 			 * @param refType The reference type ID.
 			 */
 			public ByteBuffer encode(long refType) {
-				ByteBuffer bytes = encodeCommandPacket(2, 7);
+				ByteBuffer bytes = encodeCommandPacket(2, 7, getSize() - PACKET_HEADER_SIZE);
 				mReferenceTypeID.encode(refType, bytes);
 				setPacketLen(bytes);
 				return bytes;
 			}
 
+			/**
+			 * Exact packet size, same for all arguments.
+			 */
+			public int getSize() {
+				return PACKET_HEADER_SIZE + mReferenceTypeID.getSize();
+			}
+
+			/**
+			 * Write the whole packet into {@code dst} at {@code offset}.
+			 *
+			 * @return offset after the packet
+			 */
+			public int encode(byte[] dst, int offset, int packetID, long refType) {
+				offset = writeCommandHeader(dst, offset, getSize(), packetID, 2, 7);
+				return mReferenceTypeID.codec.write(dst, offset, refType);
+			}
+
+			/**
+			 * Write the whole packet at the position of big-endian {@code dst}.
+			 */
+			public void encode(java.nio.ByteBuffer dst, int packetID, long refType) {
+				writeCommandHeader(dst, getSize(), packetID, 2, 7);
+				mReferenceTypeID.codec.write(dst, refType);
+			}
+
 			public class SourceFileReplyData {
 				/**
 				 * The source file name. No path information for the file is included
@@ -2034,7 +2870,7 @@ public class JDWP {
 			public SourceFileReplyData decode(byte[] bytes, int start) throws JdwpRuntimeException {
 				SourceFileReplyData sourceFileReplyData = new SourceFileReplyData();
 				sourceFileReplyData.sourceFile = JdwpString.decode(bytes, start);
-				start += JdwpString.getSize(sourceFileReplyData.sourceFile);
+				start += JdwpString.getSize(bytes, start);
 				return sourceFileReplyData;
 			}
 		}
@@ -2227,7 +3063,7 @@ public class JDWP {
 			public SourceDebugExtensionReplyData decode(byte[] bytes, int start) throws JdwpRuntimeException {
 				SourceDebugExtensionReplyData sourceDebugExtensionReplyData = new SourceDebugExtensionReplyData();
 				sourceDebugExtensionReplyData.extension = JdwpString.decode(bytes, start);
-				start += JdwpString.getSize(sourceDebugExtensionReplyData.extension);
+				start += JdwpString.getSize(bytes, start);
 				return sourceDebugExtensionReplyData;
 			}
 		}
@@ -2263,9 +3099,9 @@ public class JDWP {
 			public SignatureWithGenericReplyData decode(byte[] bytes, int start) throws JdwpRuntimeException {
 				SignatureWithGenericReplyData signatureWithGenericReplyData = new SignatureWithGenericReplyData();
 				signatureWithGenericReplyData.signature = JdwpString.decode(bytes, start);
-				start += JdwpString.getSize(signatureWithGenericReplyData.signature);
+				start += JdwpString.getSize(bytes, start);
 				signatureWithGenericReplyData.genericSignature = JdwpString.decode(bytes, start);
-				start += JdwpString.getSize(signatureWithGenericReplyData.genericSignature);
+				start += JdwpString.getSize(bytes, start);
 				return signatureWithGenericReplyData;
 			}
 		}
@@ -2332,11 +3168,11 @@ public class JDWP {
 					fieldsWithGenericReplyDataDeclared.fieldID = mFieldID.decode(bytes, start);
 					start += mFieldID.getSize();
 					fieldsWithGenericReplyDataDeclared.name = JdwpString.decode(bytes, start);
-					start += JdwpString.getSize(fieldsWithGenericReplyDataDeclared.name);
+					start += JdwpString.getSize(bytes, start);
 					fieldsWithGenericReplyDataDeclared.signature = JdwpString.decode(bytes, start);
-					start += JdwpString.getSize(fieldsWithGenericReplyDataDeclared.signature);
+					start += JdwpString.getSize(bytes, start);
 					fieldsWithGenericReplyDataDeclared.genericSignature = JdwpString.decode(bytes, start);
-					start += JdwpString.getSize(fieldsWithGenericReplyDataDeclared.genericSignature);
+					start += JdwpString.getSize(bytes, start);
 					fieldsWithGenericReplyDataDeclared.modBits = JdwpInt.decode(bytes, start);
 					start += JdwpInt.getSize();
 					fieldsWithGenericReplyData.declared.add(fieldsWithGenericReplyDataDeclared);
@@ -2408,11 +3244,11 @@ public class JDWP {
 					methodsWithGenericReplyDataDeclared.methodID = mMethodID.decode(bytes, start);
 					start += mMethodID.getSize();
 					methodsWithGenericReplyDataDeclared.name = JdwpString.decode(bytes, start);
-					start += JdwpString.getSize(methodsWithGenericReplyDataDeclared.name);
+					start += JdwpString.getSize(bytes, start);
 					methodsWithGenericReplyDataDeclared.signature = JdwpString.decode(bytes, start);
-					start += JdwpString.getSize(methodsWithGenericReplyDataDeclared.signature);
+					start += JdwpString.getSize(bytes, start);
 					methodsWithGenericReplyDataDeclared.genericSignature = JdwpString.decode(bytes, start);
-					start += JdwpString.getSize(methodsWithGenericReplyDataDeclared.genericSignature);
+					start += JdwpString.getSize(bytes, start);
 					methodsWithGenericReplyDataDeclared.modBits = JdwpInt.decode(bytes, start);
 					start += JdwpInt.getSize();
 					methodsWithGenericReplyData.declared.add(methodsWithGenericReplyDataDeclared);
@@ -2467,6 +3303,13 @@ public class JDWP {
 				}
 				return instancesReplyData;
 			}
+
+			/**
+			 * Streaming decoder calling {@code handler} for each object as soon as its bytes are received.
+			 */
+			public ReplyStreamDecoder newStreamDecoder(StreamHandlers.TaggedObjectHandler handler) {
+				return new TaggedObjectStreamDecoder(mObjectID.getSize(), handler);
+			}
 		}
 
 		/**
@@ -2554,6 +3397,56 @@ public class JDWP {
 				}
 				return constantPoolReplyData;
 			}
+
+			public class ConstantPoolReplyBytes {
+				/**
+				 * Total number of constant pool entries plus one. This corresponds to the constant_pool_count item
+				 * of the Class File Format in The Java™ Virtual Machine Specification.
+				 */
+				public int count;
+				/**
+				 * Raw bytes of constant pool
+				 */
+				public byte[] cpbytes;
+			}
+
+			public class ConstantPoolReplySlice {
+				/**
+				 * Total number of constant pool entries plus one. This corresponds to the constant_pool_count item
+				 * of the Class File Format in The Java™ Virtual Machine Specification.
+				 */
+				public int count;
+				/**
+				 * Read-only view of raw bytes of constant pool in the reply packet
+				 */
+				public java.nio.ByteBuffer cpbytes;
+			}
+
+			/**
+			 * Decode constant pool bytes with one array copy.
+			 */
+			public ConstantPoolReplyBytes decodeBytes(byte[] bytes, int start) throws JdwpRuntimeException {
+				ConstantPoolReplyBytes constantPoolReplyBytes = new ConstantPoolReplyBytes();
+				constantPoolReplyBytes.count = JdwpInt.decode(bytes, start);
+				start += JdwpInt.getSize();
+				int bytesSize = JdwpInt.decode(bytes, start);
+				start += JdwpInt.getSize();
+				constantPoolReplyBytes.cpbytes = decodeRaw(bytes, start, bytesSize);
+				return constantPoolReplyBytes;
+			}
+
+			/**
+			 * Decode constant pool as a view into the reply packet, nothing is copied.
+			 */
+			public ConstantPoolReplySlice decodeSlice(byte[] bytes, int start) throws JdwpRuntimeException {
+				ConstantPoolReplySlice constantPoolReplySlice = new ConstantPoolReplySlice();
+				constantPoolReplySlice.count = JdwpInt.decode(bytes, start);
+				start += JdwpInt.getSize();
+				int bytesSize = JdwpInt.decode(bytes, start);
+				start += JdwpInt.getSize();
+				constantPoolReplySlice.cpbytes = slice(bytes, start, bytesSize);
+				return constantPoolReplySlice;
+			}
 		}
 	}
 
@@ -2869,13 +3762,40 @@ public class JDWP {
 			 * @param methodID The method.
 			 */
 			public ByteBuffer encode(long refType, long methodID) {
-				ByteBuffer bytes = encodeCommandPacket(6, 1);
+				ByteBuffer bytes = encodeCommandPacket(6, 1, getSize() - PACKET_HEADER_SIZE);
 				mReferenceTypeID.encode(refType, bytes);
 				mMethodID.encode(methodID, bytes);
 				setPacketLen(bytes);
 				return bytes;
 			}
 
+			/**
+			 * Exact packet size, same for all arguments.
+			 */
+			public int getSize() {
+				return PACKET_HEADER_SIZE + mReferenceTypeID.getSize() + mMethodID.getSize();
+			}
+
+			/**
+			 * Write the whole packet into {@code dst} at {@code offset}.
+			 *
+			 * @return offset after the packet
+			 */
+			public int encode(byte[] dst, int offset, int packetID, long refType, long methodID) {
+				offset = writeCommandHeader(dst, offset, getSize(), packetID, 6, 1);
+				offset = mReferenceTypeID.codec.write(dst, offset, refType);
+				return mMethodID.codec.write(dst, offset, methodID);
+			}
+
+			/**
+			 * Write the whole packet at the position of big-endian {@code dst}.
+			 */
+			public void encode(java.nio.ByteBuffer dst, int packetID, long refType, long methodID) {
+				writeCommandHeader(dst, getSize(), packetID, 6, 1);
+				mReferenceTypeID.codec.write(dst, refType);
+				mMethodID.codec.write(dst, methodID);
+			}
+
 			public class LineTableReplyData {
 				/**
 				 * Lowest valid code index for the method, {@code >=0}, or -1 if the method is native
@@ -2994,9 +3914,9 @@ public class JDWP {
 					variableTableReplyDataSlots.codeIndex = JdwpLong.decode(bytes, start);
 					start += JdwpLong.getSize();
 					variableTableReplyDataSlots.name = JdwpString.decode(bytes, start);
-					start += JdwpString.getSize(variableTableReplyDataSlots.name);
+					start += JdwpString.getSize(bytes, start);
 					variableTableReplyDataSlots.signature = JdwpString.decode(bytes, start);
-					start += JdwpString.getSize(variableTableReplyDataSlots.signature);
+					start += JdwpString.getSize(bytes, start);
 					variableTableReplyDataSlots.length = JdwpInt.decode(bytes, start);
 					start += JdwpInt.getSize();
 					variableTableReplyDataSlots.slot = JdwpInt.decode(bytes, start);
@@ -3049,6 +3969,22 @@ public class JDWP {
 				}
 				return bytecodesReplyData;
 			}
+
+			/**
+			 * @return method bytecodes copied from the reply
+			 */
+			public byte[] decodeBytes(byte[] bytes, int start) throws JdwpRuntimeException {
+				int bytesSize = JdwpInt.decode(bytes, start);
+				return decodeRaw(bytes, start + JdwpInt.getSize(), bytesSize);
+			}
+
+			/**
+			 * @return read-only view of method bytecodes in the reply packet, nothing is copied
+			 */
+			public java.nio.ByteBuffer decodeSlice(byte[] bytes, int start) throws JdwpRuntimeException {
+				int bytesSize = JdwpInt.decode(bytes, start);
+				return slice(bytes, start + JdwpInt.getSize(), bytesSize);
+			}
 		}
 
 		/**
@@ -3163,11 +4099,11 @@ public class JDWP {
 					variableTableWithGenericReplyDataSlots.codeIndex = JdwpLong.decode(bytes, start);
 					start += JdwpLong.getSize();
 					variableTableWithGenericReplyDataSlots.name = JdwpString.decode(bytes, start);
-					start += JdwpString.getSize(variableTableWithGenericReplyDataSlots.name);
+					start += JdwpString.getSize(bytes, start);
 					variableTableWithGenericReplyDataSlots.signature = JdwpString.decode(bytes, start);
-					start += JdwpString.getSize(variableTableWithGenericReplyDataSlots.signature);
+					start += JdwpString.getSize(bytes, start);
 					variableTableWithGenericReplyDataSlots.genericSignature = JdwpString.decode(bytes, start);
-					start += JdwpString.getSize(variableTableWithGenericReplyDataSlots.genericSignature);
+					start += JdwpString.getSize(bytes, start);
 					variableTableWithGenericReplyDataSlots.length = JdwpInt.decode(bytes, start);
 					start += JdwpInt.getSize();
 					variableTableWithGenericReplyDataSlots.slot = JdwpInt.decode(bytes, start);
@@ -3252,12 +4188,37 @@ public class JDWP {
 			 * @param object The object ID
 			 */
 			public ByteBuffer encode(long object) {
-				ByteBuffer bytes = encodeCommandPacket(9, 1);
+				ByteBuffer bytes = encodeCommandPacket(9, 1, getSize() - PACKET_HEADER_SIZE);
 				mObjectID.encode(object, bytes);
 				setPacketLen(bytes);
 				return bytes;
 			}
 
+			/**
+			 * Exact packet size, same for all arguments.
+			 */
+			public int getSize() {
+				return PACKET_HEADER_SIZE + mObjectID.getSize();
+			}
+
+			/**
+			 * Write the whole packet into {@code dst} at {@code offset}.
+			 *
+			 * @return offset after the packet
+			 */
+			public int encode(byte[] dst, int offset, int packetID, long object) {
+				offset = writeCommandHeader(dst, offset, getSize(), packetID, 9, 1);
+				return mObjectID.codec.write(dst, offset, object);
+			}
+
+			/**
+			 * Write the whole packet at the position of big-endian {@code dst}.
+			 */
+			public void encode(java.nio.ByteBuffer dst, int packetID, long object) {
+				writeCommandHeader(dst, getSize(), packetID, 9, 1);
+				mObjectID.codec.write(dst, object);
+			}
+
 			public class ReferenceTypeReplyData {
 				/**
 				 * Kind of following reference type.
@@ -3298,7 +4259,7 @@ public class JDWP {
 			 * @param fields The number of values to get
 			 */
 			public ByteBuffer encode(long object, List<Long> fields) {
-				ByteBuffer bytes = encodeCommandPacket(9, 2);
+				ByteBuffer bytes = encodeCommandPacket(9, 2, getSize(fields.size()) - PACKET_HEADER_SIZE);
 				mObjectID.encode(object, bytes);
 				JdwpInt.encode(fields.size(), bytes);
 				for (Long id : fields) {
@@ -3308,9 +4269,45 @@ public class JDWP {
 				return bytes;
 			}
 
-			public class GetValuesReplyData {
-				/**
-				 * The number of values returned, always equal to 'fields', the number of values to get. Field
+			/**
+			 * Exact packet size for {@code fieldCount} fields.
+			 */
+			public int getSize(int fieldCount) {
+				return PACKET_HEADER_SIZE + mObjectID.getSize() + 4 + fieldCount * mFieldID.getSize();
+			}
+
+			/**
+			 * Write the whole packet into {@code dst} at {@code offset}.
+			 *
+			 * @return offset after the packet
+			 */
+			public int encode(byte[] dst, int offset, int packetID, long object, long[] fields) {
+				offset = writeCommandHeader(dst, offset, getSize(fields.length), packetID, 9, 2);
+				offset = mObjectID.codec.write(dst, offset, object);
+				offset = writeInt(dst, offset, fields.length);
+				IdCodec fieldCodec = mFieldID.codec;
+				for (long field : fields) {
+					offset = fieldCodec.write(dst, offset, field);
+				}
+				return offset;
+			}
+
+			/**
+			 * Write the whole packet at the position of big-endian {@code dst}.
+			 */
+			public void encode(java.nio.ByteBuffer dst, int packetID, long object, long[] fields) {
+				writeCommandHeader(dst, getSize(fields.length), packetID, 9, 2);
+				mObjectID.codec.write(dst, object);
+				dst.putInt(fields.length);
+				IdCodec fieldCodec = mFieldID.codec;
+				for (long field : fields) {
+					fieldCodec.write(dst, field);
+				}
+			}
+
+			public class GetValuesReplyData {
+				/**
+				 * The number of values returned, always equal to 'fields', the number of values to get. Field
 				 * values are ordered in the reply in the same order as corresponding fieldIDs in the command.
 				 */
 				public List<GetValuesReplyDataValues> values;
@@ -3336,6 +4333,16 @@ public class JDWP {
 				}
 				return getValuesReplyData;
 			}
+
+			/**
+			 * Decode the field values into {@code tags[i]} and {@code bits[i]} without allocation, see {@link TaggedValue}
+			 * for the bits format. Arrays must hold {@code decodeInt(bytes, start)} values.
+			 *
+			 * @return number of values
+			 */
+			public int decodeValues(byte[] bytes, int start, byte[] tags, long[] bits) throws JdwpRuntimeException {
+				return decodeTaggedValues(bytes, start, tags, bits);
+			}
 		}
 
 		/**
@@ -3620,6 +4627,13 @@ public class JDWP {
 				}
 				return referringObjectsReplyData;
 			}
+
+			/**
+			 * Streaming decoder calling {@code handler} for each object as soon as its bytes are received.
+			 */
+			public ReplyStreamDecoder newStreamDecoder(StreamHandlers.TaggedObjectHandler handler) {
+				return new TaggedObjectStreamDecoder(mObjectID.getSize(), handler);
+			}
 		}
 	}
 
@@ -3643,12 +4657,37 @@ public class JDWP {
 			 * @param stringObject The String object ID.
 			 */
 			public ByteBuffer encode(long stringObject) {
-				ByteBuffer bytes = encodeCommandPacket(10, 1);
+				ByteBuffer bytes = encodeCommandPacket(10, 1, getSize() - PACKET_HEADER_SIZE);
 				mObjectID.encode(stringObject, bytes);
 				setPacketLen(bytes);
 				return bytes;
 			}
 
+			/**
+			 * Exact packet size, same for all arguments.
+			 */
+			public int getSize() {
+				return PACKET_HEADER_SIZE + mObjectID.getSize();
+			}
+
+			/**
+			 * Write the whole packet into {@code dst} at {@code offset}.
+			 *
+			 * @return offset after the packet
+			 */
+			public int encode(byte[] dst, int offset, int packetID, long stringObject) {
+				offset = writeCommandHeader(dst, offset, getSize(), packetID, 10, 1);
+				return mObjectID.codec.write(dst, offset, stringObject);
+			}
+
+			/**
+			 * Write the whole packet at the position of big-endian {@code dst}.
+			 */
+			public void encode(java.nio.ByteBuffer dst, int packetID, long stringObject) {
+				writeCommandHeader(dst, getSize(), packetID, 10, 1);
+				mObjectID.codec.write(dst, stringObject);
+			}
+
 			public class ValueReplyData {
 				/**
 				 * UTF-8 representation of the string value.
@@ -3659,7 +4698,7 @@ public class JDWP {
 			public ValueReplyData decode(byte[] bytes, int start) throws JdwpRuntimeException {
 				ValueReplyData valueReplyData = new ValueReplyData();
 				valueReplyData.stringValue = JdwpString.decode(bytes, start);
-				start += JdwpString.getSize(valueReplyData.stringValue);
+				start += JdwpString.getSize(bytes, start);
 				return valueReplyData;
 			}
 		}
@@ -3763,12 +4802,37 @@ public class JDWP {
 			 * @param thread The thread object ID.
 			 */
 			public ByteBuffer encode(long thread) {
-				ByteBuffer bytes = encodeCommandPacket(11, 1);
+				ByteBuffer bytes = encodeCommandPacket(11, 1, getSize() - PACKET_HEADER_SIZE);
 				mThreadID.encode(thread, bytes);
 				setPacketLen(bytes);
 				return bytes;
 			}
 
+			/**
+			 * Exact packet size, same for all arguments.
+			 */
+			public int getSize() {
+				return PACKET_HEADER_SIZE + mThreadID.getSize();
+			}
+
+			/**
+			 * Write the whole packet into {@code dst} at {@code offset}.
+			 *
+			 * @return offset after the packet
+			 */
+			public int encode(byte[] dst, int offset, int packetID, long thread) {
+				offset = writeCommandHeader(dst, offset, getSize(), packetID, 11, 1);
+				return mThreadID.codec.write(dst, offset, thread);
+			}
+
+			/**
+			 * Write the whole packet at the position of big-endian {@code dst}.
+			 */
+			public void encode(java.nio.ByteBuffer dst, int packetID, long thread) {
+				writeCommandHeader(dst, getSize(), packetID, 11, 1);
+				mThreadID.codec.write(dst, thread);
+			}
+
 			public class NameReplyData {
 				/**
 				 * The thread name.
@@ -3779,7 +4843,7 @@ public class JDWP {
 			public NameReplyData decode(byte[] bytes, int start) throws JdwpRuntimeException {
 				NameReplyData nameReplyData = new NameReplyData();
 				nameReplyData.threadName = JdwpString.decode(bytes, start);
-				start += JdwpString.getSize(nameReplyData.threadName);
+				start += JdwpString.getSize(bytes, start);
 				return nameReplyData;
 			}
 		}
@@ -3793,12 +4857,37 @@ public class JDWP {
 			 * @param thread The thread object ID.
 			 */
 			public ByteBuffer encode(long thread) {
-				ByteBuffer bytes = encodeCommandPacket(11, 2);
+				ByteBuffer bytes = encodeCommandPacket(11, 2, getSize() - PACKET_HEADER_SIZE);
 				mThreadID.encode(thread, bytes);
 				setPacketLen(bytes);
 				return bytes;
 			}
 
+			/**
+			 * Exact packet size, same for all arguments.
+			 */
+			public int getSize() {
+				return PACKET_HEADER_SIZE + mThreadID.getSize();
+			}
+
+			/**
+			 * Write the whole packet into {@code dst} at {@code offset}.
+			 *
+			 * @return offset after the packet
+			 */
+			public int encode(byte[] dst, int offset, int packetID, long thread) {
+				offset = writeCommandHeader(dst, offset, getSize(), packetID, 11, 2);
+				return mThreadID.codec.write(dst, offset, thread);
+			}
+
+			/**
+			 * Write the whole packet at the position of big-endian {@code dst}.
+			 */
+			public void encode(java.nio.ByteBuffer dst, int packetID, long thread) {
+				writeCommandHeader(dst, getSize(), packetID, 11, 2);
+				mThreadID.codec.write(dst, thread);
+			}
+
 			public boolean decode(byte[] bytes, int start) throws JdwpRuntimeException {
 				return bytes.length == PACKET_HEADER_SIZE;
 			}
@@ -3815,12 +4904,37 @@ public class JDWP {
 			 * @param thread The thread object ID.
 			 */
 			public ByteBuffer encode(long thread) {
-				ByteBuffer bytes = encodeCommandPacket(11, 3);
+				ByteBuffer bytes = encodeCommandPacket(11, 3, getSize() - PACKET_HEADER_SIZE);
 				mThreadID.encode(thread, bytes);
 				setPacketLen(bytes);
 				return bytes;
 			}
 
+			/**
+			 * Exact packet size, same for all arguments.
+			 */
+			public int getSize() {
+				return PACKET_HEADER_SIZE + mThreadID.getSize();
+			}
+
+			/**
+			 * Write the whole packet into {@code dst} at {@code offset}.
+			 *
+			 * @return offset after the packet
+			 */
+			public int encode(byte[] dst, int offset, int packetID, long thread) {
+				offset = writeCommandHeader(dst, offset, getSize(), packetID, 11, 3);
+				return mThreadID.codec.write(dst, offset, thread);
+			}
+
+			/**
+			 * Write the whole packet at the position of big-endian {@code dst}.
+			 */
+			public void encode(java.nio.ByteBuffer dst, int packetID, long thread) {
+				writeCommandHeader(dst, getSize(), packetID, 11, 3);
+				mThreadID.codec.write(dst, thread);
+			}
+
 			public boolean decode(byte[] bytes, int start) throws JdwpRuntimeException {
 				return bytes.length == PACKET_HEADER_SIZE;
 			}
@@ -3837,12 +4951,37 @@ public class JDWP {
 			 * @param thread The thread object ID.
 			 */
 			public ByteBuffer encode(long thread) {
-				ByteBuffer bytes = encodeCommandPacket(11, 4);
+				ByteBuffer bytes = encodeCommandPacket(11, 4, getSize() - PACKET_HEADER_SIZE);
 				mThreadID.encode(thread, bytes);
 				setPacketLen(bytes);
 				return bytes;
 			}
 
+			/**
+			 * Exact packet size, same for all arguments.
+			 */
+			public int getSize() {
+				return PACKET_HEADER_SIZE + mThreadID.getSize();
+			}
+
+			/**
+			 * Write the whole packet into {@code dst} at {@code offset}.
+			 *
+			 * @return offset after the packet
+			 */
+			public int encode(byte[] dst, int offset, int packetID, long thread) {
+				offset = writeCommandHeader(dst, offset, getSize(), packetID, 11, 4);
+				return mThreadID.codec.write(dst, offset, thread);
+			}
+
+			/**
+			 * Write the whole packet at the position of big-endian {@code dst}.
+			 */
+			public void encode(java.nio.ByteBuffer dst, int packetID, long thread) {
+				writeCommandHeader(dst, getSize(), packetID, 11, 4);
+				mThreadID.codec.write(dst, thread);
+			}
+
 			public class StatusReplyData {
 				/**
 				 * One of the thread status codes See JDWP.ThreadStatus
@@ -3907,7 +5046,7 @@ public class JDWP {
 			 * @param length     The count of frames to retrieve (-1 means all remaining).
 			 */
 			public ByteBuffer encode(long thread, int startFrame, int length) {
-				ByteBuffer bytes = encodeCommandPacket(11, 6);
+				ByteBuffer bytes = encodeCommandPacket(11, 6, getSize() - PACKET_HEADER_SIZE);
 				mThreadID.encode(thread, bytes);
 				JdwpInt.encode(startFrame, bytes);
 				JdwpInt.encode(length, bytes);
@@ -3915,6 +5054,35 @@ public class JDWP {
 				return bytes;
 			}
 
+			/**
+			 * Exact packet size, same for all arguments.
+			 */
+			public int getSize() {
+				return PACKET_HEADER_SIZE + mThreadID.getSize() + 8;
+			}
+
+			/**
+			 * Write the whole packet into {@code dst} at {@code offset}.
+			 *
+			 * @return offset after the packet
+			 */
+			public int encode(byte[] dst, int offset, int packetID, long thread, int startFrame, int length) {
+				offset = writeCommandHeader(dst, offset, getSize(), packetID, 11, 6);
+				offset = mThreadID.codec.write(dst, offset, thread);
+				offset = writeInt(dst, offset, startFrame);
+				return writeInt(dst, offset, length);
+			}
+
+			/**
+			 * Write the whole packet at the position of big-endian {@code dst}.
+			 */
+			public void encode(java.nio.ByteBuffer dst, int packetID, long thread, int startFrame, int length) {
+				writeCommandHeader(dst, getSize(), packetID, 11, 6);
+				mThreadID.codec.write(dst, thread);
+				dst.putInt(startFrame);
+				dst.putInt(length);
+			}
+
 			public class FramesReplyData {
 				/**
 				 * The number of frames retreived
@@ -3937,17 +5105,80 @@ public class JDWP {
 				FramesReplyData framesReplyData = new FramesReplyData();
 				int framesSize = JdwpInt.decode(bytes, start);
 				start += JdwpInt.getSize();
+				checkCapability(bytes, start, framesSize, mFrameID.getSize() + mLocation.getSize());
 				framesReplyData.frames = new ArrayList<>(framesSize);
 				for (int i = 0; i < framesSize; i++) {
 					FramesReplyDataFrames framesReplyDataFrames = new FramesReplyDataFrames();
-					framesReplyDataFrames.frameID = mFrameID.decode(bytes, start);
+					framesReplyDataFrames.frameID = mFrameID.read(bytes, start);
 					start += mFrameID.getSize();
-					framesReplyDataFrames.location = mLocation.decode(bytes, start);
+					framesReplyDataFrames.location = mLocation.read(bytes, start);
 					start += mLocation.getSize();
 					framesReplyData.frames.add(framesReplyDataFrames);
 				}
 				return framesReplyData;
 			}
+
+			/**
+			 * Flyweight over a Frames reply, fields are decoded from the packet on each access.
+			 */
+			public class FramesReplyView {
+				private final byte[] bytes;
+				private final int start;
+				private final int count;
+				private final int stride;
+
+				private FramesReplyView(byte[] bytes, int start) throws JdwpRuntimeException {
+					this.count = JdwpInt.decode(bytes, start);
+					this.stride = mFrameID.getSize() + mLocation.getSize();
+					this.bytes = bytes;
+					this.start = start + JdwpInt.getSize();
+					checkCapability(bytes, this.start, count, stride);
+				}
+
+				/**
+				 * The number of frames retreived
+				 */
+				public int size() {
+					return count;
+				}
+
+				// whole region is checked in constructor, so reads below are unchecked
+
+				public long getFrameID(int index) throws JdwpRuntimeException {
+					return mFrameID.read(bytes, offset(index));
+				}
+
+				public JdwpLocation.LocationPacket getLocation(int index) throws JdwpRuntimeException {
+					return mLocation.read(bytes, offset(index) + mFrameID.getSize());
+				}
+
+				public byte getLocationTag(int index) throws JdwpRuntimeException {
+					return bytes[offset(index) + mFrameID.getSize()];
+				}
+
+				public long getLocationClassID(int index) throws JdwpRuntimeException {
+					return mLocation.readClassID(bytes, offset(index) + mFrameID.getSize());
+				}
+
+				public long getLocationMethodID(int index) throws JdwpRuntimeException {
+					return mLocation.readMethodID(bytes, offset(index) + mFrameID.getSize());
+				}
+
+				public long getLocationIndex(int index) throws JdwpRuntimeException {
+					return mLocation.readIndex(bytes, offset(index) + mFrameID.getSize());
+				}
+
+				private int offset(int index) {
+					if (index < 0 || index >= count) {
+						throw new IndexOutOfBoundsException("Index: " + index + ", size: " + count);
+					}
+					return start + index * stride;
+				}
+			}
+
+			public FramesReplyView view(byte[] bytes, int start) throws JdwpRuntimeException {
+				return new FramesReplyView(bytes, start);
+			}
 		}
 
 		/**
@@ -3961,12 +5192,37 @@ public class JDWP {
 			 * @param thread The thread object ID.
 			 */
 			public ByteBuffer encode(long thread) {
-				ByteBuffer bytes = encodeCommandPacket(11, 7);
+				ByteBuffer bytes = encodeCommandPacket(11, 7, getSize() - PACKET_HEADER_SIZE);
 				mThreadID.encode(thread, bytes);
 				setPacketLen(bytes);
 				return bytes;
 			}
 
+			/**
+			 * Exact packet size, same for all arguments.
+			 */
+			public int getSize() {
+				return PACKET_HEADER_SIZE + mThreadID.getSize();
+			}
+
+			/**
+			 * Write the whole packet into {@code dst} at {@code offset}.
+			 *
+			 * @return offset after the packet
+			 */
+			public int encode(byte[] dst, int offset, int packetID, long thread) {
+				offset = writeCommandHeader(dst, offset, getSize(), packetID, 11, 7);
+				return mThreadID.codec.write(dst, offset, thread);
+			}
+
+			/**
+			 * Write the whole packet at the position of big-endian {@code dst}.
+			 */
+			public void encode(java.nio.ByteBuffer dst, int packetID, long thread) {
+				writeCommandHeader(dst, getSize(), packetID, 11, 7);
+				mThreadID.codec.write(dst, thread);
+			}
+
 			public class FrameCountReplyData {
 				/**
 				 * The count of frames on this thread's stack.
@@ -4263,7 +5519,7 @@ public class JDWP {
 			public NameReplyData decode(byte[] bytes, int start) throws JdwpRuntimeException {
 				NameReplyData nameReplyData = new NameReplyData();
 				nameReplyData.groupName = JdwpString.decode(bytes, start);
-				start += JdwpString.getSize(nameReplyData.groupName);
+				start += JdwpString.getSize(bytes, start);
 				return nameReplyData;
 			}
 		}
@@ -4321,6 +5577,10 @@ public class JDWP {
 				 * The number of live child threads.
 				 */
 				public List<ChildrenReplyDataChildThreads> childThreads;
+				/**
+				 * The number of active child thread groups.
+				 */
+				public List<ChildrenReplyDataChildGroups> childGroups;
 			}
 
 			public class ChildrenReplyDataChildThreads {
@@ -4328,10 +5588,6 @@ public class JDWP {
 				 * A direct child thread ID.
 				 */
 				public long childThread;
-				/**
-				 * The number of active child thread groups.
-				 */
-				public List<ChildrenReplyDataChildGroups> childGroups;
 			}
 
 			public class ChildrenReplyDataChildGroups {
@@ -4350,18 +5606,18 @@ public class JDWP {
 					ChildrenReplyDataChildThreads childrenReplyDataChildThreads = new ChildrenReplyDataChildThreads();
 					childrenReplyDataChildThreads.childThread = mThreadID.decode(bytes, start);
 					start += mThreadID.getSize();
-
-					int childGroupsSize = JdwpInt.decode(bytes, start);
-					start += JdwpInt.getSize();
-					childrenReplyDataChildThreads.childGroups = new ArrayList<>(childGroupsSize);
-					for (int ii = 0; ii < childGroupsSize; ii++) {
-						ChildrenReplyDataChildGroups childrenReplyDataChildGroups = new ChildrenReplyDataChildGroups();
-						childrenReplyDataChildGroups.childGroup = mThreadGroupID.decode(bytes, start);
-						start += mThreadGroupID.getSize();
-						childrenReplyDataChildThreads.childGroups.add(childrenReplyDataChildGroups);
-					}
 					childrenReplyData.childThreads.add(childrenReplyDataChildThreads);
 				}
+
+				int childGroupsSize = JdwpInt.decode(bytes, start);
+				start += JdwpInt.getSize();
+				childrenReplyData.childGroups = new ArrayList<>(childGroupsSize);
+				for (int i = 0; i < childGroupsSize; i++) {
+					ChildrenReplyDataChildGroups childrenReplyDataChildGroups = new ChildrenReplyDataChildGroups();
+					childrenReplyDataChildGroups.childGroup = mThreadGroupID.decode(bytes, start);
+					start += mThreadGroupID.getSize();
+					childrenReplyData.childGroups.add(childrenReplyDataChildGroups);
+				}
 				return childrenReplyData;
 			}
 		}
@@ -4399,12 +5655,37 @@ public class JDWP {
 			 * @param arrayObject The array object ID.
 			 */
 			public ByteBuffer encode(long arrayObject) {
-				ByteBuffer bytes = encodeCommandPacket(13, 1);
+				ByteBuffer bytes = encodeCommandPacket(13, 1, getSize() - PACKET_HEADER_SIZE);
 				mArrayID.encode(arrayObject, bytes);
 				setPacketLen(bytes);
 				return bytes;
 			}
 
+			/**
+			 * Exact packet size, same for all arguments.
+			 */
+			public int getSize() {
+				return PACKET_HEADER_SIZE + mArrayID.getSize();
+			}
+
+			/**
+			 * Write the whole packet into {@code dst} at {@code offset}.
+			 *
+			 * @return offset after the packet
+			 */
+			public int encode(byte[] dst, int offset, int packetID, long arrayObject) {
+				offset = writeCommandHeader(dst, offset, getSize(), packetID, 13, 1);
+				return mArrayID.codec.write(dst, offset, arrayObject);
+			}
+
+			/**
+			 * Write the whole packet at the position of big-endian {@code dst}.
+			 */
+			public void encode(java.nio.ByteBuffer dst, int packetID, long arrayObject) {
+				writeCommandHeader(dst, getSize(), packetID, 13, 1);
+				mArrayID.codec.write(dst, arrayObject);
+			}
+
 			public class LengthReplyData {
 				/**
 				 * The length of the array.
@@ -4431,7 +5712,7 @@ public class JDWP {
 			 * @param length      The number of components to retrieve.
 			 */
 			public ByteBuffer encode(long arrayObject, int firstIndex, int length) {
-				ByteBuffer bytes = encodeCommandPacket(13, 2);
+				ByteBuffer bytes = encodeCommandPacket(13, 2, getSize() - PACKET_HEADER_SIZE);
 				mArrayID.encode(arrayObject, bytes);
 				JdwpInt.encode(firstIndex, bytes);
 				JdwpInt.encode(length, bytes);
@@ -4439,6 +5720,35 @@ public class JDWP {
 				return bytes;
 			}
 
+			/**
+			 * Exact packet size, same for all arguments.
+			 */
+			public int getSize() {
+				return PACKET_HEADER_SIZE + mArrayID.getSize() + 8;
+			}
+
+			/**
+			 * Write the whole packet into {@code dst} at {@code offset}.
+			 *
+			 * @return offset after the packet
+			 */
+			public int encode(byte[] dst, int offset, int packetID, long arrayObject, int firstIndex, int length) {
+				offset = writeCommandHeader(dst, offset, getSize(), packetID, 13, 2);
+				offset = mArrayID.codec.write(dst, offset, arrayObject);
+				offset = writeInt(dst, offset, firstIndex);
+				return writeInt(dst, offset, length);
+			}
+
+			/**
+			 * Write the whole packet at the position of big-endian {@code dst}.
+			 */
+			public void encode(java.nio.ByteBuffer dst, int packetID, long arrayObject, int firstIndex, int length) {
+				writeCommandHeader(dst, getSize(), packetID, 13, 2);
+				mArrayID.codec.write(dst, arrayObject);
+				dst.putInt(firstIndex);
+				dst.putInt(length);
+			}
+
 			public class GetValuesReplyData {
 				/**
 				 * The retrieved values. If the values are objects, they are tagged-values; otherwise, they are
@@ -4453,6 +5763,111 @@ public class JDWP {
 				start += mArrayregion.getSize(getValuesReplyData.values.arrayLen, getValuesReplyData.values.tag);
 				return getValuesReplyData;
 			}
+
+			// Typed decoders write the region straight into a primitive array at offset and return the number
+			// of values. The component type must match, e.g. decodeInts() fails for a long[] region.
+
+			public int decodeBytes(byte[] bytes, int start, byte[] dst, int offset) throws JdwpRuntimeException {
+				int count = primitiveRegion(bytes, start, Tag.BYTE, dst.length - offset);
+				System.arraycopy(bytes, start + 5, dst, offset, count);
+				return count;
+			}
+
+			public int decodeBooleans(byte[] bytes, int start, boolean[] dst, int offset) throws JdwpRuntimeException {
+				int count = primitiveRegion(bytes, start, Tag.BOOLEAN, dst.length - offset);
+				int pos = start + 5;
+				for (int i = 0; i < count; i++) {
+					dst[offset + i] = bytes[pos + i] != 0;
+				}
+				return count;
+			}
+
+			public int decodeChars(byte[] bytes, int start, char[] dst, int offset) throws JdwpRuntimeException {
+				int count = primitiveRegion(bytes, start, Tag.CHAR, dst.length - offset);
+				JdwpBulkCodec.getChars(bytes, start + 5, dst, offset, count);
+				return count;
+			}
+
+			public int decodeShorts(byte[] bytes, int start, short[] dst, int offset) throws JdwpRuntimeException {
+				int count = primitiveRegion(bytes, start, Tag.SHORT, dst.length - offset);
+				JdwpBulkCodec.getShorts(bytes, start + 5, dst, offset, count);
+				return count;
+			}
+
+			public int decodeInts(byte[] bytes, int start, int[] dst, int offset) throws JdwpRuntimeException {
+				int count = primitiveRegion(bytes, start, Tag.INT, dst.length - offset);
+				JdwpBulkCodec.getInts(bytes, start + 5, dst, offset, count);
+				return count;
+			}
+
+			public int decodeLongs(byte[] bytes, int start, long[] dst, int offset) throws JdwpRuntimeException {
+				int count = primitiveRegion(bytes, start, Tag.LONG, dst.length - offset);
+				JdwpBulkCodec.getLongs(bytes, start + 5, dst, offset, count);
+				return count;
+			}
+
+			public int decodeFloats(byte[] bytes, int start, float[] dst, int offset) throws JdwpRuntimeException {
+				int count = primitiveRegion(bytes, start, Tag.FLOAT, dst.length - offset);
+				JdwpBulkCodec.getFloats(bytes, start + 5, dst, offset, count);
+				return count;
+			}
+
+			public int decodeDoubles(byte[] bytes, int start, double[] dst, int offset) throws JdwpRuntimeException {
+				int count = primitiveRegion(bytes, start, Tag.DOUBLE, dst.length - offset);
+				JdwpBulkCodec.getDoubles(bytes, start + 5, dst, offset, count);
+				return count;
+			}
+
+			/**
+			 * Object IDs of an object array region, value tags are skipped.
+			 */
+			public int decodeIDs(byte[] bytes, int start, long[] dst, int offset) throws JdwpRuntimeException {
+				int tag = decodeByte(bytes, start);
+				if (valueTag.isPrimitive(tag)) {
+					throw new JdwpRuntimeException("Expected object array region, got " + (char) tag);
+				}
+				int idSize = mObjectID.getSize();
+				int count = regionCount(bytes, start, dst.length - offset, 1 + idSize);
+				int pos = start + 5;
+				for (int i = 0; i < count; i++, pos += 1 + idSize) {
+					dst[offset + i] = mObjectID.read(bytes, pos + 1);
+				}
+				return count;
+			}
+
+			/**
+			 * Copy raw big-endian values of a primitive region into {@code dst}, which can then be viewed with
+			 * {@code asIntBuffer()} and similar if it is big-endian.
+			 *
+			 * @return number of values
+			 */
+			public int decodePrimitives(byte[] bytes, int start, java.nio.ByteBuffer dst) throws JdwpRuntimeException {
+				int tag = decodeByte(bytes, start);
+				if (!valueTag.isPrimitive(tag)) {
+					throw new JdwpRuntimeException("Expected primitive array region, got " + (char) tag);
+				}
+				int size = valueTag.getSize(tag);
+				int count = regionCount(bytes, start, dst.remaining() / size, size);
+				dst.put(bytes, start + 5, count * size);
+				return count;
+			}
+
+			private int primitiveRegion(byte[] bytes, int start, int tag, int free) throws JdwpRuntimeException {
+				int regionTag = decodeByte(bytes, start);
+				if (regionTag != tag) {
+					throw new JdwpRuntimeException("Expected array region of " + (char) tag + ", got " + (char) regionTag);
+				}
+				return regionCount(bytes, start, free, valueTag.getSize(tag));
+			}
+
+			private int regionCount(byte[] bytes, int start, int free, int valueSize) throws JdwpRuntimeException {
+				int count = decodeInt(bytes, start + 1);
+				if (count > free) {
+					throw new JdwpRuntimeException("Can't decode " + count + " values into space for " + free);
+				}
+				checkCapability(bytes, start + 5, count, valueSize);
+				return count;
+			}
 		}
 
 		/**
@@ -4487,49 +5902,142 @@ public class JDWP {
 				return bytes;
 			}
 
-			public boolean decode(byte[] bytes, int start) throws JdwpRuntimeException {
-				return bytes.length == PACKET_HEADER_SIZE;
-			}
-		}
-	}
-
-	public class ClassLoaderReference {
-		private final VisibleClasses cmdVisibleClasses;
+			// Typed encoders set length values taken from a primitive array at offset, the component type
+			// must match.
 
-		public VisibleClasses cmdVisibleClasses() {
-			return cmdVisibleClasses;
-		}
+			public ByteBuffer encode(long arrayObject, int firstIndex, byte[] values, int offset, int length) {
+				ByteBuffer bytes = encodeRegion(arrayObject, firstIndex, length, 1);
+				bytes.addAll(values, offset, length);
+				setPacketLen(bytes);
+				return bytes;
+			}
 
-		private ClassLoaderReference() {
-			cmdVisibleClasses = new VisibleClasses();
-		}
+			public ByteBuffer encode(long arrayObject, int firstIndex, boolean[] values, int offset, int length) {
+				ByteBuffer bytes = encodeRegion(arrayObject, firstIndex, length, 1);
+				for (int i = offset, end = offset + length; i < end; i++) {
+					bytes.add((byte) (values[i] ? 1 : 0));
+				}
+				setPacketLen(bytes);
+				return bytes;
+			}
 
-		/**
-		 * Returns a list of all classes which this class loader has been requested to load. This class
-		 * loader is considered to be an initiating class loader for each class in the returned list. The
-		 * list contains each reference type defined by this loader and any types for which loading was
-		 * delegated by this class loader to another class loader.
-		 */
-		public class VisibleClasses {
+			public ByteBuffer encode(long arrayObject, int firstIndex, char[] values, int offset, int length) {
+				ByteBuffer bytes = encodeRegion(arrayObject, firstIndex, length, 2);
+				// reserve first, it may replace bytes.buf
+				int pos = bytes.reserve(length * 2);
+				JdwpBulkCodec.putChars(values, offset, bytes.buf, pos, length);
+				setPacketLen(bytes);
+				return bytes;
+			}
 
-			/**
-			 * @param classLoaderObject The class loader object ID.
-			 */
-			public ByteBuffer encode(long classLoaderObject) {
-				ByteBuffer bytes = encodeCommandPacket(14, 1);
-				mClassLoaderID.encode(classLoaderObject, bytes);
+			public ByteBuffer encode(long arrayObject, int firstIndex, short[] values, int offset, int length) {
+				ByteBuffer bytes = encodeRegion(arrayObject, firstIndex, length, 2);
+				// reserve first, it may replace bytes.buf
+				int pos = bytes.reserve(length * 2);
+				JdwpBulkCodec.putShorts(values, offset, bytes.buf, pos, length);
 				setPacketLen(bytes);
 				return bytes;
 			}
 
-			public class VisibleClassesReplyData {
-				/**
-				 * The number of visible classes.
-				 */
-				public List<VisibleClassesReplyDataClasses> classes;
+			public ByteBuffer encode(long arrayObject, int firstIndex, int[] values, int offset, int length) {
+				ByteBuffer bytes = encodeRegion(arrayObject, firstIndex, length, 4);
+				// reserve first, it may replace bytes.buf
+				int pos = bytes.reserve(length * 4);
+				JdwpBulkCodec.putInts(values, offset, bytes.buf, pos, length);
+				setPacketLen(bytes);
+				return bytes;
 			}
 
-			public class VisibleClassesReplyDataClasses {
+			public ByteBuffer encode(long arrayObject, int firstIndex, long[] values, int offset, int length) {
+				ByteBuffer bytes = encodeRegion(arrayObject, firstIndex, length, 8);
+				// reserve first, it may replace bytes.buf
+				int pos = bytes.reserve(length * 8);
+				JdwpBulkCodec.putLongs(values, offset, bytes.buf, pos, length);
+				setPacketLen(bytes);
+				return bytes;
+			}
+
+			public ByteBuffer encode(long arrayObject, int firstIndex, float[] values, int offset, int length) {
+				ByteBuffer bytes = encodeRegion(arrayObject, firstIndex, length, 4);
+				// reserve first, it may replace bytes.buf
+				int pos = bytes.reserve(length * 4);
+				JdwpBulkCodec.putFloats(values, offset, bytes.buf, pos, length);
+				setPacketLen(bytes);
+				return bytes;
+			}
+
+			public ByteBuffer encode(long arrayObject, int firstIndex, double[] values, int offset, int length) {
+				ByteBuffer bytes = encodeRegion(arrayObject, firstIndex, length, 8);
+				// reserve first, it may replace bytes.buf
+				int pos = bytes.reserve(length * 8);
+				JdwpBulkCodec.putDoubles(values, offset, bytes.buf, pos, length);
+				setPacketLen(bytes);
+				return bytes;
+			}
+
+			/**
+			 * Set elements of an object array to objects {@code ids}.
+			 */
+			public ByteBuffer encodeIDs(long arrayObject, int firstIndex, long[] ids, int offset, int length) {
+				ByteBuffer bytes = encodeRegion(arrayObject, firstIndex, length, mObjectID.getSize());
+				for (int i = offset, end = offset + length; i < end; i++) {
+					mObjectID.encode(ids[i], bytes);
+				}
+				setPacketLen(bytes);
+				return bytes;
+			}
+
+			private ByteBuffer encodeRegion(long arrayObject, int firstIndex, int length, int valueSize) {
+				ByteBuffer bytes = encodeCommandPacket(13, 3, mArrayID.getSize() + 8 + length * valueSize);
+				mArrayID.encode(arrayObject, bytes);
+				JdwpInt.encode(firstIndex, bytes);
+				JdwpInt.encode(length, bytes);
+				return bytes;
+			}
+
+			public boolean decode(byte[] bytes, int start) throws JdwpRuntimeException {
+				return bytes.length == PACKET_HEADER_SIZE;
+			}
+		}
+	}
+
+	public class ClassLoaderReference {
+		private final VisibleClasses cmdVisibleClasses;
+
+		public VisibleClasses cmdVisibleClasses() {
+			return cmdVisibleClasses;
+		}
+
+		private ClassLoaderReference() {
+			cmdVisibleClasses = new VisibleClasses();
+		}
+
+		/**
+		 * Returns a list of all classes which this class loader has been requested to load. This class
+		 * loader is considered to be an initiating class loader for each class in the returned list. The
+		 * list contains each reference type defined by this loader and any types for which loading was
+		 * delegated by this class loader to another class loader.
+		 */
+		public class VisibleClasses {
+
+			/**
+			 * @param classLoaderObject The class loader object ID.
+			 */
+			public ByteBuffer encode(long classLoaderObject) {
+				ByteBuffer bytes = encodeCommandPacket(14, 1);
+				mClassLoaderID.encode(classLoaderObject, bytes);
+				setPacketLen(bytes);
+				return bytes;
+			}
+
+			public class VisibleClassesReplyData {
+				/**
+				 * The number of visible classes.
+				 */
+				public List<VisibleClassesReplyDataClasses> classes;
+			}
+
+			public class VisibleClassesReplyDataClasses {
 				/**
 				 * Kind of following reference type.
 				 */
@@ -5352,6 +6860,16 @@ public class JDWP {
 				}
 				return getValuesReplyData;
 			}
+
+			/**
+			 * Decode the slot values into {@code tags[i]} and {@code bits[i]} without allocation, see {@link TaggedValue}
+			 * for the bits format. Arrays must hold {@code decodeInt(bytes, start)} values.
+			 *
+			 * @return number of values
+			 */
+			public int decodeValues(byte[] bytes, int start, byte[] tags, long[] bits) throws JdwpRuntimeException {
+				return decodeTaggedValues(bytes, start, tags, bits);
+			}
 		}
 
 		/**
@@ -5515,6 +7033,10 @@ public class JDWP {
 			cmdComposite = new Composite();
 		}
 
+		public Dispatcher newDispatcher() {
+			return new Dispatcher();
+		}
+
 		/**
 		 * The events that are grouped in a composite event are restricted in the following ways:
 		 * Only with other thread start events for the same thread:
@@ -6169,7 +7691,7 @@ public class JDWP {
 					classPrepareEvent.typeID = mReferenceTypeID.decode(bytes, start);
 					start += mReferenceTypeID.getSize();
 					classPrepareEvent.signature = JdwpString.decode(bytes, start);
-					start += JdwpString.getSize(classPrepareEvent.signature);
+					start += JdwpString.getSize(bytes, start);
 					classPrepareEvent.status = JdwpInt.decode(bytes, start);
 					start += JdwpInt.getSize();
 					starts[0] = start;
@@ -6200,7 +7722,7 @@ public class JDWP {
 					classUnloadEvent.requestID = JdwpInt.decode(bytes, start);
 					start += JdwpInt.getSize();
 					classUnloadEvent.signature = JdwpString.decode(bytes, start);
-					start += JdwpString.getSize(classUnloadEvent.signature);
+					start += JdwpString.getSize(bytes, start);
 					starts[0] = start;
 					return classUnloadEvent;
 				}
@@ -6358,6 +7880,487 @@ public class JDWP {
 				}
 			}
 		}
+
+		/**
+		 * Decodes Composite event packets directly into registered handlers without allocating event
+		 * objects. Events of a kind without a handler are skipped. Handlers should be set before the
+		 * dispatcher is shared; {@link #dispatch} itself keeps no state.
+		 */
+		public class Dispatcher {
+			private EventHandlers.ThreadHandler vmStart;
+			private EventHandlers.LocationHandler singleStep;
+			private EventHandlers.LocationHandler breakpoint;
+			private EventHandlers.LocationHandler methodEntry;
+			private EventHandlers.LocationHandler methodExit;
+			private EventHandlers.ReturnValueHandler methodExitWithReturnValue;
+			private EventHandlers.MonitorHandler monitorContendedEnter;
+			private EventHandlers.MonitorHandler monitorContendedEntered;
+			private EventHandlers.MonitorWaitHandler monitorWait;
+			private EventHandlers.MonitorWaitedHandler monitorWaited;
+			private EventHandlers.ExceptionHandler exception;
+			private EventHandlers.ThreadHandler threadStart;
+			private EventHandlers.ThreadHandler threadDeath;
+			private EventHandlers.ClassPrepareHandler classPrepare;
+			private EventHandlers.ClassUnloadHandler classUnload;
+			private EventHandlers.FieldAccessHandler fieldAccess;
+			private EventHandlers.FieldModificationHandler fieldModification;
+			private EventHandlers.VMDeathHandler vmDeath;
+
+			private final int threadSize = mThreadID.getSize();
+			private final int objectSize = mObjectID.getSize();
+			private final int typeSize = mReferenceTypeID.getSize();
+			private final int fieldSize = mFieldID.getSize();
+			private final int locSize = mLocation.getSize();
+
+			private Dispatcher() {
+			}
+
+			public Dispatcher onVMStart(EventHandlers.ThreadHandler handler) {
+				vmStart = handler;
+				return this;
+			}
+
+			public Dispatcher onSingleStep(EventHandlers.LocationHandler handler) {
+				singleStep = handler;
+				return this;
+			}
+
+			public Dispatcher onBreakpoint(EventHandlers.LocationHandler handler) {
+				breakpoint = handler;
+				return this;
+			}
+
+			public Dispatcher onMethodEntry(EventHandlers.LocationHandler handler) {
+				methodEntry = handler;
+				return this;
+			}
+
+			public Dispatcher onMethodExit(EventHandlers.LocationHandler handler) {
+				methodExit = handler;
+				return this;
+			}
+
+			public Dispatcher onMethodExitWithReturnValue(EventHandlers.ReturnValueHandler handler) {
+				methodExitWithReturnValue = handler;
+				return this;
+			}
+
+			public Dispatcher onMonitorContendedEnter(EventHandlers.MonitorHandler handler) {
+				monitorContendedEnter = handler;
+				return this;
+			}
+
+			public Dispatcher onMonitorContendedEntered(EventHandlers.MonitorHandler handler) {
+				monitorContendedEntered = handler;
+				return this;
+			}
+
+			public Dispatcher onMonitorWait(EventHandlers.MonitorWaitHandler handler) {
+				monitorWait = handler;
+				return this;
+			}
+
+			public Dispatcher onMonitorWaited(EventHandlers.MonitorWaitedHandler handler) {
+				monitorWaited = handler;
+				return this;
+			}
+
+			public Dispatcher onException(EventHandlers.ExceptionHandler handler) {
+				exception = handler;
+				return this;
+			}
+
+			public Dispatcher onThreadStart(EventHandlers.ThreadHandler handler) {
+				threadStart = handler;
+				return this;
+			}
+
+			public Dispatcher onThreadDeath(EventHandlers.ThreadHandler handler) {
+				threadDeath = handler;
+				return this;
+			}
+
+			public Dispatcher onClassPrepare(EventHandlers.ClassPrepareHandler handler) {
+				classPrepare = handler;
+				return this;
+			}
+
+			public Dispatcher onClassUnload(EventHandlers.ClassUnloadHandler handler) {
+				classUnload = handler;
+				return this;
+			}
+
+			public Dispatcher onFieldAccess(EventHandlers.FieldAccessHandler handler) {
+				fieldAccess = handler;
+				return this;
+			}
+
+			public Dispatcher onFieldModification(EventHandlers.FieldModificationHandler handler) {
+				fieldModification = handler;
+				return this;
+			}
+
+			public Dispatcher onVMDeath(EventHandlers.VMDeathHandler handler) {
+				vmDeath = handler;
+				return this;
+			}
+
+			/**
+			 * @return suspendPolicy of the composite event
+			 */
+			public byte dispatch(byte[] bytes, int start) throws JdwpRuntimeException {
+				byte suspendPolicy = decodeByte(bytes, start);
+				int events = decodeInt(bytes, start + 1);
+				start += 5;
+				for (int i = 0; i < events; i++) {
+					start = dispatchEvent(bytes, start);
+				}
+				return suspendPolicy;
+			}
+
+			private int dispatchEvent(byte[] bytes, int start) throws JdwpRuntimeException {
+				byte eventKind = decodeByte(bytes, start);
+				int requestID = decodeInt(bytes, start + 1);
+				start += 5;
+				switch (eventKind) {
+					case JDWP.EventKind.VM_START:
+						return thread(vmStart, bytes, start, requestID);
+					case JDWP.EventKind.THREAD_START:
+						return thread(threadStart, bytes, start, requestID);
+					case JDWP.EventKind.THREAD_DEATH:
+						return thread(threadDeath, bytes, start, requestID);
+					case JDWP.EventKind.SINGLE_STEP:
+						return location(singleStep, bytes, start, requestID);
+					case JDWP.EventKind.BREAKPOINT:
+						return location(breakpoint, bytes, start, requestID);
+					case JDWP.EventKind.METHOD_ENTRY:
+						return location(methodEntry, bytes, start, requestID);
+					case JDWP.EventKind.METHOD_EXIT:
+						return location(methodExit, bytes, start, requestID);
+					case JDWP.EventKind.METHOD_EXIT_WITH_RETURN_VALUE: {
+						int loc = start + threadSize;
+						int value = loc + locSize;
+						byte tag = decodeByte(bytes, value);
+						int valueSize = valueTag.getSize(tag);
+						if (methodExitWithReturnValue != null) {
+							methodExitWithReturnValue.handle(requestID, decodeBySize(bytes, start, threadSize),
+									decodeByte(bytes, loc), locClassID(bytes, loc), locMethodID(bytes, loc), locIndex(bytes, loc),
+									tag, decodeBySize(bytes, value + 1, valueSize));
+						}
+						return value + 1 + valueSize;
+					}
+					case JDWP.EventKind.MONITOR_CONTENDED_ENTER:
+						return monitor(monitorContendedEnter, bytes, start, requestID);
+					case JDWP.EventKind.MONITOR_CONTENDED_ENTERED:
+						return monitor(monitorContendedEntered, bytes, start, requestID);
+					case JDWP.EventKind.MONITOR_WAIT: {
+						int obj = start + threadSize;
+						int loc = obj + 1 + objectSize;
+						int end = loc + locSize;
+						if (monitorWait != null) {
+							monitorWait.handle(requestID, decodeBySize(bytes, start, threadSize),
+									decodeByte(bytes, obj), decodeBySize(bytes, obj + 1, objectSize),
+									decodeByte(bytes, loc), locClassID(bytes, loc), locMethodID(bytes, loc), locIndex(bytes, loc),
+									decodeBySize(bytes, end, 8));
+						}
+						return end + 8;
+					}
+					case JDWP.EventKind.MONITOR_WAITED: {
+						int obj = start + threadSize;
+						int loc = obj + 1 + objectSize;
+						int end = loc + locSize;
+						if (monitorWaited != null) {
+							monitorWaited.handle(requestID, decodeBySize(bytes, start, threadSize),
+									decodeByte(bytes, obj), decodeBySize(bytes, obj + 1, objectSize),
+									decodeByte(bytes, loc), locClassID(bytes, loc), locMethodID(bytes, loc), locIndex(bytes, loc),
+									decodeBoolean(bytes, end));
+						}
+						return end + 1;
+					}
+					case JDWP.EventKind.EXCEPTION: {
+						int loc = start + threadSize;
+						int obj = loc + locSize;
+						int catchLoc = obj + 1 + objectSize;
+						if (exception != null) {
+							exception.handle(requestID, decodeBySize(bytes, start, threadSize),
+									decodeByte(bytes, loc), locClassID(bytes, loc), locMethodID(bytes, loc), locIndex(bytes, loc),
+									decodeByte(bytes, obj), decodeBySize(bytes, obj + 1, objectSize),
+									decodeByte(bytes, catchLoc), locClassID(bytes, catchLoc), locMethodID(bytes, catchLoc),
+									locIndex(bytes, catchLoc));
+						}
+						return catchLoc + locSize;
+					}
+					case JDWP.EventKind.CLASS_PREPARE: {
+						int type = start + threadSize;
+						int sig = type + 1 + typeSize;
+						int status = sig + JdwpString.skip(bytes, sig);
+						if (classPrepare != null) {
+							classPrepare.handle(requestID, decodeBySize(bytes, start, threadSize),
+									decodeByte(bytes, type), decodeBySize(bytes, type + 1, typeSize),
+									JdwpString.decode(bytes, sig), decodeInt(bytes, status));
+						}
+						return status + 4;
+					}
+					case JDWP.EventKind.CLASS_UNLOAD: {
+						int end = start + JdwpString.skip(bytes, start);
+						if (classUnload != null) {
+							classUnload.handle(requestID, JdwpString.decode(bytes, start));
+						}
+						return end;
+					}
+					case JDWP.EventKind.FIELD_ACCESS: {
+						int loc = start + threadSize;
+						int type = loc + locSize;
+						int field = type + 1 + typeSize;
+						int obj = field + fieldSize;
+						if (fieldAccess != null) {
+							fieldAccess.handle(requestID, decodeBySize(bytes, start, threadSize),
+									decodeByte(bytes, loc), locClassID(bytes, loc), locMethodID(bytes, loc), locIndex(bytes, loc),
+									decodeByte(bytes, type), decodeBySize(bytes, type + 1, typeSize),
+									decodeBySize(bytes, field, fieldSize),
+									decodeByte(bytes, obj), decodeBySize(bytes, obj + 1, objectSize));
+						}
+						return obj + 1 + objectSize;
+					}
+					case JDWP.EventKind.FIELD_MODIFICATION: {
+						int loc = start + threadSize;
+						int type = loc + locSize;
+						int field = type + 1 + typeSize;
+						int obj = field + fieldSize;
+						int value = obj + 1 + objectSize;
+						byte tag = decodeByte(bytes, value);
+						int valueSize = valueTag.getSize(tag);
+						if (fieldModification != null) {
+							fieldModification.handle(requestID, decodeBySize(bytes, start, threadSize),
+									decodeByte(bytes, loc), locClassID(bytes, loc), locMethodID(bytes, loc), locIndex(bytes, loc),
+									decodeByte(bytes, type), decodeBySize(bytes, type + 1, typeSize),
+									decodeBySize(bytes, field, fieldSize),
+									decodeByte(bytes, obj), decodeBySize(bytes, obj + 1, objectSize),
+									tag, decodeBySize(bytes, value + 1, valueSize));
+						}
+						return value + 1 + valueSize;
+					}
+					case JDWP.EventKind.VM_DEATH:
+						if (vmDeath != null) {
+							vmDeath.handle(requestID);
+						}
+						return start;
+				}
+				throw new JdwpRuntimeException("Unexpected event kind: " + eventKind);
+			}
+
+			private int thread(EventHandlers.ThreadHandler handler, byte[] bytes, int start, int requestID)
+					throws JdwpRuntimeException {
+				if (handler != null) {
+					handler.handle(requestID, decodeBySize(bytes, start, threadSize));
+				}
+				return start + threadSize;
+			}
+
+			private int location(EventHandlers.LocationHandler handler, byte[] bytes, int start, int requestID)
+					throws JdwpRuntimeException {
+				int loc = start + threadSize;
+				if (handler != null) {
+					handler.handle(requestID, decodeBySize(bytes, start, threadSize),
+							decodeByte(bytes, loc), locClassID(bytes, loc), locMethodID(bytes, loc), locIndex(bytes, loc));
+				}
+				return loc + locSize;
+			}
+
+			private int monitor(EventHandlers.MonitorHandler handler, byte[] bytes, int start, int requestID)
+					throws JdwpRuntimeException {
+				int obj = start + threadSize;
+				int loc = obj + 1 + objectSize;
+				if (handler != null) {
+					handler.handle(requestID, decodeBySize(bytes, start, threadSize),
+							decodeByte(bytes, obj), decodeBySize(bytes, obj + 1, objectSize),
+							decodeByte(bytes, loc), locClassID(bytes, loc), locMethodID(bytes, loc), locIndex(bytes, loc));
+				}
+				return loc + locSize;
+			}
+
+			private long locClassID(byte[] bytes, int loc) throws JdwpRuntimeException {
+				return decodeBySize(bytes, loc + 1, mLocation.classIDSize);
+			}
+
+			private long locMethodID(byte[] bytes, int loc) throws JdwpRuntimeException {
+				return decodeBySize(bytes, loc + 1 + mLocation.classIDSize, mLocation.methodIDSize);
+			}
+
+			private long locIndex(byte[] bytes, int loc) throws JdwpRuntimeException {
+				return decodeBySize(bytes, loc + 1 + mLocation.size, 8);
+			}
+		}
+	}
+
+	/**
+	 * Callbacks for {@link Event.Dispatcher}. Locations are passed as {@code locTag, classID, methodID,
+	 * index}, tagged objects as {@code tag, objectID} and values as {@code tag, bits} where {@code bits}
+	 * holds the big-endian value bytes (object ID for reference tags, raw IEEE bits for float and
+	 * double, zero-extended for the other primitives).
+	 */
+	public interface EventHandlers {
+		interface ThreadHandler {
+			void handle(int requestID, long thread);
+		}
+
+		interface LocationHandler {
+			void handle(int requestID, long thread, byte locTag, long classID, long methodID, long index);
+		}
+
+		interface ReturnValueHandler {
+			void handle(int requestID, long thread, byte locTag, long classID, long methodID, long index,
+					byte valueTag, long valueBits);
+		}
+
+		interface MonitorHandler {
+			void handle(int requestID, long thread, byte objectTag, long object,
+					byte locTag, long classID, long methodID, long index);
+		}
+
+		interface MonitorWaitHandler {
+			void handle(int requestID, long thread, byte objectTag, long object,
+					byte locTag, long classID, long methodID, long index, long timeout);
+		}
+
+		interface MonitorWaitedHandler {
+			void handle(int requestID, long thread, byte objectTag, long object,
+					byte locTag, long classID, long methodID, long index, boolean timedOut);
+		}
+
+		interface ExceptionHandler {
+			void handle(int requestID, long thread, byte locTag, long classID, long methodID, long index,
+					byte exceptionTag, long exception,
+					byte catchLocTag, long catchClassID, long catchMethodID, long catchIndex);
+		}
+
+		interface ClassPrepareHandler {
+			void handle(int requestID, long thread, byte refTypeTag, long typeID, String signature, int status);
+		}
+
+		interface ClassUnloadHandler {
+			void handle(int requestID, String signature);
+		}
+
+		interface FieldAccessHandler {
+			void handle(int requestID, long thread, byte locTag, long classID, long methodID, long index,
+					byte refTypeTag, long typeID, long fieldID, byte objectTag, long object);
+		}
+
+		interface FieldModificationHandler {
+			void handle(int requestID, long thread, byte locTag, long classID, long methodID, long index,
+					byte refTypeTag, long typeID, long fieldID, byte objectTag, long object,
+					byte valueTag, long valueBits);
+		}
+
+		interface VMDeathHandler {
+			void handle(int requestID);
+		}
+	}
+
+	/**
+	 * Incremental decoder for reply data received in chunks, see {@link #streamReply} and
+	 * {@link JdwpClient#send(ByteBuffer, ReplyStreamDecoder)}.
+	 */
+	public interface ReplyStreamDecoder {
+		/**
+		 * Decode complete elements between position and limit of {@code data} and move position past them.
+		 * Bytes of an incomplete element are left in place and passed again with more data.
+		 */
+		void decode(java.nio.ByteBuffer data) throws JdwpRuntimeException;
+
+		/**
+		 * @return true when all reply data is decoded
+		 */
+		boolean isComplete();
+	}
+
+	/**
+	 * Element callbacks of {@link ReplyStreamDecoder}s.
+	 */
+	public interface StreamHandlers {
+		interface ClassHandler {
+			void handle(byte refTypeTag, long typeID, String signature, String genericSignature, int status);
+		}
+
+		interface TaggedObjectHandler {
+			void handle(byte tag, long objectID);
+		}
+	}
+
+	/**
+	 * Reply data with a four-byte element count followed by the elements.
+	 */
+	private abstract static class ListStreamDecoder implements ReplyStreamDecoder {
+		private int remaining = -1;
+
+		@Override
+		public void decode(java.nio.ByteBuffer data) throws JdwpRuntimeException {
+			int pos = data.position();
+			int limit = data.limit();
+			if (remaining < 0) {
+				if (limit - pos < 4) {
+					return;
+				}
+				remaining = decodeInt(data, pos);
+				if (remaining < 0) {
+					throw new JdwpRuntimeException("Negative element count: " + remaining);
+				}
+				pos += 4;
+			}
+			while (remaining > 0) {
+				int size = decodeElement(data, pos, limit - pos);
+				if (size < 0) {
+					break;
+				}
+				pos += size;
+				remaining--;
+			}
+			((Buffer) data).position(pos);
+		}
+
+		/**
+		 * @return element size or -1 if {@code available} bytes do not hold a complete element
+		 */
+		abstract int decodeElement(java.nio.ByteBuffer data, int start, int available) throws JdwpRuntimeException;
+
+		/**
+		 * @return length of the string at {@code start} or -1 if its length is not available yet
+		 */
+		static int stringLength(java.nio.ByteBuffer data, int start, int end) throws JdwpRuntimeException {
+			if (end - start < 4) {
+				return -1;
+			}
+			int len = decodeInt(data, start);
+			if (len < 0) {
+				throw new JdwpRuntimeException("Negative string length: " + len);
+			}
+			return len;
+		}
+
+		@Override
+		public boolean isComplete() {
+			return remaining == 0;
+		}
+	}
+
+	private static final class TaggedObjectStreamDecoder extends ListStreamDecoder {
+		private final int objectIDSize;
+		private final StreamHandlers.TaggedObjectHandler handler;
+
+		TaggedObjectStreamDecoder(int objectIDSize, StreamHandlers.TaggedObjectHandler handler) {
+			this.objectIDSize = objectIDSize;
+			this.handler = handler;
+		}
+
+		@Override
+		int decodeElement(java.nio.ByteBuffer data, int start, int available) throws JdwpRuntimeException {
+			if (available < 1 + objectIDSize) {
+				return -1;
+			}
+			handler.handle(decodeByte(data, start), decodeBySize(data, start + 1, objectIDSize));
+			return 1 + objectIDSize;
+		}
 	}
 
 	public interface EventRequestDecoder {
@@ -6923,6 +8926,10 @@ public class JDWP {
 			return decodeByte(bytes, start);
 		}
 
+		static byte decode(java.nio.ByteBuffer bytes, int start) throws JdwpRuntimeException {
+			return decodeByte(bytes, start);
+		}
+
 		static void encode(byte val, ByteBuffer bytes) {
 			JDWP.encodeByte(bytes, val);
 		}
@@ -6961,6 +8968,10 @@ public class JDWP {
 			return decodeInt(bytes, start);
 		}
 
+		static int decode(java.nio.ByteBuffer bytes, int start) throws JdwpRuntimeException {
+			return decodeInt(bytes, start);
+		}
+
 		static void encode(int val, ByteBuffer bytes) {
 			JDWP.encodeInt(bytes, val);
 		}
@@ -6990,6 +9001,134 @@ public class JDWP {
 
 	}
 
+	/**
+	 * Big-endian reader and writer for one ID size. Picked once per {@link JDWP} instance from the ID sizes
+	 * of the target VM, so with the usual 8-byte IDs only {@link Id8Codec} is in use and calls to it inline.
+	 */
+	private abstract static class IdCodec {
+		final int size;
+
+		IdCodec(int size) {
+			this.size = size;
+		}
+
+		static IdCodec forSize(int size) {
+			switch (size) {
+				case 8:
+					return Id8Codec.INSTANCE;
+				case 4:
+					return Id4Codec.INSTANCE;
+				default:
+					return new IdNCodec(size);
+			}
+		}
+
+		final long decode(byte[] bytes, int start) throws JdwpRuntimeException {
+			checkCapability(bytes, start, size);
+			return read(bytes, start);
+		}
+
+		abstract long read(byte[] bytes, int start);
+
+		abstract void write(ByteBuffer bytes, long val);
+
+		/**
+		 * Unchecked write, bounds must be checked by caller.
+		 *
+		 * @return offset after the ID
+		 */
+		abstract int write(byte[] dst, int offset, long val);
+
+		abstract void write(java.nio.ByteBuffer dst, long val);
+	}
+
+	private static final class Id8Codec extends IdCodec {
+		static final Id8Codec INSTANCE = new Id8Codec();
+
+		private Id8Codec() {
+			super(8);
+		}
+
+		@Override
+		long read(byte[] bytes, int start) {
+			return readLong(bytes, start);
+		}
+
+		@Override
+		void write(ByteBuffer bytes, long val) {
+			bytes.addLong(val);
+		}
+
+		@Override
+		int write(byte[] dst, int offset, long val) {
+			return writeLong(dst, offset, val);
+		}
+
+		@Override
+		void write(java.nio.ByteBuffer dst, long val) {
+			dst.putLong(val);
+		}
+	}
+
+	private static final class Id4Codec extends IdCodec {
+		static final Id4Codec INSTANCE = new Id4Codec();
+
+		private Id4Codec() {
+			super(4);
+		}
+
+		@Override
+		long read(byte[] bytes, int start) {
+			return readInt(bytes, start) & 0xffffffffL;
+		}
+
+		@Override
+		void write(ByteBuffer bytes, long val) {
+			bytes.addInt((int) val);
+		}
+
+		@Override
+		int write(byte[] dst, int offset, long val) {
+			return writeInt(dst, offset, (int) val);
+		}
+
+		@Override
+		void write(java.nio.ByteBuffer dst, long val) {
+			dst.putInt((int) val);
+		}
+	}
+
+	private static final class IdNCodec extends IdCodec {
+		IdNCodec(int size) {
+			super(size);
+		}
+
+		@Override
+		long read(byte[] bytes, int start) {
+			return readBySize(bytes, start, size);
+		}
+
+		@Override
+		void write(ByteBuffer bytes, long val) {
+			encodeBySize(bytes, size, val);
+		}
+
+		@Override
+		int write(byte[] dst, int offset, long val) {
+			for (int i = size - 1; i >= 0; i--) {
+				dst[offset++] = (byte) (val >> (i * 8));
+			}
+			return offset;
+		}
+
+		@Override
+		void write(java.nio.ByteBuffer dst, long val) {
+			for (int i = size - 1; i >= 0; i--) {
+				dst.put((byte) (val >> (i * 8)));
+			}
+		}
+	}
+
 	/**
 	 * Uniquely identifies an object in the target VM. A particular object will be identified by exactly
 	 * one objectID in JDWP commands and replies throughout its lifetime (or until the objectID is
@@ -7002,17 +9141,26 @@ public class JDWP {
 	 */
 	private static class JdwpObjectID {
 		private final int size;
+		private final IdCodec codec;
 
 		JdwpObjectID(int objectIDSize) {
 			this.size = objectIDSize;
+			this.codec = IdCodec.forSize(objectIDSize);
 		}
 
 		long decode(byte[] bytes, int start) throws JdwpRuntimeException {
-			return decodeBySize(bytes, start, getSize());
+			return codec.decode(bytes, start);
+		}
+
+		/**
+		 * Unchecked read, bounds must be checked by caller.
+		 */
+		long read(byte[] bytes, int start) {
+			return codec.read(bytes, start);
 		}
 
 		void encode(long val, ByteBuffer bytes) {
-			encodeBySize(bytes, getSize(), val);
+			codec.write(bytes, val);
 		}
 
 		int getSize() {
@@ -7028,21 +9176,24 @@ public class JDWP {
 	 */
 	private static class JdwpTaggedobjectID {
 		private final int size;
+		private final IdCodec codec;
 
 		JdwpTaggedobjectID(int objectIDSize) {
 			this.size = objectIDSize;
+			this.codec = IdCodec.forSize(objectIDSize);
 		}
 
 		TaggedObjectIDPacket decode(byte[] bytes, int start) throws JdwpRuntimeException {
+			checkCapability(bytes, start, getSize());
 			TaggedObjectIDPacket taggedObjectIDPacket = new TaggedObjectIDPacket();
-			taggedObjectIDPacket.tag = decodeByte(bytes, start);
-			taggedObjectIDPacket.objectID = decodeBySize(bytes, start + 1, size);
+			taggedObjectIDPacket.tag = bytes[start];
+			taggedObjectIDPacket.objectID = codec.read(bytes, start + 1);
 			return taggedObjectIDPacket;
 		}
 
 		void encode(TaggedObjectIDPacket val, ByteBuffer bytes) {
 			JDWP.encodeByte(bytes, (byte) val.tag);
-			encodeBySize(bytes, size, val.objectID);
+			codec.write(bytes, val.objectID);
 		}
 
 		int getSize() {
@@ -7060,17 +9211,30 @@ public class JDWP {
 	 */
 	private static class JdwpThreadID {
 		private final int size;
+		private final IdCodec codec;
 
 		JdwpThreadID(int objectIDSize) {
 			this.size = objectIDSize;
+			this.codec = IdCodec.forSize(objectIDSize);
 		}
 
 		long decode(byte[] bytes, int start) throws JdwpRuntimeException {
+			return codec.decode(bytes, start);
+		}
+
+		/**
+		 * Unchecked read, bounds must be checked by caller.
+		 */
+		long read(byte[] bytes, int start) {
+			return codec.read(bytes, start);
+		}
+
+		long decode(java.nio.ByteBuffer bytes, int start) throws JdwpRuntimeException {
 			return decodeBySize(bytes, start, getSize());
 		}
 
 		void encode(long val, ByteBuffer bytes) {
-			encodeBySize(bytes, getSize(), val);
+			codec.write(bytes, val);
 		}
 
 		int getSize() {
@@ -7084,17 +9248,26 @@ public class JDWP {
 	 */
 	private static class JdwpThreadGroupID {
 		private final int size;
+		private final IdCodec codec;
 
 		JdwpThreadGroupID(int objectIDSize) {
 			this.size = objectIDSize;
+			this.codec = IdCodec.forSize(objectIDSize);
 		}
 
 		long decode(byte[] bytes, int start) throws JdwpRuntimeException {
-			return decodeBySize(bytes, start, getSize());
+			return codec.decode(bytes, start);
+		}
+
+		/**
+		 * Unchecked read, bounds must be checked by caller.
+		 */
+		long read(byte[] bytes, int start) {
+			return codec.read(bytes, start);
 		}
 
 		void encode(long val, ByteBuffer bytes) {
-			encodeBySize(bytes, getSize(), val);
+			codec.write(bytes, val);
 		}
 
 		int getSize() {
@@ -7109,17 +9282,26 @@ public class JDWP {
 	 */
 	private static class JdwpStringID {
 		private final int size;
+		private final IdCodec codec;
 
 		JdwpStringID(int objectIDSize) {
 			this.size = objectIDSize;
+			this.codec = IdCodec.forSize(objectIDSize);
 		}
 
 		long decode(byte[] bytes, int start) throws JdwpRuntimeException {
-			return decodeBySize(bytes, start, getSize());
+			return codec.decode(bytes, start);
+		}
+
+		/**
+		 * Unchecked read, bounds must be checked by caller.
+		 */
+		long read(byte[] bytes, int start) {
+			return codec.read(bytes, start);
 		}
 
 		void encode(long val, ByteBuffer bytes) {
-			encodeBySize(bytes, getSize(), val);
+			codec.write(bytes, val);
 		}
 
 		int getSize() {
@@ -7133,17 +9315,26 @@ public class JDWP {
 	 */
 	private static class JdwpModuleID {
 		private final int size;
+		private final IdCodec codec;
 
 		JdwpModuleID(int objectIDSize) {
 			this.size = objectIDSize;
+			this.codec = IdCodec.forSize(objectIDSize);
 		}
 
 		long decode(byte[] bytes, int start) throws JdwpRuntimeException {
-			return decodeBySize(bytes, start, getSize());
+			return codec.decode(bytes, start);
+		}
+
+		/**
+		 * Unchecked read, bounds must be checked by caller.
+		 */
+		long read(byte[] bytes, int start) {
+			return codec.read(bytes, start);
 		}
 
 		void encode(long val, ByteBuffer bytes) {
-			encodeBySize(bytes, getSize(), val);
+			codec.write(bytes, val);
 		}
 
 		int getSize() {
@@ -7157,17 +9348,26 @@ public class JDWP {
 	 */
 	private static class JdwpClassLoaderID {
 		private final int size;
+		private final IdCodec codec;
 
 		JdwpClassLoaderID(int objectIDSize) {
 			this.size = objectIDSize;
+			this.codec = IdCodec.forSize(objectIDSize);
 		}
 
 		long decode(byte[] bytes, int start) throws JdwpRuntimeException {
-			return decodeBySize(bytes, start, getSize());
+			return codec.decode(bytes, start);
+		}
+
+		/**
+		 * Unchecked read, bounds must be checked by caller.
+		 */
+		long read(byte[] bytes, int start) {
+			return codec.read(bytes, start);
 		}
 
 		void encode(long val, ByteBuffer bytes) {
-			encodeBySize(bytes, getSize(), val);
+			codec.write(bytes, val);
 		}
 
 		int getSize() {
@@ -7181,17 +9381,26 @@ public class JDWP {
 	 */
 	private static class JdwpClassObjectID {
 		private final int size;
+		private final IdCodec codec;
 
 		JdwpClassObjectID(int objectIDSize) {
 			this.size = objectIDSize;
+			this.codec = IdCodec.forSize(objectIDSize);
 		}
 
 		long decode(byte[] bytes, int start) throws JdwpRuntimeException {
-			return decodeBySize(bytes, start, getSize());
+			return codec.decode(bytes, start);
+		}
+
+		/**
+		 * Unchecked read, bounds must be checked by caller.
+		 */
+		long read(byte[] bytes, int start) {
+			return codec.read(bytes, start);
 		}
 
 		void encode(long val, ByteBuffer bytes) {
-			encodeBySize(bytes, getSize(), val);
+			codec.write(bytes, val);
 		}
 
 		int getSize() {
@@ -7205,17 +9414,26 @@ public class JDWP {
 	 */
 	private static class JdwpArrayID {
 		private final int size;
+		private final IdCodec codec;
 
 		JdwpArrayID(int objectIDSize) {
 			this.size = objectIDSize;
+			this.codec = IdCodec.forSize(objectIDSize);
 		}
 
 		long decode(byte[] bytes, int start) throws JdwpRuntimeException {
-			return decodeBySize(bytes, start, getSize());
+			return codec.decode(bytes, start);
+		}
+
+		/**
+		 * Unchecked read, bounds must be checked by caller.
+		 */
+		long read(byte[] bytes, int start) {
+			return codec.read(bytes, start);
 		}
 
 		void encode(long val, ByteBuffer bytes) {
-			encodeBySize(bytes, getSize(), val);
+			codec.write(bytes, val);
 		}
 
 		int getSize() {
@@ -7233,17 +9451,30 @@ public class JDWP {
 	 */
 	private static class JdwpReferenceTypeID {
 		private final int size;
+		private final IdCodec codec;
 
 		JdwpReferenceTypeID(int referenceTypeIDSize) {
 			this.size = referenceTypeIDSize;
+			this.codec = IdCodec.forSize(referenceTypeIDSize);
 		}
 
 		long decode(byte[] bytes, int start) throws JdwpRuntimeException {
+			return codec.decode(bytes, start);
+		}
+
+		/**
+		 * Unchecked read, bounds must be checked by caller.
+		 */
+		long read(byte[] bytes, int start) {
+			return codec.read(bytes, start);
+		}
+
+		long decode(java.nio.ByteBuffer bytes, int start) throws JdwpRuntimeException {
 			return decodeBySize(bytes, start, getSize());
 		}
 
 		void encode(long val, ByteBuffer bytes) {
-			encodeBySize(bytes, getSize(), val);
+			codec.write(bytes, val);
 		}
 
 		int getSize() {
@@ -7257,17 +9488,26 @@ public class JDWP {
 	 */
 	private static class JdwpClassID {
 		private final int size;
+		private final IdCodec codec;
 
 		JdwpClassID(int referenceTypeIDSize) {
 			this.size = referenceTypeIDSize;
+			this.codec = IdCodec.forSize(referenceTypeIDSize);
 		}
 
 		long decode(byte[] bytes, int start) throws JdwpRuntimeException {
-			return decodeBySize(bytes, start, getSize());
+			return codec.decode(bytes, start);
+		}
+
+		/**
+		 * Unchecked read, bounds must be checked by caller.
+		 */
+		long read(byte[] bytes, int start) {
+			return codec.read(bytes, start);
 		}
 
 		void encode(long val, ByteBuffer bytes) {
-			encodeBySize(bytes, getSize(), val);
+			codec.write(bytes, val);
 		}
 
 		int getSize() {
@@ -7281,17 +9521,26 @@ public class JDWP {
 	 */
 	private static class JdwpInterfaceID {
 		private final int size;
+		private final IdCodec codec;
 
 		JdwpInterfaceID(int referenceTypeIDSize) {
 			this.size = referenceTypeIDSize;
+			this.codec = IdCodec.forSize(referenceTypeIDSize);
 		}
 
 		long decode(byte[] bytes, int start) throws JdwpRuntimeException {
-			return decodeBySize(bytes, start, getSize());
+			return codec.decode(bytes, start);
+		}
+
+		/**
+		 * Unchecked read, bounds must be checked by caller.
+		 */
+		long read(byte[] bytes, int start) {
+			return codec.read(bytes, start);
 		}
 
 		void encode(long val, ByteBuffer bytes) {
-			encodeBySize(bytes, getSize(), val);
+			codec.write(bytes, val);
 		}
 
 		int getSize() {
@@ -7305,17 +9554,26 @@ public class JDWP {
 	 */
 	private static class JdwpArrayTypeID {
 		private final int size;
+		private final IdCodec codec;
 
 		JdwpArrayTypeID(int referenceTypeIDSize) {
 			this.size = referenceTypeIDSize;
+			this.codec = IdCodec.forSize(referenceTypeIDSize);
 		}
 
 		long decode(byte[] bytes, int start) throws JdwpRuntimeException {
-			return decodeBySize(bytes, start, getSize());
+			return codec.decode(bytes, start);
+		}
+
+		/**
+		 * Unchecked read, bounds must be checked by caller.
+		 */
+		long read(byte[] bytes, int start) {
+			return codec.read(bytes, start);
 		}
 
 		void encode(long val, ByteBuffer bytes) {
-			encodeBySize(bytes, getSize(), val);
+			codec.write(bytes, val);
 		}
 
 		int getSize() {
@@ -7333,17 +9591,26 @@ public class JDWP {
 	 */
 	private static class JdwpMethodID {
 		private final int size;
+		private final IdCodec codec;
 
 		JdwpMethodID(int methodIDSize) {
 			this.size = methodIDSize;
+			this.codec = IdCodec.forSize(methodIDSize);
 		}
 
 		long decode(byte[] bytes, int start) throws JdwpRuntimeException {
-			return decodeBySize(bytes, start, getSize());
+			return codec.decode(bytes, start);
+		}
+
+		/**
+		 * Unchecked read, bounds must be checked by caller.
+		 */
+		long read(byte[] bytes, int start) {
+			return codec.read(bytes, start);
 		}
 
 		void encode(long val, ByteBuffer bytes) {
-			encodeBySize(bytes, getSize(), val);
+			codec.write(bytes, val);
 		}
 
 		int getSize() {
@@ -7361,17 +9628,26 @@ public class JDWP {
 	 */
 	private static class JdwpFieldID {
 		private final int size;
+		private final IdCodec codec;
 
 		JdwpFieldID(int fieldIDSize) {
 			this.size = fieldIDSize;
+			this.codec = IdCodec.forSize(fieldIDSize);
 		}
 
 		long decode(byte[] bytes, int start) throws JdwpRuntimeException {
-			return decodeBySize(bytes, start, getSize());
+			return codec.decode(bytes, start);
+		}
+
+		/**
+		 * Unchecked read, bounds must be checked by caller.
+		 */
+		long read(byte[] bytes, int start) {
+			return codec.read(bytes, start);
 		}
 
 		void encode(long val, ByteBuffer bytes) {
-			encodeBySize(bytes, getSize(), val);
+			codec.write(bytes, val);
 		}
 
 		int getSize() {
@@ -7387,17 +9663,26 @@ public class JDWP {
 	 */
 	private static class JdwpFrameID {
 		private final int size;
+		private final IdCodec codec;
 
 		JdwpFrameID(int frameIDSize) {
 			this.size = frameIDSize;
+			this.codec = IdCodec.forSize(frameIDSize);
 		}
 
 		long decode(byte[] bytes, int start) throws JdwpRuntimeException {
-			return decodeBySize(bytes, start, getSize());
+			return codec.decode(bytes, start);
+		}
+
+		/**
+		 * Unchecked read, bounds must be checked by caller.
+		 */
+		long read(byte[] bytes, int start) {
+			return codec.read(bytes, start);
 		}
 
 		void encode(long val, ByteBuffer bytes) {
-			encodeBySize(bytes, getSize(), val);
+			codec.write(bytes, val);
 		}
 
 		int getSize() {
@@ -7418,27 +9703,51 @@ public class JDWP {
 		int size;
 		int classIDSize;
 		int methodIDSize;
+		private final IdCodec classCodec;
+		private final IdCodec methodCodec;
 
 		JdwpLocation(int classIDSize, int methodIDSize) {
 			this.classIDSize = classIDSize;
 			this.methodIDSize = methodIDSize;
 			size = classIDSize + methodIDSize;
+			classCodec = IdCodec.forSize(classIDSize);
+			methodCodec = IdCodec.forSize(methodIDSize);
 		}
 
 		LocationPacket decode(byte[] bytes, int start) throws JdwpRuntimeException {
+			checkCapability(bytes, start, getSize());
+			return read(bytes, start);
+		}
+
+		/**
+		 * Unchecked read, bounds must be checked by caller.
+		 */
+		LocationPacket read(byte[] bytes, int start) {
 			LocationPacket locationPacket = new LocationPacket();
-			locationPacket.tag = decodeByte(bytes, start);
-			locationPacket.classID = decodeBySize(bytes, start + 1, classIDSize);
-			locationPacket.methodID = decodeBySize(bytes, start + classIDSize + 1, methodIDSize);
-			locationPacket.index = decodeBySize(bytes, start + classIDSize + methodIDSize + 1, 8);
+			locationPacket.tag = bytes[start];
+			locationPacket.classID = readClassID(bytes, start);
+			locationPacket.methodID = readMethodID(bytes, start);
+			locationPacket.index = readIndex(bytes, start);
 			return locationPacket;
 		}
 
+		long readClassID(byte[] bytes, int start) {
+			return classCodec.read(bytes, start + 1);
+		}
+
+		long readMethodID(byte[] bytes, int start) {
+			return methodCodec.read(bytes, start + 1 + classIDSize);
+		}
+
+		long readIndex(byte[] bytes, int start) {
+			return readLong(bytes, start + 1 + size);
+		}
+
 		void encode(LocationPacket val, ByteBuffer bytes) {
 			JDWP.encodeByte(bytes, (byte) val.tag);
-			encodeBySize(bytes, classIDSize, val.classID);
-			encodeBySize(bytes, methodIDSize, val.methodID);
-			encodeBySize(bytes, 8, val.index);
+			classCodec.write(bytes, val.classID);
+			methodCodec.write(bytes, val.methodID);
+			bytes.addLong(val.index);
 		}
 
 		int getSize() {
@@ -7460,7 +9769,36 @@ public class JDWP {
 
 		static String decode(byte[] bytes, int start) throws JdwpRuntimeException {
 			int len = decodeInt(bytes, start);
-			return new String(decodeRaw(bytes, start + 4, len), StandardCharsets.UTF_8);
+			checkLength(bytes.length - start - 4, len);
+			return decodeChars(bytes, start + 4, len);
+		}
+
+		static String decode(java.nio.ByteBuffer bytes, int start) throws JdwpRuntimeException {
+			int len = decodeInt(bytes, start);
+			checkLength(bytes.limit() - start - 4, len);
+			if (bytes.hasArray()) {
+				return decodeChars(bytes.array(), bytes.arrayOffset() + start + 4, len);
+			}
+			return decodeChars(decodeRaw(bytes, start + 4, len), 0, len);
+		}
+
+		/**
+		 * Signatures and names are almost always ASCII, those are copied directly without the UTF-8 decoder.
+		 */
+		@SuppressWarnings("deprecation")
+		private static String decodeChars(byte[] bytes, int offset, int len) {
+			for (int i = offset, end = offset + len; i < end; i++) {
+				if (bytes[i] < 0) {
+					return new String(bytes, offset, len, StandardCharsets.UTF_8);
+				}
+			}
+			return new String(bytes, 0, offset, len);
+		}
+
+		private static void checkLength(int available, int len) throws JdwpRuntimeException {
+			if (len < 0 || len > available) {
+				throw new JdwpRuntimeException("Invalid string length: " + len + ", available: " + available);
+			}
 		}
 
 		static void encode(String val, ByteBuffer bytes) {
@@ -7469,8 +9807,24 @@ public class JDWP {
 			bytes.addAll(encoded);
 		}
 
-		static int getSize(String str) {
-			return 4 + str.getBytes(StandardCharsets.UTF_8).length;
+		/**
+		 * @return encoded size of the string at {@code start}, which was already decoded, so no checks here
+		 */
+		static int getSize(byte[] bytes, int start) {
+			return 4 + readInt(bytes, start);
+		}
+
+		static int getSize(java.nio.ByteBuffer bytes, int start) throws JdwpRuntimeException {
+			return 4 + decodeInt(bytes, start);
+		}
+
+		/**
+		 * @return encoded size of the string at {@code start} without decoding it
+		 */
+		static int skip(byte[] bytes, int start) throws JdwpRuntimeException {
+			int len = decodeInt(bytes, start);
+			checkCapability(bytes, start + 4, len);
+			return 4 + len;
 		}
 
 	}
@@ -7505,6 +9859,105 @@ public class JDWP {
 	public class ValuePacket extends ValueTag {
 	}
 
+	/**
+	 * A value as a tag and its raw bits, reusable so values can be decoded without allocation.
+	 * <p>
+	 * Bits hold the big-endian payload zero-extended to 64 bits, like {@code valueBits} of
+	 * {@link EventHandlers.ReturnValueHandler}: object IDs as is, {@code int} and {@code float} in the low 32 bits,
+	 * {@code char}, {@code short}, {@code byte} and {@code boolean} in the low 16 or 8 bits, 0 for void.
+	 */
+	public static class TaggedValue {
+		public byte tag;
+		public long bits;
+
+		public boolean getBoolean() {
+			return bits != 0;
+		}
+
+		public byte getByte() {
+			return (byte) bits;
+		}
+
+		public char getChar() {
+			return (char) bits;
+		}
+
+		public short getShort() {
+			return (short) bits;
+		}
+
+		public int getInt() {
+			return (int) bits;
+		}
+
+		public float getFloat() {
+			return Float.intBitsToFloat((int) bits);
+		}
+
+		public double getDouble() {
+			return Double.longBitsToDouble(bits);
+		}
+
+		public long getLong() {
+			return bits;
+		}
+
+		public long getID() {
+			return bits;
+		}
+
+		@Override
+		public String toString() {
+			return (char) tag + ":" + Long.toHexString(bits);
+		}
+	}
+
+	/**
+	 * Decode a tagged value into {@code dst}.
+	 *
+	 * @return offset after the value
+	 */
+	public int decodeValue(byte[] bytes, int start, TaggedValue dst) throws JdwpRuntimeException {
+		byte tag = decodeByte(bytes, start);
+		int size = valueTag.getSize(tag);
+		dst.bits = decodeBySize(bytes, start + 1, size);
+		dst.tag = tag;
+		return start + 1 + size;
+	}
+
+	/**
+	 * Decode an untagged value of type {@code tag} into {@code dst}.
+	 *
+	 * @return offset after the value
+	 */
+	public int decodeUntaggedValue(byte[] bytes, int start, byte tag, TaggedValue dst) throws JdwpRuntimeException {
+		int size = valueTag.getSize(tag);
+		dst.bits = decodeBySize(bytes, start, size);
+		dst.tag = tag;
+		return start + size;
+	}
+
+	/**
+	 * Decode an int count followed by tagged values.
+	 */
+	private int decodeTaggedValues(byte[] bytes, int start, byte[] tags, long[] bits) throws JdwpRuntimeException {
+		int count = decodeInt(bytes, start);
+		if (count < 0 || count > tags.length || count > bits.length) {
+			throw new JdwpRuntimeException("Can't decode " + count + " values into arrays of length "
+					+ tags.length + " and " + bits.length);
+		}
+		start += 4;
+		ValueTag sizes = valueTag;
+		for (int i = 0; i < count; i++) {
+			byte tag = decodeByte(bytes, start);
+			int size = sizes.getSize(tag);
+			bits[i] = decodeBySize(bytes, start + 1, size);
+			tags[i] = tag;
+			start += 1 + size;
+		}
+		return count;
+	}
+
 	/**
 	 * A value as described above without the signature byte. This form is used when the signature
 	 * information can be determined from context.
@@ -7658,39 +10111,50 @@ public class JDWP {
 		}
 
 		public boolean getBoolean() throws JdwpRuntimeException {
-			return decodeBoolean(idOrValue.getBytes(), 0);
+			return decodeBoolean(value(1), 0);
 		}
 
 		public byte getByte() throws JdwpRuntimeException {
-			return decodeByte(idOrValue.getBytes(), 0);
+			return decodeByte(value(1), 0);
 		}
 
 		public char getChar() throws JdwpRuntimeException {
-			return decodeChar(idOrValue.getBytes(), 0);
+			return decodeChar(value(2), 0);
 		}
 
 		public short getShort() throws JdwpRuntimeException {
-			return decodeShort(idOrValue.getBytes(), 0);
+			return decodeShort(value(2), 0);
 		}
 
 		public int getInt() throws JdwpRuntimeException {
-			return decodeInt(idOrValue.getBytes(), 0);
+			return decodeInt(value(4), 0);
 		}
 
 		public float getFloat() throws JdwpRuntimeException {
-			return decodeFloat(idOrValue.getBytes(), 0);
+			return decodeFloat(value(4), 0);
 		}
 
 		public double getDouble() throws JdwpRuntimeException {
-			return decodeDouble(idOrValue.getBytes(), 0);
+			return decodeDouble(value(8), 0);
 		}
 
 		public long getLong() throws JdwpRuntimeException {
-			return decodeBySize(idOrValue.getBytes(), 0, 8);
+			return decodeBySize(value(8), 0, 8);
 		}
 
 		public long getID() throws JdwpRuntimeException {
-			return mObjectID.decode(idOrValue.getBytes(), 0);
+			return mObjectID.decode(value(mObjectID.getSize()), 0);
+		}
+
+		/**
+		 * Backing array of the value, {@code buf} may be longer than the value itself.
+		 */
+		private byte[] value(int size) throws JdwpRuntimeException {
+			int len = idOrValue.size();
+			if (len < size) {
+				throw new JdwpRuntimeException("Can't read " + size + " bytes from value of " + len + " bytes");
+			}
+			return idOrValue.buf;
 		}
 
 		public ValueTag encode(int tag, Object idOrValue) throws JdwpRuntimeException {
@@ -7746,14 +10210,41 @@ public class JDWP {
 		}
 	}
 
+	/**
+	 * Reply packet with non-zero error code, see {@link Error}.
+	 */
+	public static class JdwpErrorException extends JdwpRuntimeException {
+		private static final long serialVersionUID = -1111111202103260222L;
+
+		private final int errorCode;
+
+		public JdwpErrorException(int errorCode) {
+			super("JDWP error " + errorCode + ": " + Error.getErrorText(errorCode));
+			this.errorCode = errorCode;
+		}
+
+		public int getErrorCode() {
+			return errorCode;
+		}
+	}
+
+	/**
+	 * Growable byte array used to build packets, capacity is doubled when full.
+	 * <p>
+	 * Buffers are not pooled, {@code encode(...)} of a command allocates one presized buffer per packet, because
+	 * the packet is owned by the caller and may be sent again. Commands with
+	 * {@code encode(byte[] dst, int offset, int packetID, ...)} overloads can be written without allocation into
+	 * a reused destination instead.
+	 */
 	public static class ByteBuffer {
-		private static final int MIN_INC = 16;
+		private static final int DEFAULT_CAP = 32;
+
 		private byte[] buf;
 		private int cap;
 		private int size;
 
 		public ByteBuffer() {
-			this(PACKET_HEADER_SIZE + 13);
+			this(DEFAULT_CAP);
 		}
 
 		public ByteBuffer(byte[] bytes) {
@@ -7766,11 +10257,23 @@ public class JDWP {
 			size = 0;
 		}
 
-		private void extend(int incr) {
-			cap += incr;
-			byte[] tempBuf = new byte[cap];
-			System.arraycopy(buf, 0, tempBuf, 0, size);
-			buf = tempBuf;
+		/**
+		 * @param sizeHint expected size in bytes, buffer will be able to hold at least this many bytes without
+		 *                 growing
+		 */
+		static ByteBuffer withSizeHint(int sizeHint) {
+			return new ByteBuffer(Math.max(sizeHint, DEFAULT_CAP));
+		}
+
+		public void ensureCapacity(int minCap) {
+			if (minCap > cap) {
+				buf = Arrays.copyOf(buf, minCap);
+				cap = minCap;
+			}
+		}
+
+		private void grow(int minCap) {
+			ensureCapacity(Math.max(cap << 1, minCap));
 		}
 
 		public ByteBuffer set(int pos, byte b) {
@@ -7796,30 +10299,85 @@ public class JDWP {
 
 		public void add(byte b) {
 			if (size >= cap) {
-				extend(MIN_INC);
+				grow(size + 1);
 			}
 			buf[size] = b;
 			size++;
 		}
 
-		public void addAll(byte[] bs) {
-			int newSize = size + bs.length;
-			if (newSize >= cap) {
-				extend(Math.max(bs.length, MIN_INC));
+		void addInt(int val) {
+			int newSize = size + 4;
+			if (newSize > cap) {
+				grow(newSize);
 			}
-			System.arraycopy(bs, 0, buf, size, bs.length);
+			byte[] b = buf;
+			int pos = size;
+			b[pos] = (byte) (val >> 24);
+			b[pos + 1] = (byte) (val >> 16);
+			b[pos + 2] = (byte) (val >> 8);
+			b[pos + 3] = (byte) val;
 			size = newSize;
 		}
 
-		public void addAll(ByteBuffer bs) {
-			int newSize = size + bs.size();
-			if (newSize >= cap) {
-				extend(Math.max(bs.size(), MIN_INC));
+		void addLong(long val) {
+			int newSize = size + 8;
+			if (newSize > cap) {
+				grow(newSize);
+			}
+			byte[] b = buf;
+			int pos = size;
+			b[pos] = (byte) (val >> 56);
+			b[pos + 1] = (byte) (val >> 48);
+			b[pos + 2] = (byte) (val >> 40);
+			b[pos + 3] = (byte) (val >> 32);
+			b[pos + 4] = (byte) (val >> 24);
+			b[pos + 5] = (byte) (val >> 16);
+			b[pos + 6] = (byte) (val >> 8);
+			b[pos + 7] = (byte) val;
+			size = newSize;
+		}
+
+		/**
+		 * Append {@code count} bytes to be written directly into {@link #buf}.
+		 *
+		 * @return offset of the appended bytes
+		 */
+		int reserve(int count) {
+			int pos = size;
+			int newSize = pos + count;
+			if (newSize > cap) {
+				grow(newSize);
+			}
+			size = newSize;
+			return pos;
+		}
+
+		void addZeros(int count) {
+			int newSize = size + count;
+			if (newSize > cap) {
+				grow(newSize);
 			}
-			System.arraycopy(bs.buf, 0, buf, size, bs.size());
+			Arrays.fill(buf, size, newSize, (byte) 0);
 			size = newSize;
 		}
 
+		public void addAll(byte[] bs) {
+			addAll(bs, 0, bs.length);
+		}
+
+		public void addAll(byte[] bs, int off, int len) {
+			int newSize = size + len;
+			if (newSize > cap) {
+				grow(newSize);
+			}
+			System.arraycopy(bs, off, buf, size, len);
+			size = newSize;
+		}
+
+		public void addAll(ByteBuffer bs) {
+			addAll(bs.buf, 0, bs.size());
+		}
+
 		public int size() {
 			return size;
 		}
@@ -7835,13 +10393,38 @@ public class JDWP {
 			return ret;
 		}
 
+		/**
+		 * Wrap written bytes without copying, changes to this buffer are visible in the returned one.
+		 */
+		public java.nio.ByteBuffer asNioBuffer() {
+			return java.nio.ByteBuffer.wrap(buf, 0, size);
+		}
+
+		/**
+		 * Write all bytes to a blocking {@code channel} without copying them.
+		 */
+		public void writeTo(WritableByteChannel channel) throws IOException {
+			java.nio.ByteBuffer data = asNioBuffer();
+			while (data.hasRemaining()) {
+				channel.write(data);
+			}
+		}
+
 		public ByteBuffer resetIndex(int to) {
 			size = to;
 			return this;
 		}
 
 		public boolean equals(byte[] bs) {
-			return Arrays.equals(buf, bs);
+			if (bs.length != size) {
+				return false;
+			}
+			for (int i = 0; i < size; i++) {
+				if (buf[i] != bs[i]) {
+					return false;
+				}
+			}
+			return true;
 		}
 	}
 }
@@ -0,0 +1,174 @@
+package io.github.skylot.jdwp;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.github.skylot.jdwp.JDWP.ArrayReference.GetValues;
+
+/**
+ * Reads array regions of the target VM straight into primitive arrays.
+ * <p>
+ * Regions are split into chunks whose replies stay under {@code maxReplySize} bytes, up to {@code maxInFlight}
+ * ArrayReference.GetValues commands are pipelined and each reply is decoded into its slice of the result as it
+ * arrives, so a large {@code byte[]} needs neither boxed values nor a reply buffer of the whole array.
+ *
+ * <pre>
+ * JdwpArrayReader reader = new JdwpArrayReader(client);
+ * byte[] data = reader.length(array).thenCompose(len -&gt; reader.readBytes(array, 0, len)).get();
+ * </pre>
+ */
+public class JdwpArrayReader {
+	private static final int REGION_HEADER_SIZE = 5;
+
+	private final JdwpClient client;
+	private final JDWP jdwp;
+	private final int objectIDSize;
+	private volatile int maxReplySize = 64 * 1024;
+	private volatile int maxInFlight = 8;
+
+	public JdwpArrayReader(JdwpClient client) {
+		this.client = client;
+		this.jdwp = client.jdwp();
+		this.objectIDSize = client.getIDSizes().objectIDSize;
+	}
+
+	/**
+	 * Max size of one reply, 64 KB by default.
+	 */
+	public JdwpArrayReader setMaxReplySize(int maxReplySize) {
+		if (maxReplySize < 64) {
+			throw new IllegalArgumentException("Reply size too small: " + maxReplySize);
+		}
+		this.maxReplySize = maxReplySize;
+		return this;
+	}
+
+	/**
+	 * Max chunks awaiting replies per read, 8 by default.
+	 */
+	public JdwpArrayReader setMaxInFlight(int maxInFlight) {
+		if (maxInFlight < 1) {
+			throw new IllegalArgumentException("maxInFlight must be positive: " + maxInFlight);
+		}
+		this.maxInFlight = maxInFlight;
+		return this;
+	}
+
+	public CompletableFuture<Integer> length(long array) {
+		JDWP.ArrayReference.Length cmd = jdwp.arrayReference().cmdLength();
+		return client.send(cmd.encode(array), cmd::decode).thenApply(reply -> reply.arrayLength);
+	}
+
+	public CompletableFuture<byte[]> readBytes(long array, int first, int length) {
+		return read(array, first, length, new byte[length], 1, GetValues::decodeBytes);
+	}
+
+	public CompletableFuture<boolean[]> readBooleans(long array, int first, int length) {
+		return read(array, first, length, new boolean[length], 1, GetValues::decodeBooleans);
+	}
+
+	public CompletableFuture<char[]> readChars(long array, int first, int length) {
+		return read(array, first, length, new char[length], 2, GetValues::decodeChars);
+	}
+
+	public CompletableFuture<short[]> readShorts(long array, int first, int length) {
+		return read(array, first, length, new short[length], 2, GetValues::decodeShorts);
+	}
+
+	public CompletableFuture<int[]> readInts(long array, int first, int length) {
+		return read(array, first, length, new int[length], 4, GetValues::decodeInts);
+	}
+
+	public CompletableFuture<long[]> readLongs(long array, int first, int length) {
+		return read(array, first, length, new long[length], 8, GetValues::decodeLongs);
+	}
+
+	public CompletableFuture<float[]> readFloats(long array, int first, int length) {
+		return read(array, first, length, new float[length], 4, GetValues::decodeFloats);
+	}
+
+	public CompletableFuture<double[]> readDoubles(long array, int first, int length) {
+		return read(array, first, length, new double[length], 8, GetValues::decodeDoubles);
+	}
+
+	/**
+	 * Object IDs of object array elements, 0 for null.
+	 */
+	public CompletableFuture<long[]> readIDs(long array, int first, int length) {
+		return read(array, first, length, new long[length], 1 + objectIDSize, GetValues::decodeIDs);
+	}
+
+	private interface RegionDecoder<A> {
+		int decode(GetValues cmd, byte[] bytes, int start, A dst, int offset);
+	}
+
+	private <A> CompletableFuture<A> read(long array, int first, int length, A dst, int valueSize,
+			RegionDecoder<A> decoder) {
+		if (first < 0 || length < 0) {
+			throw new IllegalArgumentException("Invalid region: first " + first + ", length " + length);
+		}
+		int chunkLength = Math.max(1, (maxReplySize - REGION_HEADER_SIZE) / valueSize);
+		Fetch<A> fetch = new Fetch<>(array, first, length, chunkLength, dst, decoder);
+		if (fetch.chunks == 0) {
+			fetch.result.complete(dst);
+			return fetch.result;
+		}
+		int initial = Math.min(fetch.chunks, maxInFlight);
+		for (int i = 0; i < initial; i++) {
+			fetch.sendNext();
+		}
+		return fetch.result;
+	}
+
+	private final class Fetch<A> {
+		private final GetValues cmd = jdwp.arrayReference().cmdGetValues();
+		private final long array;
+		private final int first;
+		private final int length;
+		private final int chunkLength;
+		private final int chunks;
+		private final A dst;
+		private final RegionDecoder<A> decoder;
+		private final AtomicInteger nextChunk = new AtomicInteger();
+		private final AtomicInteger remaining;
+		private final CompletableFuture<A> result = new CompletableFuture<>();
+
+		Fetch(long array, int first, int length, int chunkLength, A dst, RegionDecoder<A> decoder) {
+			this.array = array;
+			this.first = first;
+			this.length = length;
+			this.chunkLength = chunkLength;
+			this.chunks = (int) ((length + (long) chunkLength - 1) / chunkLength);
+			this.dst = dst;
+			this.decoder = decoder;
+			this.remaining = new AtomicInteger(chunks);
+		}
+
+		/**
+		 * Called for the first window, then after each decoded reply.
+		 */
+		void sendNext() {
+			int chunk = nextChunk.getAndIncrement();
+			if (chunk >= chunks || result.isDone()) {
+				return;
+			}
+			int offset = chunk * chunkLength;
+			int count = Math.min(chunkLength, length - offset);
+			client.send(cmd.encode(array, first + offset, count), (bytes, start) -> {
+				int decoded = decoder.decode(cmd, bytes, start, dst, offset);
+				if (decoded != count) {
+					throw new JDWP.JdwpRuntimeException("Expected " + count + " values, got " + decoded);
+				}
+				return decoded;
+			}).whenComplete((decoded, error) -> {
+				if (error != null) {
+					result.completeExceptionally(error);
+				} else if (remaining.decrementAndGet() == 0) {
+					result.complete(dst);
+				} else {
+					sendNext();
+				}
+			});
+		}
+	}
+}
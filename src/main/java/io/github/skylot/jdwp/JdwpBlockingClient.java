@@ -0,0 +1,296 @@
+package io.github.skylot.jdwp;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import io.github.skylot.jdwp.JDWP.ArrayReference;
+import io.github.skylot.jdwp.JDWP.EventRequest;
+import io.github.skylot.jdwp.JDWP.Method;
+import io.github.skylot.jdwp.JDWP.ObjectReference;
+import io.github.skylot.jdwp.JDWP.ReferenceType;
+import io.github.skylot.jdwp.JDWP.StackFrame;
+import io.github.skylot.jdwp.JDWP.StringReference;
+import io.github.skylot.jdwp.JDWP.ThreadReference;
+import io.github.skylot.jdwp.JDWP.VirtualMachine;
+
+/**
+ * Blocking facade over {@link JdwpClient} for straight-line code:
+ *
+ * <pre>
+ * try (JdwpBlockingClient vm = JdwpBlockingClient.connect("localhost", 5005)) {
+ * 	for (AllThreadsReplyDataThreads thread : vm.allThreads().threads) {
+ * 		System.out.println(vm.threadName(thread.thread));
+ * 	}
+ * }
+ * </pre>
+ *
+ * Calls send the command through the non-blocking client and park the calling thread until the reply arrives.
+ * Nothing here or in the client holds a monitor while waiting or doing socket I/O, so on Java 21+ thousands of
+ * virtual threads can share one connection without pinning carrier threads. Any number of threads may call
+ * concurrently, their commands are pipelined.
+ * <p>
+ * Error replies are thrown as {@link JDWP.JdwpErrorException}, connection failures, timeouts and interrupts
+ * as {@link JDWP.JdwpRuntimeException} (the interrupt flag is kept). Commands without a method here can be
+ * sent with {@link #call(JDWP.ByteBuffer, JdwpClient.ReplyDecoder)}.
+ */
+public class JdwpBlockingClient implements Closeable {
+	private final JdwpClient client;
+	private final JDWP jdwp;
+	private volatile long timeoutMs;
+
+	public static JdwpBlockingClient connect(String host, int port) throws IOException {
+		return new JdwpBlockingClient(JdwpClient.connect(host, port));
+	}
+
+	public JdwpBlockingClient(JdwpClient client) {
+		this.client = client;
+		this.jdwp = client.jdwp();
+	}
+
+	/**
+	 * Max wait for each reply, 0 (default) to wait forever.
+	 */
+	public JdwpBlockingClient setTimeout(long timeout, TimeUnit unit) {
+		this.timeoutMs = unit.toMillis(timeout);
+		return this;
+	}
+
+	public JdwpClient getClient() {
+		return client;
+	}
+
+	public JDWP jdwp() {
+		return jdwp;
+	}
+
+	/**
+	 * Send any command and wait for its decoded reply.
+	 */
+	public <T> T call(JDWP.ByteBuffer command, JdwpClient.ReplyDecoder<T> decoder) {
+		return await(client.send(command, decoder));
+	}
+
+	/**
+	 * Send a command without reply data and wait for its completion.
+	 */
+	public void call(JDWP.ByteBuffer command) {
+		await(client.send(command));
+	}
+
+	private <T> T await(CompletableFuture<T> future) {
+		try {
+			long timeout = timeoutMs;
+			return timeout > 0 ? future.get(timeout, TimeUnit.MILLISECONDS) : future.get();
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof JDWP.JdwpRuntimeException) {
+				throw (JDWP.JdwpRuntimeException) cause;
+			}
+			throw wrap("Command failed: " + cause, cause);
+		} catch (TimeoutException e) {
+			future.cancel(false);
+			throw wrap("No reply in " + timeoutMs + " ms", e);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			future.cancel(false);
+			throw wrap("Interrupted while waiting for reply", e);
+		}
+	}
+
+	private static JDWP.JdwpRuntimeException wrap(String msg, Throwable cause) {
+		JDWP.JdwpRuntimeException e = new JDWP.JdwpRuntimeException(msg);
+		e.initCause(cause);
+		return e;
+	}
+
+	// VirtualMachine
+
+	public VirtualMachine.Version.VersionReplyData version() {
+		VirtualMachine.Version cmd = jdwp.virtualMachine().cmdVersion();
+		return call(cmd.encode(), cmd::decode);
+	}
+
+	public VirtualMachine.ClassesBySignature.ClassesBySignatureReplyData classesBySignature(String signature) {
+		VirtualMachine.ClassesBySignature cmd = jdwp.virtualMachine().cmdClassesBySignature();
+		return call(cmd.encode(signature), cmd::decode);
+	}
+
+	public VirtualMachine.AllClasses.AllClassesReplyData allClasses() {
+		VirtualMachine.AllClasses cmd = jdwp.virtualMachine().cmdAllClasses();
+		return call(cmd.encode(), cmd::decode);
+	}
+
+	public VirtualMachine.AllClassesWithGeneric.AllClassesWithGenericReplyData allClassesWithGeneric() {
+		VirtualMachine.AllClassesWithGeneric cmd = jdwp.virtualMachine().cmdAllClassesWithGeneric();
+		return call(cmd.encode(), cmd::decode);
+	}
+
+	public VirtualMachine.AllThreads.AllThreadsReplyData allThreads() {
+		VirtualMachine.AllThreads cmd = jdwp.virtualMachine().cmdAllThreads();
+		return call(cmd.encode(), cmd::decode);
+	}
+
+	public VirtualMachine.TopLevelThreadGroups.TopLevelThreadGroupsReplyData topLevelThreadGroups() {
+		VirtualMachine.TopLevelThreadGroups cmd = jdwp.virtualMachine().cmdTopLevelThreadGroups();
+		return call(cmd.encode(), cmd::decode);
+	}
+
+	public VirtualMachine.CapabilitiesNew.CapabilitiesNewReplyData capabilitiesNew() {
+		VirtualMachine.CapabilitiesNew cmd = jdwp.virtualMachine().cmdCapabilitiesNew();
+		return call(cmd.encode(), cmd::decode);
+	}
+
+	public void suspendAll() {
+		call(JDWP.Suspend.encode());
+	}
+
+	public void resumeAll() {
+		call(JDWP.Resume.encode());
+	}
+
+	// ReferenceType
+
+	public String signature(long refType) {
+		ReferenceType.Signature cmd = jdwp.referenceType().cmdSignature();
+		return call(cmd.encode(refType), cmd::decode).signature;
+	}
+
+	public ReferenceType.Fields.FieldsReplyData fields(long refType) {
+		ReferenceType.Fields cmd = jdwp.referenceType().cmdFields();
+		return call(cmd.encode(refType), cmd::decode);
+	}
+
+	public ReferenceType.Methods.MethodsReplyData methods(long refType) {
+		ReferenceType.Methods cmd = jdwp.referenceType().cmdMethods();
+		return call(cmd.encode(refType), cmd::decode);
+	}
+
+	public ReferenceType.GetValues.GetValuesReplyData staticValues(long refType, List<Long> fields) {
+		ReferenceType.GetValues cmd = jdwp.referenceType().cmdGetValues();
+		return call(cmd.encode(refType, fields), cmd::decode);
+	}
+
+	public String sourceFile(long refType) {
+		ReferenceType.SourceFile cmd = jdwp.referenceType().cmdSourceFile();
+		return call(cmd.encode(refType), cmd::decode).sourceFile;
+	}
+
+	public ReferenceType.Instances.InstancesReplyData instances(long refType, int maxInstances) {
+		ReferenceType.Instances cmd = jdwp.referenceType().cmdInstances();
+		return call(cmd.encode(refType, maxInstances), cmd::decode);
+	}
+
+	// Method
+
+	public Method.LineTable.LineTableReplyData lineTable(long refType, long methodID) {
+		Method.LineTable cmd = jdwp.method().cmdLineTable();
+		return call(cmd.encode(refType, methodID), cmd::decode);
+	}
+
+	public Method.VariableTable.VariableTableReplyData variableTable(long refType, long methodID) {
+		Method.VariableTable cmd = jdwp.method().cmdVariableTable();
+		return call(cmd.encode(refType, methodID), cmd::decode);
+	}
+
+	// ObjectReference, StringReference, ArrayReference
+
+	public ObjectReference.ReferenceType.ReferenceTypeReplyData referenceType(long object) {
+		ObjectReference.ReferenceType cmd = jdwp.objectReference().cmdReferenceType();
+		return call(cmd.encode(object), cmd::decode);
+	}
+
+	public ObjectReference.GetValues.GetValuesReplyData getValues(long object, List<Long> fields) {
+		ObjectReference.GetValues cmd = jdwp.objectReference().cmdGetValues();
+		return call(cmd.encode(object, fields), cmd::decode);
+	}
+
+	public String stringValue(long stringObject) {
+		StringReference.Value cmd = jdwp.stringReference().cmdValue();
+		return call(cmd.encode(stringObject), cmd::decode).stringValue;
+	}
+
+	public int arrayLength(long arrayObject) {
+		ArrayReference.Length cmd = jdwp.arrayReference().cmdLength();
+		return call(cmd.encode(arrayObject), cmd::decode).arrayLength;
+	}
+
+	public ArrayReference.GetValues.GetValuesReplyData arrayValues(long arrayObject, int firstIndex, int length) {
+		ArrayReference.GetValues cmd = jdwp.arrayReference().cmdGetValues();
+		return call(cmd.encode(arrayObject, firstIndex, length), cmd::decode);
+	}
+
+	// ThreadReference
+
+	public String threadName(long thread) {
+		ThreadReference.Name cmd = jdwp.threadReference().cmdName();
+		return call(cmd.encode(thread), cmd::decode).threadName;
+	}
+
+	public ThreadReference.Status.StatusReplyData threadStatus(long thread) {
+		ThreadReference.Status cmd = jdwp.threadReference().cmdStatus();
+		return call(cmd.encode(thread), cmd::decode);
+	}
+
+	public long threadGroup(long thread) {
+		ThreadReference.ThreadGroup cmd = jdwp.threadReference().cmdThreadGroup();
+		return call(cmd.encode(thread), cmd::decode).group;
+	}
+
+	public void suspend(long thread) {
+		call(jdwp.threadReference().cmdSuspend().encode(thread));
+	}
+
+	public void resume(long thread) {
+		call(jdwp.threadReference().cmdResume().encode(thread));
+	}
+
+	/**
+	 * @param length frame count or -1 for all remaining frames
+	 */
+	public ThreadReference.Frames.FramesReplyData frames(long thread, int startFrame, int length) {
+		ThreadReference.Frames cmd = jdwp.threadReference().cmdFrames();
+		return call(cmd.encode(thread, startFrame, length), cmd::decode);
+	}
+
+	public int frameCount(long thread) {
+		ThreadReference.FrameCount cmd = jdwp.threadReference().cmdFrameCount();
+		return call(cmd.encode(thread), cmd::decode).frameCount;
+	}
+
+	// StackFrame
+
+	public StackFrame.GetValues.GetValuesReplyData frameValues(long thread, long frame,
+			List<StackFrame.GetValues.GetValuesSlots> slots) {
+		StackFrame.GetValues cmd = jdwp.stackFrame().cmdGetValues();
+		return call(cmd.encode(thread, frame, slots), cmd::decode);
+	}
+
+	public StackFrame.ThisObject.ThisObjectReplyData thisObject(long thread, long frame) {
+		StackFrame.ThisObject cmd = jdwp.stackFrame().cmdThisObject();
+		return call(cmd.encode(thread, frame), cmd::decode);
+	}
+
+	// EventRequest
+
+	/**
+	 * @return request ID
+	 */
+	public int setEventRequest(byte eventKind, byte suspendPolicy, List<JDWP.EventRequestEncoder> modifiers) {
+		EventRequest.Set cmd = jdwp.eventRequest().cmdSet();
+		return call(cmd.encode(eventKind, suspendPolicy, modifiers), cmd::decodeRequestID);
+	}
+
+	public void clearEventRequest(byte eventKind, int requestID) {
+		call(jdwp.eventRequest().cmdClear().encode(eventKind, requestID));
+	}
+
+	@Override
+	public void close() throws IOException {
+		client.close();
+	}
+}
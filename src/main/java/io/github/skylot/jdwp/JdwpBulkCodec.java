@@ -0,0 +1,114 @@
+package io.github.skylot.jdwp;
+
+/**
+ * Bulk conversion between big-endian JDWP values and primitive arrays, arguments are in
+ * {@link System#arraycopy} order and not checked.
+ * <p>
+ * This is the Java 8 version with byte-by-byte loops. The jar is multi-release, on Java 9+ it is replaced by
+ * {@code src/main/java9} version built on byte array view VarHandles, which compile to a single load or store
+ * with byte swap per value. Both versions must keep the same methods.
+ */
+final class JdwpBulkCodec {
+
+	private JdwpBulkCodec() {
+	}
+
+	static void getChars(byte[] src, int srcPos, char[] dst, int dstPos, int count) {
+		for (int i = 0; i < count; i++, srcPos += 2) {
+			dst[dstPos + i] = (char) ((src[srcPos] << 8) | (src[srcPos + 1] & 0xff));
+		}
+	}
+
+	static void getShorts(byte[] src, int srcPos, short[] dst, int dstPos, int count) {
+		for (int i = 0; i < count; i++, srcPos += 2) {
+			dst[dstPos + i] = (short) ((src[srcPos] << 8) | (src[srcPos + 1] & 0xff));
+		}
+	}
+
+	static void getInts(byte[] src, int srcPos, int[] dst, int dstPos, int count) {
+		for (int i = 0; i < count; i++, srcPos += 4) {
+			dst[dstPos + i] = getInt(src, srcPos);
+		}
+	}
+
+	static void getLongs(byte[] src, int srcPos, long[] dst, int dstPos, int count) {
+		for (int i = 0; i < count; i++, srcPos += 8) {
+			dst[dstPos + i] = getLong(src, srcPos);
+		}
+	}
+
+	static void getFloats(byte[] src, int srcPos, float[] dst, int dstPos, int count) {
+		for (int i = 0; i < count; i++, srcPos += 4) {
+			dst[dstPos + i] = Float.intBitsToFloat(getInt(src, srcPos));
+		}
+	}
+
+	static void getDoubles(byte[] src, int srcPos, double[] dst, int dstPos, int count) {
+		for (int i = 0; i < count; i++, srcPos += 8) {
+			dst[dstPos + i] = Double.longBitsToDouble(getLong(src, srcPos));
+		}
+	}
+
+	static void putChars(char[] src, int srcPos, byte[] dst, int dstPos, int count) {
+		for (int i = 0; i < count; i++, dstPos += 2) {
+			char val = src[srcPos + i];
+			dst[dstPos] = (byte) (val >> 8);
+			dst[dstPos + 1] = (byte) val;
+		}
+	}
+
+	static void putShorts(short[] src, int srcPos, byte[] dst, int dstPos, int count) {
+		for (int i = 0; i < count; i++, dstPos += 2) {
+			short val = src[srcPos + i];
+			dst[dstPos] = (byte) (val >> 8);
+			dst[dstPos + 1] = (byte) val;
+		}
+	}
+
+	static void putInts(int[] src, int srcPos, byte[] dst, int dstPos, int count) {
+		for (int i = 0; i < count; i++, dstPos += 4) {
+			putInt(dst, dstPos, src[srcPos + i]);
+		}
+	}
+
+	static void putLongs(long[] src, int srcPos, byte[] dst, int dstPos, int count) {
+		for (int i = 0; i < count; i++, dstPos += 8) {
+			putLong(dst, dstPos, src[srcPos + i]);
+		}
+	}
+
+	static void putFloats(float[] src, int srcPos, byte[] dst, int dstPos, int count) {
+		for (int i = 0; i < count; i++, dstPos += 4) {
+			putInt(dst, dstPos, Float.floatToRawIntBits(src[srcPos + i]));
+		}
+	}
+
+	static void putDoubles(double[] src, int srcPos, byte[] dst, int dstPos, int count) {
+		for (int i = 0; i < count; i++, dstPos += 8) {
+			putLong(dst, dstPos, Double.doubleToRawLongBits(src[srcPos + i]));
+		}
+	}
+
+	private static int getInt(byte[] bytes, int pos) {
+		return (bytes[pos] << 24)
+				| ((bytes[pos + 1] & 0xff) << 16)
+				| ((bytes[pos + 2] & 0xff) << 8)
+				| (bytes[pos + 3] & 0xff);
+	}
+
+	private static long getLong(byte[] bytes, int pos) {
+		return ((long) getInt(bytes, pos) << 32) | (getInt(bytes, pos + 4) & 0xffffffffL);
+	}
+
+	private static void putInt(byte[] bytes, int pos, int val) {
+		bytes[pos] = (byte) (val >> 24);
+		bytes[pos + 1] = (byte) (val >> 16);
+		bytes[pos + 2] = (byte) (val >> 8);
+		bytes[pos + 3] = (byte) val;
+	}
+
+	private static void putLong(byte[] bytes, int pos, long val) {
+		putInt(bytes, pos, (int) (val >> 32));
+		putInt(bytes, pos + 4, (int) val);
+	}
+}
@@ -0,0 +1,788 @@
+package io.github.skylot.jdwp;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Non-blocking JDWP connection.
+ * <p>
+ * Packet IDs are assigned by the client and every command gets a future completed by the matching reply,
+ * so any number of commands can be in flight at once. All socket I/O is done by a {@link JdwpEventLoop} thread,
+ * owned by the client or shared by many clients of a {@link JdwpConnectionManager}.
+ * Replies with a non-zero error code complete the future with {@link JDWP.JdwpErrorException}.
+ * <p>
+ * Usage:
+ *
+ * <pre>
+ * JdwpClient client = JdwpClient.connect("localhost", 5005);
+ * JDWP jdwp = client.jdwp();
+ * client.send(jdwp.virtualMachine().cmdAllThreads().encode(), jdwp.virtualMachine().cmdAllThreads()::decode)
+ * 		.thenAccept(reply -&gt; ...);
+ * </pre>
+ */
+public class JdwpClient implements Closeable {
+	private static final int READ_BUFFER_SIZE = 64 * 1024;
+	private static final int MAX_GATHER = 256;
+	private static final long CONNECT_TIMEOUT_MS = 10_000;
+	private static final int MAX_EARLY_EVENTS = 1024;
+
+	/**
+	 * Reply decoder, matches {@code decode(byte[] bytes, int start)} methods of JDWP commands.
+	 */
+	@FunctionalInterface
+	public interface ReplyDecoder<T> {
+		T decode(byte[] bytes, int start) throws JDWP.JdwpRuntimeException;
+	}
+
+	/**
+	 * Command writer, matches {@code encode(byte[] dst, int offset, int packetID, ...)} methods of JDWP commands.
+	 */
+	@FunctionalInterface
+	public interface CommandEncoder {
+		/**
+		 * @return offset after the packet
+		 */
+		int encode(byte[] dst, int offset, int packetID) throws JDWP.JdwpRuntimeException;
+	}
+
+	private final SocketChannel channel;
+	private final JdwpEventLoop loop;
+	private final boolean ownsLoop;
+	private final Executor decodeExecutor;
+	private final int maxInFlight;
+	private final AtomicInteger nextPacketID = new AtomicInteger(1);
+	private final Map<Integer, CompletableFuture<JDWP.Packet>> pending = new ConcurrentHashMap<>();
+	private final Map<Integer, JDWP.ReplyStreamDecoder> streams = new ConcurrentHashMap<>();
+	private final Queue<ByteBuffer> writeQueue = new ConcurrentLinkedQueue<>();
+	private final Queue<ByteBuffer> waiting = new ConcurrentLinkedQueue<>();
+	private final AtomicInteger inFlight = new AtomicInteger();
+	private final AtomicBoolean writeScheduled = new AtomicBoolean();
+	private final Runnable writeTask = this::scheduledWrite;
+	private final CompletableFuture<Void> closeFuture = new CompletableFuture<>();
+
+	// accessed only from I/O thread
+	private SelectionKey key;
+	private JdwpPacketRecorder recorder;
+	private final ArrayDeque<ByteBuffer> unwritten = new ArrayDeque<>();
+	private ByteBuffer readBuf = ByteBuffer.allocate(READ_BUFFER_SIZE);
+	private JDWP.ReplyStreamDecoder stream;
+	private int streamID;
+	private int streamRemaining;
+	private Consumer<JDWP.Packet> eventListener;
+	private final ArrayDeque<JDWP.Packet> earlyEvents = new ArrayDeque<>();
+	// written only from I/O thread
+	private volatile long droppedEvents;
+	private volatile IOException recorderError;
+
+	private volatile JDWP jdwp;
+	private volatile JDWP.IDSizes.IDSizesReplyData idSizes;
+
+	public static JdwpClient connect(String host, int port) throws IOException {
+		return connect(new InetSocketAddress(host, port));
+	}
+
+	/**
+	 * Open connection, perform JDWP handshake and query ID sizes.
+	 */
+	public static JdwpClient connect(SocketAddress address) throws IOException {
+		return connect(address, null);
+	}
+
+	/**
+	 * Same as {@link #connect(SocketAddress)}, all packets after handshake are written to {@code recorder}.
+	 * Recorder is not closed with the connection, a recording error only stops recording, see
+	 * {@link #getRecorderError()}.
+	 */
+	public static JdwpClient connect(SocketAddress address, JdwpPacketRecorder recorder) throws IOException {
+		return connect(address, recorder, null, null, 0);
+	}
+
+	/**
+	 * @param loop           shared event loop, null to start an own loop thread
+	 * @param decodeExecutor executor for decoding replies, null to decode on I/O thread
+	 * @param maxInFlight    max commands awaiting replies, further commands are queued; 0 for no limit
+	 */
+	static JdwpClient connect(SocketAddress address, JdwpPacketRecorder recorder, JdwpEventLoop loop,
+			Executor decodeExecutor, int maxInFlight) throws IOException {
+		SocketChannel channel = SocketChannel.open();
+		try {
+			channel.socket().setTcpNoDelay(true);
+			channel.socket().connect(address, (int) CONNECT_TIMEOUT_MS);
+			channel.configureBlocking(false);
+			handshake(channel);
+			boolean ownsLoop = loop == null;
+			if (ownsLoop) {
+				loop = new JdwpEventLoop("jdwp-client-" + channel.getRemoteAddress());
+			}
+			JdwpClient client = new JdwpClient(channel, recorder, loop, ownsLoop, decodeExecutor, maxInFlight);
+			try {
+				// decoded here, the decode executor may be busy with this connect
+				JDWP.Packet reply = client.send(JDWP.IDSizes.encode()).get(CONNECT_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+				JDWP.IDSizes.IDSizesReplyData sizes = JDWP.IDSizes.decode(reply.getBuf(), JDWP.PACKET_HEADER_SIZE);
+				client.idSizes = sizes;
+				client.jdwp = new JDWP(sizes);
+			} catch (ExecutionException | InterruptedException | TimeoutException e) {
+				client.close();
+				throw new IOException("Failed to get ID sizes", e);
+			}
+			return client;
+		} catch (IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Handshake on non-blocking channel, fails if VM doesn't answer within {@link #CONNECT_TIMEOUT_MS}.
+	 */
+	private static void handshake(SocketChannel channel) throws IOException {
+		byte[] handshake = JDWP.encodeHandShakePacket();
+		ByteBuffer out = ByteBuffer.wrap(handshake);
+		ByteBuffer in = ByteBuffer.allocate(handshake.length);
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(CONNECT_TIMEOUT_MS);
+		try (Selector selector = Selector.open()) {
+			SelectionKey key = channel.register(selector, SelectionKey.OP_WRITE);
+			while (in.hasRemaining()) {
+				if (out.hasRemaining()) {
+					channel.write(out);
+					if (!out.hasRemaining()) {
+						key.interestOps(SelectionKey.OP_READ);
+					}
+				} else if (channel.read(in) < 0) {
+					throw new IOException("Connection closed during handshake");
+				}
+				if (out.hasRemaining() || in.hasRemaining()) {
+					long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+					if (remaining <= 0) {
+						throw new IOException("Handshake timed out after " + CONNECT_TIMEOUT_MS + " ms");
+					}
+					selector.select(remaining);
+					selector.selectedKeys().clear();
+				}
+			}
+			key.cancel();
+		}
+		if (!JDWP.decodeHandShakePacket(in.array())) {
+			throw new IOException("Unexpected handshake reply: " + new String(in.array()));
+		}
+	}
+
+	private JdwpClient(SocketChannel channel, JdwpPacketRecorder recorder, JdwpEventLoop loop, boolean ownsLoop,
+			Executor decodeExecutor, int maxInFlight) {
+		this.channel = channel;
+		this.recorder = recorder;
+		this.loop = loop;
+		this.ownsLoop = ownsLoop;
+		this.decodeExecutor = decodeExecutor;
+		this.maxInFlight = maxInFlight;
+		loop.execute(this::register);
+	}
+
+	private void register() {
+		if (loop.isClosed()) {
+			shutdown(null);
+			return;
+		}
+		try {
+			key = loop.register(channel, this);
+		} catch (IOException e) {
+			shutdown(e);
+		}
+	}
+
+	/**
+	 * Codec for the ID sizes of connected VM.
+	 */
+	public JDWP jdwp() {
+		return jdwp;
+	}
+
+	/**
+	 * ID sizes of connected VM.
+	 */
+	public JDWP.IDSizes.IDSizesReplyData getIDSizes() {
+		return idSizes;
+	}
+
+	/**
+	 * Set listener for event packets (Event.Composite) sent by the target VM.
+	 * Up to {@value #MAX_EARLY_EVENTS} events received before a listener was set are delivered to the first
+	 * listener, later ones are dropped and counted by {@link #getDroppedEventCount()}.
+	 * Listener is called from I/O thread and should not block, an exception thrown by it closes this connection.
+	 * The listener is switched on the I/O thread, so events are never delivered concurrently or out of order.
+	 */
+	public void setEventListener(Consumer<JDWP.Packet> listener) {
+		loop.execute(() -> {
+			eventListener = listener;
+			if (listener != null) {
+				try {
+					JDWP.Packet event;
+					while ((event = earlyEvents.poll()) != null) {
+						listener.accept(event);
+					}
+				} catch (RuntimeException e) {
+					shutdown(e);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Events dropped because no listener was set.
+	 */
+	public long getDroppedEventCount() {
+		return droppedEvents;
+	}
+
+	/**
+	 * Error that stopped recording, packets after it are not recorded but the connection stays open.
+	 *
+	 * @return null if recording works or no recorder was set
+	 */
+	public IOException getRecorderError() {
+		return recorderError;
+	}
+
+	/**
+	 * Send command, packet ID of the command buffer is overwritten.
+	 * The buffer is written without copying and must not be changed afterwards.
+	 *
+	 * @return future completed with the reply packet
+	 */
+	public CompletableFuture<JDWP.Packet> send(JDWP.ByteBuffer command) {
+		CompletableFuture<JDWP.Packet> future = enqueue(command);
+		scheduleWrite();
+		return future;
+	}
+
+	/**
+	 * Send command and decode the reply data, on the decode executor of the connection manager if any.
+	 */
+	public <T> CompletableFuture<T> send(JDWP.ByteBuffer command, ReplyDecoder<T> decoder) {
+		return decode(send(command), decoder);
+	}
+
+	private <T> CompletableFuture<T> decode(CompletableFuture<JDWP.Packet> reply, ReplyDecoder<T> decoder) {
+		if (decodeExecutor != null) {
+			return reply.thenApplyAsync(packet -> decoder.decode(packet.getBuf(), JDWP.PACKET_HEADER_SIZE),
+					decodeExecutor);
+		}
+		return reply.thenApply(packet -> decoder.decode(packet.getBuf(), JDWP.PACKET_HEADER_SIZE));
+	}
+
+	/**
+	 * Send command of exact {@code size} written by {@code encoder} with the assigned packet ID,
+	 * for example {@code send(frames.getSize(), (dst, off, id) -> frames.encode(dst, off, id, thread, 0, -1))}.
+	 * The packet is encoded once into an array owned by the client, which is written without copying.
+	 *
+	 * @return future completed with the reply packet
+	 */
+	public CompletableFuture<JDWP.Packet> send(int size, CommandEncoder encoder) {
+		byte[] packet = new byte[size];
+		int id = nextPacketID.getAndIncrement();
+		int end = encoder.encode(packet, 0, id);
+		if (end != size) {
+			throw new IllegalArgumentException("Encoded " + end + " bytes, expected " + size);
+		}
+		CompletableFuture<JDWP.Packet> future = enqueue(id, ByteBuffer.wrap(packet), null);
+		scheduleWrite();
+		return future;
+	}
+
+	/**
+	 * Same as {@link #send(int, CommandEncoder)}, reply data is decoded like in
+	 * {@link #send(JDWP.ByteBuffer, ReplyDecoder)}.
+	 */
+	public <T> CompletableFuture<T> send(int size, CommandEncoder encoder, ReplyDecoder<T> decoder) {
+		return decode(send(size, encoder), decoder);
+	}
+
+	/**
+	 * Send command and decode reply data while it is received, without buffering the whole reply.
+	 * Memory use is bounded by the read buffer (grown only if a single element does not fit into it).
+	 * Decoder is called from I/O thread.
+	 *
+	 * @return future completed when all reply data is decoded
+	 */
+	public CompletableFuture<Void> send(JDWP.ByteBuffer command, JDWP.ReplyStreamDecoder decoder) {
+		CompletableFuture<JDWP.Packet> future = enqueue(command, decoder);
+		scheduleWrite();
+		return future.thenApply(packet -> null);
+	}
+
+	/**
+	 * Send many commands, keeping at most {@code maxInFlight} of them awaiting replies.
+	 * Commands queued together are flushed with one gathering write, next commands are sent as replies
+	 * arrive. The first error reply fails the whole batch and stops sending of remaining commands.
+	 *
+	 * @return future with reply packets in submission order
+	 */
+	public CompletableFuture<List<JDWP.Packet>> sendBatch(List<JDWP.ByteBuffer> commands, int maxInFlight) {
+		return sendBatch(commands, maxInFlight, (bytes, start) -> JDWP.Packet.make(bytes));
+	}
+
+	/**
+	 * Same as {@link #sendBatch(List, int)} but each reply is decoded with {@code decoder}.
+	 */
+	public <T> CompletableFuture<List<T>> sendBatch(List<JDWP.ByteBuffer> commands, int maxInFlight,
+			ReplyDecoder<T> decoder) {
+		if (maxInFlight < 1) {
+			throw new IllegalArgumentException("maxInFlight must be positive: " + maxInFlight);
+		}
+		Batch<T> batch = new Batch<>(commands, decoder);
+		if (commands.isEmpty()) {
+			batch.result.complete(Collections.emptyList());
+			return batch.result;
+		}
+		int initial = Math.min(commands.size(), maxInFlight);
+		for (int i = 0; i < initial; i++) {
+			batch.sendNext();
+		}
+		scheduleWrite();
+		return batch.result;
+	}
+
+	private final class Batch<T> {
+		private final List<JDWP.ByteBuffer> commands;
+		private final ReplyDecoder<T> decoder;
+		private final Object[] replies;
+		private final AtomicInteger nextIndex = new AtomicInteger();
+		private final AtomicInteger remaining;
+		private final CompletableFuture<List<T>> result = new CompletableFuture<>();
+
+		Batch(List<JDWP.ByteBuffer> commands, ReplyDecoder<T> decoder) {
+			this.commands = commands;
+			this.decoder = decoder;
+			this.replies = new Object[commands.size()];
+			this.remaining = new AtomicInteger(commands.size());
+		}
+
+		/**
+		 * Called from submitting thread for the first window, then on each reply from I/O thread,
+		 * which writes after dispatching replies, or from decode executor.
+		 */
+		void sendNext() {
+			int index = nextIndex.getAndIncrement();
+			if (index >= commands.size() || result.isDone()) {
+				return;
+			}
+			CompletableFuture<JDWP.Packet> reply = enqueue(commands.get(index));
+			if (decodeExecutor != null) {
+				reply.whenCompleteAsync((packet, error) -> onReply(index, packet, error), decodeExecutor);
+			} else {
+				reply.whenComplete((packet, error) -> onReply(index, packet, error));
+			}
+		}
+
+		private void onReply(int index, JDWP.Packet packet, Throwable error) {
+			if (error != null) {
+				result.completeExceptionally(error);
+				return;
+			}
+			try {
+				replies[index] = decoder.decode(packet.getBuf(), JDWP.PACKET_HEADER_SIZE);
+			} catch (RuntimeException e) {
+				result.completeExceptionally(e);
+				return;
+			}
+			if (remaining.decrementAndGet() == 0) {
+				result.complete(toList());
+			} else {
+				sendNext();
+				if (!loop.inEventLoop()) {
+					scheduleWrite();
+				}
+			}
+		}
+
+		@SuppressWarnings("unchecked")
+		private List<T> toList() {
+			return (List<T>) Arrays.asList(replies);
+		}
+	}
+
+	private CompletableFuture<JDWP.Packet> enqueue(JDWP.ByteBuffer command) {
+		return enqueue(command, null);
+	}
+
+	private CompletableFuture<JDWP.Packet> enqueue(JDWP.ByteBuffer command, JDWP.ReplyStreamDecoder decoder) {
+		int id = nextPacketID.getAndIncrement();
+		command.setPacketID(id);
+		return enqueue(id, command.asNioBuffer(), decoder);
+	}
+
+	private CompletableFuture<JDWP.Packet> enqueue(int id, ByteBuffer packet, JDWP.ReplyStreamDecoder decoder) {
+		CompletableFuture<JDWP.Packet> future = new CompletableFuture<>();
+		if (closeFuture.isDone()) {
+			future.completeExceptionally(new ClosedChannelException());
+			return future;
+		}
+		if (decoder != null) {
+			streams.put(id, decoder);
+		}
+		pending.put(id, future);
+		if (maxInFlight > 0) {
+			waiting.add(packet);
+			sendWaiting();
+		} else {
+			writeQueue.add(packet);
+		}
+		if (closeFuture.isDone() && pending.remove(id) != null) {
+			// closed concurrently, I/O thread may have missed this command
+			future.completeExceptionally(new ClosedChannelException());
+		}
+		return future;
+	}
+
+	/**
+	 * Move queued commands to the write queue while less than {@code maxInFlight} are awaiting replies.
+	 */
+	private void sendWaiting() {
+		while (!waiting.isEmpty()) {
+			int count = inFlight.get();
+			if (count >= maxInFlight) {
+				return;
+			}
+			if (!inFlight.compareAndSet(count, count + 1)) {
+				continue;
+			}
+			ByteBuffer next = waiting.poll();
+			if (next == null) {
+				inFlight.decrementAndGet();
+			} else {
+				writeQueue.add(next);
+			}
+		}
+	}
+
+	/**
+	 * Called on I/O thread for each reply to a sent command.
+	 */
+	private void replied() {
+		if (maxInFlight > 0) {
+			inFlight.decrementAndGet();
+			sendWaiting();
+		}
+	}
+
+	private void scheduleWrite() {
+		if (writeScheduled.compareAndSet(false, true)) {
+			loop.execute(writeTask);
+		}
+	}
+
+	private void scheduledWrite() {
+		writeScheduled.set(false);
+		if (key == null || closeFuture.isDone()) {
+			return;
+		}
+		try {
+			write();
+		} catch (IOException | RuntimeException e) {
+			shutdown(e);
+		}
+	}
+
+	public boolean isClosed() {
+		return closeFuture.isDone();
+	}
+
+	/**
+	 * Completed when connection is closed by either side.
+	 */
+	public CompletableFuture<Void> closeFuture() {
+		return closeFuture;
+	}
+
+	@Override
+	public void close() throws IOException {
+		channel.close();
+		loop.execute(() -> shutdown(null));
+	}
+
+	/**
+	 * Called on I/O thread when the key of this connection is selected.
+	 */
+	void handleSelected(SelectionKey key) {
+		try {
+			if (!key.isValid() || key.isReadable() && !read()) {
+				shutdown(null);
+				return;
+			}
+			write();
+		} catch (IOException | RuntimeException e) {
+			shutdown(e);
+		}
+	}
+
+	/**
+	 * @return false on end of stream
+	 */
+	private boolean read() throws IOException {
+		int count;
+		while ((count = channel.read(readBuf)) > 0) {
+			if (recorder != null) {
+				try {
+					recorder.received(readBuf, readBuf.position() - count, count);
+				} catch (IOException e) {
+					recordingFailed(e);
+				}
+			}
+			readBuf.flip();
+			while (true) {
+				if (stream != null) {
+					if (!readStream()) {
+						break;
+					}
+					continue;
+				}
+				if (readBuf.remaining() < JDWP.PACKET_HEADER_SIZE) {
+					break;
+				}
+				int pos = readBuf.position();
+				int len = readBuf.getInt(pos);
+				if (len < JDWP.PACKET_HEADER_SIZE) {
+					throw new IOException("Bad packet length: " + len);
+				}
+				if (startStream(pos, len)) {
+					continue;
+				}
+				if (readBuf.remaining() < len) {
+					if (len > readBuf.capacity()) {
+						ByteBuffer bigger = ByteBuffer.allocate(len);
+						bigger.put(readBuf);
+						readBuf = bigger;
+						readBuf.flip();
+					}
+					break;
+				}
+				byte[] packet = new byte[len];
+				readBuf.get(packet);
+				dispatch(JDWP.Packet.make(packet));
+			}
+			readBuf.compact();
+		}
+		return count >= 0;
+	}
+
+	/**
+	 * Switch to streaming mode if the packet at {@code pos} is a successful reply to a streamed command.
+	 */
+	private boolean startStream(int pos, int len) throws IOException {
+		if (streams.isEmpty() || !JDWP.isReplyPacket(readBuf, pos)) {
+			return false;
+		}
+		int id = readBuf.getInt(pos + 4);
+		JDWP.ReplyStreamDecoder decoder = streams.remove(id);
+		if (decoder == null || JDWP.getPacketErrorCode(readBuf, pos) != JDWP.Error.NONE) {
+			// error replies are completed by dispatch
+			return false;
+		}
+		stream = decoder;
+		streamID = id;
+		streamRemaining = len - JDWP.PACKET_HEADER_SIZE;
+		readBuf.position(pos + JDWP.PACKET_HEADER_SIZE);
+		return true;
+	}
+
+	/**
+	 * Pass buffered data of the current streamed reply to its decoder.
+	 *
+	 * @return false if more data is needed
+	 */
+	private boolean readStream() throws IOException {
+		int available = Math.min(readBuf.remaining(), streamRemaining);
+		int limit = readBuf.limit();
+		int start = readBuf.position();
+		readBuf.limit(start + available);
+		try {
+			stream.decode(readBuf);
+		} catch (RuntimeException e) {
+			finishStream(e);
+			// skip rest of the reply
+			readBuf.position(start + available);
+			readBuf.limit(limit);
+			streamRemaining -= available;
+			stream = streamRemaining > 0 ? SKIP : null;
+			return readBuf.hasRemaining();
+		}
+		readBuf.limit(limit);
+		int consumed = readBuf.position() - start;
+		streamRemaining -= consumed;
+		if (streamRemaining == 0) {
+			finishStream(stream.isComplete() ? null : new JDWP.JdwpRuntimeException("Incomplete reply data"));
+			stream = null;
+			return true;
+		}
+		if (consumed < available && available - consumed == streamRemaining) {
+			// rest of the reply is buffered but the decoder can't use it, more data would never come
+			finishStream(new JDWP.JdwpRuntimeException("Incomplete reply data"));
+			readBuf.position(start + available);
+			streamRemaining = 0;
+			stream = null;
+			return readBuf.hasRemaining();
+		}
+		if (consumed < available) {
+			// incomplete element
+			if (start == 0 && limit == readBuf.capacity()) {
+				ByteBuffer bigger = ByteBuffer.allocate(readBuf.capacity() * 2);
+				bigger.put(readBuf);
+				readBuf = bigger;
+				readBuf.flip();
+			}
+			return false;
+		}
+		return readBuf.hasRemaining();
+	}
+
+	private void finishStream(RuntimeException error) {
+		if (stream == SKIP) {
+			return;
+		}
+		CompletableFuture<JDWP.Packet> future = pending.remove(streamID);
+		if (future != null) {
+			replied();
+			if (error != null) {
+				future.completeExceptionally(error);
+			} else {
+				future.complete(null);
+			}
+		}
+	}
+
+	/**
+	 * Discards remaining data of a streamed reply after decoder failure.
+	 */
+	private static final JDWP.ReplyStreamDecoder SKIP = new JDWP.ReplyStreamDecoder() {
+		@Override
+		public void decode(ByteBuffer data) {
+			data.position(data.limit());
+		}
+
+		@Override
+		public boolean isComplete() {
+			return true;
+		}
+	};
+
+	private void dispatch(JDWP.Packet packet) {
+		if (packet.isReplyPacket()) {
+			CompletableFuture<JDWP.Packet> future = pending.remove(packet.getID());
+			if (future != null) {
+				replied();
+				if (packet.isError()) {
+					future.completeExceptionally(new JDWP.JdwpErrorException(packet.getErrorCode()));
+				} else {
+					future.complete(packet);
+				}
+			}
+			return;
+		}
+		Consumer<JDWP.Packet> listener = eventListener;
+		if (listener != null) {
+			listener.accept(packet);
+		} else if (earlyEvents.size() < MAX_EARLY_EVENTS) {
+			earlyEvents.add(packet);
+		} else {
+			droppedEvents++;
+		}
+	}
+
+	/**
+	 * Recording is a side channel, stop it and keep the session.
+	 */
+	private void recordingFailed(IOException e) {
+		recorder = null;
+		recorderError = e;
+	}
+
+	private void write() throws IOException {
+		ByteBuffer next;
+		while ((next = writeQueue.poll()) != null) {
+			if (recorder != null) {
+				try {
+					recorder.sent(next);
+				} catch (IOException e) {
+					recordingFailed(e);
+				}
+			}
+			unwritten.add(next);
+		}
+		if (unwritten.isEmpty()) {
+			key.interestOps(SelectionKey.OP_READ);
+			return;
+		}
+		ByteBuffer[] gather = new ByteBuffer[Math.min(unwritten.size(), MAX_GATHER)];
+		while (!unwritten.isEmpty()) {
+			int count = 0;
+			for (ByteBuffer buf : unwritten) {
+				if (count == gather.length) {
+					break;
+				}
+				gather[count++] = buf;
+			}
+			channel.write(gather, 0, count);
+			while (!unwritten.isEmpty() && !unwritten.peekFirst().hasRemaining()) {
+				unwritten.pollFirst();
+			}
+			if (gather[count - 1].hasRemaining()) {
+				// socket buffer is full
+				break;
+			}
+		}
+		key.interestOps(unwritten.isEmpty() ? SelectionKey.OP_READ : SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+	}
+
+	/**
+	 * Called on I/O thread, closes the connection and fails all pending commands.
+	 */
+	void shutdown(Throwable error) {
+		if (closeFuture.isDone()) {
+			return;
+		}
+		try {
+			channel.close();
+		} catch (IOException e) {
+			// ignore
+		}
+		if (key != null) {
+			key.cancel();
+			loop.unregister();
+		}
+		if (ownsLoop) {
+			loop.close();
+		}
+		closeFuture.complete(null);
+		streams.clear();
+		Throwable cause = error != null ? error : new ClosedChannelException();
+		for (Integer id : pending.keySet()) {
+			CompletableFuture<JDWP.Packet> future = pending.remove(id);
+			if (future != null) {
+				future.completeExceptionally(cause);
+			}
+		}
+	}
+}
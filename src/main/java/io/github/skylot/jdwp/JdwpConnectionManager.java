@@ -0,0 +1,183 @@
+package io.github.skylot.jdwp;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Connections to many target VMs served by a few shared {@link JdwpEventLoop} threads, with replies decoded on
+ * a shared worker pool.
+ * <p>
+ * Each connection keeps its own {@link JDWP} codec for the ID sizes of its VM. Connections are assigned to
+ * loops round-robin. With {@link #setMaxInFlightPerVM(int)} commands above the limit are queued
+ * per connection and sent as replies arrive, so one busy VM can't flood the shared loops.
+ * <p>
+ * Reply decoders passed to {@link JdwpClient#send(JDWP.ByteBuffer, JdwpClient.ReplyDecoder)} and
+ * {@link JdwpClient#sendBatch} run on the worker pool; event listeners and streaming decoders still run on the
+ * event loop thread and must not block. Code running on the worker pool should not wait for replies
+ * synchronously, that can deadlock a small pool.
+ *
+ * <pre>
+ * try (JdwpConnectionManager manager = new JdwpConnectionManager().setMaxInFlightPerVM(64)) {
+ * 	List&lt;CompletableFuture&lt;JdwpClient&gt;&gt; clients = addresses.stream().map(manager::connect).collect(toList());
+ * 	...
+ * }
+ * </pre>
+ */
+public class JdwpConnectionManager implements Closeable {
+	private static final int CONNECT_THREADS = 4;
+
+	private final JdwpEventLoop[] loops;
+	private final Executor decodeExecutor;
+	private final ExecutorService ownedExecutor;
+	private final ExecutorService connectExecutor;
+	private final Set<JdwpClient> clients = ConcurrentHashMap.newKeySet();
+	private final AtomicInteger nextLoop = new AtomicInteger();
+	private volatile int maxInFlightPerVM;
+	private volatile boolean closed;
+
+	/**
+	 * Event loop count and decode pool size based on available processors.
+	 */
+	public JdwpConnectionManager() throws IOException {
+		this(Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() / 2)), null);
+	}
+
+	/**
+	 * @param eventLoops     number of I/O threads
+	 * @param decodeExecutor executor for decoding replies, null to create a pool with a thread per processor
+	 */
+	public JdwpConnectionManager(int eventLoops, Executor decodeExecutor) throws IOException {
+		if (eventLoops < 1) {
+			throw new IllegalArgumentException("eventLoops must be positive: " + eventLoops);
+		}
+		connectExecutor = newPool(CONNECT_THREADS, "jdwp-connect-");
+		if (decodeExecutor == null) {
+			ownedExecutor = newPool(Runtime.getRuntime().availableProcessors(), "jdwp-decode-");
+			this.decodeExecutor = ownedExecutor;
+		} else {
+			ownedExecutor = null;
+			this.decodeExecutor = decodeExecutor;
+		}
+		loops = new JdwpEventLoop[eventLoops];
+		try {
+			for (int i = 0; i < eventLoops; i++) {
+				loops[i] = new JdwpEventLoop("jdwp-event-loop-" + i);
+			}
+		} catch (IOException e) {
+			close();
+			throw e;
+		}
+	}
+
+	private static ExecutorService newPool(int threads, String namePrefix) {
+		AtomicInteger threadNum = new AtomicInteger();
+		return Executors.newFixedThreadPool(threads, r -> {
+			Thread thread = new Thread(r, namePrefix + threadNum.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/**
+	 * Limit of commands awaiting replies for connections opened afterwards, 0 for no limit.
+	 */
+	public JdwpConnectionManager setMaxInFlightPerVM(int maxInFlightPerVM) {
+		if (maxInFlightPerVM < 0) {
+			throw new IllegalArgumentException("Negative limit: " + maxInFlightPerVM);
+		}
+		this.maxInFlightPerVM = maxInFlightPerVM;
+		return this;
+	}
+
+	public CompletableFuture<JdwpClient> connect(String host, int port) {
+		return connect(new InetSocketAddress(host, port));
+	}
+
+	/**
+	 * Connect and handshake on one of {@value #CONNECT_THREADS} connect threads, the connection is then served
+	 * by a shared event loop.
+	 */
+	public CompletableFuture<JdwpClient> connect(SocketAddress address) {
+		return CompletableFuture.supplyAsync(() -> {
+			if (closed) {
+				throw new IllegalStateException("Connection manager is closed");
+			}
+			JdwpClient client;
+			try {
+				client = JdwpClient.connect(address, null, nextLoop(), decodeExecutor, maxInFlightPerVM);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+			clients.add(client);
+			client.closeFuture().thenRun(() -> clients.remove(client));
+			if (closed) {
+				closeQuietly(client);
+			}
+			return client;
+		}, connectExecutor);
+	}
+
+	/**
+	 * Open connections.
+	 */
+	public Collection<JdwpClient> getClients() {
+		return Collections.unmodifiableSet(clients);
+	}
+
+	/**
+	 * Connection count per event loop.
+	 */
+	public List<Integer> getLoopConnectionCounts() {
+		List<Integer> counts = new ArrayList<>(loops.length);
+		for (JdwpEventLoop loop : loops) {
+			counts.add(loop.getConnectionCount());
+		}
+		return counts;
+	}
+
+	private JdwpEventLoop nextLoop() {
+		return loops[Math.floorMod(nextLoop.getAndIncrement(), loops.length)];
+	}
+
+	/**
+	 * Close all connections and stop event loops and the owned decode pool.
+	 */
+	@Override
+	public void close() {
+		closed = true;
+		for (JdwpClient client : clients) {
+			closeQuietly(client);
+		}
+		for (JdwpEventLoop loop : loops) {
+			if (loop != null) {
+				loop.close();
+			}
+		}
+		connectExecutor.shutdown();
+		if (ownedExecutor != null) {
+			ownedExecutor.shutdown();
+		}
+	}
+
+	private static void closeQuietly(JdwpClient client) {
+		try {
+			client.close();
+		} catch (IOException e) {
+			// ignore
+		}
+	}
+}
@@ -0,0 +1,128 @@
+package io.github.skylot.jdwp;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Selector thread doing socket I/O for any number of {@link JdwpClient} connections.
+ * <p>
+ * Standalone clients own a loop each, {@link JdwpConnectionManager} shares a few loops between many clients.
+ * Other threads interact with the loop only through {@link #execute(Runnable)}.
+ */
+public class JdwpEventLoop implements Closeable {
+	private final Selector selector;
+	private final Thread thread;
+	private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+	private final AtomicInteger connectionCount = new AtomicInteger();
+	private volatile boolean closed;
+
+	public JdwpEventLoop(String name) throws IOException {
+		this.selector = Selector.open();
+		this.thread = new Thread(this::run, name);
+		this.thread.setDaemon(true);
+		this.thread.start();
+	}
+
+	/**
+	 * Run task on the loop thread.
+	 */
+	public void execute(Runnable task) {
+		tasks.add(task);
+		selector.wakeup();
+	}
+
+	public boolean inEventLoop() {
+		return Thread.currentThread() == thread;
+	}
+
+	/**
+	 * Connections currently served by this loop.
+	 */
+	public int getConnectionCount() {
+		return connectionCount.get();
+	}
+
+	/**
+	 * Register connected channel of {@code client}, called on loop thread.
+	 */
+	SelectionKey register(SocketChannel channel, JdwpClient client) throws ClosedChannelException {
+		SelectionKey key = channel.register(selector, SelectionKey.OP_READ, client);
+		connectionCount.incrementAndGet();
+		return key;
+	}
+
+	/**
+	 * Called by client on loop thread after its key is cancelled.
+	 */
+	void unregister() {
+		connectionCount.decrementAndGet();
+	}
+
+	/**
+	 * Stop the loop, all served connections are closed.
+	 */
+	@Override
+	public void close() {
+		closed = true;
+		selector.wakeup();
+	}
+
+	private void run() {
+		Throwable error = null;
+		try {
+			while (!closed) {
+				selector.select();
+				Runnable task;
+				while ((task = tasks.poll()) != null) {
+					runTask(task);
+				}
+				Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+				while (it.hasNext()) {
+					SelectionKey key = it.next();
+					it.remove();
+					((JdwpClient) key.attachment()).handleSelected(key);
+				}
+			}
+		} catch (IOException | RuntimeException e) {
+			error = e;
+		} finally {
+			closed = true;
+			for (SelectionKey key : selector.keys()) {
+				((JdwpClient) key.attachment()).shutdown(error);
+			}
+			Runnable task;
+			while ((task = tasks.poll()) != null) {
+				runTask(task);
+			}
+			try {
+				selector.close();
+			} catch (IOException e) {
+				// ignore
+			}
+		}
+	}
+
+	/**
+	 * A failing task is reported to the uncaught exception handler, it must not stop the loop
+	 * and with it all connections served by this loop.
+	 */
+	private void runTask(Runnable task) {
+		try {
+			task.run();
+		} catch (RuntimeException e) {
+			thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+		}
+	}
+
+	boolean isClosed() {
+		return closed;
+	}
+}
@@ -0,0 +1,1583 @@
+package io.github.skylot.jdwp;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * In-process stand-in for a target VM, for load testing clients and decoders without a real debuggee.
+ * <p>
+ * Listens on a loopback port, performs the JDWP handshake and answers commands of all command sets
+ * (VirtualMachine through ClassObjectReference) from a synthetic model: {@code classCount} classes with
+ * methods, fields and instances, {@code threadCount} threads with {@code frameDepth} frames each, strings and
+ * int/object arrays. Instance fields reference other instances, so the model also forms a heap graph.
+ * Replies of single commands can be replaced with {@link #setHandler} or with replies from a recorded session
+ * ({@link #addRecordedReplies}).
+ * <p>
+ * Event.Composite packets are emitted at {@link #setEventRate} for event requests of kinds SINGLE_STEP,
+ * BREAKPOINT, METHOD_ENTRY, METHOD_EXIT, METHOD_EXIT_WITH_RETURN_VALUE, THREAD_START, THREAD_DEATH and
+ * CLASS_PREPARE set by the client. Suspend policies and modifiers of requests are ignored, nothing is ever
+ * suspended.
+ * <p>
+ * Model parameters must be set before {@link #start()}. Usage:
+ *
+ * <pre>
+ * JdwpFakeVM vm = new JdwpFakeVM().setClassCount(5000).setThreadCount(1000).start();
+ * JdwpClient client = JdwpClient.connect("127.0.0.1", vm.getPort());
+ * </pre>
+ */
+public class JdwpFakeVM implements Closeable {
+	private static final int READ_BUFFER_SIZE = 64 * 1024;
+	private static final long EMIT_INTERVAL_NS = 1_000_000;
+
+	// ID kinds, stored in the highest byte of IDs
+	private static final int K_CLASS = 1;
+	private static final int K_METHOD = 2;
+	private static final int K_FIELD = 3;
+	private static final int K_THREAD = 4;
+	private static final int K_GROUP = 5;
+	private static final int K_INSTANCE = 6;
+	private static final int K_STRING = 7;
+	private static final int K_ARRAY = 8;
+	private static final int K_CLASS_OBJECT = 9;
+	private static final int K_LOADER = 10;
+	private static final int K_FRAME = 11;
+
+	// class indexes of the predefined types, synthetic classes follow
+	private static final int C_OBJECT = 0;
+	private static final int C_STRING = 1;
+	private static final int C_THREAD = 2;
+	private static final int C_GROUP = 3;
+	private static final int C_CLASS = 4;
+	private static final int C_LOADER = 5;
+	private static final int C_INT_ARRAY = 6;
+	private static final int C_OBJECT_ARRAY = 7;
+	private static final String[] SYSTEM_CLASSES = {
+			"Ljava/lang/Object;", "Ljava/lang/String;", "Ljava/lang/Thread;", "Ljava/lang/ThreadGroup;",
+			"Ljava/lang/Class;", "Ljava/lang/ClassLoader;", "[I", "[Ljava/lang/Object;"
+	};
+	private static final int FIRST_CLASS = SYSTEM_CLASSES.length;
+	private static final String[] FIELD_SIGNATURES = { "I", "Ljava/lang/Object;", "Ljava/lang/String;" };
+	private static final String METHOD_SIGNATURE = "(ILjava/lang/String;)Ljava/lang/Object;";
+	private static final int CODE_SIZE = 64;
+	private static final int REF_STRIDE = 7919;
+	private static final int CLASS_STATUS = JDWP.ClassStatus.VERIFIED | JDWP.ClassStatus.PREPARED
+			| JDWP.ClassStatus.INITIALIZED;
+
+	/**
+	 * Custom command handler, writes reply data or sets an error with {@link ReplyWriter#error(int)}.
+	 * Called from the connection thread.
+	 */
+	@FunctionalInterface
+	public interface CommandHandler {
+		void handle(Command command, ReplyWriter reply);
+	}
+
+	private int idSize = 8;
+	private int classCount = 1000;
+	private int threadCount = 100;
+	private int methodsPerClass = 20;
+	private int fieldsPerClass = 9;
+	private int instancesPerClass = 10;
+	private int frameDepth = 32;
+	private int arrayCount = 100;
+	private int arrayLength = 1000;
+	private volatile int eventRate;
+	private volatile int eventsPerComposite = 1;
+
+	private int shift;
+	private long indexMask;
+	private int typeCount;
+	private int instanceCount;
+	private ServerSocketChannel server;
+	private final Map<Integer, CommandHandler> handlers = new ConcurrentHashMap<>();
+	private final Map<RecordedCommand, byte[]> recordedReplies = new ConcurrentHashMap<>();
+	private final Map<Long, String> createdStrings = new ConcurrentHashMap<>();
+	private final AtomicInteger nextString = new AtomicInteger();
+	private final List<Connection> connections = new ArrayList<>();
+	private final ReentrantLock connectionsLock = new ReentrantLock();
+	private final LongAdder commandCount = new LongAdder();
+	private final LongAdder eventCount = new LongAdder();
+
+	/**
+	 * @param idSize size of all ID types, 4 or 8
+	 */
+	public JdwpFakeVM setIdSize(int idSize) {
+		if (idSize != 4 && idSize != 8) {
+			throw new IllegalArgumentException("Unsupported ID size: " + idSize);
+		}
+		this.idSize = idSize;
+		return this;
+	}
+
+	public JdwpFakeVM setClassCount(int classCount) {
+		this.classCount = classCount;
+		return this;
+	}
+
+	public JdwpFakeVM setThreadCount(int threadCount) {
+		this.threadCount = threadCount;
+		return this;
+	}
+
+	public JdwpFakeVM setMethodsPerClass(int methodsPerClass) {
+		this.methodsPerClass = methodsPerClass;
+		return this;
+	}
+
+	/**
+	 * Instance fields of synthetic classes, cycling through int, Object and String fields.
+	 */
+	public JdwpFakeVM setFieldsPerClass(int fieldsPerClass) {
+		this.fieldsPerClass = fieldsPerClass;
+		return this;
+	}
+
+	public JdwpFakeVM setInstancesPerClass(int instancesPerClass) {
+		this.instancesPerClass = instancesPerClass;
+		return this;
+	}
+
+	public JdwpFakeVM setFrameDepth(int frameDepth) {
+		this.frameDepth = frameDepth;
+		return this;
+	}
+
+	/**
+	 * Arrays of each type ({@code int[]} and {@code Object[]}) and their length.
+	 */
+	public JdwpFakeVM setArrays(int arrayCount, int arrayLength) {
+		this.arrayCount = arrayCount;
+		this.arrayLength = arrayLength;
+		return this;
+	}
+
+	/**
+	 * Can be changed while running.
+	 *
+	 * @param compositesPerSecond Event.Composite packets per second and connection, 0 to stop
+	 * @param eventsPerComposite  events in each composite
+	 */
+	public JdwpFakeVM setEventRate(int compositesPerSecond, int eventsPerComposite) {
+		if (eventsPerComposite < 1) {
+			throw new IllegalArgumentException("eventsPerComposite must be positive: " + eventsPerComposite);
+		}
+		this.eventsPerComposite = eventsPerComposite;
+		this.eventRate = compositesPerSecond;
+		return this;
+	}
+
+	/**
+	 * Replace model reply for a command, {@code null} handler restores it.
+	 */
+	public JdwpFakeVM setHandler(int commandSet, int command, CommandHandler handler) {
+		if (handler == null) {
+			handlers.remove((commandSet << 8) | command);
+		} else {
+			handlers.put((commandSet << 8) | command, handler);
+		}
+		return this;
+	}
+
+	/**
+	 * Answer commands found in a recording made with {@link JdwpPacketRecorder} with the recorded replies.
+	 * Commands are matched by command set, command and data bytes, others are answered from the model.
+	 */
+	public JdwpFakeVM addRecordedReplies(JdwpPacketReplayer replayer) throws IOException, InterruptedException {
+		Map<Integer, RecordedCommand> sent = new HashMap<>();
+		replayer.replay((time, isSent, packet, commandSet, command) -> {
+			if (isSent && !JDWP.isReplyPacket(packet, 0)) {
+				sent.put(JDWP.getPacketID(packet, 0), new RecordedCommand(commandSet, command,
+						Arrays.copyOfRange(packet, JDWP.PACKET_HEADER_SIZE, packet.length)));
+			} else if (!isSent && JDWP.isReplyPacket(packet, 0)) {
+				RecordedCommand cmd = sent.remove(JDWP.getPacketID(packet, 0));
+				if (cmd != null) {
+					recordedReplies.put(cmd, packet);
+				}
+			}
+		}, 0);
+		return this;
+	}
+
+	/**
+	 * Bind to a free loopback port and start accepting connections.
+	 */
+	public JdwpFakeVM start() throws IOException {
+		shift = idSize * 8 - 8;
+		indexMask = (1L << shift) - 1;
+		typeCount = FIRST_CLASS + classCount;
+		instanceCount = classCount * instancesPerClass;
+		server = ServerSocketChannel.open();
+		server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+		Thread acceptor = new Thread(this::accept, "jdwp-fake-vm-" + getPort());
+		acceptor.setDaemon(true);
+		acceptor.start();
+		return this;
+	}
+
+	public int getPort() {
+		return server.socket().getLocalPort();
+	}
+
+	/**
+	 * Commands answered over all connections.
+	 */
+	public long getCommandCount() {
+		return commandCount.sum();
+	}
+
+	/**
+	 * Events emitted over all connections.
+	 */
+	public long getEventCount() {
+		return eventCount.sum();
+	}
+
+	@Override
+	public void close() throws IOException {
+		server.close();
+		connectionsLock.lock();
+		try {
+			for (Connection connection : connections) {
+				connection.close();
+			}
+			connections.clear();
+		} finally {
+			connectionsLock.unlock();
+		}
+	}
+
+	private void accept() {
+		try {
+			while (true) {
+				SocketChannel channel = server.accept();
+				channel.socket().setTcpNoDelay(true);
+				Connection connection = new Connection(channel);
+				connectionsLock.lock();
+				try {
+					connections.add(connection);
+				} finally {
+					connectionsLock.unlock();
+				}
+				Thread thread = new Thread(connection::serve, "jdwp-fake-vm-connection-" + getPort());
+				thread.setDaemon(true);
+				thread.start();
+			}
+		} catch (IOException e) {
+			// server closed
+		}
+	}
+
+	/**
+	 * Command packet being answered, data is read sequentially.
+	 */
+	public final class Command {
+		private ByteBuffer buf;
+		private int start;
+		private int pos;
+		private int end;
+
+		void reset(ByteBuffer buf, int start, int len) {
+			this.buf = buf;
+			this.start = start;
+			this.pos = start + JDWP.PACKET_HEADER_SIZE;
+			this.end = start + len;
+		}
+
+		public int getID() {
+			return buf.getInt(start + 4);
+		}
+
+		public int getCommandSet() {
+			return buf.get(start + 9) & 0xff;
+		}
+
+		public int getCommand() {
+			return buf.get(start + 10) & 0xff;
+		}
+
+		/**
+		 * Copy of command data.
+		 */
+		public byte[] getData() {
+			byte[] data = new byte[end - start - JDWP.PACKET_HEADER_SIZE];
+			ByteBuffer src = buf.duplicate();
+			src.position(start + JDWP.PACKET_HEADER_SIZE);
+			src.get(data);
+			return data;
+		}
+
+		public byte readByte() {
+			check(1);
+			return buf.get(pos++);
+		}
+
+		public boolean readBoolean() {
+			return readByte() != 0;
+		}
+
+		public int readInt() {
+			check(4);
+			int val = buf.getInt(pos);
+			pos += 4;
+			return val;
+		}
+
+		public long readLong() {
+			check(8);
+			long val = buf.getLong(pos);
+			pos += 8;
+			return val;
+		}
+
+		public long readID() {
+			return idSize == 8 ? readLong() : readInt() & 0xffffffffL;
+		}
+
+		public String readString() {
+			int len = readInt();
+			check(len);
+			byte[] bytes = new byte[len];
+			ByteBuffer src = buf.duplicate();
+			src.position(pos);
+			src.get(bytes);
+			pos += len;
+			return new String(bytes, StandardCharsets.UTF_8);
+		}
+
+		private void check(int len) {
+			if (len < 0 || end - pos < len) {
+				throw new FakeError(JDWP.Error.INVALID_LENGTH);
+			}
+		}
+	}
+
+	/**
+	 * Reply data writer, also used for event packets.
+	 */
+	public final class ReplyWriter {
+		private ByteBuffer buf = ByteBuffer.allocate(READ_BUFFER_SIZE);
+		private int packetStart = -1;
+		private int errorCode;
+
+		void begin(int id, int flags, int commandSet, int command) {
+			packetStart = buf.position();
+			errorCode = 0;
+			ensure(JDWP.PACKET_HEADER_SIZE);
+			buf.putInt(0);
+			buf.putInt(id);
+			buf.put((byte) flags);
+			buf.put((byte) commandSet);
+			buf.put((byte) command);
+		}
+
+		void end() {
+			if (errorCode != 0) {
+				buf.position(packetStart + JDWP.PACKET_HEADER_SIZE);
+				buf.putShort(packetStart + 9, (short) errorCode);
+			}
+			buf.putInt(packetStart, buf.position() - packetStart);
+			packetStart = -1;
+		}
+
+		/**
+		 * Reply with error, data written so far is dropped.
+		 */
+		public void error(int errorCode) {
+			this.errorCode = errorCode;
+		}
+
+		public ReplyWriter writeByte(int val) {
+			ensure(1);
+			buf.put((byte) val);
+			return this;
+		}
+
+		public ReplyWriter writeBoolean(boolean val) {
+			return writeByte(val ? 1 : 0);
+		}
+
+		public ReplyWriter writeShort(int val) {
+			ensure(2);
+			buf.putShort((short) val);
+			return this;
+		}
+
+		public ReplyWriter writeInt(int val) {
+			ensure(4);
+			buf.putInt(val);
+			return this;
+		}
+
+		public ReplyWriter writeLong(long val) {
+			ensure(8);
+			buf.putLong(val);
+			return this;
+		}
+
+		public ReplyWriter writeID(long id) {
+			return idSize == 8 ? writeLong(id) : writeInt((int) id);
+		}
+
+		public ReplyWriter writeString(String str) {
+			byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+			ensure(4 + bytes.length);
+			buf.putInt(bytes.length);
+			buf.put(bytes);
+			return this;
+		}
+
+		public ReplyWriter writeTaggedObject(int tag, long objectID) {
+			return writeByte(tag).writeID(objectID);
+		}
+
+		public ReplyWriter writeLocation(int typeTag, long classID, long methodID, long index) {
+			return writeByte(typeTag).writeID(classID).writeID(methodID).writeLong(index);
+		}
+
+		/**
+		 * Write raw bytes, e.g. recorded reply data.
+		 */
+		public ReplyWriter writeBytes(byte[] bytes, int offset, int len) {
+			ensure(len);
+			buf.put(bytes, offset, len);
+			return this;
+		}
+
+		int size() {
+			return buf.position();
+		}
+
+		private void ensure(int len) {
+			if (buf.remaining() < len) {
+				ByteBuffer bigger = ByteBuffer.allocate(Math.max(buf.capacity() * 2, buf.position() + len));
+				buf.flip();
+				bigger.put(buf);
+				buf = bigger;
+			}
+		}
+
+		void writeTo(SocketChannel channel) throws IOException {
+			buf.flip();
+			while (buf.hasRemaining()) {
+				channel.write(buf);
+			}
+			buf.clear();
+		}
+	}
+
+	/**
+	 * Model lookup failure, answered with an error reply.
+	 */
+	private static final class FakeError extends RuntimeException {
+		private static final long serialVersionUID = 1L;
+		final int errorCode;
+
+		FakeError(int errorCode) {
+			super(null, null, false, false);
+			this.errorCode = errorCode;
+		}
+	}
+
+	private static final class RecordedCommand {
+		final int command;
+		final byte[] data;
+
+		RecordedCommand(int commandSet, int command, byte[] data) {
+			this.command = (commandSet << 8) | command;
+			this.data = data;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof RecordedCommand)) {
+				return false;
+			}
+			RecordedCommand other = (RecordedCommand) o;
+			return command == other.command && Arrays.equals(data, other.data);
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * command + Arrays.hashCode(data);
+		}
+	}
+
+	private static final class EventRequestInfo {
+		final int requestID;
+		final byte eventKind;
+
+		EventRequestInfo(int requestID, byte eventKind) {
+			this.requestID = requestID;
+			this.eventKind = eventKind;
+		}
+	}
+
+	private long id(int kind, long index) {
+		return ((long) kind << shift) | index;
+	}
+
+	private int kind(long id) {
+		return (int) (id >>> shift);
+	}
+
+	/**
+	 * Index of an ID of {@code kind} below {@code count}, otherwise fails with {@code errorCode}.
+	 */
+	private int index(long id, int kind, int count, int errorCode) {
+		long index = id & indexMask;
+		if (kind(id) != kind || index >= count) {
+			throw new FakeError(errorCode);
+		}
+		return (int) index;
+	}
+
+	private int classIndex(long refType) {
+		return index(refType, K_CLASS, typeCount, JDWP.Error.INVALID_CLASS);
+	}
+
+	private int threadIndex(long thread) {
+		return index(thread, K_THREAD, threadCount, JDWP.Error.INVALID_THREAD);
+	}
+
+	private int methodIndex(long methodID) {
+		return index(methodID, K_METHOD, methodsPerClass, JDWP.Error.INVALID_METHODID);
+	}
+
+	private int arrayIndex(long array) {
+		return index(array, K_ARRAY, arrayCount * 2, JDWP.Error.INVALID_OBJECT);
+	}
+
+	private int fieldCount(int cls) {
+		return cls >= FIRST_CLASS ? fieldsPerClass : 0;
+	}
+
+	private String signature(int cls) {
+		if (cls < FIRST_CLASS) {
+			return SYSTEM_CLASSES[cls];
+		}
+		int i = cls - FIRST_CLASS;
+		return "Lfake/module" + (i % 97) + "/Class" + i + ";";
+	}
+
+	private static int typeTag(int cls) {
+		return cls == C_INT_ARRAY || cls == C_OBJECT_ARRAY ? JDWP.TypeTag.ARRAY : JDWP.TypeTag.CLASS;
+	}
+
+	/**
+	 * Class index of an object, fails for unknown objects.
+	 */
+	private int objectClass(long object) {
+		long index = object & indexMask;
+		switch (kind(object)) {
+			case K_INSTANCE:
+				if (index < instanceCount) {
+					return FIRST_CLASS + (int) (index / instancesPerClass);
+				}
+				break;
+			case K_STRING:
+				if (index < instanceCount || createdStrings.containsKey(object)) {
+					return C_STRING;
+				}
+				break;
+			case K_THREAD:
+				if (index < threadCount) {
+					return C_THREAD;
+				}
+				break;
+			case K_GROUP:
+				if (index == 0) {
+					return C_GROUP;
+				}
+				break;
+			case K_ARRAY:
+				if (index < arrayCount * 2) {
+					return (index & 1) == 0 ? C_INT_ARRAY : C_OBJECT_ARRAY;
+				}
+				break;
+			case K_CLASS_OBJECT:
+				if (index < typeCount) {
+					return C_CLASS;
+				}
+				break;
+			case K_LOADER:
+				if (index == 0) {
+					return C_LOADER;
+				}
+				break;
+			default:
+				break;
+		}
+		throw new FakeError(JDWP.Error.INVALID_OBJECT);
+	}
+
+	private int objectTag(long object) {
+		switch (kind(object)) {
+			case K_STRING:
+				return JDWP.Tag.STRING;
+			case K_THREAD:
+				return JDWP.Tag.THREAD;
+			case K_GROUP:
+				return JDWP.Tag.THREAD_GROUP;
+			case K_ARRAY:
+				return JDWP.Tag.ARRAY;
+			case K_CLASS_OBJECT:
+				return JDWP.Tag.CLASS_OBJECT;
+			case K_LOADER:
+				return JDWP.Tag.CLASS_LOADER;
+			default:
+				return JDWP.Tag.OBJECT;
+		}
+	}
+
+	/**
+	 * Object referenced by instance field {@code field} of {@code instance}, fields of type Object reference
+	 * instances and fields of type String reference strings with the same index.
+	 */
+	private long fieldValue(int instance, int field) {
+		if (field % 3 == 2) {
+			return id(K_STRING, instance);
+		}
+		return id(K_INSTANCE, Math.floorMod(instance + (long) field * REF_STRIDE + 1, instanceCount));
+	}
+
+	private void writeObject(ReplyWriter reply, long object) {
+		reply.writeTaggedObject(object == 0 ? JDWP.Tag.OBJECT : objectTag(object), object);
+	}
+
+	private void writeClass(ReplyWriter reply, int cls) {
+		reply.writeByte(typeTag(cls)).writeID(id(K_CLASS, cls));
+	}
+
+	private void writeFrameLocation(ReplyWriter reply, int thread, int frame) {
+		int cls = FIRST_CLASS + (thread + frame) % classCount;
+		int method = (thread * 3 + frame) % methodsPerClass;
+		reply.writeLocation(JDWP.TypeTag.CLASS, id(K_CLASS, cls), id(K_METHOD, method), (frame * 8) % CODE_SIZE);
+	}
+
+	/**
+	 * Value of a field or local variable with the given signature.
+	 */
+	private void writeValue(ReplyWriter reply, char sig, long object) {
+		switch (sig) {
+			case 'L':
+			case '[':
+				writeObject(reply, object);
+				break;
+			case 'B':
+			case 'Z':
+				reply.writeByte(sig).writeByte(0);
+				break;
+			case 'C':
+			case 'S':
+				reply.writeByte(sig).writeShort(0);
+				break;
+			case 'F':
+			case 'I':
+				reply.writeByte(sig).writeInt(0);
+				break;
+			case 'D':
+			case 'J':
+				reply.writeByte(sig).writeLong(0);
+				break;
+			case 'V':
+				reply.writeByte(sig);
+				break;
+			default:
+				throw new FakeError(JDWP.Error.TYPE_MISMATCH);
+		}
+	}
+
+	private final class Connection {
+		private final SocketChannel channel;
+		private final ReentrantLock writeLock = new ReentrantLock();
+		private final Command command = new Command();
+		private final ReplyWriter reply = new ReplyWriter();
+		private final Map<Integer, EventRequestInfo> requests = new ConcurrentHashMap<>();
+		private final AtomicInteger nextRequestID = new AtomicInteger(1);
+		private final AtomicInteger suspendCount = new AtomicInteger();
+		private volatile EventRequestInfo[] emitted = new EventRequestInfo[0];
+		private volatile boolean held;
+		private volatile boolean closed;
+
+		Connection(SocketChannel channel) {
+			this.channel = channel;
+		}
+
+		void close() {
+			closed = true;
+			try {
+				channel.close();
+			} catch (IOException e) {
+				// ignore
+			}
+		}
+
+		void serve() {
+			try {
+				handshake();
+				Thread emitter = new Thread(this::emitEvents, Thread.currentThread().getName() + "-events");
+				emitter.setDaemon(true);
+				emitter.start();
+				sendVMStart();
+				ByteBuffer in = ByteBuffer.allocate(READ_BUFFER_SIZE);
+				while (channel.read(in) >= 0) {
+					in.flip();
+					while (in.remaining() >= JDWP.PACKET_HEADER_SIZE) {
+						int pos = in.position();
+						int len = in.getInt(pos);
+						if (len < JDWP.PACKET_HEADER_SIZE) {
+							throw new IOException("Bad packet length: " + len);
+						}
+						if (in.remaining() < len) {
+							if (len > in.capacity()) {
+								ByteBuffer bigger = ByteBuffer.allocate(len);
+								bigger.put(in);
+								bigger.flip();
+								in = bigger;
+							}
+							break;
+						}
+						command.reset(in, pos, len);
+						in.position(pos + len);
+						if (!JDWP.isReplyPacket(in, pos) && !answer()) {
+							flush();
+							return;
+						}
+					}
+					in.compact();
+					flush();
+				}
+			} catch (IOException e) {
+				// connection closed
+			} finally {
+				close();
+			}
+		}
+
+		private void handshake() throws IOException {
+			ByteBuffer handshake = ByteBuffer.allocate(JDWP.encodeHandShakePacket().length);
+			while (handshake.hasRemaining()) {
+				if (channel.read(handshake) < 0) {
+					throw new IOException("Connection closed during handshake");
+				}
+			}
+			if (!JDWP.decodeHandShakePacket(handshake.array())) {
+				throw new IOException("Bad handshake");
+			}
+			handshake.flip();
+			while (handshake.hasRemaining()) {
+				channel.write(handshake);
+			}
+		}
+
+		private void flush() throws IOException {
+			writeLock.lock();
+			try {
+				reply.writeTo(channel);
+			} finally {
+				writeLock.unlock();
+			}
+		}
+
+		/**
+		 * @return false if connection should be closed after the reply
+		 */
+		private boolean answer() {
+			commandCount.increment();
+			int commandSet = command.getCommandSet();
+			int cmd = command.getCommand();
+			reply.begin(command.getID(), 0x80, 0, 0);
+			try {
+				CommandHandler handler = handlers.get((commandSet << 8) | cmd);
+				if (handler != null) {
+					handler.handle(command, reply);
+				} else if (recordedReplies.isEmpty() || !answerRecorded(commandSet, cmd)) {
+					answerModel(commandSet, cmd);
+				}
+			} catch (FakeError e) {
+				reply.error(e.errorCode);
+			}
+			reply.end();
+			return !(commandSet == 1 && (cmd == 6 || cmd == 10));
+		}
+
+		private boolean answerRecorded(int commandSet, int cmd) {
+			byte[] recorded = recordedReplies.get(new RecordedCommand(commandSet, cmd, command.getData()));
+			if (recorded == null) {
+				return false;
+			}
+			reply.error(JDWP.getPacketErrorCode(recorded, 0));
+			reply.writeBytes(recorded, JDWP.PACKET_HEADER_SIZE, recorded.length - JDWP.PACKET_HEADER_SIZE);
+			return true;
+		}
+
+		private void answerModel(int commandSet, int cmd) {
+			switch (commandSet) {
+				case 1:
+					virtualMachine(cmd);
+					break;
+				case 2:
+					referenceType(cmd);
+					break;
+				case 3:
+					classType(cmd);
+					break;
+				case 4:
+					arrayType(cmd);
+					break;
+				case 5:
+					interfaceType(cmd);
+					break;
+				case 6:
+					method(cmd);
+					break;
+				case 9:
+					objectReference(cmd);
+					break;
+				case 10:
+					stringReference(cmd);
+					break;
+				case 11:
+					threadReference(cmd);
+					break;
+				case 12:
+					threadGroupReference(cmd);
+					break;
+				case 13:
+					arrayReference(cmd);
+					break;
+				case 14:
+					classLoaderReference(cmd);
+					break;
+				case 15:
+					eventRequest(cmd);
+					break;
+				case 16:
+					stackFrame(cmd);
+					break;
+				case 17:
+					classObjectReference(cmd);
+					break;
+				default:
+					reply.error(JDWP.Error.NOT_IMPLEMENTED);
+					break;
+			}
+		}
+
+		private void virtualMachine(int cmd) {
+			switch (cmd) {
+				case 1: // Version
+					reply.writeString("Fake VM").writeInt(1).writeInt(8).writeString("1.8.0").writeString("JdwpFakeVM");
+					break;
+				case 2: { // ClassesBySignature
+					String signature = command.readString();
+					int found = -1;
+					for (int cls = 0; cls < typeCount && found < 0; cls++) {
+						if (signature(cls).equals(signature)) {
+							found = cls;
+						}
+					}
+					reply.writeInt(found < 0 ? 0 : 1);
+					if (found >= 0) {
+						writeClass(reply, found);
+						reply.writeInt(CLASS_STATUS);
+					}
+					break;
+				}
+				case 3: // AllClasses
+				case 20: // AllClassesWithGeneric
+					reply.writeInt(typeCount);
+					for (int cls = 0; cls < typeCount; cls++) {
+						writeClass(reply, cls);
+						reply.writeString(signature(cls));
+						if (cmd == 20) {
+							reply.writeString("");
+						}
+						reply.writeInt(CLASS_STATUS);
+					}
+					break;
+				case 4: // AllThreads
+					reply.writeInt(threadCount);
+					for (int i = 0; i < threadCount; i++) {
+						reply.writeID(id(K_THREAD, i));
+					}
+					break;
+				case 5: // TopLevelThreadGroups
+					reply.writeInt(1).writeID(id(K_GROUP, 0));
+					break;
+				case 7: // IDSizes
+					for (int i = 0; i < 5; i++) {
+						reply.writeInt(idSize);
+					}
+					break;
+				case 8: // Suspend
+					suspendCount.incrementAndGet();
+					break;
+				case 9: // Resume
+					suspendCount.updateAndGet(c -> Math.max(0, c - 1));
+					break;
+				case 11: { // CreateString
+					String str = command.readString();
+					long id = id(K_STRING, instanceCount + (long) nextString.getAndIncrement());
+					createdStrings.put(id, str);
+					reply.writeID(id);
+					break;
+				}
+				case 12: // Capabilities
+					for (int i = 0; i < 7; i++) {
+						reply.writeBoolean(true);
+					}
+					break;
+				case 13: // ClassPaths
+					reply.writeString("/fake").writeInt(0).writeInt(0);
+					break;
+				case 15: // HoldEvents
+					held = true;
+					break;
+				case 16: // ReleaseEvents
+					held = false;
+					break;
+				case 17: // CapabilitiesNew
+					for (int i = 0; i < 32; i++) {
+						reply.writeBoolean(true);
+					}
+					break;
+				case 21: { // InstanceCounts
+					int count = command.readInt();
+					reply.writeInt(count);
+					for (int i = 0; i < count; i++) {
+						reply.writeLong(instances(classIndex(command.readID())));
+					}
+					break;
+				}
+				case 6: // Dispose
+				case 10: // Exit
+				case 14: // DisposeObjects
+				case 18: // RedefineClasses
+				case 19: // SetDefaultStratum
+					break;
+				default:
+					reply.error(JDWP.Error.NOT_IMPLEMENTED);
+					break;
+			}
+		}
+
+		private int instances(int cls) {
+			switch (cls) {
+				case C_STRING:
+					return instanceCount;
+				case C_THREAD:
+					return threadCount;
+				case C_GROUP:
+				case C_LOADER:
+					return 1;
+				case C_CLASS:
+					return typeCount;
+				case C_INT_ARRAY:
+				case C_OBJECT_ARRAY:
+					return arrayCount;
+				case C_OBJECT:
+					return 0;
+				default:
+					return instancesPerClass;
+			}
+		}
+
+		private long instance(int cls, int i) {
+			switch (cls) {
+				case C_STRING:
+					return id(K_STRING, i);
+				case C_THREAD:
+					return id(K_THREAD, i);
+				case C_GROUP:
+					return id(K_GROUP, i);
+				case C_LOADER:
+					return id(K_LOADER, i);
+				case C_CLASS:
+					return id(K_CLASS_OBJECT, i);
+				case C_INT_ARRAY:
+					return id(K_ARRAY, i * 2L);
+				case C_OBJECT_ARRAY:
+					return id(K_ARRAY, i * 2L + 1);
+				default:
+					return id(K_INSTANCE, (long) (cls - FIRST_CLASS) * instancesPerClass + i);
+			}
+		}
+
+		private void referenceType(int cmd) {
+			int cls = classIndex(command.readID());
+			switch (cmd) {
+				case 1: // Signature
+					reply.writeString(signature(cls));
+					break;
+				case 13: // SignatureWithGeneric
+					reply.writeString(signature(cls)).writeString("");
+					break;
+				case 2: // ClassLoader
+					reply.writeID(cls < FIRST_CLASS ? 0 : id(K_LOADER, 0));
+					break;
+				case 3: // Modifiers
+					reply.writeInt(0x0001);
+					break;
+				case 4: // Fields
+				case 14: { // FieldsWithGeneric
+					int count = fieldCount(cls);
+					reply.writeInt(count);
+					for (int f = 0; f < count; f++) {
+						reply.writeID(id(K_FIELD, f)).writeString("field" + f).writeString(FIELD_SIGNATURES[f % 3]);
+						if (cmd == 14) {
+							reply.writeString("");
+						}
+						reply.writeInt(0x0002);
+					}
+					break;
+				}
+				case 5: // Methods
+				case 15: // MethodsWithGeneric
+					reply.writeInt(methodsPerClass);
+					for (int m = 0; m < methodsPerClass; m++) {
+						reply.writeID(id(K_METHOD, m)).writeString("method" + m).writeString(METHOD_SIGNATURE);
+						if (cmd == 15) {
+							reply.writeString("");
+						}
+						reply.writeInt(0x0001);
+					}
+					break;
+				case 6: { // GetValues, no static fields but answer by field signature
+					int count = command.readInt();
+					reply.writeInt(count);
+					for (int i = 0; i < count; i++) {
+						int f = index(command.readID(), K_FIELD, fieldCount(cls), JDWP.Error.INVALID_FIELDID);
+						writeValue(reply, FIELD_SIGNATURES[f % 3].charAt(0), 0);
+					}
+					break;
+				}
+				case 7: // SourceFile
+					if (cls < FIRST_CLASS) {
+						reply.error(JDWP.Error.ABSENT_INFORMATION);
+					} else {
+						reply.writeString("Class" + (cls - FIRST_CLASS) + ".java");
+					}
+					break;
+				case 8: // NestedTypes
+				case 10: // Interfaces
+					reply.writeInt(0);
+					break;
+				case 9: // Status
+					reply.writeInt(CLASS_STATUS);
+					break;
+				case 11: // ClassObject
+					reply.writeID(id(K_CLASS_OBJECT, cls));
+					break;
+				case 12: // SourceDebugExtension
+					reply.error(JDWP.Error.ABSENT_INFORMATION);
+					break;
+				case 16: { // Instances
+					int max = command.readInt();
+					int count = instances(cls);
+					if (max > 0) {
+						count = Math.min(count, max);
+					}
+					reply.writeInt(count);
+					for (int i = 0; i < count; i++) {
+						writeObject(reply, instance(cls, i));
+					}
+					break;
+				}
+				case 17: // ClassFileVersion
+					reply.writeInt(52).writeInt(0);
+					break;
+				case 18: // ConstantPool
+					reply.writeInt(1).writeInt(0);
+					break;
+				default:
+					reply.error(JDWP.Error.NOT_IMPLEMENTED);
+					break;
+			}
+		}
+
+		private void classType(int cmd) {
+			int cls = classIndex(command.readID());
+			switch (cmd) {
+				case 1: // Superclass
+					reply.writeID(cls == C_OBJECT ? 0 : id(K_CLASS, C_OBJECT));
+					break;
+				case 2: // SetValues
+					break;
+				case 3: // InvokeMethod
+					writeValue(reply, 'I', 0);
+					writeObject(reply, 0);
+					break;
+				case 4: // NewInstance
+					writeObject(reply, instance(cls, 0));
+					writeObject(reply, 0);
+					break;
+				default:
+					reply.error(JDWP.Error.NOT_IMPLEMENTED);
+					break;
+			}
+		}
+
+		private void arrayType(int cmd) {
+			int cls = classIndex(command.readID());
+			if (cmd != 1) {
+				reply.error(JDWP.Error.NOT_IMPLEMENTED);
+			} else if (cls != C_INT_ARRAY && cls != C_OBJECT_ARRAY) {
+				reply.error(JDWP.Error.INVALID_CLASS);
+			} else {
+				// NewInstance, existing array of the type
+				writeObject(reply, instance(cls, 0));
+			}
+		}
+
+		private void interfaceType(int cmd) {
+			classIndex(command.readID());
+			if (cmd != 1) {
+				reply.error(JDWP.Error.NOT_IMPLEMENTED);
+				return;
+			}
+			// InvokeMethod
+			writeValue(reply, 'I', 0);
+			writeObject(reply, 0);
+		}
+
+		private void method(int cmd) {
+			classIndex(command.readID());
+			methodIndex(command.readID());
+			switch (cmd) {
+				case 1: { // LineTable
+					int lines = CODE_SIZE / 8;
+					reply.writeLong(0).writeLong(CODE_SIZE - 1).writeInt(lines);
+					for (int i = 0; i < lines; i++) {
+						reply.writeLong(i * 8L).writeInt(10 + i);
+					}
+					break;
+				}
+				case 2: // VariableTable
+				case 5: // VariableTableWithGeneric
+					reply.writeInt(3).writeInt(2);
+					reply.writeLong(0).writeString("arg").writeString("I");
+					if (cmd == 5) {
+						reply.writeString("");
+					}
+					reply.writeInt(CODE_SIZE).writeInt(1);
+					reply.writeLong(0).writeString("name").writeString("Ljava/lang/String;");
+					if (cmd == 5) {
+						reply.writeString("");
+					}
+					reply.writeInt(CODE_SIZE).writeInt(2);
+					break;
+				case 3: // Bytecodes
+					reply.writeInt(CODE_SIZE);
+					for (int i = 0; i < CODE_SIZE; i++) {
+						reply.writeByte(0);
+					}
+					break;
+				case 4: // IsObsolete
+					reply.writeBoolean(false);
+					break;
+				default:
+					reply.error(JDWP.Error.NOT_IMPLEMENTED);
+					break;
+			}
+		}
+
+		private void objectReference(int cmd) {
+			long object = command.readID();
+			int cls = objectClass(object);
+			switch (cmd) {
+				case 1: // ReferenceType
+					writeClass(reply, cls);
+					break;
+				case 2: { // GetValues
+					int count = command.readInt();
+					reply.writeInt(count);
+					for (int i = 0; i < count; i++) {
+						int f = index(command.readID(), K_FIELD, fieldCount(cls), JDWP.Error.INVALID_FIELDID);
+						char sig = FIELD_SIGNATURES[f % 3].charAt(0);
+						writeValue(reply, sig, sig == 'I' ? 0 : fieldValue((int) (object & indexMask), f));
+					}
+					break;
+				}
+				case 5: // MonitorInfo
+					reply.writeID(0).writeInt(0).writeInt(0);
+					break;
+				case 6: // InvokeMethod
+					writeValue(reply, 'I', 0);
+					writeObject(reply, 0);
+					break;
+				case 9: // IsCollected
+					reply.writeBoolean(false);
+					break;
+				case 10: { // ReferringObjects
+					int max = command.readInt();
+					List<Long> referrers = new ArrayList<>();
+					if (kind(object) == K_INSTANCE || kind(object) == K_STRING) {
+						long index = object & indexMask;
+						for (int f = kind(object) == K_INSTANCE ? 1 : 2; f < fieldsPerClass; f += 3) {
+							long src = kind(object) == K_STRING ? index
+									: Math.floorMod(index - (long) f * REF_STRIDE - 1, instanceCount);
+							if (src < instanceCount) {
+								referrers.add(id(K_INSTANCE, src));
+							}
+						}
+					}
+					int count = max > 0 ? Math.min(max, referrers.size()) : referrers.size();
+					reply.writeInt(count);
+					for (int i = 0; i < count; i++) {
+						writeObject(reply, referrers.get(i));
+					}
+					break;
+				}
+				case 3: // SetValues
+				case 7: // DisableCollection
+				case 8: // EnableCollection
+					break;
+				default:
+					reply.error(JDWP.Error.NOT_IMPLEMENTED);
+					break;
+			}
+		}
+
+		private void stringReference(int cmd) {
+			long object = command.readID();
+			if (cmd != 1) {
+				reply.error(JDWP.Error.NOT_IMPLEMENTED);
+			} else if (objectClass(object) != C_STRING) {
+				reply.error(JDWP.Error.INVALID_STRING);
+			} else {
+				String created = createdStrings.get(object);
+				reply.writeString(created != null ? created : "string" + (object & indexMask));
+			}
+		}
+
+		private void threadReference(int cmd) {
+			int thread = threadIndex(command.readID());
+			switch (cmd) {
+				case 1: // Name
+					reply.writeString("fake-thread-" + thread);
+					break;
+				case 4: // Status
+					reply.writeInt(JDWP.ThreadStatus.RUNNING)
+							.writeInt(suspendCount.get() > 0 ? JDWP.SuspendStatus.SUSPEND_STATUS_SUSPENDED : 0);
+					break;
+				case 5: // ThreadGroup
+					reply.writeID(id(K_GROUP, 0));
+					break;
+				case 6: { // Frames
+					int start = command.readInt();
+					int length = command.readInt();
+					if (start < 0 || start > frameDepth) {
+						reply.error(JDWP.Error.INVALID_INDEX);
+						break;
+					}
+					if (length == -1) {
+						length = frameDepth - start;
+					} else if (length < 0 || start + length > frameDepth) {
+						reply.error(JDWP.Error.INVALID_LENGTH);
+						break;
+					}
+					reply.writeInt(length);
+					for (int i = start; i < start + length; i++) {
+						reply.writeID(id(K_FRAME, (long) thread * frameDepth + i));
+						writeFrameLocation(reply, thread, i);
+					}
+					break;
+				}
+				case 7: // FrameCount
+					reply.writeInt(frameDepth);
+					break;
+				case 8: // OwnedMonitors
+				case 13: // OwnedMonitorsStackDepthInfo
+					reply.writeInt(0);
+					break;
+				case 9: // CurrentContendedMonitor
+					writeObject(reply, 0);
+					break;
+				case 12: // SuspendCount
+					reply.writeInt(suspendCount.get());
+					break;
+				case 2: // Suspend
+				case 3: // Resume
+				case 10: // Stop
+				case 11: // Interrupt
+				case 14: // ForceEarlyReturn
+					break;
+				default:
+					reply.error(JDWP.Error.NOT_IMPLEMENTED);
+					break;
+			}
+		}
+
+		private void threadGroupReference(int cmd) {
+			index(command.readID(), K_GROUP, 1, JDWP.Error.INVALID_THREAD_GROUP);
+			switch (cmd) {
+				case 1: // Name
+					reply.writeString("main");
+					break;
+				case 2: // Parent
+					reply.writeID(0);
+					break;
+				case 3: // Children
+					reply.writeInt(threadCount);
+					for (int i = 0; i < threadCount; i++) {
+						reply.writeID(id(K_THREAD, i));
+					}
+					reply.writeInt(0);
+					break;
+				default:
+					reply.error(JDWP.Error.NOT_IMPLEMENTED);
+					break;
+			}
+		}
+
+		private void arrayReference(int cmd) {
+			int array = arrayIndex(command.readID());
+			boolean objects = (array & 1) != 0;
+			switch (cmd) {
+				case 1: // Length
+					reply.writeInt(arrayLength);
+					break;
+				case 2: { // GetValues
+					int first = command.readInt();
+					int length = command.readInt();
+					if (first < 0 || first > arrayLength) {
+						reply.error(JDWP.Error.INVALID_INDEX);
+						break;
+					}
+					if (length < 0 || first + length > arrayLength) {
+						reply.error(JDWP.Error.INVALID_LENGTH);
+						break;
+					}
+					reply.writeByte(objects ? JDWP.Tag.OBJECT : JDWP.Tag.INT).writeInt(length);
+					for (int i = first; i < first + length; i++) {
+						if (objects) {
+							writeObject(reply, id(K_INSTANCE, Math.floorMod(array * 31L + i, instanceCount)));
+						} else {
+							reply.writeInt(i);
+						}
+					}
+					break;
+				}
+				case 3: // SetValues
+					break;
+				default:
+					reply.error(JDWP.Error.NOT_IMPLEMENTED);
+					break;
+			}
+		}
+
+		private void classLoaderReference(int cmd) {
+			index(command.readID(), K_LOADER, 1, JDWP.Error.INVALID_CLASS_LOADER);
+			if (cmd != 1) {
+				reply.error(JDWP.Error.NOT_IMPLEMENTED);
+				return;
+			}
+			// VisibleClasses
+			reply.writeInt(typeCount);
+			for (int cls = 0; cls < typeCount; cls++) {
+				writeClass(reply, cls);
+			}
+		}
+
+		private void eventRequest(int cmd) {
+			switch (cmd) {
+				case 1: { // Set
+					byte eventKind = command.readByte();
+					int requestID = nextRequestID.getAndIncrement();
+					requests.put(requestID, new EventRequestInfo(requestID, eventKind));
+					updateEmitted();
+					reply.writeInt(requestID);
+					break;
+				}
+				case 2: { // Clear
+					command.readByte();
+					requests.remove(command.readInt());
+					updateEmitted();
+					break;
+				}
+				case 3: // ClearAllBreakpoints
+					requests.values().removeIf(r -> r.eventKind == JDWP.EventKind.BREAKPOINT);
+					updateEmitted();
+					break;
+				default:
+					reply.error(JDWP.Error.NOT_IMPLEMENTED);
+					break;
+			}
+		}
+
+		private void stackFrame(int cmd) {
+			int thread = threadIndex(command.readID());
+			long frame = command.readID();
+			int frameIndex = index(frame, K_FRAME, threadCount * frameDepth, JDWP.Error.INVALID_FRAMEID);
+			if (frameIndex / frameDepth != thread) {
+				throw new FakeError(JDWP.Error.INVALID_FRAMEID);
+			}
+			switch (cmd) {
+				case 1: { // GetValues
+					int count = command.readInt();
+					reply.writeInt(count);
+					for (int i = 0; i < count; i++) {
+						int slot = command.readInt();
+						char sig = (char) command.readByte();
+						long object = sig == '[' ? id(K_ARRAY, Math.floorMod(slot * 2L + 1, arrayCount * 2L))
+								: id(K_INSTANCE, Math.floorMod((long) frameIndex + slot, instanceCount));
+						writeValue(reply, sig, object);
+					}
+					break;
+				}
+				case 3: // ThisObject
+					writeObject(reply, id(K_INSTANCE, frameIndex % instanceCount));
+					break;
+				case 2: // SetValues
+				case 4: // PopFrames
+					break;
+				default:
+					reply.error(JDWP.Error.NOT_IMPLEMENTED);
+					break;
+			}
+		}
+
+		private void classObjectReference(int cmd) {
+			int cls = index(command.readID(), K_CLASS_OBJECT, typeCount, JDWP.Error.INVALID_OBJECT);
+			if (cmd != 1) {
+				reply.error(JDWP.Error.NOT_IMPLEMENTED);
+				return;
+			}
+			// ReflectedType
+			writeClass(reply, cls);
+		}
+
+		private void updateEmitted() {
+			List<EventRequestInfo> list = new ArrayList<>();
+			for (EventRequestInfo request : requests.values()) {
+				switch (request.eventKind) {
+					case JDWP.EventKind.SINGLE_STEP:
+					case JDWP.EventKind.BREAKPOINT:
+					case JDWP.EventKind.METHOD_ENTRY:
+					case JDWP.EventKind.METHOD_EXIT:
+					case JDWP.EventKind.METHOD_EXIT_WITH_RETURN_VALUE:
+					case JDWP.EventKind.THREAD_START:
+					case JDWP.EventKind.THREAD_DEATH:
+					case JDWP.EventKind.CLASS_PREPARE:
+						list.add(request);
+						break;
+					default:
+						break;
+				}
+			}
+			emitted = list.toArray(new EventRequestInfo[0]);
+		}
+
+		private void sendVMStart() throws IOException {
+			ReplyWriter out = new ReplyWriter();
+			out.begin(0, 0, 64, 100);
+			out.writeByte(JDWP.SuspendPolicy.NONE).writeInt(1);
+			out.writeByte(JDWP.EventKind.VM_START).writeInt(0).writeID(id(K_THREAD, 0));
+			out.end();
+			writeLock.lock();
+			try {
+				out.writeTo(channel);
+			} finally {
+				writeLock.unlock();
+			}
+		}
+
+		/**
+		 * Emits due composites every millisecond, batched into one write.
+		 */
+		private void emitEvents() {
+			ReplyWriter out = new ReplyWriter();
+			long sent = 0;
+			long next = 0;
+			int packetID = 1;
+			long rateStart = System.nanoTime();
+			int rate = 0;
+			try {
+				while (!closed) {
+					LockSupport.parkNanos(EMIT_INTERVAL_NS);
+					EventRequestInfo[] targets = emitted;
+					int currentRate = eventRate;
+					if (currentRate != rate) {
+						rate = currentRate;
+						rateStart = System.nanoTime();
+						sent = 0;
+					}
+					if (rate <= 0 || held || targets.length == 0) {
+						continue;
+					}
+					long due = (System.nanoTime() - rateStart) * rate / 1_000_000_000L - sent;
+					for (long i = 0; i < due; i++) {
+						next = writeComposite(out, packetID++, targets, next);
+						if (out.size() >= READ_BUFFER_SIZE) {
+							write(out);
+						}
+					}
+					sent += due;
+					write(out);
+				}
+			} catch (IOException e) {
+				// connection closed
+			}
+		}
+
+		private void write(ReplyWriter out) throws IOException {
+			writeLock.lock();
+			try {
+				out.writeTo(channel);
+			} finally {
+				writeLock.unlock();
+			}
+		}
+
+		/**
+		 * @return next event sequence number
+		 */
+		private long writeComposite(ReplyWriter out, int packetID, EventRequestInfo[] targets, long seq) {
+			int count = eventsPerComposite;
+			out.begin(packetID, 0, 64, 100);
+			out.writeByte(JDWP.SuspendPolicy.NONE).writeInt(count);
+			for (int i = 0; i < count; i++, seq++) {
+				EventRequestInfo request = targets[(int) (seq % targets.length)];
+				int thread = (int) (seq % threadCount);
+				out.writeByte(request.eventKind).writeInt(request.requestID).writeID(id(K_THREAD, thread));
+				switch (request.eventKind) {
+					case JDWP.EventKind.THREAD_START:
+					case JDWP.EventKind.THREAD_DEATH:
+						break;
+					case JDWP.EventKind.CLASS_PREPARE: {
+						int cls = FIRST_CLASS + (int) (seq % classCount);
+						writeClass(out, cls);
+						out.writeString(signature(cls)).writeInt(CLASS_STATUS);
+						break;
+					}
+					default:
+						writeFrameLocation(out, thread, (int) (seq % frameDepth));
+						if (request.eventKind == JDWP.EventKind.METHOD_EXIT_WITH_RETURN_VALUE) {
+							out.writeByte(JDWP.Tag.INT).writeInt((int) seq);
+						}
+						break;
+				}
+			}
+			out.end();
+			eventCount.add(count);
+			return seq;
+		}
+	}
+}
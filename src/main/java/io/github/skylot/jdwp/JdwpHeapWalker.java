@@ -0,0 +1,522 @@
+package io.github.skylot.jdwp;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.locks.ReentrantLock;
+
+import io.github.skylot.jdwp.JDWP.ReferenceType.Fields.FieldsReplyData;
+import io.github.skylot.jdwp.JDWP.ReferenceType.Fields.FieldsReplyDataDeclared;
+
+/**
+ * Breadth-first walk of the object graph of the target VM, starting from all instances of root types.
+ * <p>
+ * Objects are expanded with ObjectReference.ReferenceType followed by ObjectReference.GetValues of instance
+ * reference fields (or ArrayReference.GetValues for object arrays), with up to {@code maxInFlight} objects
+ * expanded concurrently. Garbage collection of visited objects is disabled while walking and enabled
+ * again at the end, objects collected before that are kept in the graph without outgoing edges. Any other
+ * failure, like a closed connection, fails the walk.
+ * <p>
+ * With {@link #setReferrers(boolean)} objects are expanded with ObjectReference.ReferringObjects instead,
+ * so edges point from an object to its referrers (needs canGetInstanceInfo capability like Instances).
+ * <p>
+ * The walker is used from one thread, graph state is only touched by the walking thread.
+ */
+public class JdwpHeapWalker {
+	private static final int ARRAY_CHUNK = 16 * 1024;
+	private static final int MOD_STATIC = 0x0008;
+
+	private final JdwpClient client;
+	private final JDWP jdwp;
+	private final JdwpMetadataCache cache;
+	private final int objectIDSize;
+	private final Map<Long, CompletableFuture<long[]>> referenceFields = new ConcurrentHashMap<>();
+
+	private int maxInFlight = 64;
+	private int maxNodes = 1_000_000;
+	private int maxDepth = Integer.MAX_VALUE;
+	private int maxInstancesPerType = 0;
+	private boolean referrers;
+
+	// walk state
+	private long[] nodeObject;
+	private long[] nodeType;
+	private int[] nodeDepth;
+	private int nodeCount;
+	private int[] edgeSrc;
+	private int[] edgeDst;
+	private int edgeCount;
+	private LongLongMap nodeIndex;
+	private final ReentrantLock lock = new ReentrantLock();
+	// nodes with failed DisableCollection, set on I/O thread, guarded by lock
+	private final BitSet notDisabled = new BitSet();
+	private volatile Throwable failure;
+
+	public JdwpHeapWalker(JdwpClient client, JdwpMetadataCache cache) {
+		this.client = client;
+		this.jdwp = client.jdwp();
+		this.cache = cache;
+		this.objectIDSize = client.getIDSizes().objectIDSize;
+	}
+
+	public JdwpHeapWalker setMaxInFlight(int maxInFlight) {
+		if (maxInFlight < 1) {
+			throw new IllegalArgumentException("maxInFlight must be positive: " + maxInFlight);
+		}
+		this.maxInFlight = maxInFlight;
+		return this;
+	}
+
+	public JdwpHeapWalker setMaxNodes(int maxNodes) {
+		if (maxNodes < 0) {
+			throw new IllegalArgumentException("maxNodes must not be negative: " + maxNodes);
+		}
+		this.maxNodes = maxNodes;
+		return this;
+	}
+
+	public JdwpHeapWalker setMaxDepth(int maxDepth) {
+		if (maxDepth < 0) {
+			throw new IllegalArgumentException("maxDepth must not be negative: " + maxDepth);
+		}
+		this.maxDepth = maxDepth;
+		return this;
+	}
+
+	/**
+	 * @param maxInstancesPerType max root instances per root type, 0 for all
+	 */
+	public JdwpHeapWalker setMaxInstancesPerType(int maxInstancesPerType) {
+		if (maxInstancesPerType < 0) {
+			throw new IllegalArgumentException("maxInstancesPerType must not be negative: " + maxInstancesPerType);
+		}
+		this.maxInstancesPerType = maxInstancesPerType;
+		return this;
+	}
+
+	public JdwpHeapWalker setReferrers(boolean referrers) {
+		this.referrers = referrers;
+		return this;
+	}
+
+	/**
+	 * Result of an object expansion, created on I/O thread and applied by the walking thread.
+	 */
+	private static final class Expansion {
+		final int node;
+		final long typeID;
+		final long[] refs;
+		final Throwable error;
+
+		Expansion(int node, long typeID, long[] refs) {
+			this.node = node;
+			this.typeID = typeID;
+			this.refs = refs;
+			this.error = null;
+		}
+
+		Expansion(int node, Throwable error) {
+			this.node = node;
+			this.typeID = 0;
+			this.refs = NO_REFS;
+			this.error = error;
+		}
+	}
+
+	private static final long[] NO_REFS = new long[0];
+
+	public HeapGraph walk(long... rootTypes) throws InterruptedException, ExecutionException {
+		nodeObject = new long[1024];
+		nodeType = new long[1024];
+		nodeDepth = new int[1024];
+		nodeCount = 0;
+		edgeSrc = new int[4096];
+		edgeDst = new int[4096];
+		edgeCount = 0;
+		nodeIndex = new LongLongMap(1024, -1, false);
+		lock.lock();
+		try {
+			notDisabled.clear();
+		} finally {
+			lock.unlock();
+		}
+		failure = null;
+		try {
+			JDWP.ReferenceType.Instances instances = jdwp.referenceType().cmdInstances();
+			List<CompletableFuture<JDWP.ReferenceType.Instances.InstancesReplyData>> roots = new ArrayList<>();
+			for (long rootType : rootTypes) {
+				roots.add(client.send(instances.encode(rootType, maxInstancesPerType), instances::decode));
+			}
+			for (CompletableFuture<JDWP.ReferenceType.Instances.InstancesReplyData> root : roots) {
+				for (JDWP.ReferenceType.Instances.InstancesReplyDataInstances instance : root.get().instances) {
+					addNode(instance.instance.objectID, 0);
+				}
+			}
+			BlockingQueue<Expansion> results = new LinkedBlockingQueue<>();
+			int next = 0;
+			int inFlight = 0;
+			while (next < nodeCount || inFlight > 0) {
+				while (inFlight < maxInFlight && next < nodeCount) {
+					int node = next++;
+					expand(node, nodeObject[node]).whenComplete((expansion, error) -> {
+						results.add(expansion != null ? expansion : new Expansion(node, error));
+					});
+					inFlight++;
+				}
+				Expansion expansion = results.take();
+				inFlight--;
+				if (failure != null) {
+					throw new ExecutionException(failure);
+				}
+				if (expansion.error != null) {
+					Throwable cause = unwrap(expansion.error);
+					if (!(cause instanceof JDWP.JdwpErrorException)) {
+						throw new ExecutionException(cause);
+					}
+					// collected before expansion
+					continue;
+				}
+				apply(expansion);
+			}
+			return buildGraph();
+		} finally {
+			enableCollection();
+		}
+	}
+
+	private void apply(Expansion expansion) {
+		int src = expansion.node;
+		nodeType[src] = expansion.typeID;
+		int depth = nodeDepth[src] + 1;
+		for (long ref : expansion.refs) {
+			if (ref == 0) {
+				continue;
+			}
+			int dst = (int) nodeIndex.get(ref);
+			if (dst < 0) {
+				if (nodeCount >= maxNodes || depth > maxDepth) {
+					continue;
+				}
+				dst = addNode(ref, depth);
+			}
+			addEdge(src, dst);
+		}
+	}
+
+	private int addNode(long object, int depth) {
+		int node = (int) nodeIndex.get(object);
+		if (node >= 0 || nodeCount >= maxNodes) {
+			return node;
+		}
+		if (nodeCount == nodeObject.length) {
+			int cap = nodeCount * 2;
+			nodeObject = Arrays.copyOf(nodeObject, cap);
+			nodeType = Arrays.copyOf(nodeType, cap);
+			nodeDepth = Arrays.copyOf(nodeDepth, cap);
+		}
+		node = nodeCount++;
+		nodeObject[node] = object;
+		nodeDepth[node] = depth;
+		nodeIndex.put(object, node);
+		// keep ID valid until the walk is done, processed before the next commands for this object
+		int disabledNode = node;
+		client.send(jdwp.objectReference().cmdDisableCollection().encode(object)).whenComplete((reply, error) -> {
+			if (error == null) {
+				return;
+			}
+			lock.lock();
+			try {
+				notDisabled.set(disabledNode);
+			} finally {
+				lock.unlock();
+			}
+			Throwable cause = unwrap(error);
+			if (!(cause instanceof JDWP.JdwpErrorException)) {
+				failure = cause;
+			}
+		});
+		return node;
+	}
+
+	private void addEdge(int src, int dst) {
+		if (edgeCount == edgeSrc.length) {
+			int cap = edgeCount * 2;
+			edgeSrc = Arrays.copyOf(edgeSrc, cap);
+			edgeDst = Arrays.copyOf(edgeDst, cap);
+		}
+		edgeSrc[edgeCount] = src;
+		edgeDst[edgeCount] = dst;
+		edgeCount++;
+	}
+
+	private CompletableFuture<Expansion> expand(int node, long object) {
+		JDWP.ObjectReference.ReferenceType cmd = jdwp.objectReference().cmdReferenceType();
+		return client.send(cmd.encode(object), cmd::decode).thenCompose(type -> {
+			CompletableFuture<long[]> refs;
+			if (referrers) {
+				refs = referringObjects(object);
+			} else if (type.refTypeTag == JDWP.TypeTag.ARRAY) {
+				refs = cache.signature(type.typeID).thenCompose(sig -> isObjectArray(sig)
+						? arrayElements(object)
+						: CompletableFuture.completedFuture(NO_REFS));
+			} else {
+				refs = referenceFields(type.typeID).thenCompose(fields -> fieldValues(object, fields));
+			}
+			return refs.thenApply(values -> new Expansion(node, type.typeID, values));
+		});
+	}
+
+	private static boolean isObjectArray(String signature) {
+		char c = signature.length() > 1 ? signature.charAt(1) : 0;
+		return c == 'L' || c == '[';
+	}
+
+	/**
+	 * Instance reference fields of the type and its superclasses.
+	 */
+	private CompletableFuture<long[]> referenceFields(long typeID) {
+		CompletableFuture<long[]> cached = referenceFields.get(typeID);
+		if (cached != null) {
+			return cached;
+		}
+		JDWP.ClassType.Superclass superclass = jdwp.classType().cmdSuperclass();
+		CompletableFuture<long[]> fields = cache.fields(typeID)
+				.thenCombine(client.send(superclass.encode(typeID), superclass::decode), (declared, sup) -> {
+					long[] own = instanceReferenceFields(declared);
+					return sup.superclass == 0
+							? CompletableFuture.completedFuture(own)
+							: referenceFields(sup.superclass).thenApply(inherited -> concat(own, inherited));
+				}).thenCompose(f -> f);
+		CompletableFuture<long[]> prev = referenceFields.putIfAbsent(typeID, fields);
+		if (prev != null) {
+			return prev;
+		}
+		// retry failed types in later expansions and walks
+		fields.whenComplete((ids, error) -> {
+			if (error != null) {
+				referenceFields.remove(typeID, fields);
+			}
+		});
+		return fields;
+	}
+
+	private static Throwable unwrap(Throwable error) {
+		while (error.getCause() != null && (error instanceof CompletionException
+				|| error instanceof ExecutionException)) {
+			error = error.getCause();
+		}
+		return error;
+	}
+
+	private static long[] instanceReferenceFields(FieldsReplyData fields) {
+		long[] ids = new long[fields.declared.size()];
+		int count = 0;
+		for (FieldsReplyDataDeclared field : fields.declared) {
+			char c = field.signature.charAt(0);
+			if ((field.modBits & MOD_STATIC) == 0 && (c == 'L' || c == '[')) {
+				ids[count++] = field.fieldID;
+			}
+		}
+		return Arrays.copyOf(ids, count);
+	}
+
+	private static long[] concat(long[] a, long[] b) {
+		long[] all = Arrays.copyOf(a, a.length + b.length);
+		System.arraycopy(b, 0, all, a.length, b.length);
+		return all;
+	}
+
+	private CompletableFuture<long[]> fieldValues(long object, long[] fields) {
+		if (fields.length == 0) {
+			return CompletableFuture.completedFuture(NO_REFS);
+		}
+		List<Long> fieldList = new ArrayList<>(fields.length);
+		for (long field : fields) {
+			fieldList.add(field);
+		}
+		JDWP.ObjectReference.GetValues cmd = jdwp.objectReference().cmdGetValues();
+		// all requested fields are references, so every value is a tagged objectID
+		return client.send(cmd.encode(object, fieldList), (bytes, start) -> readTaggedIDs(bytes, start + 4,
+				JDWP.decodeInt(bytes, start)));
+	}
+
+	private CompletableFuture<long[]> arrayElements(long array) {
+		JDWP.ArrayReference.Length length = jdwp.arrayReference().cmdLength();
+		JDWP.ArrayReference.GetValues getValues = jdwp.arrayReference().cmdGetValues();
+		return client.send(length.encode(array), length::decode).thenCompose(len -> {
+			int count = len.arrayLength;
+			List<CompletableFuture<long[]>> chunks = new ArrayList<>();
+			for (int first = 0; first < count; first += ARRAY_CHUNK) {
+				int chunk = Math.min(ARRAY_CHUNK, count - first);
+				// array region of object type: tag, count, tagged values
+				chunks.add(client.send(getValues.encode(array, first, chunk),
+						(bytes, start) -> readTaggedIDs(bytes, start + 5, JDWP.decodeInt(bytes, start + 1))));
+			}
+			return CompletableFuture.allOf(chunks.toArray(new CompletableFuture<?>[0])).thenApply(v -> {
+				long[] all = new long[count];
+				int pos = 0;
+				for (CompletableFuture<long[]> chunk : chunks) {
+					long[] ids = chunk.join();
+					System.arraycopy(ids, 0, all, pos, ids.length);
+					pos += ids.length;
+				}
+				return all;
+			});
+		});
+	}
+
+	private CompletableFuture<long[]> referringObjects(long object) {
+		JDWP.ObjectReference.ReferringObjects cmd = jdwp.objectReference().cmdReferringObjects();
+		return client.send(cmd.encode(object, 0), (bytes, start) -> readTaggedIDs(bytes, start + 4,
+				JDWP.decodeInt(bytes, start)));
+	}
+
+	private long[] readTaggedIDs(byte[] bytes, int start, int count) {
+		long[] ids = new long[count];
+		int stride = 1 + objectIDSize;
+		for (int i = 0; i < count; i++) {
+			ids[i] = JDWP.decodeBySize(bytes, start + i * stride + 1, objectIDSize);
+		}
+		return ids;
+	}
+
+	private void enableCollection() throws InterruptedException {
+		if (nodeCount == 0) {
+			return;
+		}
+		JDWP.ObjectReference.EnableCollection cmd = jdwp.objectReference().cmdEnableCollection();
+		BitSet skip;
+		lock.lock();
+		try {
+			skip = (BitSet) notDisabled.clone();
+		} finally {
+			lock.unlock();
+		}
+		List<CompletableFuture<JDWP.Packet>> pending = new ArrayList<>(Math.min(nodeCount, maxInFlight));
+		for (int i = 0; i < nodeCount; i++) {
+			if (!skip.get(i)) {
+				pending.add(client.send(cmd.encode(nodeObject[i])));
+			}
+			if (pending.size() == maxInFlight || i == nodeCount - 1) {
+				for (CompletableFuture<JDWP.Packet> future : pending) {
+					try {
+						future.get();
+					} catch (ExecutionException e) {
+						// collected or VM gone, nothing to enable
+					}
+				}
+				pending.clear();
+			}
+		}
+	}
+
+	private HeapGraph buildGraph() throws InterruptedException, ExecutionException {
+		HeapGraph graph = new HeapGraph();
+		int n = nodeCount;
+		graph.nodeCount = n;
+		graph.objectID = Arrays.copyOf(nodeObject, n);
+		graph.typeID = Arrays.copyOf(nodeType, n);
+		graph.edgeStart = new int[n + 1];
+		graph.edgeTarget = new int[edgeCount];
+		for (int i = 0; i < edgeCount; i++) {
+			graph.edgeStart[edgeSrc[i] + 1]++;
+		}
+		for (int i = 0; i < n; i++) {
+			graph.edgeStart[i + 1] += graph.edgeStart[i];
+		}
+		int[] fill = Arrays.copyOf(graph.edgeStart, n);
+		for (int i = 0; i < edgeCount; i++) {
+			graph.edgeTarget[fill[edgeSrc[i]]++] = edgeDst[i];
+		}
+		LongObjectMap<CompletableFuture<String>> signatures = new LongObjectMap<>();
+		for (int i = 0; i < n; i++) {
+			long type = graph.typeID[i];
+			if (type != 0 && !signatures.containsKey(type)) {
+				signatures.put(type, cache.signature(type));
+			}
+		}
+		graph.typeSignatures = new LongObjectMap<>(signatures.size());
+		for (int i = 0; i < n; i++) {
+			long type = graph.typeID[i];
+			if (type != 0 && !graph.typeSignatures.containsKey(type)) {
+				try {
+					graph.typeSignatures.put(type, signatures.get(type).get());
+				} catch (ExecutionException e) {
+					if (!(e.getCause() instanceof JDWP.JdwpErrorException)) {
+						throw e;
+					}
+				}
+			}
+		}
+		return graph;
+	}
+
+	/**
+	 * Object graph in compressed sparse row form: outgoing edges of node {@code i} are
+	 * {@code edgeTarget[edgeStart[i] .. edgeStart[i + 1])}. Nodes are numbered in breadth-first order,
+	 * {@code typeID} is 0 for objects collected before they were expanded.
+	 */
+	public static class HeapGraph {
+		private static final int MAGIC = 0x4a484730; // "JHG0"
+
+		public int nodeCount;
+		public long[] objectID;
+		public long[] typeID;
+		public int[] edgeStart;
+		public int[] edgeTarget;
+		public LongObjectMap<String> typeSignatures;
+
+		public int getEdgeCount() {
+			return edgeTarget.length;
+		}
+
+		/**
+		 * Write graph in a binary format: magic, node count, edge count, objectID[], typeID[], edgeStart[],
+		 * edgeTarget[], type count, then typeID and modified UTF-8 signature per type. All big-endian.
+		 */
+		public void writeTo(OutputStream out) throws IOException {
+			DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out, 64 * 1024));
+			data.writeInt(MAGIC);
+			data.writeInt(nodeCount);
+			data.writeInt(edgeTarget.length);
+			for (int i = 0; i < nodeCount; i++) {
+				data.writeLong(objectID[i]);
+			}
+			for (int i = 0; i < nodeCount; i++) {
+				data.writeLong(typeID[i]);
+			}
+			for (int start : edgeStart) {
+				data.writeInt(start);
+			}
+			for (int target : edgeTarget) {
+				data.writeInt(target);
+			}
+			data.writeInt(typeSignatures.size());
+			IOException[] error = new IOException[1];
+			typeSignatures.forEach((type, signature) -> {
+				try {
+					data.writeLong(type);
+					data.writeUTF(signature);
+				} catch (IOException e) {
+					error[0] = e;
+				}
+			});
+			if (error[0] != null) {
+				throw error[0];
+			}
+			data.flush();
+		}
+	}
+}
@@ -0,0 +1,358 @@
+package io.github.skylot.jdwp;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+import io.github.skylot.jdwp.JDWP.Method.LineTable.LineTableReplyData;
+import io.github.skylot.jdwp.JDWP.ReferenceType.Fields.FieldsReplyData;
+import io.github.skylot.jdwp.JDWP.ReferenceType.Methods.MethodsReplyData;
+import io.github.skylot.jdwp.JDWP.VirtualMachine.RedefineClasses.RedefineClassesClassBytes;
+
+/**
+ * Caches reference type metadata of one {@link JdwpClient} connection: ReferenceType.Signature, Methods,
+ * Fields, SourceFile and Method.LineTable.
+ * <p>
+ * Futures are cached, so concurrent lookups of the same item share one command. Failed commands are not
+ * cached. Size is bounded by the number of cached items, the least recently used reference types are
+ * evicted first, then the oldest line tables of the type being looked up. Only the signature, methods,
+ * fields and source file of that type are kept even if they exceed {@code maxItems}.
+ * <p>
+ * Entries must be invalidated when classes are unloaded, pass ClassUnload events to
+ * {@link #onClassUnload(int, String)}. ClassUnload events carry only the signature, so the signature of
+ * every cached type is fetched along with its first item. A type whose signature can't be fetched is
+ * dropped, as is a type whose signature was unloaded while it was being fetched.
+ *
+ * <pre>
+ * dispatcher.onClassUnload(cache::onClassUnload);
+ * </pre>
+ *
+ * Classes redefined with {@link #redefineClasses(List)} are invalidated on success.
+ */
+public class JdwpMetadataCache {
+	private static final int SIGNATURE = 0;
+	private static final int METHODS = 1;
+	private static final int FIELDS = 2;
+	private static final int SOURCE_FILE = 3;
+	private static final int LINE_TABLE = 4;
+
+	private final JdwpClient client;
+	private final JDWP jdwp;
+	private final int maxItems;
+	private final ReentrantLock lock = new ReentrantLock();
+	private final LinkedHashMap<Long, TypeEntry> types = new LinkedHashMap<>(64, 0.75f, true);
+	private final Map<String, Set<Long>> typesBySignature = new HashMap<>();
+	// unload epoch per signature unloaded while Signature commands are in flight
+	private final Map<String, Long> recentUnloads = new HashMap<>();
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+
+	// guarded by lock
+	private int items;
+	private long unloadEpoch;
+	private int pendingSignatures;
+
+	private static final class TypeEntry {
+		final long refType;
+		final CompletableFuture<?>[] slots = new CompletableFuture<?>[LINE_TABLE];
+		LinkedHashMap<Long, CompletableFuture<LineTableReplyData>> lineTables;
+		String signature;
+		long signatureEpoch;
+		int items;
+
+		TypeEntry(long refType) {
+			this.refType = refType;
+		}
+	}
+
+	/**
+	 * @param maxItems max number of cached replies
+	 */
+	public JdwpMetadataCache(JdwpClient client, int maxItems) {
+		if (maxItems < 1) {
+			throw new IllegalArgumentException("maxItems must be positive: " + maxItems);
+		}
+		this.client = client;
+		this.jdwp = client.jdwp();
+		this.maxItems = maxItems;
+	}
+
+	public CompletableFuture<String> signature(long refType) {
+		JDWP.ReferenceType.Signature cmd = jdwp.referenceType().cmdSignature();
+		return lookup(refType, SIGNATURE, 0,
+				() -> client.send(cmd.encode(refType), cmd::decode).thenApply(reply -> reply.signature));
+	}
+
+	public CompletableFuture<MethodsReplyData> methods(long refType) {
+		JDWP.ReferenceType.Methods cmd = jdwp.referenceType().cmdMethods();
+		return lookup(refType, METHODS, 0, () -> client.send(cmd.encode(refType), cmd::decode));
+	}
+
+	public CompletableFuture<FieldsReplyData> fields(long refType) {
+		JDWP.ReferenceType.Fields cmd = jdwp.referenceType().cmdFields();
+		return lookup(refType, FIELDS, 0, () -> client.send(cmd.encode(refType), cmd::decode));
+	}
+
+	public CompletableFuture<String> sourceFile(long refType) {
+		JDWP.ReferenceType.SourceFile cmd = jdwp.referenceType().cmdSourceFile();
+		return lookup(refType, SOURCE_FILE, 0,
+				() -> client.send(cmd.encode(refType), cmd::decode).thenApply(reply -> reply.sourceFile));
+	}
+
+	public CompletableFuture<LineTableReplyData> lineTable(long refType, long methodID) {
+		JDWP.Method.LineTable cmd = jdwp.method().cmdLineTable();
+		return lookup(refType, LINE_TABLE, methodID, () -> client.send(cmd.encode(refType, methodID), cmd::decode));
+	}
+
+	/**
+	 * Send VirtualMachine.RedefineClasses and invalidate redefined types if it succeeds.
+	 */
+	public CompletableFuture<Boolean> redefineClasses(List<RedefineClassesClassBytes> classes) {
+		JDWP.VirtualMachine.RedefineClasses cmd = jdwp.virtualMachine().cmdRedefineClasses();
+		List<Long> refTypes = new ArrayList<>(classes.size());
+		for (RedefineClassesClassBytes classBytes : classes) {
+			refTypes.add(classBytes.refType);
+		}
+		return client.send(cmd.encodeBytes(classes), cmd::decode).thenApply(result -> {
+			for (Long refType : refTypes) {
+				invalidate(refType);
+			}
+			return result;
+		});
+	}
+
+	/**
+	 * Invalidate types with unloaded class signature. Matches {@link JDWP.EventHandlers.ClassUnloadHandler}.
+	 */
+	public void onClassUnload(int requestID, String signature) {
+		lock.lock();
+		try {
+			unloadEpoch++;
+			if (pendingSignatures != 0) {
+				// reply may be decoded after this event, see finishSignature
+				recentUnloads.put(signature, unloadEpoch);
+			}
+			Set<Long> refTypes = typesBySignature.remove(signature);
+			if (refTypes != null) {
+				for (Long refType : refTypes) {
+					remove(types.get(refType));
+				}
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	public void invalidate(long refType) {
+		lock.lock();
+		try {
+			remove(types.get(refType));
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	public void clear() {
+		lock.lock();
+		try {
+			types.clear();
+			typesBySignature.clear();
+			recentUnloads.clear();
+			items = 0;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	public long getHits() {
+		return hits.sum();
+	}
+
+	public long getMisses() {
+		return misses.sum();
+	}
+
+	/**
+	 * @return number of cached replies
+	 */
+	public int size() {
+		lock.lock();
+		try {
+			return items;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private <T> CompletableFuture<T> lookup(long refType, int slot, long methodID,
+			Supplier<CompletableFuture<T>> loader) {
+		CompletableFuture<T> future;
+		boolean fetchSignature = false;
+		lock.lock();
+		try {
+			TypeEntry entry = types.get(refType);
+			if (entry == null) {
+				entry = new TypeEntry(refType);
+				types.put(refType, entry);
+				// needed to match ClassUnload events
+				fetchSignature = slot != SIGNATURE;
+			}
+			CompletableFuture<T> cached = slot == LINE_TABLE
+					? entry.lineTables == null ? null : (CompletableFuture<T>) entry.lineTables.get(methodID)
+					: (CompletableFuture<T>) entry.slots[slot];
+			if (cached != null) {
+				hits.increment();
+				return cached;
+			}
+			misses.increment();
+			future = new CompletableFuture<>();
+			if (slot == LINE_TABLE) {
+				if (entry.lineTables == null) {
+					entry.lineTables = new LinkedHashMap<>();
+				}
+				entry.lineTables.put(methodID, (CompletableFuture<LineTableReplyData>) future);
+			} else {
+				entry.slots[slot] = future;
+			}
+			if (slot == SIGNATURE) {
+				entry.signatureEpoch = unloadEpoch;
+				pendingSignatures++;
+			}
+			entry.items++;
+			items++;
+			evict(entry, future);
+		} finally {
+			lock.unlock();
+		}
+		CompletableFuture<T> loaded;
+		try {
+			loaded = loader.get();
+		} catch (RuntimeException e) {
+			loaded = new CompletableFuture<>();
+			loaded.completeExceptionally(e);
+		}
+		loaded.whenComplete((value, error) -> {
+			if (slot == SIGNATURE) {
+				finishSignature(refType, future, error == null ? (String) value : null);
+			} else if (error != null) {
+				discard(refType, slot, methodID, future);
+			}
+			if (error != null) {
+				future.completeExceptionally(error);
+			} else {
+				future.complete(value);
+			}
+		});
+		if (fetchSignature) {
+			signature(refType);
+		}
+		return future;
+	}
+
+	private void evict(TypeEntry current, CompletableFuture<?> added) {
+		Iterator<TypeEntry> it = types.values().iterator();
+		while (items > maxItems && it.hasNext()) {
+			TypeEntry eldest = it.next();
+			if (eldest == current) {
+				continue;
+			}
+			it.remove();
+			items -= eldest.items;
+			unindex(eldest);
+		}
+		if (items > maxItems && current.lineTables != null) {
+			Iterator<CompletableFuture<LineTableReplyData>> lineTables = current.lineTables.values().iterator();
+			while (items > maxItems && lineTables.hasNext()) {
+				if (lineTables.next() != added) {
+					lineTables.remove();
+					current.items--;
+					items--;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Index fetched signature, or drop the type if it failed or the signature was unloaded meanwhile.
+	 * Replies may be decoded on the decode executor after ClassUnload events that followed them.
+	 */
+	private void finishSignature(long refType, CompletableFuture<?> future, String signature) {
+		lock.lock();
+		try {
+			TypeEntry entry = types.get(refType);
+			if (entry != null && entry.slots[SIGNATURE] == future) {
+				Long unloaded = signature == null ? null : recentUnloads.get(signature);
+				if (signature == null || unloaded != null && unloaded > entry.signatureEpoch) {
+					// can't be matched to ClassUnload events
+					remove(entry);
+				} else {
+					entry.signature = signature;
+					typesBySignature.computeIfAbsent(signature, s -> new HashSet<>()).add(refType);
+				}
+			}
+			if (--pendingSignatures == 0) {
+				recentUnloads.clear();
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private void discard(long refType, int slot, long methodID, CompletableFuture<?> future) {
+		lock.lock();
+		try {
+			TypeEntry entry = types.get(refType);
+			if (entry == null) {
+				return;
+			}
+			boolean removed;
+			if (slot == LINE_TABLE) {
+				removed = entry.lineTables != null && entry.lineTables.remove(methodID, future);
+			} else {
+				removed = entry.slots[slot] == future;
+				if (removed) {
+					entry.slots[slot] = null;
+				}
+			}
+			if (removed) {
+				entry.items--;
+				items--;
+				if (entry.items == 0) {
+					types.remove(refType);
+				}
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private void remove(TypeEntry entry) {
+		if (entry != null) {
+			types.remove(entry.refType);
+			items -= entry.items;
+			unindex(entry);
+		}
+	}
+
+	private void unindex(TypeEntry entry) {
+		if (entry.signature != null) {
+			Set<Long> refTypes = typesBySignature.get(entry.signature);
+			if (refTypes != null) {
+				refTypes.remove(entry.refType);
+				if (refTypes.isEmpty()) {
+					typesBySignature.remove(entry.signature);
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,213 @@
+package io.github.skylot.jdwp;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Appends raw JDWP packets of a session to a memory-mapped log file, for later analysis with
+ * {@link JdwpPacketReplayer}.
+ * <p>
+ * File format (big-endian): magic {@code "JREC"}, int version, long start time in milliseconds, then records of
+ * long nanoseconds since start, byte direction ({@link #SENT} or {@link #RECEIVED}) and the packet itself,
+ * framed by its own length field. The file is mapped in regions of {@value #REGION_SIZE} bytes and is not
+ * truncated on {@link #close()}, since a file can't be truncated on Windows while it is still mapped and
+ * unmapping is up to the GC. The zero filled tail after the last record is treated as end of log by the replayer.
+ * <p>
+ * Pass the recorder to {@link JdwpClient#connect(java.net.SocketAddress, JdwpPacketRecorder)} to record a whole
+ * connection, including the IDSizes command sent right after handshake. Packets recorded after close are dropped.
+ */
+public class JdwpPacketRecorder implements Closeable {
+	public static final byte SENT = 0;
+	public static final byte RECEIVED = 1;
+
+	static final int MAGIC = 0x4a524543;
+	static final int VERSION = 1;
+	static final int FILE_HEADER_SIZE = 16;
+	static final int RECORD_HEADER_SIZE = 9;
+	static final int REGION_SIZE = 16 * 1024 * 1024;
+
+	private final ReentrantLock lock = new ReentrantLock();
+	private final FileChannel channel;
+	private final long startNanos;
+	private MappedByteBuffer region;
+	private long regionStart;
+	private boolean closed;
+
+	// received packet split between reads
+	private byte[] partial = new byte[256];
+	private int partialLen;
+	private long partialTime;
+
+	/**
+	 * Create or overwrite recording file.
+	 */
+	public static JdwpPacketRecorder create(Path file) throws IOException {
+		FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+		try {
+			return new JdwpPacketRecorder(channel);
+		} catch (IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	private JdwpPacketRecorder(FileChannel channel) throws IOException {
+		this.channel = channel;
+		this.startNanos = System.nanoTime();
+		ensure(FILE_HEADER_SIZE);
+		region.putInt(MAGIC);
+		region.putInt(VERSION);
+		region.putLong(System.currentTimeMillis());
+	}
+
+	/**
+	 * Record a complete packet.
+	 */
+	public void record(byte direction, byte[] packet) throws IOException {
+		lock.lock();
+		try {
+			if (!closed) {
+				writeRecord(now(), direction, packet, 0, packetLength(packet, 0));
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Record a command between position and limit of {@code packet}, the buffer is not changed.
+	 */
+	public void sent(ByteBuffer packet) throws IOException {
+		lock.lock();
+		try {
+			if (!closed) {
+				int pos = packet.position();
+				writeRecord(now(), SENT, packet, pos, packetLength(packet.getInt(pos)));
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Record {@code length} bytes at {@code offset} of {@code data} as read from the connection.
+	 * Data may contain any number of packets and parts of packets, the buffer is not changed.
+	 */
+	public void received(ByteBuffer data, int offset, int length) throws IOException {
+		lock.lock();
+		try {
+			if (closed) {
+				return;
+			}
+			long time = now();
+			int pos = offset;
+			int end = offset + length;
+			while (pos < end) {
+				if (partialLen == 0) {
+					partialTime = time;
+					if (end - pos >= 4) {
+						int len = packetLength(data.getInt(pos));
+						if (end - pos >= len) {
+							writeRecord(time, RECEIVED, data, pos, len);
+							pos += len;
+							continue;
+						}
+					}
+				}
+				int need = partialLen < 4 ? 4 : packetLength(partial, 0);
+				if (need > partial.length) {
+					byte[] bigger = new byte[Math.max(need, partial.length * 2)];
+					System.arraycopy(partial, 0, bigger, 0, partialLen);
+					partial = bigger;
+				}
+				int count = Math.min(need - partialLen, end - pos);
+				ByteBuffer src = data.duplicate();
+				src.limit(pos + count);
+				src.position(pos);
+				src.get(partial, partialLen, count);
+				pos += count;
+				partialLen += count;
+				if (partialLen >= 4 && partialLen == packetLength(partial, 0)) {
+					writeRecord(partialTime, RECEIVED, partial, 0, partialLen);
+					partialLen = 0;
+				}
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Bytes written so far.
+	 */
+	public long getSize() {
+		lock.lock();
+		try {
+			return regionStart + region.position();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		lock.lock();
+		try {
+			if (closed) {
+				return;
+			}
+			closed = true;
+			region.force();
+			channel.close();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private long now() {
+		return System.nanoTime() - startNanos;
+	}
+
+	private void writeRecord(long time, byte direction, byte[] packet, int offset, int len) throws IOException {
+		ensure(RECORD_HEADER_SIZE + len);
+		region.putLong(time);
+		region.put(direction);
+		region.put(packet, offset, len);
+	}
+
+	private void writeRecord(long time, byte direction, ByteBuffer packet, int offset, int len) throws IOException {
+		ensure(RECORD_HEADER_SIZE + len);
+		region.putLong(time);
+		region.put(direction);
+		ByteBuffer src = packet.duplicate();
+		src.limit(offset + len);
+		src.position(offset);
+		region.put(src);
+	}
+
+	private void ensure(int size) throws IOException {
+		if (region == null || region.remaining() < size) {
+			long pos = region == null ? 0 : regionStart + region.position();
+			region = channel.map(FileChannel.MapMode.READ_WRITE, pos, Math.max(REGION_SIZE, size));
+			regionStart = pos;
+		}
+	}
+
+	private static int packetLength(byte[] bytes, int start) throws IOException {
+		return packetLength(JDWP.getPacketLength(bytes, start));
+	}
+
+	private static int packetLength(int len) throws IOException {
+		if (len < JDWP.PACKET_HEADER_SIZE) {
+			throw new IOException("Bad packet length: " + len);
+		}
+		return len;
+	}
+}
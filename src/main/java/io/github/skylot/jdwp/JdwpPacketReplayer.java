@@ -0,0 +1,193 @@
+package io.github.skylot.jdwp;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Reads a session recorded by {@link JdwpPacketRecorder} and feeds its packets to a {@link PacketHandler},
+ * either as fast as possible or with original timing.
+ * <p>
+ * Replies are matched to the recorded commands by packet ID, so handlers can select the decoder
+ * for a reply by command set and command.
+ */
+public class JdwpPacketReplayer implements Closeable {
+
+	@FunctionalInterface
+	public interface PacketHandler {
+		/**
+		 * @param timeNanos  time since start of recording
+		 * @param sent       true for packets sent by the debugger, false for packets received from the VM
+		 * @param packet     whole packet with header
+		 * @param commandSet command set of a command packet or of the recorded command a reply belongs to,
+		 *                   -1 for replies without recorded command
+		 * @param command    command ID, -1 if unknown
+		 */
+		void packet(long timeNanos, boolean sent, byte[] packet, int commandSet, int command) throws IOException;
+	}
+
+	private final FileChannel channel;
+	private final long size;
+	private final long startTimeMillis;
+
+	public static JdwpPacketReplayer open(Path file) throws IOException {
+		FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+		try {
+			return new JdwpPacketReplayer(channel);
+		} catch (IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	private JdwpPacketReplayer(FileChannel channel) throws IOException {
+		this.channel = channel;
+		this.size = channel.size();
+		ByteBuffer header = ByteBuffer.allocate(JdwpPacketRecorder.FILE_HEADER_SIZE);
+		while (header.hasRemaining() && channel.read(header, header.position()) > 0) {
+			// read whole header
+		}
+		if (header.hasRemaining() || header.getInt(0) != JdwpPacketRecorder.MAGIC) {
+			throw new IOException("Not a JDWP recording");
+		}
+		int version = header.getInt(4);
+		if (version != JdwpPacketRecorder.VERSION) {
+			throw new IOException("Unsupported recording version: " + version);
+		}
+		this.startTimeMillis = header.getLong(8);
+	}
+
+	/**
+	 * Wall clock time of recording start.
+	 */
+	public long getStartTimeMillis() {
+		return startTimeMillis;
+	}
+
+	/**
+	 * ID sizes from the first recorded IDSizes reply, null if the recording has none.
+	 * Needed to create the {@link JDWP} codec for decoding recorded packets.
+	 */
+	public JDWP.IDSizes.IDSizesReplyData getIDSizes() throws IOException {
+		Cursor cursor = new Cursor();
+		int idSizesCommand = 0;
+		while (cursor.next()) {
+			byte[] packet = cursor.packet;
+			if (cursor.direction == JdwpPacketRecorder.SENT) {
+				if (!JDWP.isReplyPacket(packet, 0) && JDWP.getPacketCommandSetID(packet, 0) == 1
+						&& JDWP.getPacketCommandID(packet, 0) == 7) {
+					idSizesCommand = JDWP.getPacketID(packet, 0);
+				}
+			} else if (idSizesCommand != 0 && JDWP.isReplyPacket(packet, 0)
+					&& JDWP.getPacketID(packet, 0) == idSizesCommand && JDWP.getPacketErrorCode(packet, 0) == 0) {
+				return JDWP.IDSizes.decode(packet, JDWP.PACKET_HEADER_SIZE);
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Pass all recorded packets to {@code handler} in recorded order.
+	 *
+	 * @param speed 0 for maximum speed, 1 for original timing, 2 for twice as fast, ...
+	 * @return number of packets
+	 */
+	public int replay(PacketHandler handler, double speed) throws IOException, InterruptedException {
+		Cursor cursor = new Cursor();
+		// sent command packet ID -> (command set << 8 | command)
+		LongLongMap commands = new LongLongMap(64, -1, false);
+		long base = System.nanoTime();
+		int count = 0;
+		while (cursor.next()) {
+			byte[] packet = cursor.packet;
+			boolean sent = cursor.direction == JdwpPacketRecorder.SENT;
+			int id = JDWP.getPacketID(packet, 0);
+			int commandSet;
+			int command;
+			if (JDWP.isReplyPacket(packet, 0)) {
+				long cmd = id != 0 ? commands.remove(id) : -1;
+				commandSet = cmd < 0 ? -1 : (int) (cmd >> 8);
+				command = cmd < 0 ? -1 : (int) (cmd & 0xff);
+			} else {
+				commandSet = JDWP.getPacketCommandSetID(packet, 0);
+				command = JDWP.getPacketCommandID(packet, 0);
+				if (sent && id != 0) {
+					commands.put(id, (commandSet << 8) | command);
+				}
+			}
+			if (speed > 0) {
+				waitUntil(base + (long) (cursor.time / speed));
+			}
+			handler.packet(cursor.time, sent, packet, commandSet, command);
+			count++;
+		}
+		return count;
+	}
+
+	private static void waitUntil(long deadline) throws InterruptedException {
+		long remaining;
+		while ((remaining = deadline - System.nanoTime()) > 0) {
+			LockSupport.parkNanos(remaining);
+			if (Thread.interrupted()) {
+				throw new InterruptedException();
+			}
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+
+	/**
+	 * Sequential reader of records, maps the file in regions like the recorder.
+	 */
+	private final class Cursor {
+		private MappedByteBuffer region;
+		private long regionStart;
+		private long pos = JdwpPacketRecorder.FILE_HEADER_SIZE;
+
+		long time;
+		byte direction;
+		byte[] packet;
+
+		boolean next() throws IOException {
+			int headerSize = JdwpPacketRecorder.RECORD_HEADER_SIZE + 4;
+			if (pos + headerSize > size) {
+				return false;
+			}
+			int off = map(headerSize);
+			int len = region.getInt(off + JdwpPacketRecorder.RECORD_HEADER_SIZE);
+			if (len < JDWP.PACKET_HEADER_SIZE || pos + JdwpPacketRecorder.RECORD_HEADER_SIZE + len > size) {
+				// zero filled tail of a recording that was not closed, or truncated record
+				return false;
+			}
+			off = map(JdwpPacketRecorder.RECORD_HEADER_SIZE + len);
+			time = region.getLong(off);
+			direction = region.get(off + 8);
+			packet = new byte[len];
+			ByteBuffer src = region.duplicate();
+			src.position(off + JdwpPacketRecorder.RECORD_HEADER_SIZE);
+			src.get(packet);
+			pos += JdwpPacketRecorder.RECORD_HEADER_SIZE + len;
+			return true;
+		}
+
+		/**
+		 * @return offset of {@code pos} in the mapped region containing {@code len} bytes from it
+		 */
+		private int map(int len) throws IOException {
+			if (region == null || pos + len > regionStart + region.capacity()) {
+				long mapSize = Math.min(size - pos, Math.max(JdwpPacketRecorder.REGION_SIZE, len));
+				region = channel.map(FileChannel.MapMode.READ_ONLY, pos, mapSize);
+				regionStart = pos;
+			}
+			return (int) (pos - regionStart);
+		}
+	}
+}
@@ -0,0 +1,501 @@
+package io.github.skylot.jdwp;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+import io.github.skylot.jdwp.JDWP.ReferenceType.Methods.MethodsReplyDataDeclared;
+import io.github.skylot.jdwp.JDWP.ThreadReference.Frames.FramesReplyData;
+import io.github.skylot.jdwp.JDWP.ThreadReference.Frames.FramesReplyDataFrames;
+import io.github.skylot.jdwp.JDWP.VirtualMachine.AllThreads.AllThreadsReplyDataThreads;
+
+/**
+ * CPU sampling profiler for a target VM reachable only through its debug port.
+ * <p>
+ * Every sample sends AllThreads, then for each thread ThreadReference.Suspend, Status and FrameCount, followed
+ * by Frames of the top {@code maxDepth} frames and Resume, all threads pipelined together. With
+ * {@link #setSuspendVM(boolean)} the whole VM is suspended once instead. Only RUNNING threads are sampled
+ * unless {@link #setRunningOnly(boolean)} is turned off.
+ * <p>
+ * Stacks are aggregated into a trie keyed by methodID and code index (or methodID only, see
+ * {@link #setLineGranularity(boolean)}), names are resolved through {@link JdwpMetadataCache} only when
+ * {@link #writeCollapsed(Appendable)} is called. Collapsed output is the input format of flamegraph.pl and
+ * similar tools.
+ * <p>
+ * The sampling period adapts to keep the time threads spend suspended under {@code maxSuspendRatio} of the
+ * wall time: it is the configured interval or the average suspend window divided by the ratio, whichever is
+ * longer.
+ *
+ * <pre>
+ * try (JdwpSampler sampler = new JdwpSampler(client, cache).setInterval(10, TimeUnit.MILLISECONDS).start()) {
+ * 	Thread.sleep(30_000);
+ * 	sampler.writeCollapsed(writer);
+ * }
+ * </pre>
+ */
+public class JdwpSampler implements Closeable {
+	private static final int MOD_NATIVE = 0x0100;
+	private static final long NO_INDEX = -1;
+	private static final int ROOT = 0;
+
+	private final JdwpClient client;
+	private final JDWP jdwp;
+	private final JdwpMetadataCache cache;
+
+	private volatile int maxDepth = 64;
+	private volatile long intervalNanos = TimeUnit.MILLISECONDS.toNanos(20);
+	private volatile double maxSuspendRatio = 0.02;
+	private volatile boolean suspendVM;
+	private volatile boolean runningOnly = true;
+	private volatile boolean lineGranularity = true;
+
+	private Thread thread;
+	private volatile boolean running;
+	private volatile Throwable error;
+
+	// trie, rate control and counters, updated under lock
+	private final ReentrantLock lock = new ReentrantLock();
+	private double avgWindowNanos;
+	private volatile long periodNanos;
+	private volatile long sampleCount;
+	private volatile long stackCount;
+	private volatile long totalSuspendNanos;
+	private long[] nodeClass;
+	private long[] nodeMethod;
+	private long[] nodeIndex;
+	private int[] nodeParent;
+	private int[] firstChild;
+	private int[] nextSibling;
+	private long[] selfCount;
+	private int nodeCount;
+
+	public JdwpSampler(JdwpClient client, JdwpMetadataCache cache) {
+		this.client = client;
+		this.jdwp = client.jdwp();
+		this.cache = cache;
+		clearTrie();
+	}
+
+	/**
+	 * Max frames taken from the top of each stack, 0 for all.
+	 */
+	public JdwpSampler setMaxDepth(int maxDepth) {
+		this.maxDepth = maxDepth;
+		return this;
+	}
+
+	/**
+	 * Shortest sampling period.
+	 */
+	public JdwpSampler setInterval(long interval, TimeUnit unit) {
+		this.intervalNanos = unit.toNanos(interval);
+		return this;
+	}
+
+	/**
+	 * Max fraction of wall time threads may spend suspended by the sampler, 0.02 by default.
+	 */
+	public JdwpSampler setMaxSuspendRatio(double maxSuspendRatio) {
+		if (maxSuspendRatio <= 0 || maxSuspendRatio > 1) {
+			throw new IllegalArgumentException("Ratio out of range (0, 1]: " + maxSuspendRatio);
+		}
+		this.maxSuspendRatio = maxSuspendRatio;
+		return this;
+	}
+
+	/**
+	 * Suspend the whole VM for each sample instead of suspending threads one by one. Stacks of all threads are
+	 * then taken at the same point in time, but every thread is stopped for the whole sample.
+	 */
+	public JdwpSampler setSuspendVM(boolean suspendVM) {
+		this.suspendVM = suspendVM;
+		return this;
+	}
+
+	/**
+	 * Sample only threads with RUNNING status, true by default.
+	 */
+	public JdwpSampler setRunningOnly(boolean runningOnly) {
+		this.runningOnly = runningOnly;
+		return this;
+	}
+
+	/**
+	 * Key trie nodes by methodID and code index (true, default) or by methodID only. Takes effect for
+	 * samples taken afterwards.
+	 */
+	public JdwpSampler setLineGranularity(boolean lineGranularity) {
+		this.lineGranularity = lineGranularity;
+		return this;
+	}
+
+	/**
+	 * Start sampling on a daemon thread.
+	 */
+	public JdwpSampler start() {
+		if (thread != null) {
+			throw new IllegalStateException("Already started");
+		}
+		running = true;
+		thread = new Thread(this::run, "jdwp-sampler");
+		thread.setDaemon(true);
+		thread.start();
+		return this;
+	}
+
+	/**
+	 * Stop the sampling thread and wait for the current sample to finish, collected data is kept.
+	 */
+	@Override
+	public void close() {
+		running = false;
+		Thread t = thread;
+		if (t != null) {
+			t.interrupt();
+			try {
+				t.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			thread = null;
+		}
+	}
+
+	private void run() {
+		try {
+			while (running && !client.isClosed()) {
+				long start = System.nanoTime();
+				sample();
+				long sleep = periodNanos - (System.nanoTime() - start);
+				if (sleep > 0) {
+					TimeUnit.NANOSECONDS.sleep(sleep);
+				}
+			}
+		} catch (InterruptedException e) {
+			// stopped
+		} catch (ExecutionException | RuntimeException e) {
+			error = e instanceof ExecutionException ? e.getCause() : e;
+		} finally {
+			running = false;
+		}
+	}
+
+	/**
+	 * Take one sample on the calling thread and add its stacks to the trie.
+	 * Can be called while the sampling thread runs.
+	 *
+	 * @return number of stacks added
+	 */
+	public int sample() throws InterruptedException, ExecutionException {
+		JDWP.VirtualMachine.AllThreads allThreads = jdwp.virtualMachine().cmdAllThreads();
+		List<AllThreadsReplyDataThreads> threads = client.send(allThreads.encode(), allThreads::decode).get().threads;
+		int depth = maxDepth;
+		boolean vm = suspendVM;
+		boolean byIndex = lineGranularity;
+		long start = System.nanoTime();
+		CompletableFuture<JDWP.Packet> vmSuspended = vm ? client.send(JDWP.Suspend.encode()) : null;
+		List<CompletableFuture<FramesReplyData>> stacks = new ArrayList<>(threads.size());
+		List<CompletableFuture<?>> resumed = new ArrayList<>(threads.size() + 1);
+		for (AllThreadsReplyDataThreads thread : threads) {
+			stacks.add(sampleThread(thread.thread, depth, !vm, resumed));
+		}
+		if (vm) {
+			CompletableFuture<Void> framesDone = CompletableFuture.allOf(stacks.toArray(new CompletableFuture<?>[0]));
+			resumed.add(framesDone.handle((v, e) -> {
+				// replies come in command order, Suspend is completed here
+				return vmSuspended.isCompletedExceptionally() ? null : client.send(JDWP.Resume.encode());
+			}));
+			vmSuspended.get();
+		}
+		CompletableFuture.allOf(resumed.toArray(new CompletableFuture<?>[0])).handle((v, e) -> null).get();
+		long window = System.nanoTime() - start;
+
+		List<FramesReplyData> samples = new ArrayList<>(stacks.size());
+		for (CompletableFuture<FramesReplyData> stack : stacks) {
+			FramesReplyData frames = stack.get();
+			if (frames != null && !frames.frames.isEmpty()) {
+				samples.add(frames);
+			}
+		}
+		lock.lock();
+		try {
+			for (FramesReplyData frames : samples) {
+				addStack(frames.frames, byIndex);
+			}
+			sampleCount++;
+			stackCount += samples.size();
+			totalSuspendNanos += window;
+			adjustRate(window);
+		} finally {
+			lock.unlock();
+		}
+		return samples.size();
+	}
+
+	/**
+	 * Pipeline commands for one thread, Resume is sent when Frames completes.
+	 *
+	 * @return future with frames or null if thread is not sampled
+	 */
+	private CompletableFuture<FramesReplyData> sampleThread(long thread, int depth, boolean suspend,
+			List<CompletableFuture<?>> resumed) {
+		JDWP.ThreadReference threadReference = jdwp.threadReference();
+		CompletableFuture<JDWP.Packet> suspended = suspend ? client.send(threadReference.cmdSuspend().encode(thread))
+				: null;
+		JDWP.ThreadReference.FrameCount frameCount = threadReference.cmdFrameCount();
+		CompletableFuture<Integer> count = client.send(frameCount.encode(thread), frameCount::decode)
+				.thenApply(reply -> reply.frameCount);
+		if (runningOnly) {
+			JDWP.ThreadReference.Status status = threadReference.cmdStatus();
+			count = client.send(status.encode(thread), status::decode).thenCombine(count,
+					(reply, n) -> reply.threadStatus == JDWP.ThreadStatus.RUNNING ? n : 0);
+		}
+		JDWP.ThreadReference.Frames frames = threadReference.cmdFrames();
+		CompletableFuture<FramesReplyData> stack = count.thenCompose(n -> {
+			if (n == 0) {
+				return CompletableFuture.completedFuture(null);
+			}
+			int length = depth > 0 ? Math.min(depth, n) : -1;
+			return client.send(frames.encode(thread, 0, length), frames::decode);
+		});
+		if (suspend) {
+			resumed.add(stack.handle((reply, e) -> {
+				// thread terminated if Suspend failed, nothing to resume
+				return suspended.isCompletedExceptionally() ? null
+						: client.send(threadReference.cmdResume().encode(thread));
+			}).thenCompose(f -> f == null ? CompletableFuture.completedFuture(null) : f));
+		}
+		return stack.handle((reply, e) -> {
+			if (e != null && !(unwrap(e) instanceof JDWP.JdwpErrorException)) {
+				throw e instanceof CompletionException ? (CompletionException) e : new CompletionException(e);
+			}
+			return reply;
+		});
+	}
+
+	private static Throwable unwrap(Throwable error) {
+		while (error instanceof CompletionException && error.getCause() != null) {
+			error = error.getCause();
+		}
+		return error;
+	}
+
+	private void adjustRate(long windowNanos) {
+		avgWindowNanos = sampleCount == 1 ? windowNanos : (avgWindowNanos + windowNanos) / 2;
+		periodNanos = Math.max(intervalNanos, (long) (avgWindowNanos / maxSuspendRatio));
+	}
+
+	private void addStack(List<FramesReplyDataFrames> frames, boolean byIndex) {
+		int node = ROOT;
+		for (int i = frames.size() - 1; i >= 0; i--) {
+			FramesReplyDataFrames frame = frames.get(i);
+			node = child(node, frame.location.classID, frame.location.methodID,
+					byIndex ? frame.location.index : NO_INDEX);
+		}
+		selfCount[node]++;
+	}
+
+	private int child(int parent, long classID, long methodID, long index) {
+		for (int c = firstChild[parent]; c != -1; c = nextSibling[c]) {
+			if (nodeMethod[c] == methodID && nodeIndex[c] == index && nodeClass[c] == classID) {
+				return c;
+			}
+		}
+		if (nodeCount == nodeMethod.length) {
+			int size = nodeCount * 2;
+			nodeClass = Arrays.copyOf(nodeClass, size);
+			nodeMethod = Arrays.copyOf(nodeMethod, size);
+			nodeIndex = Arrays.copyOf(nodeIndex, size);
+			nodeParent = Arrays.copyOf(nodeParent, size);
+			firstChild = Arrays.copyOf(firstChild, size);
+			nextSibling = Arrays.copyOf(nextSibling, size);
+			selfCount = Arrays.copyOf(selfCount, size);
+		}
+		int node = nodeCount++;
+		nodeClass[node] = classID;
+		nodeMethod[node] = methodID;
+		nodeIndex[node] = index;
+		nodeParent[node] = parent;
+		firstChild[node] = -1;
+		nextSibling[node] = firstChild[parent];
+		selfCount[node] = 0;
+		firstChild[parent] = node;
+		return node;
+	}
+
+	private void clearTrie() {
+		int size = 1024;
+		nodeClass = new long[size];
+		nodeMethod = new long[size];
+		nodeIndex = new long[size];
+		nodeParent = new int[size];
+		firstChild = new int[size];
+		nextSibling = new int[size];
+		selfCount = new long[size];
+		nodeParent[ROOT] = -1;
+		firstChild[ROOT] = -1;
+		nextSibling[ROOT] = -1;
+		nodeCount = 1;
+	}
+
+	/**
+	 * Drop collected stacks.
+	 */
+	public void reset() {
+		lock.lock();
+		try {
+			clearTrie();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Write collapsed stacks: one line per distinct stack, frames from the outermost separated by {@code ;},
+	 * then a space and the sample count. Frames are {@code java.lang.Thread.run:840}, without line numbers if
+	 * line granularity is off or the method has no line table.
+	 */
+	public void writeCollapsed(Appendable out) throws IOException, InterruptedException, ExecutionException {
+		int count;
+		long[] classes;
+		long[] methods;
+		long[] indexes;
+		int[] parents;
+		long[] self;
+		lock.lock();
+		try {
+			count = nodeCount;
+			classes = Arrays.copyOf(nodeClass, count);
+			methods = Arrays.copyOf(nodeMethod, count);
+			indexes = Arrays.copyOf(nodeIndex, count);
+			parents = Arrays.copyOf(nodeParent, count);
+			self = Arrays.copyOf(selfCount, count);
+		} finally {
+			lock.unlock();
+		}
+		String[] labels = new String[count];
+		List<CompletableFuture<?>> pending = new ArrayList<>();
+		for (int node = 1; node < count; node++) {
+			int n = node;
+			pending.add(label(classes[n], methods[n], indexes[n]).thenAccept(label -> labels[n] = label));
+		}
+		CompletableFuture.allOf(pending.toArray(new CompletableFuture<?>[0])).get();
+
+		// different code indexes of one line give equal stacks
+		Map<String, Long> stacks = new LinkedHashMap<>();
+		StringBuilder sb = new StringBuilder();
+		List<String> path = new ArrayList<>();
+		for (int node = 1; node < count; node++) {
+			if (self[node] == 0) {
+				continue;
+			}
+			path.clear();
+			for (int n = node; n != ROOT; n = parents[n]) {
+				path.add(labels[n]);
+			}
+			sb.setLength(0);
+			for (int i = path.size() - 1; i >= 0; i--) {
+				sb.append(path.get(i));
+				if (i != 0) {
+					sb.append(';');
+				}
+			}
+			stacks.merge(sb.toString(), self[node], Long::sum);
+		}
+		for (Map.Entry<String, Long> entry : stacks.entrySet()) {
+			out.append(entry.getKey()).append(' ').append(Long.toString(entry.getValue())).append('\n');
+		}
+	}
+
+	private CompletableFuture<String> label(long classID, long methodID, long index) {
+		CompletableFuture<String> className = orNull(cache.signature(classID))
+				.thenApply(signature -> signature != null ? JdwpStackSnapshot.className(signature)
+						: "0x" + Long.toHexString(classID));
+		CompletableFuture<String> frame = orNull(cache.methods(classID)).thenCompose(reply -> {
+			MethodsReplyDataDeclared method = null;
+			if (reply != null) {
+				for (MethodsReplyDataDeclared m : reply.declared) {
+					if (m.methodID == methodID) {
+						method = m;
+						break;
+					}
+				}
+			}
+			if (method == null) {
+				return CompletableFuture.completedFuture("0x" + Long.toHexString(methodID));
+			}
+			String name = method.name;
+			if (index == NO_INDEX || (method.modBits & MOD_NATIVE) != 0) {
+				return CompletableFuture.completedFuture(name);
+			}
+			return orNull(cache.lineTable(classID, methodID)).thenApply(table -> {
+				int line = JdwpStackSnapshot.lineNumber(table, index);
+				return line >= 0 ? name + ':' + line : name;
+			});
+		});
+		return className.thenCombine(frame, (cls, method) -> cls + '.' + method);
+	}
+
+	private static <T> CompletableFuture<T> orNull(CompletableFuture<T> future) {
+		return future.handle((value, e) -> {
+			if (e != null && !(unwrap(e) instanceof JDWP.JdwpErrorException)) {
+				throw e instanceof CompletionException ? (CompletionException) e : new CompletionException(e);
+			}
+			return value;
+		});
+	}
+
+	public boolean isRunning() {
+		return running;
+	}
+
+	/**
+	 * Error that stopped the sampling thread, null if none.
+	 */
+	public Throwable getError() {
+		return error;
+	}
+
+	public long getSampleCount() {
+		return sampleCount;
+	}
+
+	/**
+	 * Total stacks added to the trie, one per sampled thread per sample.
+	 */
+	public long getStackCount() {
+		return stackCount;
+	}
+
+	public long getTotalSuspendNanos() {
+		return totalSuspendNanos;
+	}
+
+	/**
+	 * Current sampling period chosen by rate control.
+	 */
+	public long getPeriodNanos() {
+		return periodNanos;
+	}
+
+	/**
+	 * Trie size including the root.
+	 */
+	public int getNodeCount() {
+		lock.lock();
+		try {
+			return nodeCount;
+		} finally {
+			lock.unlock();
+		}
+	}
+}
@@ -0,0 +1,310 @@
+package io.github.skylot.jdwp;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+
+import io.github.skylot.jdwp.JDWP.Method.LineTable.LineTableReplyData;
+import io.github.skylot.jdwp.JDWP.Method.LineTable.LineTableReplyDataLines;
+import io.github.skylot.jdwp.JDWP.ReferenceType.Methods.MethodsReplyData;
+import io.github.skylot.jdwp.JDWP.ReferenceType.Methods.MethodsReplyDataDeclared;
+import io.github.skylot.jdwp.JDWP.ThreadReference.Frames.FramesReplyData;
+import io.github.skylot.jdwp.JDWP.ThreadReference.Frames.FramesReplyDataFrames;
+import io.github.skylot.jdwp.JDWP.ThreadReference.Status.StatusReplyData;
+import io.github.skylot.jdwp.JDWP.VirtualMachine.AllThreads.AllThreadsReplyData;
+import io.github.skylot.jdwp.JDWP.VirtualMachine.AllThreads.AllThreadsReplyDataThreads;
+
+/**
+ * Stack dump of all threads of the target VM, like jstack.
+ * <p>
+ * VirtualMachine.Suspend and AllThreads are sent together, then Name, Status and Frames of every thread are
+ * pipelined at once. The VM is resumed as soon as the last Frames reply is in, so it is suspended for about
+ * two round trips plus the time the VM needs to walk the stacks. Class signatures, method names, source files
+ * and line tables are resolved after resume through {@link JdwpMetadataCache}, so repeated snapshots send
+ * only commands for new classes and methods.
+ * <p>
+ * Threads that terminate while the snapshot is taken are left out.
+ */
+public class JdwpStackSnapshot {
+	private static final int MOD_NATIVE = 0x0100;
+
+	private final JdwpClient client;
+	private final JDWP jdwp;
+	private final JdwpMetadataCache cache;
+
+	public JdwpStackSnapshot(JdwpClient client, JdwpMetadataCache cache) {
+		this.client = client;
+		this.jdwp = client.jdwp();
+		this.cache = cache;
+	}
+
+	public StackDump take() throws InterruptedException, ExecutionException {
+		return takeAsync().get();
+	}
+
+	public CompletableFuture<StackDump> takeAsync() {
+		StackDump dump = new StackDump();
+		long start = System.nanoTime();
+		dump.timeMillis = System.currentTimeMillis();
+		CompletableFuture<JDWP.Packet> suspended = client.send(JDWP.Suspend.encode());
+		JDWP.VirtualMachine.AllThreads allThreads = jdwp.virtualMachine().cmdAllThreads();
+		CompletableFuture<List<ThreadStack>> raw = client.send(allThreads.encode(), allThreads::decode)
+				.thenCompose(this::requestThreads);
+		CompletableFuture<List<ThreadStack>> resumed = raw.handle((threads, error) -> {
+			// replies come in command order, so Suspend is already completed here
+			if (!suspended.isCompletedExceptionally()) {
+				client.send(JDWP.Resume.encode());
+			}
+			dump.suspendNanos = System.nanoTime() - start;
+			if (error != null) {
+				throw error instanceof RuntimeException ? (RuntimeException) error : new RuntimeException(error);
+			}
+			return threads;
+		});
+		return suspended.thenCombine(resumed, (packet, threads) -> threads)
+				.thenCompose(threads -> resolve(threads).thenApply(v -> {
+					dump.threads = threads;
+					dump.totalNanos = System.nanoTime() - start;
+					return dump;
+				}));
+	}
+
+	private CompletableFuture<List<ThreadStack>> requestThreads(AllThreadsReplyData reply) {
+		JDWP.ThreadReference.Name name = jdwp.threadReference().cmdName();
+		JDWP.ThreadReference.Status status = jdwp.threadReference().cmdStatus();
+		JDWP.ThreadReference.Frames frames = jdwp.threadReference().cmdFrames();
+		int count = reply.threads.size();
+		List<CompletableFuture<String>> names = new ArrayList<>(count);
+		List<CompletableFuture<StatusReplyData>> statuses = new ArrayList<>(count);
+		List<CompletableFuture<FramesReplyData>> stacks = new ArrayList<>(count);
+		for (AllThreadsReplyDataThreads thread : reply.threads) {
+			names.add(orNull(client.send(name.encode(thread.thread), name::decode).thenApply(r -> r.threadName)));
+			statuses.add(orNull(client.send(status.encode(thread.thread), status::decode)));
+			stacks.add(orNull(client.send(frames.encode(thread.thread, 0, -1), frames::decode)));
+		}
+		return CompletableFuture.allOf(stacks.toArray(new CompletableFuture<?>[0])).thenApply(v -> {
+			List<ThreadStack> threads = new ArrayList<>(count);
+			for (int i = 0; i < count; i++) {
+				// Name and Status were sent before Frames, so their replies are already in
+				String threadName = names.get(i).join();
+				StatusReplyData threadStatus = statuses.get(i).join();
+				FramesReplyData threadFrames = stacks.get(i).join();
+				if (threadName == null || threadStatus == null || threadFrames == null) {
+					continue;
+				}
+				ThreadStack thread = new ThreadStack();
+				thread.threadID = reply.threads.get(i).thread;
+				thread.name = threadName;
+				thread.threadStatus = threadStatus.threadStatus;
+				thread.suspendStatus = threadStatus.suspendStatus;
+				thread.frames = new ArrayList<>(threadFrames.frames.size());
+				for (FramesReplyDataFrames f : threadFrames.frames) {
+					Frame frame = new Frame();
+					frame.frameID = f.frameID;
+					frame.classID = f.location.classID;
+					frame.methodID = f.location.methodID;
+					frame.index = f.location.index;
+					frame.lineNumber = -1;
+					thread.frames.add(frame);
+				}
+				threads.add(thread);
+			}
+			return threads;
+		});
+	}
+
+	private CompletableFuture<Void> resolve(List<ThreadStack> threads) {
+		List<CompletableFuture<?>> pending = new ArrayList<>();
+		for (ThreadStack thread : threads) {
+			for (Frame frame : thread.frames) {
+				long classID = frame.classID;
+				pending.add(orNull(cache.signature(classID)).thenAccept(signature -> {
+					if (signature != null) {
+						frame.className = className(signature);
+					}
+				}));
+				pending.add(orNull(cache.sourceFile(classID)).thenAccept(file -> frame.sourceFile = file));
+				pending.add(orNull(cache.methods(classID)).thenCompose(methods -> {
+					MethodsReplyDataDeclared method = methods == null ? null : findMethod(methods, frame.methodID);
+					if (method == null) {
+						return CompletableFuture.completedFuture(null);
+					}
+					frame.methodName = method.name;
+					frame.nativeMethod = (method.modBits & MOD_NATIVE) != 0;
+					if (frame.nativeMethod) {
+						return CompletableFuture.completedFuture(null);
+					}
+					return orNull(cache.lineTable(classID, frame.methodID))
+							.thenAccept(table -> frame.lineNumber = lineNumber(table, frame.index));
+				}));
+			}
+		}
+		return CompletableFuture.allOf(pending.toArray(new CompletableFuture<?>[0]));
+	}
+
+	private static <T> CompletableFuture<T> orNull(CompletableFuture<T> future) {
+		return future.handle((value, error) -> {
+			if (error != null && !(unwrap(error) instanceof JDWP.JdwpErrorException)) {
+				// connection failure, not a missing thread or attribute
+				throw error instanceof RuntimeException ? (RuntimeException) error : new RuntimeException(error);
+			}
+			return value;
+		});
+	}
+
+	private static Throwable unwrap(Throwable error) {
+		while (error.getCause() != null && (error instanceof CompletionException
+				|| error instanceof ExecutionException)) {
+			error = error.getCause();
+		}
+		return error;
+	}
+
+	private static MethodsReplyDataDeclared findMethod(MethodsReplyData methods, long methodID) {
+		for (MethodsReplyDataDeclared method : methods.declared) {
+			if (method.methodID == methodID) {
+				return method;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Line of the closest line table entry at or before {@code index}, -1 if unknown.
+	 */
+	static int lineNumber(LineTableReplyData table, long index) {
+		if (table == null) {
+			return -1;
+		}
+		long best = -1;
+		int line = -1;
+		for (LineTableReplyDataLines entry : table.lines) {
+			if (entry.lineCodeIndex <= index && entry.lineCodeIndex > best) {
+				best = entry.lineCodeIndex;
+				line = entry.lineNumber;
+			}
+		}
+		return line;
+	}
+
+	/**
+	 * {@code Ljava/lang/String;} to {@code java.lang.String}, array signatures are kept.
+	 */
+	static String className(String signature) {
+		if (signature.length() > 2 && signature.charAt(0) == 'L' && signature.endsWith(";")) {
+			return signature.substring(1, signature.length() - 1).replace('/', '.');
+		}
+		return signature;
+	}
+
+	public static class StackDump {
+		/**
+		 * Wall clock time when the snapshot was started
+		 */
+		public long timeMillis;
+		/**
+		 * Time from sending Suspend until Resume was sent
+		 */
+		public long suspendNanos;
+		/**
+		 * Time until all frames were resolved
+		 */
+		public long totalNanos;
+		public List<ThreadStack> threads;
+
+		public void print(Appendable out) throws IOException {
+			for (ThreadStack thread : threads) {
+				thread.print(out);
+				out.append('\n');
+			}
+		}
+
+		@Override
+		public String toString() {
+			StringBuilder sb = new StringBuilder();
+			try {
+				print(sb);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+			return sb.toString();
+		}
+	}
+
+	public static class ThreadStack {
+		public long threadID;
+		public String name;
+		/**
+		 * One of {@link JDWP.ThreadStatus}
+		 */
+		public int threadStatus;
+		/**
+		 * {@link JDWP.SuspendStatus} flags, read while the snapshot holds the VM suspended,
+		 * so {@code SUSPEND_STATUS_SUSPENDED} is always set
+		 */
+		public int suspendStatus;
+		public List<Frame> frames;
+
+		public void print(Appendable out) throws IOException {
+			out.append('"').append(name).append("\" tid=0x").append(Long.toHexString(threadID))
+					.append(" status=").append(statusName(threadStatus)).append('\n');
+			for (Frame frame : frames) {
+				out.append("\tat ");
+				frame.print(out);
+				out.append('\n');
+			}
+		}
+	}
+
+	public static class Frame {
+		public long frameID;
+		public long classID;
+		public long methodID;
+		public long index;
+		public String className;
+		public String methodName;
+		public String sourceFile;
+		/**
+		 * -1 if the method has no line table
+		 */
+		public int lineNumber;
+		public boolean nativeMethod;
+
+		public void print(Appendable out) throws IOException {
+			out.append(className != null ? className : "0x" + Long.toHexString(classID)).append('.')
+					.append(methodName != null ? methodName : "0x" + Long.toHexString(methodID)).append('(');
+			if (nativeMethod) {
+				out.append("Native Method");
+			} else if (sourceFile == null) {
+				out.append("Unknown Source");
+			} else {
+				out.append(sourceFile);
+				if (lineNumber >= 0) {
+					out.append(':').append(Integer.toString(lineNumber));
+				}
+			}
+			out.append(')');
+		}
+	}
+
+	private static String statusName(int status) {
+		switch (status) {
+			case JDWP.ThreadStatus.ZOMBIE:
+				return "ZOMBIE";
+			case JDWP.ThreadStatus.RUNNING:
+				return "RUNNING";
+			case JDWP.ThreadStatus.SLEEPING:
+				return "SLEEPING";
+			case JDWP.ThreadStatus.MONITOR:
+				return "MONITOR";
+			case JDWP.ThreadStatus.WAIT:
+				return "WAIT";
+			default:
+				return Integer.toString(status);
+		}
+	}
+}
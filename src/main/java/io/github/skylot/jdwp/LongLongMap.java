@@ -0,0 +1,217 @@
+package io.github.skylot.jdwp;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Open-addressing hash map from JDWP IDs to {@code long} values (IDs, counters, offsets), stored in one
+ * {@link ByteBuffer}. With {@code offHeap} the table is a direct buffer outside of the Java heap, so large
+ * indexes add no GC work.
+ * <p>
+ * Key {@code 0} is the JDWP null ID and can't be stored, it marks empty slots. {@link #get} returns
+ * {@code missingValue} for absent keys. At most {@value #MAX_CAPACITY} slots (half usable). Not thread safe.
+ */
+public class LongLongMap {
+	private static final int MAX_CAPACITY = 1 << 26;
+	private static final int SLOT_SIZE = 16;
+	private static final float LOAD_FACTOR = 0.5f;
+
+	@FunctionalInterface
+	public interface EntryConsumer {
+		void accept(long key, long value);
+	}
+
+	private final boolean offHeap;
+	private final long missingValue;
+	private final int maxCapacity;
+	private ByteBuffer table;
+	private int mask;
+	private int size;
+	private int resizeAt;
+
+	public LongLongMap(int expectedSize, long missingValue, boolean offHeap) {
+		this(expectedSize, missingValue, offHeap, MAX_CAPACITY);
+	}
+
+	/**
+	 * Lower table limit, used by tests to fill a map.
+	 */
+	LongLongMap(int expectedSize, long missingValue, boolean offHeap, int maxCapacity) {
+		this.offHeap = offHeap;
+		this.missingValue = missingValue;
+		this.maxCapacity = maxCapacity;
+		int cap = LongObjectMap.tableSize(expectedSize);
+		if (cap > maxCapacity) {
+			throw new IllegalArgumentException("Too many entries: " + expectedSize);
+		}
+		allocate(cap);
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public boolean isOffHeap() {
+		return offHeap;
+	}
+
+	public long get(long key) {
+		int slot = find(key);
+		return slot < 0 ? missingValue : table.getLong(slot * SLOT_SIZE + 8);
+	}
+
+	public boolean containsKey(long key) {
+		return find(key) >= 0;
+	}
+
+	/**
+	 * @return previous value or {@code missingValue}
+	 */
+	public long put(long key, long value) {
+		LongObjectMap.checkKey(key);
+		ByteBuffer t = table;
+		int slot = LongObjectMap.hash(key) & mask;
+		while (true) {
+			int pos = slot * SLOT_SIZE;
+			long k = t.getLong(pos);
+			if (k == 0) {
+				if (size >= resizeAt) {
+					// grow before inserting, so a full map throws without storing the entry
+					resize();
+					return put(key, value);
+				}
+				t.putLong(pos, key);
+				t.putLong(pos + 8, value);
+				size++;
+				return missingValue;
+			}
+			if (k == key) {
+				long prev = t.getLong(pos + 8);
+				t.putLong(pos + 8, value);
+				return prev;
+			}
+			slot = (slot + 1) & mask;
+		}
+	}
+
+	/**
+	 * Add {@code delta} to the value of {@code key}, absent keys start from 0.
+	 *
+	 * @return new value
+	 */
+	public long addTo(long key, long delta) {
+		int slot = find(key);
+		if (slot < 0) {
+			put(key, delta);
+			return delta;
+		}
+		int pos = slot * SLOT_SIZE + 8;
+		long val = table.getLong(pos) + delta;
+		table.putLong(pos, val);
+		return val;
+	}
+
+	/**
+	 * @return removed value or {@code missingValue}
+	 */
+	public long remove(long key) {
+		int slot = find(key);
+		if (slot < 0) {
+			return missingValue;
+		}
+		long prev = table.getLong(slot * SLOT_SIZE + 8);
+		deleteSlot(slot);
+		return prev;
+	}
+
+	public void clear() {
+		ByteBuffer t = table;
+		for (int pos = 0; pos < t.capacity(); pos += SLOT_SIZE) {
+			t.putLong(pos, 0);
+		}
+		size = 0;
+	}
+
+	public void forEach(EntryConsumer consumer) {
+		ByteBuffer t = table;
+		for (int pos = 0; pos < t.capacity(); pos += SLOT_SIZE) {
+			long key = t.getLong(pos);
+			if (key != 0) {
+				consumer.accept(key, t.getLong(pos + 8));
+			}
+		}
+	}
+
+	private int find(long key) {
+		if (key == 0) {
+			return -1;
+		}
+		ByteBuffer t = table;
+		int slot = LongObjectMap.hash(key) & mask;
+		while (true) {
+			long k = t.getLong(slot * SLOT_SIZE);
+			if (k == key) {
+				return slot;
+			}
+			if (k == 0) {
+				return -1;
+			}
+			slot = (slot + 1) & mask;
+		}
+	}
+
+	/**
+	 * Backward shift deletion, same as in {@link LongObjectMap}.
+	 */
+	private void deleteSlot(int slot) {
+		ByteBuffer t = table;
+		int gap = slot;
+		int next = (gap + 1) & mask;
+		long key;
+		while ((key = t.getLong(next * SLOT_SIZE)) != 0) {
+			int home = LongObjectMap.hash(key) & mask;
+			if (((next - home) & mask) >= ((next - gap) & mask)) {
+				t.putLong(gap * SLOT_SIZE, key);
+				t.putLong(gap * SLOT_SIZE + 8, t.getLong(next * SLOT_SIZE + 8));
+				gap = next;
+			}
+			next = (next + 1) & mask;
+		}
+		t.putLong(gap * SLOT_SIZE, 0);
+		size--;
+	}
+
+	private void allocate(int cap) {
+		int bytes = cap * SLOT_SIZE;
+		table = offHeap ? ByteBuffer.allocateDirect(bytes) : ByteBuffer.allocate(bytes);
+		// table is never shared, native order avoids byte swapping
+		table.order(ByteOrder.nativeOrder());
+		mask = cap - 1;
+		resizeAt = (int) (cap * LOAD_FACTOR);
+	}
+
+	private void resize() {
+		int oldCap = mask + 1;
+		if (oldCap >= maxCapacity) {
+			throw new IllegalStateException("Map is full");
+		}
+		ByteBuffer old = table;
+		allocate(oldCap << 1);
+		ByteBuffer t = table;
+		for (int pos = 0; pos < old.capacity(); pos += SLOT_SIZE) {
+			long key = old.getLong(pos);
+			if (key != 0) {
+				int slot = LongObjectMap.hash(key) & mask;
+				while (t.getLong(slot * SLOT_SIZE) != 0) {
+					slot = (slot + 1) & mask;
+				}
+				t.putLong(slot * SLOT_SIZE, key);
+				t.putLong(slot * SLOT_SIZE + 8, old.getLong(pos + 8));
+			}
+		}
+	}
+}
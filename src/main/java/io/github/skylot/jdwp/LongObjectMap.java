@@ -0,0 +1,223 @@
+package io.github.skylot.jdwp;
+
+import java.util.Arrays;
+
+/**
+ * Open-addressing hash map from JDWP IDs (objectID, referenceTypeID, methodID, ...) to objects, without
+ * boxing keys or allocating per-entry nodes.
+ * <p>
+ * Key {@code 0} is the JDWP null ID and can't be stored, it marks empty slots. Not thread safe.
+ */
+public class LongObjectMap<V> {
+	private static final int MAX_CAPACITY = 1 << 30;
+	private static final float LOAD_FACTOR = 0.5f;
+
+	@FunctionalInterface
+	public interface EntryConsumer<V> {
+		void accept(long key, V value);
+	}
+
+	private final int maxCapacity;
+	private long[] keys;
+	private Object[] values;
+	private int mask;
+	private int size;
+	private int resizeAt;
+
+	public LongObjectMap() {
+		this(16);
+	}
+
+	public LongObjectMap(int expectedSize) {
+		this(expectedSize, MAX_CAPACITY);
+	}
+
+	/**
+	 * Lower table limit, used by tests to fill a map.
+	 */
+	LongObjectMap(int expectedSize, int maxCapacity) {
+		this.maxCapacity = maxCapacity;
+		int cap = tableSize(expectedSize);
+		if (cap > maxCapacity) {
+			throw new IllegalArgumentException("Too many entries: " + expectedSize);
+		}
+		allocate(cap);
+	}
+
+	static int tableSize(int expectedSize) {
+		if (expectedSize < 0) {
+			throw new IllegalArgumentException("Negative size: " + expectedSize);
+		}
+		// double, float would round large sizes down
+		long needed = (long) Math.ceil(expectedSize / (double) LOAD_FACTOR);
+		if (needed > MAX_CAPACITY) {
+			throw new IllegalArgumentException("Too many entries: " + expectedSize);
+		}
+		int cap = 8;
+		while (cap < needed) {
+			cap <<= 1;
+		}
+		return cap;
+	}
+
+	/**
+	 * Spread sequential and 8-byte aligned IDs over the table (murmur3 finalizer).
+	 */
+	static int hash(long key) {
+		key ^= key >>> 33;
+		key *= 0xff51afd7ed558ccdL;
+		key ^= key >>> 33;
+		key *= 0xc4ceb9fe1a85ec53L;
+		key ^= key >>> 33;
+		return (int) key;
+	}
+
+	static void checkKey(long key) {
+		if (key == 0) {
+			throw new IllegalArgumentException("Null ID (0) can't be used as key");
+		}
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	@SuppressWarnings("unchecked")
+	public V get(long key) {
+		int slot = find(key);
+		return slot < 0 ? null : (V) values[slot];
+	}
+
+	public boolean containsKey(long key) {
+		return find(key) >= 0;
+	}
+
+	/**
+	 * @return previous value or null
+	 */
+	@SuppressWarnings("unchecked")
+	public V put(long key, V value) {
+		checkKey(key);
+		int slot = hash(key) & mask;
+		while (true) {
+			long k = keys[slot];
+			if (k == 0) {
+				if (size >= resizeAt) {
+					// grow before inserting, so a full map throws without storing the entry
+					resize();
+					return put(key, value);
+				}
+				keys[slot] = key;
+				values[slot] = value;
+				size++;
+				return null;
+			}
+			if (k == key) {
+				V prev = (V) values[slot];
+				values[slot] = value;
+				return prev;
+			}
+			slot = (slot + 1) & mask;
+		}
+	}
+
+	/**
+	 * @return removed value or null
+	 */
+	@SuppressWarnings("unchecked")
+	public V remove(long key) {
+		int slot = find(key);
+		if (slot < 0) {
+			return null;
+		}
+		V prev = (V) values[slot];
+		deleteSlot(slot);
+		return prev;
+	}
+
+	public void clear() {
+		Arrays.fill(keys, 0);
+		Arrays.fill(values, null);
+		size = 0;
+	}
+
+	@SuppressWarnings("unchecked")
+	public void forEach(EntryConsumer<? super V> consumer) {
+		long[] k = keys;
+		Object[] v = values;
+		for (int i = 0; i < k.length; i++) {
+			if (k[i] != 0) {
+				consumer.accept(k[i], (V) v[i]);
+			}
+		}
+	}
+
+	private int find(long key) {
+		if (key == 0) {
+			return -1;
+		}
+		int slot = hash(key) & mask;
+		while (true) {
+			long k = keys[slot];
+			if (k == key) {
+				return slot;
+			}
+			if (k == 0) {
+				return -1;
+			}
+			slot = (slot + 1) & mask;
+		}
+	}
+
+	/**
+	 * Backward shift deletion, keeps probe sequences intact without tombstones.
+	 */
+	private void deleteSlot(int slot) {
+		int gap = slot;
+		int next = (gap + 1) & mask;
+		while (keys[next] != 0) {
+			int home = hash(keys[next]) & mask;
+			// move entry into the gap if its home slot is not between gap (exclusive) and next (inclusive)
+			if (((next - home) & mask) >= ((next - gap) & mask)) {
+				keys[gap] = keys[next];
+				values[gap] = values[next];
+				gap = next;
+			}
+			next = (next + 1) & mask;
+		}
+		keys[gap] = 0;
+		values[gap] = null;
+		size--;
+	}
+
+	private void allocate(int cap) {
+		keys = new long[cap];
+		values = new Object[cap];
+		mask = cap - 1;
+		resizeAt = (int) (cap * LOAD_FACTOR);
+	}
+
+	private void resize() {
+		if (keys.length >= maxCapacity) {
+			throw new IllegalStateException("Map is full");
+		}
+		long[] oldKeys = keys;
+		Object[] oldValues = values;
+		allocate(oldKeys.length << 1);
+		for (int i = 0; i < oldKeys.length; i++) {
+			long key = oldKeys[i];
+			if (key != 0) {
+				int slot = hash(key) & mask;
+				while (keys[slot] != 0) {
+					slot = (slot + 1) & mask;
+				}
+				keys[slot] = key;
+				values[slot] = oldValues[i];
+			}
+		}
+	}
+}
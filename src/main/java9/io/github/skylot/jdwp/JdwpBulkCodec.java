@@ -0,0 +1,97 @@
+package io.github.skylot.jdwp;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+
+/**
+ * Java 9+ version of {@code src/main/java} JdwpBulkCodec, packed into META-INF/versions/9 of the jar.
+ * <p>
+ * Byte array view VarHandles are intrinsics, each value is one unaligned load or store plus a byte swap
+ * instead of a load, shift and or per byte.
+ */
+final class JdwpBulkCodec {
+	private static final VarHandle CHAR = MethodHandles.byteArrayViewVarHandle(char[].class, ByteOrder.BIG_ENDIAN);
+	private static final VarHandle SHORT = MethodHandles.byteArrayViewVarHandle(short[].class, ByteOrder.BIG_ENDIAN);
+	private static final VarHandle INT = MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.BIG_ENDIAN);
+	private static final VarHandle LONG = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+	private static final VarHandle FLOAT = MethodHandles.byteArrayViewVarHandle(float[].class, ByteOrder.BIG_ENDIAN);
+	private static final VarHandle DOUBLE = MethodHandles.byteArrayViewVarHandle(double[].class,
+			ByteOrder.BIG_ENDIAN);
+
+	private JdwpBulkCodec() {
+	}
+
+	static void getChars(byte[] src, int srcPos, char[] dst, int dstPos, int count) {
+		for (int i = 0; i < count; i++, srcPos += 2) {
+			dst[dstPos + i] = (char) CHAR.get(src, srcPos);
+		}
+	}
+
+	static void getShorts(byte[] src, int srcPos, short[] dst, int dstPos, int count) {
+		for (int i = 0; i < count; i++, srcPos += 2) {
+			dst[dstPos + i] = (short) SHORT.get(src, srcPos);
+		}
+	}
+
+	static void getInts(byte[] src, int srcPos, int[] dst, int dstPos, int count) {
+		for (int i = 0; i < count; i++, srcPos += 4) {
+			dst[dstPos + i] = (int) INT.get(src, srcPos);
+		}
+	}
+
+	static void getLongs(byte[] src, int srcPos, long[] dst, int dstPos, int count) {
+		for (int i = 0; i < count; i++, srcPos += 8) {
+			dst[dstPos + i] = (long) LONG.get(src, srcPos);
+		}
+	}
+
+	static void getFloats(byte[] src, int srcPos, float[] dst, int dstPos, int count) {
+		for (int i = 0; i < count; i++, srcPos += 4) {
+			dst[dstPos + i] = (float) FLOAT.get(src, srcPos);
+		}
+	}
+
+	static void getDoubles(byte[] src, int srcPos, double[] dst, int dstPos, int count) {
+		for (int i = 0; i < count; i++, srcPos += 8) {
+			dst[dstPos + i] = (double) DOUBLE.get(src, srcPos);
+		}
+	}
+
+	static void putChars(char[] src, int srcPos, byte[] dst, int dstPos, int count) {
+		for (int i = 0; i < count; i++, dstPos += 2) {
+			CHAR.set(dst, dstPos, src[srcPos + i]);
+		}
+	}
+
+	static void putShorts(short[] src, int srcPos, byte[] dst, int dstPos, int count) {
+		for (int i = 0; i < count; i++, dstPos += 2) {
+			SHORT.set(dst, dstPos, src[srcPos + i]);
+		}
+	}
+
+	static void putInts(int[] src, int srcPos, byte[] dst, int dstPos, int count) {
+		for (int i = 0; i < count; i++, dstPos += 4) {
+			INT.set(dst, dstPos, src[srcPos + i]);
+		}
+	}
+
+	static void putLongs(long[] src, int srcPos, byte[] dst, int dstPos, int count) {
+		for (int i = 0; i < count; i++, dstPos += 8) {
+			LONG.set(dst, dstPos, src[srcPos + i]);
+		}
+	}
+
+	static void putFloats(float[] src, int srcPos, byte[] dst, int dstPos, int count) {
+		// raw bits, like Float.floatToRawIntBits in the Java 8 version
+		for (int i = 0; i < count; i++, dstPos += 4) {
+			FLOAT.set(dst, dstPos, src[srcPos + i]);
+		}
+	}
+
+	static void putDoubles(double[] src, int srcPos, byte[] dst, int dstPos, int count) {
+		for (int i = 0; i < count; i++, dstPos += 8) {
+			DOUBLE.set(dst, dstPos, src[srcPos + i]);
+		}
+	}
+}
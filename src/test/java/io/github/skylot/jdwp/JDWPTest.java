@@ -0,0 +1,241 @@
+package io.github.skylot.jdwp;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Test;
+
+import io.github.skylot.jdwp.JDWP.ThreadGroupReference.Children.ChildrenReplyData;
+import io.github.skylot.jdwp.JDWP.VirtualMachine.AllClasses;
+import io.github.skylot.jdwp.JDWP.VirtualMachine.AllClasses.AllClassesReplyData;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class JDWPTest {
+
+	private static JDWP jdwp() {
+		JDWP.IDSizes.IDSizesReplyData sizes = new JDWP.IDSizes.IDSizesReplyData();
+		sizes.fieldIDSize = 8;
+		sizes.methodIDSize = 8;
+		sizes.objectIDSize = 8;
+		sizes.referenceTypeIDSize = 8;
+		sizes.frameIDSize = 8;
+		return new JDWP(sizes);
+	}
+
+	@Test
+	void valueGettersCheckValueSize() {
+		JDWP.ValuePacket value = jdwp().new ValuePacket();
+		value.tag = JDWP.Tag.INT;
+		// growable buffer, backing array is longer than the value
+		value.idOrValue = new JDWP.ByteBuffer();
+		JDWP.encodeInt(value.idOrValue, 42);
+
+		assertEquals(42, value.getInt());
+		assertThrows(JDWP.JdwpRuntimeException.class, value::getLong);
+		assertThrows(JDWP.JdwpRuntimeException.class, value::getDouble);
+		assertThrows(JDWP.JdwpRuntimeException.class, value::getID);
+	}
+
+	@Test
+	void decodeThreadGroupChildren() {
+		// threads then groups, each list prefixed by its count
+		ByteBuffer reply = ByteBuffer.allocate(4 + 3 * 8 + 4 + 2 * 8);
+		reply.putInt(3).putLong(0x101).putLong(0x102).putLong(0x103);
+		reply.putInt(2).putLong(0x201).putLong(0x202);
+
+		ChildrenReplyData children = jdwp().threadGroupReference().cmdChildren().decode(reply.array(), 0);
+		assertEquals(3, children.childThreads.size());
+		assertEquals(0x101, children.childThreads.get(0).childThread);
+		assertEquals(0x103, children.childThreads.get(2).childThread);
+		assertEquals(2, children.childGroups.size());
+		assertEquals(0x201, children.childGroups.get(0).childGroup);
+		assertEquals(0x202, children.childGroups.get(1).childGroup);
+	}
+
+	/**
+	 * AllClasses reply with one class, string length prefix is {@code len}, reply starts after {@code pad} bytes.
+	 */
+	private static ByteBuffer allClassesReply(ByteBuffer reply, int pad, int len, byte[] signature) {
+		reply.position(pad);
+		reply.putInt(1).put((byte) 1).putLong(0x10).putInt(len).put(signature).putInt(7);
+		reply.flip();
+		return reply;
+	}
+
+	private static ByteBuffer allClassesReply(boolean direct, int pad, int len, byte[] signature) {
+		int size = pad + 4 + 1 + 8 + 4 + signature.length + 4;
+		return allClassesReply(direct ? ByteBuffer.allocateDirect(size) : ByteBuffer.allocate(size), pad, len, signature);
+	}
+
+	@Test
+	void decodeStrings() {
+		AllClasses cmd = jdwp().virtualMachine().cmdAllClasses();
+		for (String str : new String[] { "Ljava/lang/String;", "é", "Lp/\u540d\u524d;", "" }) {
+			byte[] utf8 = str.getBytes(StandardCharsets.UTF_8);
+			// array decoder with the string at a non-zero array offset
+			ByteBuffer heap = allClassesReply(false, 3, utf8.length, utf8);
+			AllClassesReplyData fromArray = cmd.decode(heap.array(), 3);
+			assertEquals(str, fromArray.classes.get(0).signature);
+			assertEquals(7, fromArray.classes.get(0).status);
+			// buffer decoder, heap buffer is read through its array, direct one is copied
+			for (boolean direct : new boolean[] { false, true }) {
+				ByteBuffer reply = allClassesReply(direct, 3, utf8.length, utf8);
+				AllClassesReplyData fromBuffer = cmd.decode(reply, 3);
+				assertEquals(str, fromBuffer.classes.get(0).signature);
+				assertEquals(7, fromBuffer.classes.get(0).status);
+			}
+		}
+	}
+
+	@Test
+	void decodeStringChecksLength() {
+		AllClasses cmd = jdwp().virtualMachine().cmdAllClasses();
+		byte[] utf8 = "Ljava/lang/Object;".getBytes(StandardCharsets.UTF_8);
+		// status after the string is available, one more byte is not
+		for (int len : new int[] { -1, Integer.MIN_VALUE, utf8.length + 5, Integer.MAX_VALUE }) {
+			ByteBuffer heap = allClassesReply(false, 0, len, utf8);
+			assertThrows(JDWP.JdwpRuntimeException.class, () -> cmd.decode(heap.array(), 0));
+			ByteBuffer direct = allClassesReply(true, 0, len, utf8);
+			assertThrows(JDWP.JdwpRuntimeException.class, () -> cmd.decode(direct, 0));
+		}
+	}
+
+	// one value of each tag kind, encoded below as tag byte followed by big-endian payload
+	private static final byte[] TAGS = { 'B', 'C', 'S', 'I', 'F', 'J', 'D', 'L', 'V', 'Z' };
+	private static final long[] BITS = { 0x80, 0xe9, 0xfffe, 0xfffffffbL, Float.floatToIntBits(1.5f) & 0xffffffffL,
+			Long.MIN_VALUE + 1, Double.doubleToLongBits(-2.25), 0x1122334455667788L, 0, 1 };
+	private static final int[] SIZES = { 1, 2, 2, 4, 4, 8, 8, 8, 0, 1 };
+
+	private static ByteBuffer taggedValues(int count) {
+		ByteBuffer buf = ByteBuffer.allocate(4 + TAGS.length + 38);
+		buf.putInt(count);
+		for (int i = 0; i < TAGS.length; i++) {
+			buf.put(TAGS[i]);
+			for (int b = SIZES[i] - 1; b >= 0; b--) {
+				buf.put((byte) (BITS[i] >>> (b * 8)));
+			}
+		}
+		return buf;
+	}
+
+	@Test
+	void taggedValueGetters() {
+		JDWP.TaggedValue value = new JDWP.TaggedValue();
+		value.tag = 'B';
+		value.bits = 0x80;
+		assertEquals((byte) -128, value.getByte());
+		assertTrue(value.getBoolean());
+		value.bits = 0xe9;
+		assertEquals('é', value.getChar());
+		value.bits = 0xfffe;
+		assertEquals((short) -2, value.getShort());
+		value.bits = 0xfffffffbL;
+		assertEquals(-5, value.getInt());
+		value.bits = Float.floatToIntBits(1.5f) & 0xffffffffL;
+		assertEquals(1.5f, value.getFloat());
+		value.bits = Double.doubleToLongBits(-2.25);
+		assertEquals(-2.25, value.getDouble());
+		value.bits = Long.MIN_VALUE + 1;
+		assertEquals(Long.MIN_VALUE + 1, value.getLong());
+		assertEquals(Long.MIN_VALUE + 1, value.getID());
+		value.tag = 'Z';
+		value.bits = 0;
+		assertFalse(value.getBoolean());
+		value.tag = 'L';
+		value.bits = 0xabc;
+		assertEquals("L:abc", value.toString());
+	}
+
+	@Test
+	void decodeValueEachTag() {
+		JDWP jdwp = jdwp();
+		byte[] bytes = taggedValues(TAGS.length).array();
+		JDWP.TaggedValue value = new JDWP.TaggedValue();
+		int pos = 4;
+		for (int i = 0; i < TAGS.length; i++) {
+			int next = jdwp.decodeValue(bytes, pos, value);
+			assertEquals(pos + 1 + SIZES[i], next);
+			assertEquals(TAGS[i], value.tag);
+			assertEquals(BITS[i], value.bits, "tag " + (char) TAGS[i]);
+
+			value.tag = 0;
+			value.bits = -1;
+			assertEquals(next, jdwp.decodeUntaggedValue(bytes, pos + 1, TAGS[i], value));
+			assertEquals(TAGS[i], value.tag);
+			assertEquals(BITS[i], value.bits, "untagged " + (char) TAGS[i]);
+			pos = next;
+		}
+		assertEquals(bytes.length, pos);
+
+		assertEquals((byte) -128, decodeOne(jdwp, 'B').getByte());
+		assertEquals('é', decodeOne(jdwp, 'C').getChar());
+		assertEquals((short) -2, decodeOne(jdwp, 'S').getShort());
+		assertEquals(-5, decodeOne(jdwp, 'I').getInt());
+		assertEquals(1.5f, decodeOne(jdwp, 'F').getFloat());
+		assertEquals(Long.MIN_VALUE + 1, decodeOne(jdwp, 'J').getLong());
+		assertEquals(-2.25, decodeOne(jdwp, 'D').getDouble());
+		assertEquals(0x1122334455667788L, decodeOne(jdwp, 'L').getID());
+		assertEquals(0, decodeOne(jdwp, 'V').bits);
+		assertTrue(decodeOne(jdwp, 'Z').getBoolean());
+
+		// unknown tag and truncated payload
+		assertThrows(JDWP.JdwpRuntimeException.class, () -> jdwp.decodeValue(new byte[] { 'X', 0 }, 0, value));
+		assertThrows(JDWP.JdwpRuntimeException.class,
+				() -> jdwp.decodeValue(new byte[] { 'J', 0, 0, 0 }, 0, value));
+		assertThrows(JDWP.JdwpRuntimeException.class,
+				() -> jdwp.decodeUntaggedValue(new byte[] { 0, 0, 0 }, 0, (byte) 'I', value));
+	}
+
+	private static JDWP.TaggedValue decodeOne(JDWP jdwp, char tag) {
+		byte[] bytes = taggedValues(TAGS.length).array();
+		JDWP.TaggedValue value = new JDWP.TaggedValue();
+		int pos = 4;
+		for (int i = 0; TAGS[i] != tag; i++) {
+			pos += 1 + SIZES[i];
+		}
+		jdwp.decodeValue(bytes, pos, value);
+		return value;
+	}
+
+	@FunctionalInterface
+	private interface ValuesDecoder {
+		int decodeValues(byte[] bytes, int start, byte[] tags, long[] bits);
+	}
+
+	@Test
+	void decodeValuesIntoArrays() {
+		JDWP jdwp = jdwp();
+		ValuesDecoder[] decoders = {
+				jdwp.referenceType().cmdGetValues()::decodeValues,
+				jdwp.objectReference().cmdGetValues()::decodeValues,
+				jdwp.stackFrame().cmdGetValues()::decodeValues,
+		};
+		int n = TAGS.length;
+		for (ValuesDecoder decoder : decoders) {
+			byte[] tags = new byte[n + 2];
+			long[] bits = new long[n + 2];
+			assertEquals(n, decoder.decodeValues(taggedValues(n).array(), 0, tags, bits));
+			for (int i = 0; i < n; i++) {
+				assertEquals(TAGS[i], tags[i]);
+				assertEquals(BITS[i], bits[i], "tag " + (char) TAGS[i]);
+			}
+			assertEquals(0, tags[n]);
+			assertEquals(0, decoder.decodeValues(taggedValues(0).array(), 0, new byte[0], new long[0]));
+
+			byte[] values = taggedValues(n).array();
+			assertThrows(JDWP.JdwpRuntimeException.class,
+					() -> decoder.decodeValues(taggedValues(-1).array(), 0, tags, bits));
+			assertThrows(JDWP.JdwpRuntimeException.class,
+					() -> decoder.decodeValues(values, 0, new byte[n - 1], new long[n]));
+			assertThrows(JDWP.JdwpRuntimeException.class,
+					() -> decoder.decodeValues(values, 0, new byte[n], new long[n - 1]));
+			// count larger than the values present
+			assertThrows(JDWP.JdwpRuntimeException.class,
+					() -> decoder.decodeValues(taggedValues(n + 1).array(), 0, tags, bits));
+		}
+	}
+}
@@ -0,0 +1,221 @@
+package io.github.skylot.jdwp;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import io.github.skylot.jdwp.JDWP.ArrayReference.GetValues;
+import io.github.skylot.jdwp.JDWP.ArrayReference.SetValues;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class JdwpArrayReaderTest {
+	private static final long TIMEOUT_SEC = 10;
+	private static final int LENGTH = 1000;
+
+	// one array per component type, ID is the tag
+	private static final byte[] TAGS = { 'B', 'Z', 'C', 'S', 'I', 'J', 'F', 'D', 'L' };
+
+	private JdwpFakeVM vm;
+	private JdwpClient client;
+	/**
+	 * Raw big-endian values of the arrays, written by SetValues and read by GetValues handlers.
+	 */
+	private final Map<Long, byte[]> arrays = new ConcurrentHashMap<>();
+	private final AtomicInteger getValuesCount = new AtomicInteger();
+
+	@AfterEach
+	void close() throws IOException {
+		if (client != null) {
+			client.close();
+		}
+		if (vm != null) {
+			vm.close();
+		}
+	}
+
+	private static int valueSize(long tag) {
+		switch ((int) tag) {
+			case 'B':
+			case 'Z':
+				return 1;
+			case 'C':
+			case 'S':
+				return 2;
+			case 'I':
+			case 'F':
+				return 4;
+			default:
+				return 8;
+		}
+	}
+
+	private void connect() throws IOException {
+		for (byte tag : TAGS) {
+			arrays.put((long) tag, new byte[LENGTH * valueSize(tag)]);
+		}
+		vm = new JdwpFakeVM()
+				.setHandler(13, 1, (command, reply) -> reply.writeInt(LENGTH))
+				.setHandler(13, 2, (command, reply) -> {
+					getValuesCount.incrementAndGet();
+					long array = command.readID();
+					int first = command.readInt();
+					int length = command.readInt();
+					if (first < 0 || length < 0 || first + length > LENGTH) {
+						reply.error(JDWP.Error.INVALID_LENGTH);
+						return;
+					}
+					byte[] data = arrays.get(array);
+					int size = valueSize(array);
+					reply.writeByte((int) array).writeInt(length);
+					if (array == 'L') {
+						// object regions hold tagged values
+						for (int i = first; i < first + length; i++) {
+							reply.writeByte('L').writeBytes(data, i * size, size);
+						}
+					} else {
+						reply.writeBytes(data, first * size, length * size);
+					}
+				})
+				.setHandler(13, 3, (command, reply) -> {
+					long array = command.readID();
+					int first = command.readInt();
+					int count = command.readInt();
+					byte[] data = arrays.get(array);
+					int size = valueSize(array);
+					for (int i = first * size, end = (first + count) * size; i < end; i++) {
+						data[i] = command.readByte();
+					}
+				})
+				.start();
+		client = JdwpClient.connect("localhost", vm.getPort());
+	}
+
+	private static <T> T get(CompletableFuture<T> future) throws Exception {
+		return future.get(TIMEOUT_SEC, TimeUnit.SECONDS);
+	}
+
+	@Test
+	void regionIsReadInChunks() throws Exception {
+		connect();
+		ByteBuffer ints = ByteBuffer.wrap(arrays.get((long) 'I'));
+		for (int i = 0; i < LENGTH; i++) {
+			ints.putInt(i * 7);
+		}
+		// (64 - 5) / 4 = 14 values per reply, 71 chunks for 990 values, 3 at a time
+		JdwpArrayReader reader = new JdwpArrayReader(client).setMaxReplySize(64).setMaxInFlight(3);
+		assertEquals(LENGTH, get(reader.length('I')));
+
+		int[] values = get(reader.readInts('I', 10, LENGTH - 10));
+		assertEquals(71, getValuesCount.get());
+		for (int i = 0; i < values.length; i++) {
+			assertEquals((i + 10) * 7, values[i]);
+		}
+		assertEquals(0, get(reader.readInts('I', 5, 0)).length);
+
+		assertThrows(IllegalArgumentException.class, () -> reader.setMaxReplySize(63));
+		assertThrows(IllegalArgumentException.class, () -> reader.setMaxInFlight(0));
+		assertThrows(IllegalArgumentException.class, () -> reader.readInts('I', -1, 10));
+		// VM error of a later chunk fails the read
+		ExecutionException e = assertThrows(ExecutionException.class, () -> get(reader.readInts('I', 0, LENGTH + 1)));
+		assertInstanceOf(JDWP.JdwpErrorException.class, e.getCause());
+	}
+
+	@Test
+	void tagMismatchFailsRead() throws Exception {
+		connect();
+		JdwpArrayReader reader = new JdwpArrayReader(client).setMaxReplySize(64).setMaxInFlight(2);
+		ExecutionException e = assertThrows(ExecutionException.class, () -> get(reader.readLongs('I', 0, 100)));
+		assertInstanceOf(JDWP.JdwpRuntimeException.class, e.getCause());
+		e = assertThrows(ExecutionException.class, () -> get(reader.readIDs('I', 0, 10)));
+		assertInstanceOf(JDWP.JdwpRuntimeException.class, e.getCause());
+		e = assertThrows(ExecutionException.class, () -> get(reader.readBytes('Z', 0, 10)));
+		assertInstanceOf(JDWP.JdwpRuntimeException.class, e.getCause());
+
+		// decoders directly, a primitive region is not an object region and the other way around
+		GetValues cmd = client.jdwp().arrayReference().cmdGetValues();
+		e = assertThrows(ExecutionException.class, () -> get(client.send(cmd.encode('L', 0, 4),
+				(bytes, start) -> cmd.decodePrimitives(bytes, start, ByteBuffer.allocate(64)))));
+		assertInstanceOf(JDWP.JdwpRuntimeException.class, e.getCause());
+		e = assertThrows(ExecutionException.class, () -> get(client.send(cmd.encode('I', 0, 4),
+				(bytes, start) -> cmd.decodeFloats(bytes, start, new float[4], 0))));
+		assertInstanceOf(JDWP.JdwpRuntimeException.class, e.getCause());
+		// destination too small
+		e = assertThrows(ExecutionException.class, () -> get(client.send(cmd.encode('I', 0, 4),
+				(bytes, start) -> cmd.decodeInts(bytes, start, new int[4], 1))));
+		assertInstanceOf(JDWP.JdwpRuntimeException.class, e.getCause());
+	}
+
+	@Test
+	void setValuesThenGetValues() throws Exception {
+		connect();
+		SetValues set = client.jdwp().arrayReference().cmdSetValues();
+		JdwpArrayReader reader = new JdwpArrayReader(client).setMaxReplySize(64).setMaxInFlight(4);
+		int n = 300;
+		int first = 7;
+		// values are taken from offset 2 of the source arrays
+		byte[] bytes = new byte[n + 2];
+		boolean[] booleans = new boolean[n + 2];
+		char[] chars = new char[n + 2];
+		short[] shorts = new short[n + 2];
+		int[] ints = new int[n + 2];
+		long[] longs = new long[n + 2];
+		float[] floats = new float[n + 2];
+		double[] doubles = new double[n + 2];
+		long[] ids = new long[n + 2];
+		for (int i = 0; i < n + 2; i++) {
+			bytes[i] = (byte) (i * 31);
+			booleans[i] = i % 3 == 0;
+			chars[i] = (char) (0xe000 + i * 97);
+			shorts[i] = (short) (-i * 131);
+			ints[i] = i * 0x01010101 - 5;
+			longs[i] = Long.MIN_VALUE + i * 0x0102030405060708L;
+			floats[i] = i == 0 ? Float.NaN : -i / 3f;
+			doubles[i] = i == 0 ? Double.NEGATIVE_INFINITY : i * Math.PI;
+			ids[i] = i % 10 == 0 ? 0 : 0x7000_0000_0000_0000L + i;
+		}
+		get(client.send(set.encode('B', first, bytes, 2, n)));
+		get(client.send(set.encode('Z', first, booleans, 2, n)));
+		get(client.send(set.encode('C', first, chars, 2, n)));
+		get(client.send(set.encode('S', first, shorts, 2, n)));
+		get(client.send(set.encode('I', first, ints, 2, n)));
+		get(client.send(set.encode('J', first, longs, 2, n)));
+		get(client.send(set.encode('F', first, floats, 2, n)));
+		get(client.send(set.encode('D', first, doubles, 2, n)));
+		get(client.send(set.encodeIDs('L', first, ids, 2, n)));
+
+		assertArrayEquals(Arrays.copyOfRange(bytes, 2, n + 2), get(reader.readBytes('B', first, n)));
+		assertArrayEquals(Arrays.copyOfRange(booleans, 2, n + 2), get(reader.readBooleans('Z', first, n)));
+		assertArrayEquals(Arrays.copyOfRange(chars, 2, n + 2), get(reader.readChars('C', first, n)));
+		assertArrayEquals(Arrays.copyOfRange(shorts, 2, n + 2), get(reader.readShorts('S', first, n)));
+		assertArrayEquals(Arrays.copyOfRange(ints, 2, n + 2), get(reader.readInts('I', first, n)));
+		assertArrayEquals(Arrays.copyOfRange(longs, 2, n + 2), get(reader.readLongs('J', first, n)));
+		assertArrayEquals(Arrays.copyOfRange(floats, 2, n + 2), get(reader.readFloats('F', first, n)));
+		assertArrayEquals(Arrays.copyOfRange(doubles, 2, n + 2), get(reader.readDoubles('D', first, n)));
+		assertArrayEquals(Arrays.copyOfRange(ids, 2, n + 2), get(reader.readIDs('L', first, n)));
+		// elements before the region are untouched
+		assertArrayEquals(new int[first], get(reader.readInts('I', 0, first)));
+
+		// raw copy of a primitive region
+		GetValues cmd = client.jdwp().arrayReference().cmdGetValues();
+		ByteBuffer raw = ByteBuffer.allocate(n * 4 + 8);
+		int count = get(client.send(cmd.encode('I', first, n), (reply, start) -> cmd.decodePrimitives(reply, start, raw)));
+		assertEquals(n, count);
+		raw.flip();
+		int[] decoded = new int[n];
+		raw.asIntBuffer().get(decoded);
+		assertArrayEquals(Arrays.copyOfRange(ints, 2, n + 2), decoded);
+	}
+}
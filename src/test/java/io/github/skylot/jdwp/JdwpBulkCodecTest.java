@@ -0,0 +1,154 @@
+package io.github.skylot.jdwp;
+
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Runs against main classes with {@code test} and against the multi-release jar with {@code testJar}, so on
+ * Java 9+ both codec versions are covered.
+ */
+class JdwpBulkCodecTest {
+	private static final int COUNT = 37;
+	// odd offsets, values are unaligned in the byte array
+	private static final int BYTES_POS = 3;
+	private static final int VALUES_POS = 5;
+
+	/**
+	 * Expected big-endian bytes, written by {@link ByteBuffer} at {@link #BYTES_POS}.
+	 */
+	private static ByteBuffer expected(int valueSize) {
+		ByteBuffer buf = ByteBuffer.allocate(BYTES_POS + COUNT * valueSize + 2);
+		buf.position(BYTES_POS);
+		return buf;
+	}
+
+	private static long bits(int i) {
+		// sign bits and all byte positions set
+		return 0x8182838485868788L * (i + 1) ^ (long) i << 29;
+	}
+
+	@Test
+	void chars() {
+		char[] values = new char[VALUES_POS + COUNT];
+		ByteBuffer buf = expected(2);
+		for (int i = 0; i < COUNT; i++) {
+			values[VALUES_POS + i] = (char) bits(i);
+			buf.putChar((char) bits(i));
+		}
+		byte[] bytes = new byte[buf.capacity()];
+		JdwpBulkCodec.putChars(values, VALUES_POS, bytes, BYTES_POS, COUNT);
+		assertArrayEquals(buf.array(), bytes);
+
+		char[] decoded = new char[VALUES_POS + COUNT];
+		JdwpBulkCodec.getChars(bytes, BYTES_POS, decoded, VALUES_POS, COUNT);
+		assertArrayEquals(values, decoded);
+	}
+
+	@Test
+	void shorts() {
+		short[] values = new short[VALUES_POS + COUNT];
+		ByteBuffer buf = expected(2);
+		for (int i = 0; i < COUNT; i++) {
+			values[VALUES_POS + i] = (short) bits(i);
+			buf.putShort((short) bits(i));
+		}
+		byte[] bytes = new byte[buf.capacity()];
+		JdwpBulkCodec.putShorts(values, VALUES_POS, bytes, BYTES_POS, COUNT);
+		assertArrayEquals(buf.array(), bytes);
+
+		short[] decoded = new short[VALUES_POS + COUNT];
+		JdwpBulkCodec.getShorts(bytes, BYTES_POS, decoded, VALUES_POS, COUNT);
+		assertArrayEquals(values, decoded);
+	}
+
+	@Test
+	void ints() {
+		int[] values = new int[VALUES_POS + COUNT];
+		ByteBuffer buf = expected(4);
+		for (int i = 0; i < COUNT; i++) {
+			values[VALUES_POS + i] = (int) bits(i);
+			buf.putInt((int) bits(i));
+		}
+		byte[] bytes = new byte[buf.capacity()];
+		JdwpBulkCodec.putInts(values, VALUES_POS, bytes, BYTES_POS, COUNT);
+		assertArrayEquals(buf.array(), bytes);
+
+		int[] decoded = new int[VALUES_POS + COUNT];
+		JdwpBulkCodec.getInts(bytes, BYTES_POS, decoded, VALUES_POS, COUNT);
+		assertArrayEquals(values, decoded);
+	}
+
+	@Test
+	void longs() {
+		long[] values = new long[VALUES_POS + COUNT];
+		ByteBuffer buf = expected(8);
+		for (int i = 0; i < COUNT; i++) {
+			values[VALUES_POS + i] = bits(i);
+			buf.putLong(bits(i));
+		}
+		byte[] bytes = new byte[buf.capacity()];
+		JdwpBulkCodec.putLongs(values, VALUES_POS, bytes, BYTES_POS, COUNT);
+		assertArrayEquals(buf.array(), bytes);
+
+		long[] decoded = new long[VALUES_POS + COUNT];
+		JdwpBulkCodec.getLongs(bytes, BYTES_POS, decoded, VALUES_POS, COUNT);
+		assertArrayEquals(values, decoded);
+	}
+
+	@Test
+	void floats() {
+		float[] values = new float[VALUES_POS + COUNT];
+		ByteBuffer buf = expected(4);
+		for (int i = 0; i < COUNT; i++) {
+			// includes NaNs with payload, raw bits must be kept
+			values[VALUES_POS + i] = Float.intBitsToFloat((int) bits(i));
+			buf.putInt((int) bits(i));
+		}
+		byte[] bytes = new byte[buf.capacity()];
+		JdwpBulkCodec.putFloats(values, VALUES_POS, bytes, BYTES_POS, COUNT);
+		assertArrayEquals(buf.array(), bytes);
+
+		float[] decoded = new float[VALUES_POS + COUNT];
+		JdwpBulkCodec.getFloats(bytes, BYTES_POS, decoded, VALUES_POS, COUNT);
+		for (int i = 0; i < decoded.length; i++) {
+			assertEquals(Float.floatToRawIntBits(values[i]), Float.floatToRawIntBits(decoded[i]));
+		}
+	}
+
+	@Test
+	void doubles() {
+		double[] values = new double[VALUES_POS + COUNT];
+		ByteBuffer buf = expected(8);
+		for (int i = 0; i < COUNT; i++) {
+			values[VALUES_POS + i] = Double.longBitsToDouble(bits(i));
+			buf.putLong(bits(i));
+		}
+		byte[] bytes = new byte[buf.capacity()];
+		JdwpBulkCodec.putDoubles(values, VALUES_POS, bytes, BYTES_POS, COUNT);
+		assertArrayEquals(buf.array(), bytes);
+
+		double[] decoded = new double[VALUES_POS + COUNT];
+		JdwpBulkCodec.getDoubles(bytes, BYTES_POS, decoded, VALUES_POS, COUNT);
+		for (int i = 0; i < decoded.length; i++) {
+			assertEquals(Double.doubleToRawLongBits(values[i]), Double.doubleToRawLongBits(decoded[i]));
+		}
+	}
+
+	@Test
+	void jarUsesJava9Codec() {
+		assumeTrue(Boolean.getBoolean("jdwp.test.jar"), "not running against the jar");
+		assumeTrue(!System.getProperty("java.specification.version").startsWith("1."), "Java 8 runtime");
+		boolean varHandles = Arrays.stream(JdwpBulkCodec.class.getDeclaredFields())
+				.map(Field::getType)
+				.anyMatch(type -> type.getName().equals("java.lang.invoke.VarHandle"));
+		assertTrue(varHandles, "java9 version of JdwpBulkCodec is not loaded");
+	}
+}
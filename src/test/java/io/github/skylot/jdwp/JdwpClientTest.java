@@ -0,0 +1,354 @@
+package io.github.skylot.jdwp;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import io.github.skylot.jdwp.JDWP.ReferenceType;
+import io.github.skylot.jdwp.JDWP.VirtualMachine;
+import io.github.skylot.jdwp.JDWP.VirtualMachine.AllClassesWithGeneric.AllClassesWithGenericData;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class JdwpClientTest {
+	private static final long TIMEOUT_SEC = 10;
+
+	private JdwpFakeVM vm;
+	private JdwpClient client;
+
+	@AfterEach
+	void close() throws IOException {
+		if (client != null) {
+			client.close();
+		}
+		if (vm != null) {
+			vm.close();
+		}
+	}
+
+	private void connect(JdwpFakeVM fakeVM, int maxInFlight) throws IOException {
+		vm = fakeVM.start();
+		InetSocketAddress address = new InetSocketAddress(InetAddress.getLoopbackAddress(), vm.getPort());
+		client = JdwpClient.connect(address, null, null, null, maxInFlight);
+	}
+
+	private static <T> T get(CompletableFuture<T> future) throws Exception {
+		return future.get(TIMEOUT_SEC, TimeUnit.SECONDS);
+	}
+
+	private static Throwable failure(CompletableFuture<?> future) {
+		ExecutionException e = assertThrows(ExecutionException.class, () -> get(future));
+		return e.getCause();
+	}
+
+	private List<AllClassesWithGenericData> allClasses() throws Exception {
+		VirtualMachine.AllClassesWithGeneric cmd = client.jdwp().virtualMachine().cmdAllClassesWithGeneric();
+		return get(client.send(cmd.encode(), cmd::decode)).classes;
+	}
+
+	@Test
+	void repliesMatchCommands() throws Exception {
+		connect(new JdwpFakeVM().setClassCount(200), 0);
+		List<AllClassesWithGenericData> classes = allClasses();
+		ReferenceType.Signature cmd = client.jdwp().referenceType().cmdSignature();
+		List<CompletableFuture<String>> replies = new ArrayList<>();
+		for (AllClassesWithGenericData cls : classes) {
+			replies.add(client.send(cmd.encode(cls.typeID), (bytes, start) -> cmd.decode(bytes, start).signature));
+		}
+		for (int i = 0; i < classes.size(); i++) {
+			assertEquals(classes.get(i).signature, get(replies.get(i)));
+		}
+	}
+
+	@Test
+	void sendEncodedIntoClientBuffer() throws Exception {
+		connect(new JdwpFakeVM().setClassCount(50), 2);
+		List<AllClassesWithGenericData> classes = allClasses();
+		ReferenceType.Signature cmd = client.jdwp().referenceType().cmdSignature();
+		List<CompletableFuture<ReferenceType.Signature.SignatureReplyData>> replies = new ArrayList<>();
+		for (AllClassesWithGenericData cls : classes) {
+			replies.add(client.send(cmd.getSize(), (dst, offset, id) -> cmd.encode(dst, offset, id, cls.typeID),
+					cmd::decode));
+		}
+		for (int i = 0; i < classes.size(); i++) {
+			assertEquals(classes.get(i).signature, get(replies.get(i)).signature);
+		}
+		assertThrows(IllegalArgumentException.class,
+				() -> client.send(cmd.getSize() + 1, (dst, offset, id) -> cmd.encode(dst, offset, id, 1)));
+	}
+
+	@Test
+	void errorReplyFailsOnlyItsCommand() throws Exception {
+		connect(new JdwpFakeVM().setClassCount(10), 0);
+		long refType = allClasses().get(0).typeID;
+		ReferenceType.Signature cmd = client.jdwp().referenceType().cmdSignature();
+		CompletableFuture<ReferenceType.Signature.SignatureReplyData> bad = client.send(cmd.encode(-1), cmd::decode);
+		CompletableFuture<ReferenceType.Signature.SignatureReplyData> good = client.send(cmd.encode(refType), cmd::decode);
+
+		Throwable error = failure(bad);
+		assertInstanceOf(JDWP.JdwpErrorException.class, error);
+		assertEquals(JDWP.Error.INVALID_CLASS, ((JDWP.JdwpErrorException) error).getErrorCode());
+		assertTrue(get(good).signature.startsWith("L"));
+	}
+
+	@Test
+	void maxInFlightQueuesCommands() throws Exception {
+		int maxInFlight = 4;
+		AtomicInteger received = new AtomicInteger();
+		AtomicInteger replied = new AtomicInteger();
+		AtomicInteger maxAwaiting = new AtomicInteger();
+		JdwpFakeVM fakeVM = new JdwpFakeVM().setHandler(1, 1, (command, reply) -> {
+			int awaiting = received.incrementAndGet() - replied.get();
+			maxAwaiting.accumulateAndGet(awaiting, Math::max);
+			reply.writeInt(command.getID());
+		});
+		connect(fakeVM, maxInFlight);
+
+		List<CompletableFuture<Void>> replies = new ArrayList<>();
+		for (int i = 0; i < 200; i++) {
+			// stream decoders are called on I/O thread before the next queued command is released
+			replies.add(client.send(client.jdwp().virtualMachine().cmdVersion().encode(), new IntDecoder(replied)));
+		}
+		for (CompletableFuture<Void> reply : replies) {
+			get(reply);
+		}
+		assertEquals(200, replied.get());
+		assertTrue(maxAwaiting.get() <= maxInFlight, "max commands awaiting replies: " + maxAwaiting.get());
+	}
+
+	@Test
+	void batchStopsOnFirstError() throws Exception {
+		connect(new JdwpFakeVM().setClassCount(10), 0);
+		List<AllClassesWithGenericData> classes = allClasses();
+		ReferenceType.Signature cmd = client.jdwp().referenceType().cmdSignature();
+		List<JDWP.ByteBuffer> commands = new ArrayList<>();
+		for (int i = 0; i < 10; i++) {
+			commands.add(cmd.encode(i == 3 ? -1 : classes.get(i).typeID));
+		}
+		long before = vm.getCommandCount();
+
+		Throwable error = failure(client.sendBatch(commands, 1, cmd::decode));
+		assertInstanceOf(JDWP.JdwpErrorException.class, error);
+
+		// replies arrive in order, so after this round trip every command sent by the batch was answered
+		get(client.send(client.jdwp().virtualMachine().cmdVersion().encode()));
+		assertEquals(4 + 1, vm.getCommandCount() - before);
+	}
+
+	@Test
+	void batchKeepsSubmissionOrder() throws Exception {
+		connect(new JdwpFakeVM().setClassCount(100), 0);
+		List<AllClassesWithGenericData> classes = allClasses();
+		ReferenceType.Signature cmd = client.jdwp().referenceType().cmdSignature();
+		List<JDWP.ByteBuffer> commands = new ArrayList<>();
+		for (AllClassesWithGenericData cls : classes) {
+			commands.add(cmd.encode(cls.typeID));
+		}
+		List<ReferenceType.Signature.SignatureReplyData> replies = get(client.sendBatch(commands, 8, cmd::decode));
+		assertEquals(classes.size(), replies.size());
+		for (int i = 0; i < classes.size(); i++) {
+			assertEquals(classes.get(i).signature, replies.get(i).signature);
+		}
+	}
+
+	@Test
+	void streamedReplyMatchesDecodedReply() throws Exception {
+		// reply is bigger than the client read buffer
+		connect(new JdwpFakeVM().setClassCount(5000), 0);
+		List<AllClassesWithGenericData> classes = allClasses();
+		List<Long> typeIDs = new ArrayList<>();
+		List<String> signatures = new ArrayList<>();
+		VirtualMachine.AllClassesWithGeneric cmd = client.jdwp().virtualMachine().cmdAllClassesWithGeneric();
+		get(client.send(cmd.encode(), cmd.newStreamDecoder((tag, typeID, signature, generic, status) -> {
+			typeIDs.add(typeID);
+			signatures.add(signature);
+		})));
+
+		assertEquals(classes.size(), typeIDs.size());
+		for (int i = 0; i < classes.size(); i++) {
+			assertEquals(classes.get(i).typeID, typeIDs.get(i));
+			assertEquals(classes.get(i).signature, signatures.get(i));
+		}
+	}
+
+	@Test
+	void streamedErrorReply() throws Exception {
+		connect(new JdwpFakeVM().setClassCount(10), 0);
+		int classCount = allClasses().size();
+		ReferenceType.Instances cmd = client.jdwp().referenceType().cmdInstances();
+		CompletableFuture<Void> reply = client.send(cmd.encode(-1, 0), cmd.newStreamDecoder((tag, objectID) -> {
+		}));
+		assertInstanceOf(JDWP.JdwpErrorException.class, failure(reply));
+		assertEquals(classCount, allClasses().size());
+	}
+
+	@Test
+	void failedStreamDecoderSkipsRestOfReply() throws Exception {
+		connect(new JdwpFakeVM().setClassCount(5000), 0);
+		int classCount = allClasses().size();
+		AtomicInteger handled = new AtomicInteger();
+		VirtualMachine.AllClassesWithGeneric cmd = client.jdwp().virtualMachine().cmdAllClassesWithGeneric();
+		CompletableFuture<Void> reply = client.send(cmd.encode(),
+				cmd.newStreamDecoder((tag, typeID, signature, generic, status) -> {
+					if (handled.incrementAndGet() == 10) {
+						throw new JDWP.JdwpRuntimeException("stop");
+					}
+				}));
+
+		assertEquals("stop", failure(reply).getMessage());
+		assertEquals(10, handled.get());
+		// connection is still in sync
+		assertEquals(classCount, allClasses().size());
+	}
+
+	@Test
+	void underConsumingStreamDecoderFails() throws Exception {
+		// int and a trailing short, the decoder reads only whole ints
+		connect(new JdwpFakeVM().setHandler(1, 1, (command, reply) -> reply.writeInt(1).writeShort(2)), 0);
+		AtomicInteger decoded = new AtomicInteger();
+		CompletableFuture<Void> reply = client.send(client.jdwp().virtualMachine().cmdVersion().encode(),
+				new IntDecoder(decoded));
+
+		assertEquals("Incomplete reply data", failure(reply).getMessage());
+		assertEquals(1, decoded.get());
+		// connection is still in sync
+		assertTrue(allClasses().size() > 0);
+	}
+
+	@Test
+	void closeFailsPendingCommands() throws Exception {
+		CountDownLatch release = new CountDownLatch(1);
+		connect(new JdwpFakeVM().setHandler(1, 1, (command, reply) -> await(release)), 0);
+		try {
+			CompletableFuture<JDWP.Packet> reply = client.send(client.jdwp().virtualMachine().cmdVersion().encode());
+			client.close();
+
+			assertInstanceOf(ClosedChannelException.class, failure(reply));
+			get(client.closeFuture());
+			assertTrue(client.isClosed());
+			CompletableFuture<JDWP.Packet> afterClose = client.send(JDWP.Resume.encode());
+			assertInstanceOf(ClosedChannelException.class, failure(afterClose));
+		} finally {
+			release.countDown();
+		}
+	}
+
+	@Test
+	void disconnectFailsPendingCommands() throws Exception {
+		CountDownLatch release = new CountDownLatch(1);
+		connect(new JdwpFakeVM().setHandler(1, 1, (command, reply) -> await(release)), 2);
+		try {
+			List<CompletableFuture<JDWP.Packet>> replies = new ArrayList<>();
+			for (int i = 0; i < 5; i++) {
+				// queued commands are failed too
+				replies.add(client.send(client.jdwp().virtualMachine().cmdVersion().encode()));
+			}
+			vm.close();
+
+			for (CompletableFuture<JDWP.Packet> reply : replies) {
+				failure(reply);
+			}
+			get(client.closeFuture());
+		} finally {
+			release.countDown();
+		}
+	}
+
+	@Test
+	void earlyEventsGoToFirstListener() throws Exception {
+		connect(new JdwpFakeVM(), 0);
+		// fake VM sends VMStart right after handshake, before any listener is set
+		get(client.send(client.jdwp().virtualMachine().cmdVersion().encode()));
+		CompletableFuture<JDWP.Packet> event = new CompletableFuture<>();
+		client.setEventListener(event::complete);
+
+		JDWP.Packet packet = get(event);
+		// Event.Composite
+		assertEquals(64, packet.getCommandSetID());
+		assertEquals(100, packet.getCommandID());
+	}
+
+	@Test
+	void failingListenerClosesOnlyItsConnection() throws Exception {
+		vm = new JdwpFakeVM().start();
+		InetSocketAddress address = new InetSocketAddress(InetAddress.getLoopbackAddress(), vm.getPort());
+		JdwpEventLoop loop = new JdwpEventLoop("jdwp-test-loop");
+		try (JdwpClient other = JdwpClient.connect(address, null, loop, null, 0)) {
+			client = JdwpClient.connect(address, null, loop, null, 0);
+			get(client.send(client.jdwp().virtualMachine().cmdVersion().encode()));
+			client.setEventListener(event -> {
+				throw new IllegalStateException("listener failed");
+			});
+
+			get(client.closeFuture());
+			assertEquals(1, loop.getConnectionCount());
+			assertTrue(get(other.send(other.jdwp().virtualMachine().cmdVersion().encode())).getLength() > 0);
+		} finally {
+			loop.close();
+		}
+	}
+
+	@Test
+	void earlyEventsAreCapped() throws Exception {
+		connect(new JdwpFakeVM().setEventRate(50_000, 1), 0);
+		JDWP.EventRequest.Set set = client.jdwp().eventRequest().cmdSet();
+		get(client.send(set.encode((byte) JDWP.EventKind.METHOD_ENTRY, (byte) JDWP.SuspendPolicy.NONE,
+				new ArrayList<>())));
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(TIMEOUT_SEC);
+		while (client.getDroppedEventCount() == 0 && System.nanoTime() < deadline) {
+			Thread.sleep(10);
+		}
+		assertTrue(client.getDroppedEventCount() > 0);
+		assertFalse(client.isClosed());
+	}
+
+	private static void await(CountDownLatch latch) {
+		try {
+			latch.await(TIMEOUT_SEC, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Reads a single int reply and counts it.
+	 */
+	private static final class IntDecoder implements JDWP.ReplyStreamDecoder {
+		private final AtomicInteger counter;
+		private boolean complete;
+
+		IntDecoder(AtomicInteger counter) {
+			this.counter = counter;
+		}
+
+		@Override
+		public void decode(ByteBuffer data) {
+			if (data.remaining() >= 4) {
+				data.getInt();
+				complete = true;
+				counter.incrementAndGet();
+			}
+		}
+
+		@Override
+		public boolean isComplete() {
+			return complete;
+		}
+	}
+}
@@ -0,0 +1,93 @@
+package io.github.skylot.jdwp;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import io.github.skylot.jdwp.JDWP.VirtualMachine;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class JdwpConnectionManagerTest {
+	private static final long TIMEOUT_SEC = 10;
+
+	private final List<JdwpFakeVM> vms = new ArrayList<>();
+
+	@AfterEach
+	void close() throws IOException {
+		for (JdwpFakeVM vm : vms) {
+			vm.close();
+		}
+	}
+
+	private int startVM(int classCount) throws IOException {
+		JdwpFakeVM vm = new JdwpFakeVM().setClassCount(classCount).start();
+		vms.add(vm);
+		return vm.getPort();
+	}
+
+	@Test
+	void sharedLoopsServeManyVMs() throws Exception {
+		ExecutorService decodePool = Executors.newFixedThreadPool(2);
+		try (JdwpConnectionManager manager = new JdwpConnectionManager(2, decodePool)) {
+			manager.setMaxInFlightPerVM(4);
+			List<CompletableFuture<JdwpClient>> connects = new ArrayList<>();
+			for (int i = 0; i < 6; i++) {
+				connects.add(manager.connect("localhost", startVM(10 * (i + 1))));
+			}
+			List<CompletableFuture<Integer>> classCounts = new ArrayList<>();
+			for (CompletableFuture<JdwpClient> connect : connects) {
+				JdwpClient client = connect.get(TIMEOUT_SEC, TimeUnit.SECONDS);
+				VirtualMachine.AllClasses cmd = client.jdwp().virtualMachine().cmdAllClasses();
+				classCounts.add(client.send(cmd.encode(), cmd::decode).thenApply(reply -> reply.classes.size()));
+			}
+			for (int i = 1; i < classCounts.size(); i++) {
+				int delta = classCounts.get(i).get(TIMEOUT_SEC, TimeUnit.SECONDS)
+						- classCounts.get(i - 1).get(TIMEOUT_SEC, TimeUnit.SECONDS);
+				assertEquals(10, delta);
+			}
+			assertEquals(6, manager.getClients().size());
+			assertEquals(3, manager.getLoopConnectionCounts().get(0));
+			assertEquals(3, manager.getLoopConnectionCounts().get(1));
+
+			manager.close();
+			for (CompletableFuture<JdwpClient> connect : connects) {
+				JdwpClient client = connect.get();
+				client.closeFuture().get(TIMEOUT_SEC, TimeUnit.SECONDS);
+				assertTrue(client.isClosed());
+			}
+		} finally {
+			decodePool.shutdown();
+		}
+	}
+
+	@Test
+	void failedConnectFailsFuture() throws Exception {
+		int port;
+		try (ServerSocket socket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+			port = socket.getLocalPort();
+		}
+		try (JdwpConnectionManager manager = new JdwpConnectionManager(1, null)) {
+			CompletableFuture<JdwpClient> connect = manager.connect(
+					new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+			ExecutionException e = assertThrows(ExecutionException.class,
+					() -> connect.get(TIMEOUT_SEC, TimeUnit.SECONDS));
+			assertInstanceOf(IOException.class, e.getCause().getCause());
+			assertTrue(manager.getClients().isEmpty());
+		}
+	}
+}
@@ -0,0 +1,106 @@
+package io.github.skylot.jdwp;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import io.github.skylot.jdwp.JDWP.ReferenceType.Methods.MethodsReplyDataDeclared;
+import io.github.skylot.jdwp.JDWP.VirtualMachine.AllClasses.AllClassesReplyDataClasses;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class JdwpMetadataCacheTest {
+	private static final long TIMEOUT_SEC = 10;
+
+	private JdwpFakeVM vm;
+	private JdwpClient client;
+
+	@AfterEach
+	void close() throws IOException {
+		if (client != null) {
+			client.close();
+		}
+		if (vm != null) {
+			vm.close();
+		}
+	}
+
+	private void connect(JdwpFakeVM fakeVM) throws IOException {
+		vm = fakeVM.start();
+		client = JdwpClient.connect("localhost", vm.getPort());
+	}
+
+	private static <T> T get(CompletableFuture<T> future) throws Exception {
+		return future.get(TIMEOUT_SEC, TimeUnit.SECONDS);
+	}
+
+	private AllClassesReplyDataClasses lastClass() throws Exception {
+		JDWP.VirtualMachine.AllClasses cmd = client.jdwp().virtualMachine().cmdAllClasses();
+		List<AllClassesReplyDataClasses> classes = get(client.send(cmd.encode(), cmd::decode)).classes;
+		return classes.get(classes.size() - 1);
+	}
+
+	@Test
+	void unloadBeforeSignatureReplyDropsType() throws Exception {
+		CountDownLatch unloaded = new CountDownLatch(1);
+		String[] signature = new String[1];
+		connect(new JdwpFakeVM().setClassCount(10).setHandler(2, 1, (command, reply) -> {
+			try {
+				unloaded.await(TIMEOUT_SEC, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			reply.writeString(signature[0]);
+		}));
+		AllClassesReplyDataClasses cls = lastClass();
+		signature[0] = cls.signature;
+		JdwpMetadataCache cache = new JdwpMetadataCache(client, 100);
+
+		CompletableFuture<?> methods = cache.methods(cls.typeID);
+		// Signature reply is held back by the VM until the class is unloaded
+		cache.onClassUnload(0, cls.signature);
+		unloaded.countDown();
+		get(methods);
+		// replies are completed in order, so the Signature reply is handled after this round trip
+		get(client.send(client.jdwp().virtualMachine().cmdVersion().encode()));
+
+		assertEquals(0, cache.size());
+	}
+
+	@Test
+	void unloadBeforeFetchKeepsNewType() throws Exception {
+		connect(new JdwpFakeVM().setClassCount(10));
+		AllClassesReplyDataClasses cls = lastClass();
+		JdwpMetadataCache cache = new JdwpMetadataCache(client, 100);
+
+		cache.onClassUnload(0, cls.signature);
+		get(cache.methods(cls.typeID));
+		get(cache.signature(cls.typeID));
+		assertEquals(2, cache.size());
+		cache.onClassUnload(0, cls.signature);
+		assertEquals(0, cache.size());
+	}
+
+	@Test
+	void lineTablesOfOneTypeAreBounded() throws Exception {
+		connect(new JdwpFakeVM().setClassCount(10).setMethodsPerClass(30));
+		AllClassesReplyDataClasses cls = lastClass();
+		JdwpMetadataCache cache = new JdwpMetadataCache(client, 10);
+
+		List<MethodsReplyDataDeclared> methods = get(cache.methods(cls.typeID)).declared;
+		for (MethodsReplyDataDeclared method : methods) {
+			get(cache.lineTable(cls.typeID, method.methodID));
+			assertTrue(cache.size() <= 10, "cache size " + cache.size());
+		}
+		long misses = cache.getMisses();
+		// most recent line table is kept
+		get(cache.lineTable(cls.typeID, methods.get(methods.size() - 1).methodID));
+		assertEquals(misses, cache.getMisses());
+	}
+}
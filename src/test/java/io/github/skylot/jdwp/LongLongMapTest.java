@@ -0,0 +1,131 @@
+package io.github.skylot.jdwp;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LongLongMapTest {
+	private static final long MISSING = -1;
+
+	/**
+	 * Keys with the same home slot in a table of {@code cap} slots.
+	 */
+	static long[] keysWithHome(int slot, int cap, int count) {
+		long[] keys = new long[count];
+		int found = 0;
+		for (long key = 1; found < count; key++) {
+			if ((LongObjectMap.hash(key) & (cap - 1)) == slot) {
+				keys[found++] = key;
+			}
+		}
+		return keys;
+	}
+
+	@ParameterizedTest
+	@ValueSource(booleans = { false, true })
+	void putGetRemove(boolean offHeap) {
+		LongLongMap map = new LongLongMap(4, MISSING, offHeap);
+		assertEquals(offHeap, map.isOffHeap());
+		assertTrue(map.isEmpty());
+		assertEquals(MISSING, map.get(10));
+
+		assertEquals(MISSING, map.put(10, 100));
+		assertEquals(MISSING, map.put(20, 200));
+		assertEquals(100, map.put(10, 101));
+		assertEquals(2, map.size());
+		assertEquals(101, map.get(10));
+		assertTrue(map.containsKey(20));
+		assertFalse(map.containsKey(30));
+		assertEquals(5, map.addTo(30, 5));
+		assertEquals(8, map.addTo(30, 3));
+
+		assertEquals(101, map.remove(10));
+		assertEquals(MISSING, map.remove(10));
+		assertEquals(MISSING, map.get(10));
+		assertEquals(2, map.size());
+		assertThrows(IllegalArgumentException.class, () -> map.put(0, 1));
+		assertFalse(map.containsKey(0));
+
+		map.clear();
+		assertTrue(map.isEmpty());
+		assertEquals(MISSING, map.get(20));
+	}
+
+	@ParameterizedTest
+	@ValueSource(booleans = { false, true })
+	void collisionsWrapAroundTableEnd(boolean offHeap) {
+		// 16 slots, keys homed at the last slot probe into slots 0, 1, ...
+		LongLongMap map = new LongLongMap(8, MISSING, offHeap);
+		long[] last = keysWithHome(15, 16, 4);
+		long[] first = keysWithHome(0, 16, 2);
+		for (long key : last) {
+			map.put(key, key * 10);
+		}
+		for (long key : first) {
+			map.put(key, key * 10);
+		}
+		assertEquals(6, map.size());
+
+		// backward shift moves wrapped entries back over the table end
+		assertEquals(last[0] * 10, map.remove(last[0]));
+		assertEquals(first[0] * 10, map.remove(first[0]));
+		assertEquals(4, map.size());
+		assertEquals(MISSING, map.get(last[0]));
+		assertEquals(MISSING, map.get(first[0]));
+		for (int i = 1; i < last.length; i++) {
+			assertEquals(last[i] * 10, map.get(last[i]));
+		}
+		assertEquals(first[1] * 10, map.get(first[1]));
+
+		// re-insert after removal
+		assertEquals(MISSING, map.put(last[0], 7));
+		assertEquals(MISSING, map.put(first[0], 8));
+		assertEquals(6, map.size());
+		assertEquals(7, map.get(last[0]));
+		assertEquals(8, map.get(first[0]));
+		Map<Long, Long> entries = new HashMap<>();
+		map.forEach(entries::put);
+		assertEquals(6, entries.size());
+		assertEquals(last[1] * 10, entries.get(last[1]));
+	}
+
+	@ParameterizedTest
+	@ValueSource(booleans = { false, true })
+	void growsUpToMaxCapacityThenRefusesPut(boolean offHeap) {
+		// starts with 8 slots, grows to 64 slots holding 32 entries
+		LongLongMap map = new LongLongMap(1, MISSING, offHeap, 64);
+		for (long key = 1; key <= 32; key++) {
+			map.put(key, key + 1000);
+		}
+		assertEquals(32, map.size());
+
+		assertThrows(IllegalStateException.class, () -> map.put(33, 1));
+		assertThrows(IllegalStateException.class, () -> map.addTo(33, 1));
+		assertEquals(32, map.size());
+		assertFalse(map.containsKey(33));
+		for (long key = 1; key <= 32; key++) {
+			assertEquals(key + 1000, map.get(key));
+		}
+		// existing keys can still be updated, removal frees a slot
+		assertEquals(1001, map.put(1, 1));
+		assertEquals(1, map.remove(1));
+		assertEquals(MISSING, map.put(33, 1));
+		assertEquals(32, map.size());
+	}
+
+	@ParameterizedTest
+	@ValueSource(booleans = { false, true })
+	void rejectsSizeAboveMaxCapacity(boolean offHeap) {
+		// 1 << 26 slots at most, half usable
+		assertThrows(IllegalArgumentException.class, () -> new LongLongMap((1 << 25) + 1, MISSING, offHeap));
+		assertThrows(IllegalArgumentException.class, () -> new LongLongMap(-1, MISSING, offHeap));
+		assertThrows(IllegalArgumentException.class, () -> new LongLongMap(33, MISSING, offHeap, 64));
+	}
+}
@@ -0,0 +1,109 @@
+package io.github.skylot.jdwp;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import static io.github.skylot.jdwp.LongLongMapTest.keysWithHome;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LongObjectMapTest {
+
+	@Test
+	void putGetRemove() {
+		LongObjectMap<String> map = new LongObjectMap<>();
+		assertTrue(map.isEmpty());
+		assertNull(map.get(10));
+
+		assertNull(map.put(10, "a"));
+		assertNull(map.put(20, "b"));
+		assertEquals("a", map.put(10, "c"));
+		assertEquals(2, map.size());
+		assertEquals("c", map.get(10));
+		assertTrue(map.containsKey(20));
+		assertFalse(map.containsKey(30));
+
+		assertEquals("c", map.remove(10));
+		assertNull(map.remove(10));
+		assertNull(map.get(10));
+		assertEquals(1, map.size());
+		assertThrows(IllegalArgumentException.class, () -> map.put(0, "x"));
+		assertFalse(map.containsKey(0));
+
+		map.clear();
+		assertTrue(map.isEmpty());
+		assertNull(map.get(20));
+	}
+
+	@Test
+	void collisionsWrapAroundTableEnd() {
+		// 16 slots, keys homed at the last slot probe into slots 0, 1, ...
+		LongObjectMap<String> map = new LongObjectMap<>(8);
+		long[] last = keysWithHome(15, 16, 4);
+		long[] first = keysWithHome(0, 16, 2);
+		for (long key : last) {
+			map.put(key, "L" + key);
+		}
+		for (long key : first) {
+			map.put(key, "F" + key);
+		}
+		assertEquals(6, map.size());
+
+		// backward shift moves wrapped entries back over the table end
+		assertEquals("L" + last[0], map.remove(last[0]));
+		assertEquals("F" + first[0], map.remove(first[0]));
+		assertEquals(4, map.size());
+		assertNull(map.get(last[0]));
+		assertNull(map.get(first[0]));
+		for (int i = 1; i < last.length; i++) {
+			assertEquals("L" + last[i], map.get(last[i]));
+		}
+		assertEquals("F" + first[1], map.get(first[1]));
+
+		// re-insert after removal
+		assertNull(map.put(last[0], "x"));
+		assertNull(map.put(first[0], "y"));
+		assertEquals(6, map.size());
+		assertEquals("x", map.get(last[0]));
+		assertEquals("y", map.get(first[0]));
+		Map<Long, String> entries = new HashMap<>();
+		map.forEach(entries::put);
+		assertEquals(6, entries.size());
+		assertEquals("L" + last[1], entries.get(last[1]));
+	}
+
+	@Test
+	void growsUpToMaxCapacityThenRefusesPut() {
+		// starts with 8 slots, grows to 64 slots holding 32 entries
+		LongObjectMap<Long> map = new LongObjectMap<>(1, 64);
+		for (long key = 1; key <= 32; key++) {
+			map.put(key, key);
+		}
+		assertEquals(32, map.size());
+
+		assertThrows(IllegalStateException.class, () -> map.put(33, 33L));
+		assertEquals(32, map.size());
+		assertFalse(map.containsKey(33));
+		for (long key = 1; key <= 32; key++) {
+			assertEquals(key, map.get(key));
+		}
+		// existing keys can still be updated, removal frees a slot
+		assertEquals(1L, map.put(1, 0L));
+		assertEquals(0L, map.remove(1));
+		assertNull(map.put(33, 33L));
+		assertEquals(32, map.size());
+	}
+
+	@Test
+	void rejectsSizeAboveMaxCapacity() {
+		// 1 << 30 slots at most, half usable
+		assertThrows(IllegalArgumentException.class, () -> new LongObjectMap<>((1 << 29) + 1));
+		assertThrows(IllegalArgumentException.class, () -> new LongObjectMap<>(-1));
+		assertThrows(IllegalArgumentException.class, () -> new LongObjectMap<>(33, 64));
+	}
+}